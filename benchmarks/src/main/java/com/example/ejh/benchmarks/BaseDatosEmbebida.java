@@ -0,0 +1,38 @@
+package com.example.ejh.benchmarks;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Base de datos H2 en memoria en modo MySQL, para medir el acceso JDBC sin red ni servidor.
+ * Sirve para comparar versiones del codigo, no para estimar los tiempos contra MySQL.
+ */
+final class BaseDatosEmbebida {
+
+    private BaseDatosEmbebida() {
+    }
+
+    /**
+     * Abre una conexion a una base de datos en memoria y crea la tabla Persona vacia.
+     * La base de datos existe mientras quede alguna conexion abierta.
+     *
+     * @param nombre El nombre de la base de datos.
+     * @return La conexion.
+     * @throws SQLException Si no se pudo crear.
+     */
+    static Connection abrir(String nombre) throws SQLException {
+        Connection conn = DriverManager.getConnection("jdbc:h2:mem:" + nombre + ";MODE=MySQL", "sa", "");
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("DROP TABLE IF EXISTS Persona");
+            stmt.executeUpdate("CREATE TABLE Persona ("
+                    + "id INT NOT NULL AUTO_INCREMENT, "
+                    + "nombre VARCHAR(250) NULL DEFAULT NULL, "
+                    + "apellidos VARCHAR(250) NULL DEFAULT NULL, "
+                    + "edad INT NULL DEFAULT NULL, "
+                    + "PRIMARY KEY (id))");
+        }
+        return conn;
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.ejh.benchmarks;
+
+import com.example.ejh.indices.IndicePorId;
+import com.example.ejh.model.Persona;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coste de {@code PersonasController.modificarPersonaTabla}: buscar la fila de una persona y
+ * sustituirla. Compara la busqueda con {@code indexOf}, que recorre la lista, con la de
+ * {@link IndicePorId}, que es la que usa la tabla.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BusquedaFilaBench {
+
+    @Param({"1000", "100000", "1000000"})
+    public int filas;
+
+    private ObservableList<Persona> datos;
+    private IndicePorId indice;
+    private final Random random = new Random(7);
+
+    @Setup
+    public void preparar() {
+        datos = FXCollections.observableArrayList(DatosPrueba.personas(filas));
+        indice = new IndicePorId(datos);
+    }
+
+    @Benchmark
+    public int conIndexOf() {
+        Persona original = datos.get(random.nextInt(filas));
+        int posicion = datos.indexOf(original);
+        datos.set(posicion, modificada(original));
+        return posicion;
+    }
+
+    @Benchmark
+    public int conIndicePorId() {
+        Persona original = datos.get(random.nextInt(filas));
+        int posicion = indice.posicion(original.getId());
+        datos.set(posicion, modificada(original));
+        return posicion;
+    }
+
+    private static Persona modificada(Persona persona) {
+        return new Persona(persona.getId(), persona.getNombre(), persona.getApellidos(), (persona.getEdad() + 1) % 100);
+    }
+}
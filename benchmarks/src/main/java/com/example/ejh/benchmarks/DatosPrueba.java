@@ -0,0 +1,71 @@
+package com.example.ejh.benchmarks;
+
+import com.example.ejh.model.Persona;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Genera personas con nombres y apellidos realistas para las mediciones. Con la misma semilla
+ * se generan siempre las mismas filas. Las cadenas se crean nuevas en cada fila, igual que
+ * las devuelve el driver JDBC, aunque su valor se repita.
+ */
+final class DatosPrueba {
+
+    private static final String[] NOMBRES = {"Maria", "Jose", "Antonio", "Carmen", "Manuel", "Ana",
+            "Francisco", "Laura", "David", "Lucia", "Juan", "Marta", "Javier", "Elena", "Daniel", "Sara",
+            "Carlos", "Paula", "Miguel", "Isabel", "Alejandro", "Cristina", "Pedro", "Raquel", "Pablo"};
+    private static final String[] APELLIDOS = {"Garcia", "Rodriguez", "Gonzalez", "Fernandez", "Lopez",
+            "Martinez", "Sanchez", "Perez", "Gomez", "Martin", "Jimenez", "Ruiz", "Hernandez", "Diaz",
+            "Moreno", "Munoz", "Alvarez", "Romero", "Alonso", "Gutierrez", "Navarro", "Torres", "Dominguez"};
+
+    private DatosPrueba() {
+    }
+
+    /**
+     * Recibe cada fila generada.
+     */
+    interface Destino {
+        void agregar(int id, String nombre, String apellidos, int edad);
+    }
+
+    /**
+     * Genera filas con ids consecutivos desde 1.
+     *
+     * @param filas El numero de filas.
+     * @param destino Lo que se hace con cada fila.
+     */
+    static void generar(int filas, Destino destino) {
+        Random random = new Random(42);
+        for (int i = 1; i <= filas; i++) {
+            Persona persona = persona(i, random);
+            destino.agregar(i, persona.getNombre(), persona.getApellidos(), persona.getEdad());
+        }
+    }
+
+    /**
+     * Genera una persona con los numeros al azar indicados.
+     *
+     * @param id El id de la persona.
+     * @param random El generador de numeros al azar.
+     * @return La persona.
+     */
+    static Persona persona(int id, Random random) {
+        String apellidos = APELLIDOS[random.nextInt(APELLIDOS.length)] + " "
+                + APELLIDOS[random.nextInt(APELLIDOS.length)];
+        return new Persona(id, new String(NOMBRES[random.nextInt(NOMBRES.length)]), apellidos, random.nextInt(100));
+    }
+
+    /**
+     * Genera una lista de personas con ids consecutivos desde 1.
+     *
+     * @param filas El numero de filas.
+     * @return Las personas.
+     */
+    static List<Persona> personas(int filas) {
+        List<Persona> personas = new ArrayList<>(filas);
+        generar(filas, (id, nombre, apellidos, edad) -> personas.add(new Persona(id, nombre, apellidos, edad)));
+        return personas;
+    }
+}
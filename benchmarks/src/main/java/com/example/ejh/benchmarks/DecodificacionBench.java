@@ -0,0 +1,92 @@
+package com.example.ejh.benchmarks;
+
+import com.example.ejh.model.Persona;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lectura de la tabla Persona convirtiendo cada fila en una {@link Persona}, igual que
+ * {@code PersonasController.cargarDatosDesdeBaseDeDatos}: por posicion de columna o por
+ * nombre. Incluye el coste de la base de datos embebida, que es el mismo en las dos variantes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DecodificacionBench {
+
+    private static final String SQL = "SELECT id, nombre, apellidos, edad FROM Persona";
+
+    @Param({"100000"})
+    public int filas;
+
+    private Connection conn;
+
+    @Setup
+    public void preparar() throws SQLException {
+        conn = BaseDatosEmbebida.abrir("decodificacion");
+        conn.setAutoCommit(false);
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "INSERT INTO Persona (nombre, apellidos, edad) VALUES (?, ?, ?)")) {
+            for (Persona persona : DatosPrueba.personas(filas)) {
+                pstmt.setString(1, persona.getNombre());
+                pstmt.setString(2, persona.getApellidos());
+                pstmt.setInt(3, persona.getEdad());
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+        conn.commit();
+        conn.setAutoCommit(true);
+    }
+
+    @TearDown
+    public void cerrar() throws SQLException {
+        conn.close();
+    }
+
+    @Benchmark
+    public int porPosicion(Blackhole bh) throws SQLException {
+        int leidas = 0;
+        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(SQL)) {
+            while (rs.next()) {
+                bh.consume(new Persona(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getInt(4)));
+                leidas++;
+            }
+        }
+        return leidas;
+    }
+
+    @Benchmark
+    public int porNombre(Blackhole bh) throws SQLException {
+        int leidas = 0;
+        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(SQL)) {
+            while (rs.next()) {
+                bh.consume(new Persona(rs.getInt("id"), rs.getString("nombre"), rs.getString("apellidos"),
+                        rs.getInt("edad")));
+                leidas++;
+            }
+        }
+        return leidas;
+    }
+}
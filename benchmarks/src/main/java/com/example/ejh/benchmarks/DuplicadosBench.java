@@ -0,0 +1,78 @@
+package com.example.ejh.benchmarks;
+
+import com.example.ejh.duplicados.DetectorDuplicados;
+import com.example.ejh.duplicados.GrupoDuplicados;
+import com.example.ejh.model.Persona;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tiempo de buscar personas repetidas con {@link DetectorDuplicados}. Las filas de
+ * {@link DatosPrueba} se repiten mucho entre si; ademas, una de cada diez se copia con una
+ * errata, un acento o la edad cambiada, como las que deberia encontrar.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+@State(Scope.Benchmark)
+public class DuplicadosBench {
+
+    @Param({"100000", "1000000"})
+    private int filas;
+
+    private List<Persona> personas;
+    private final DetectorDuplicados detector = new DetectorDuplicados();
+
+    @Setup
+    public void preparar() {
+        personas = DatosPrueba.personas(filas);
+        Random random = new Random(7);
+        int originales = personas.size();
+        for (int i = 0; i < originales / 10; i++) {
+            Persona original = personas.get(random.nextInt(originales));
+            personas.add(variante(personas.size() + 1, original, random));
+        }
+    }
+
+    @Benchmark
+    public List<GrupoDuplicados> buscar() {
+        return detector.buscar(personas, () -> false);
+    }
+
+    private static Persona variante(int id, Persona original, Random random) {
+        String nombre = original.getNombre();
+        String apellidos = original.getApellidos();
+        int edad = original.getEdad();
+        switch (random.nextInt(4)) {
+            case 0:
+                // Letra cambiada
+                int pos = random.nextInt(apellidos.length());
+                apellidos = apellidos.substring(0, pos) + (char) ('a' + random.nextInt(26)) + apellidos.substring(pos + 1);
+                break;
+            case 1:
+                apellidos = apellidos.replace('a', 'á').replace("z", "s");
+                break;
+            case 2:
+                edad++;
+                break;
+            default:
+                nombre = nombre.toUpperCase();
+        }
+        return new Persona(id, nombre, apellidos, edad);
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.ejh.benchmarks;
+
+import com.example.ejh.model.Persona;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Filas insertadas por segundo en la tabla Persona: una sentencia por fila con autocommit,
+ * como el alta desde la ventana, o por lotes en una transaccion, como la importacion CSV y
+ * la cola de escritura. Contra la base de datos embebida no hay viaje de red, que es lo que
+ * mas ahorran los lotes contra MySQL, asi que la diferencia real es mayor.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class InsercionJdbcBench {
+
+    private static final String SQL_INSERTAR = "INSERT INTO Persona (nombre, apellidos, edad) VALUES (?, ?, ?)";
+    private static final int LOTE = 1000;
+
+    private Connection conn;
+    private List<Persona> personas;
+
+    @Setup(Level.Trial)
+    public void preparar() throws SQLException {
+        conn = BaseDatosEmbebida.abrir("insercion");
+        personas = DatosPrueba.personas(LOTE);
+    }
+
+    @Setup(Level.Iteration)
+    public void vaciar() throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("TRUNCATE TABLE Persona");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void cerrar() throws SQLException {
+        conn.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOTE)
+    public void unaAUna() throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(SQL_INSERTAR)) {
+            for (Persona persona : personas) {
+                asignar(pstmt, persona);
+                pstmt.executeUpdate();
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOTE)
+    public void porLotes() throws SQLException {
+        conn.setAutoCommit(false);
+        try (PreparedStatement pstmt = conn.prepareStatement(SQL_INSERTAR)) {
+            for (Persona persona : personas) {
+                asignar(pstmt, persona);
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+            conn.commit();
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    private static void asignar(PreparedStatement pstmt, Persona persona) throws SQLException {
+        pstmt.setString(1, persona.getNombre());
+        pstmt.setString(2, persona.getApellidos());
+        pstmt.setInt(3, persona.getEdad());
+    }
+}
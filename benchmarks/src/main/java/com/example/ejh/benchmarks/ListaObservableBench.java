@@ -0,0 +1,84 @@
+package com.example.ejh.benchmarks;
+
+import com.example.ejh.model.Persona;
+import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import javafx.collections.transformation.FilteredList;
+import javafx.collections.transformation.SortedList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Agregar las filas de una carga a la lista de la tabla de una vez, por lotes como hace
+ * {@code PublicadorLotes}, o una a una. La lista tiene encima una {@link FilteredList} y una
+ * {@link SortedList} como en la carga completa, y un listener que cuenta los avisos como
+ * haria la tabla; cada aviso es un recorrido de la vista.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ListaObservableBench {
+
+    @Param({"10000"})
+    public int filas;
+
+    @Param({"5000"})
+    public int lote;
+
+    private List<Persona> personas;
+    private ObservableList<Persona> datos;
+    private int avisos;
+
+    @Setup(Level.Trial)
+    public void generar() {
+        personas = DatosPrueba.personas(filas);
+    }
+
+    @Setup(Level.Invocation)
+    public void preparar() {
+        datos = FXCollections.observableArrayList();
+        SortedList<Persona> ordenadas = new SortedList<>(new FilteredList<>(datos),
+                Comparator.comparing(Persona::getApellidos));
+        ordenadas.addListener((ListChangeListener<Persona>) c -> avisos++);
+    }
+
+    @Benchmark
+    public int todasDeUnaVez() {
+        datos.addAll(personas);
+        return datos.size();
+    }
+
+    @Benchmark
+    public int porLotes() {
+        for (int i = 0; i < personas.size(); i += lote) {
+            datos.addAll(personas.subList(i, Math.min(i + lote, personas.size())));
+        }
+        return datos.size();
+    }
+
+    @Benchmark
+    public int unaAUna() {
+        for (Persona persona : personas) {
+            datos.add(persona);
+        }
+        return datos.size();
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.ejh.benchmarks;
+
+import com.example.ejh.model.AlmacenPersonas;
+import com.example.ejh.model.Persona;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compara la memoria que ocupan las mismas filas guardadas como lista de {@link Persona} y
+ * en un {@link AlmacenPersonas}, generadas con {@link DatosPrueba}.
+ *
+ * <p>Uso: {@code mvn compile exec:java -Dexec.args="1000000"}</p>
+ */
+public class MemoriaAlmacen {
+
+    public static void main(String[] args) {
+        int filas = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+        long base = memoriaUsada();
+        List<Persona> lista = new ArrayList<>(filas);
+        DatosPrueba.generar(filas, (id, nombre, apellidos, edad) -> lista.add(new Persona(id, nombre, apellidos, edad)));
+        long bytesLista = memoriaUsada() - base;
+        System.out.println("Lista de Persona: " + lista.size() + " filas");
+        lista.clear();
+        ((ArrayList<Persona>) lista).trimToSize();
+
+        base = memoriaUsada();
+        AlmacenPersonas almacen = new AlmacenPersonas(filas);
+        DatosPrueba.generar(filas, almacen::agregar);
+        long bytesAlmacen = memoriaUsada() - base;
+        System.out.println("AlmacenPersonas: " + almacen.size() + " filas");
+
+        double porMillon = 1_000_000.0 / filas;
+        System.out.printf("Lista de Persona: %,d bytes (%.1f bytes/fila)%n", bytesLista, (double) bytesLista / filas);
+        System.out.printf("AlmacenPersonas:  %,d bytes (%.1f bytes/fila, estimado %,d)%n",
+                bytesAlmacen, (double) bytesAlmacen / filas, almacen.bytesEstimados());
+        System.out.printf("Ahorro por millon de filas: %,.0f MB%n",
+                (bytesLista - bytesAlmacen) * porMillon / (1024 * 1024));
+    }
+
+    private static long memoriaUsada() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
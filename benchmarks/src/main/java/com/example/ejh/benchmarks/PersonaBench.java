@@ -0,0 +1,64 @@
+package com.example.ejh.benchmarks;
+
+import com.example.ejh.model.Persona;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coste de crear una {@link Persona} y de sus {@code equals} y {@code hashCode}, que usan las
+ * listas de la tabla al buscar filas.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PersonaBench {
+
+    private int id = 1;
+    private String nombre;
+    private String apellidos;
+    private Persona persona;
+    private Persona igual;
+    private Persona distinta;
+
+    @Setup
+    public void preparar() {
+        nombre = new String("Maria");
+        apellidos = new String("Garcia Lopez");
+        persona = new Persona(1, nombre, apellidos, 30);
+        igual = new Persona(1, new String(nombre), new String(apellidos), 30);
+        distinta = new Persona(2, nombre, new String("Garcia Perez"), 30);
+    }
+
+    @Benchmark
+    public Persona construir() {
+        return new Persona(id++, nombre, apellidos, 30);
+    }
+
+    @Benchmark
+    public boolean equalsIgual() {
+        return persona.equals(igual);
+    }
+
+    @Benchmark
+    public boolean equalsDistinta() {
+        return persona.equals(distinta);
+    }
+
+    @Benchmark
+    public int hashCodePersona() {
+        return persona.hashCode();
+    }
+}
@@ -0,0 +1,429 @@
+package com.example.ejh.benchmarks;
+
+import com.example.ejh.db.ConfiguracionPool;
+import com.example.ejh.db.PoolConexiones;
+import com.example.ejh.db.RepositorioMySql;
+import com.example.ejh.metricas.Histograma;
+import com.example.ejh.metricas.Metricas;
+import com.example.ejh.model.FiltroPersonas;
+import com.example.ejh.model.OrdenPersonas;
+import com.example.ejh.model.Persona;
+import com.example.ejh.tareas.TareaBD;
+import org.h2.tools.Server;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Prueba de carga y de resistencia: muchos clientes a la vez lanzan contra la base de datos las
+ * mismas operaciones que la aplicacion ({@link RepositorioMySql} detras del pool), mezcladas en
+ * la proporcion indicada, e informa del rendimiento, las latencias y los errores.
+ *
+ * <p>Por defecto arranca un servidor H2 en modo MySQL en un puerto local y se conecta por TCP,
+ * para que cada operacion pase por la red como contra MySQL; con {@code url=...} se usa otra
+ * base de datos, por ejemplo un MySQL de pruebas. Cada cliente es un hilo virtual si la maquina
+ * virtual los tiene (Java 21 o posterior) y un hilo normal si no.</p>
+ *
+ * <p>Uso: {@code mvn compile exec:java@carga -Dcarga.args="clientes=64 duracion=60"}. Opciones,
+ * con su valor por defecto:</p>
+ * <ul>
+ *     <li>{@code clientes=32}: clientes simultaneos.</li>
+ *     <li>{@code duracion=30}: segundos de medicion; para una prueba de resistencia, horas.</li>
+ *     <li>{@code calentamiento=5}: segundos de carga antes de medir.</li>
+ *     <li>{@code intervalo=10}: cada cuantos segundos se escribe el avance, 0 para no hacerlo.</li>
+ *     <li>{@code mezcla=insertar:20,modificar:45,eliminar:10,buscar:20,cargar:1,modificar_varias:4}:
+ *     peso de cada operacion.</li>
+ *     <li>{@code filas=10000}: personas dadas de alta antes de empezar.</li>
+ *     <li>{@code pool=20}: conexiones maximas del pool.</li>
+ *     <li>{@code pausa=0}: milisegundos de espera de cada cliente entre operaciones.</li>
+ *     <li>{@code maxErrores=0.01}: fraccion de operaciones fallidas a partir de la cual la
+ *     prueba termina con error, para usarla antes de cada despliegue.</li>
+ *     <li>{@code url}, {@code usuario}, {@code contrasena}: la base de datos, si no es la embebida.</li>
+ * </ul>
+ */
+public class PruebaCarga {
+
+    /**
+     * Operaciones de la mezcla, con la llamada al repositorio que hace la aplicacion en cada caso.
+     */
+    enum Operacion {
+        // Guardar en el formulario, al agregar
+        INSERTAR,
+        // Guardar en el formulario, al modificar
+        MODIFICAR,
+        // Eliminar una persona de la tabla
+        ELIMINAR,
+        // Filtrar con los campos de busqueda
+        BUSCAR,
+        // cargarDatosDesdeBaseDeDatos: todas las personas en streaming
+        CARGAR,
+        // Cambiar un dato en varias seleccionadas: una transaccion con varias filas bloqueadas
+        MODIFICAR_VARIAS
+    }
+
+    private static final int IDS_POR_LOTE = 50;
+    private static final String SQL_INSERTAR = "INSERT INTO Persona (nombre, apellidos, edad) VALUES (?, ?, ?)";
+
+    private final Map<String, String> opciones;
+    private final Map<Operacion, Integer> mezcla = new EnumMap<>(Operacion.class);
+    private final Map<Operacion, Resultado> resultados = new EnumMap<>(Operacion.class);
+    private final AtomicInteger idMaximo = new AtomicInteger();
+    private RepositorioMySql repositorio;
+    private volatile boolean midiendo;
+
+    private PruebaCarga(Map<String, String> opciones) {
+        this.opciones = opciones;
+        for (String parte : opcion("mezcla", "insertar:20,modificar:45,eliminar:10,buscar:20,cargar:1,modificar_varias:4")
+                .split(",")) {
+            String[] pesoOperacion = parte.split(":");
+            mezcla.put(Operacion.valueOf(pesoOperacion[0].trim().toUpperCase(Locale.ROOT)),
+                    Integer.parseInt(pesoOperacion[1].trim()));
+        }
+        for (Operacion operacion : Operacion.values()) {
+            resultados.put(operacion, new Resultado(operacion));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opciones = new LinkedHashMap<>();
+        for (String arg : args) {
+            int igual = arg.indexOf('=');
+            if (igual < 0) {
+                throw new IllegalArgumentException("Las opciones son clave=valor: " + arg);
+            }
+            opciones.put(arg.substring(0, igual), arg.substring(igual + 1));
+        }
+        new PruebaCarga(opciones).ejecutar();
+    }
+
+    private void ejecutar() throws Exception {
+        int clientes = Integer.parseInt(opcion("clientes", "32"));
+        int duracion = Integer.parseInt(opcion("duracion", "30"));
+        int calentamiento = Integer.parseInt(opcion("calentamiento", "5"));
+        int intervalo = Integer.parseInt(opcion("intervalo", "10"));
+        long pausa = Long.parseLong(opcion("pausa", "0"));
+
+        Server servidor = null;
+        String url = opciones.get("url");
+        if (url == null) {
+            int puerto = puertoLibre();
+            servidor = Server.createTcpServer("-tcpPort", String.valueOf(puerto), "-ifNotExists").start();
+            url = "jdbc:h2:tcp://localhost:" + puerto + "/mem:carga;MODE=MySQL;DB_CLOSE_DELAY=-1";
+            // H2 no admite el streaming de Connector/J (tamano MIN_VALUE)
+            System.setProperty("ejh.carga.fetch", "1000");
+        }
+        String usuario = opcion("usuario", servidor != null ? "sa" : "root");
+        String contrasena = opcion("contrasena", "");
+        ExecutorService hilos = null;
+        ConfiguracionPool config = new ConfiguracionPool(url, usuario, contrasena);
+        config.setTamanoMaximo(Integer.parseInt(opcion("pool", "20")));
+        try (PoolConexiones pool = new PoolConexiones(config)) {
+            prepararDatos(url, usuario, contrasena, Integer.parseInt(opcion("filas", "10000")));
+            repositorio = new RepositorioMySql(pool, url, "", usuario, contrasena);
+
+            System.out.printf("%d clientes contra %s, mezcla %s, %d s de calentamiento y %d s de medicion%n",
+                    clientes, url, mezcla, calentamiento, duracion);
+            hilos = crearHilos(clientes);
+            long fin = System.nanoTime() + TimeUnit.SECONDS.toNanos(calentamiento + duracion);
+            for (int i = 0; i < clientes; i++) {
+                hilos.execute(() -> cliente(fin, pausa));
+            }
+            TimeUnit.SECONDS.sleep(calentamiento);
+            midiendo = true;
+            long inicio = System.nanoTime();
+            long siguienteAviso = inicio + TimeUnit.SECONDS.toNanos(intervalo);
+            while (System.nanoTime() < fin) {
+                TimeUnit.MILLISECONDS.sleep(100);
+                if (intervalo > 0 && System.nanoTime() >= siguienteAviso) {
+                    avisar(intervalo);
+                    siguienteAviso += TimeUnit.SECONDS.toNanos(intervalo);
+                }
+            }
+            hilos.shutdown();
+            hilos.awaitTermination(1, TimeUnit.MINUTES);
+            double segundos = (System.nanoTime() - inicio) / 1e9;
+            double fraccionErrores = informar(segundos);
+            System.out.println(pool.getEstadisticas());
+            double maximo = Double.parseDouble(opcion("maxErrores", "0.01"));
+            if (fraccionErrores > maximo) {
+                throw new IllegalStateException(String.format(Locale.ROOT,
+                        "Han fallado el %.2f %% de las operaciones, mas del %.2f %% permitido",
+                        fraccionErrores * 100, maximo * 100));
+            }
+        } finally {
+            if (hilos != null) {
+                hilos.shutdownNow();
+            }
+            if (servidor != null) {
+                servidor.stop();
+            }
+        }
+    }
+
+    /**
+     * Bucle de un cliente: elige una operacion segun los pesos, la ejecuta y anota el resultado.
+     */
+    private void cliente(long fin, long pausa) {
+        int total = mezcla.values().stream().mapToInt(Integer::intValue).sum();
+        TareaBD<Void> tarea = new TareaBD<>(t -> null);
+        ThreadLocalRandom azar = ThreadLocalRandom.current();
+        while (System.nanoTime() < fin && !Thread.currentThread().isInterrupted()) {
+            int eleccion = azar.nextInt(total);
+            Operacion operacion = null;
+            for (Map.Entry<Operacion, Integer> peso : mezcla.entrySet()) {
+                eleccion -= peso.getValue();
+                if (eleccion < 0) {
+                    operacion = peso.getKey();
+                    break;
+                }
+            }
+            Resultado resultado = resultados.get(operacion);
+            long inicio = System.nanoTime();
+            try {
+                ejecutar(operacion, tarea, azar);
+                if (midiendo) {
+                    resultado.anotar(System.nanoTime() - inicio);
+                }
+            } catch (SQLException e) {
+                if (midiendo) {
+                    resultado.anotarError(e);
+                }
+            }
+            if (pausa > 0) {
+                try {
+                    Thread.sleep(pausa);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void ejecutar(Operacion operacion, TareaBD<?> tarea, ThreadLocalRandom azar) throws SQLException {
+        switch (operacion) {
+            case INSERTAR:
+                Persona nueva = DatosPrueba.persona(0, azar);
+                idMaximo.accumulateAndGet(repositorio.insertar(tarea, nueva.getNombre(), nueva.getApellidos(),
+                        nueva.getEdad()).getId(), Math::max);
+                break;
+            case MODIFICAR:
+                // Como la ventana: se lee la persona y se guarda sobre la version leida; si otro
+                // cliente la ha cambiado entretanto, es un conflicto y no un error
+                Persona leida = repositorio.obtener(tarea, idAlAzar(azar));
+                if (leida == null) {
+                    break;
+                }
+                Persona cambiada = DatosPrueba.persona(0, azar);
+                if (!repositorio.modificar(tarea, new Persona(leida.getId(), cambiada.getNombre(),
+                        cambiada.getApellidos(), cambiada.getEdad(), leida.getVersion())) && midiendo) {
+                    resultados.get(Operacion.MODIFICAR).conflictos.increment();
+                }
+                break;
+            case ELIMINAR:
+                repositorio.eliminar(tarea, idAlAzar(azar));
+                break;
+            case BUSCAR:
+                String nombre = DatosPrueba.persona(0, azar).getNombre();
+                repositorio.buscar(tarea, FiltroPersonas.desdeTexto(nombre.substring(0, 2), "", ""), 200);
+                break;
+            case CARGAR:
+                repositorio.cargarTodas(tarea, persona -> {
+                });
+                break;
+            case MODIFICAR_VARIAS:
+                // Sin ordenar, como llegan de la seleccion: dos lotes que se cruzan pueden bloquearse
+                List<Integer> ids = new ArrayList<>(IDS_POR_LOTE);
+                for (int i = 0; i < IDS_POR_LOTE; i++) {
+                    ids.add(idAlAzar(azar));
+                }
+                repositorio.modificarVarias(tarea, ids, OrdenPersonas.Columna.EDAD, azar.nextInt(1, 100));
+                break;
+            default:
+                throw new IllegalStateException("Operacion sin implementar: " + operacion);
+        }
+    }
+
+    private int idAlAzar(ThreadLocalRandom azar) {
+        return azar.nextInt(1, Math.max(2, idMaximo.get() + 1));
+    }
+
+    private void prepararDatos(String url, String usuario, String contrasena, int filas) throws SQLException {
+        try (Connection conn = DriverManager.getConnection(url, usuario, contrasena);
+             Statement stmt = conn.createStatement()) {
+            if (opciones.get("url") == null) {
+                stmt.executeUpdate("CREATE TABLE IF NOT EXISTS Persona ("
+                        + "id INT NOT NULL AUTO_INCREMENT, nombre VARCHAR(250) NULL, "
+                        + "apellidos VARCHAR(250) NULL, edad INT NULL, version INT NOT NULL DEFAULT 0, "
+                        + "PRIMARY KEY (id))");
+            }
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(SQL_INSERTAR)) {
+                int[] n = {0};
+                DatosPrueba.generar(filas, (id, nombre, apellidos, edad) -> {
+                    try {
+                        pstmt.setString(1, nombre);
+                        pstmt.setString(2, apellidos);
+                        pstmt.setInt(3, edad);
+                        pstmt.addBatch();
+                        if (++n[0] % 1000 == 0) {
+                            pstmt.executeBatch();
+                        }
+                    } catch (SQLException e) {
+                        throw new IllegalStateException(e);
+                    }
+                });
+                pstmt.executeBatch();
+            }
+            conn.commit();
+            try (ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(id), 0) FROM Persona")) {
+                rs.next();
+                idMaximo.set(rs.getInt(1));
+            }
+        }
+    }
+
+    private void avisar(int intervalo) {
+        StringBuilder linea = new StringBuilder();
+        long operaciones = 0;
+        long errores = 0;
+        for (Resultado resultado : resultados.values()) {
+            operaciones += resultado.intervalo.getCuenta();
+            errores += resultado.erroresIntervalo.sumThenReset();
+            if (resultado.intervalo.getCuenta() > 0) {
+                linea.append(String.format(Locale.ROOT, " %s p99=%.1fms", resultado.nombre(),
+                        resultado.intervalo.getP99Ms()));
+            }
+            resultado.intervalo.reiniciar();
+        }
+        System.out.printf(Locale.ROOT, "[%tT] %,.0f op/s, %d errores%s%n", System.currentTimeMillis(),
+                (double) operaciones / intervalo, errores, linea);
+    }
+
+    /**
+     * Escribe el informe final.
+     *
+     * @return La fraccion de operaciones que han fallado.
+     */
+    private double informar(double segundos) {
+        System.out.printf("%n%-17s %10s %9s %9s %9s %9s %9s %8s %9s %8s %10s%n", "operacion", "hechas", "op/s",
+                "p50 ms", "p99 ms", "p999 ms", "max ms", "errores", "bloqueos", "esperas", "conflictos");
+        long hechas = 0;
+        long errores = 0;
+        for (Resultado r : resultados.values()) {
+            long n = r.total.getCuenta();
+            long e = r.errores.sum();
+            if (n + e == 0) {
+                continue;
+            }
+            hechas += n;
+            errores += e;
+            System.out.printf(Locale.ROOT, "%-17s %10d %9.0f %9.2f %9.2f %9.2f %9.2f %7.2f%% %9d %8d %10d%n",
+                    r.nombre(), n, n / segundos, r.total.getP50Ms(), r.total.getP99Ms(),
+                    r.total.percentil(0.999), r.total.getMaximoMs(), 100.0 * e / (n + e),
+                    r.bloqueos.sum(), r.esperas.sum(), r.conflictos.sum());
+        }
+        double fraccion = hechas + errores == 0 ? 0 : (double) errores / (hechas + errores);
+        System.out.printf(Locale.ROOT, "%-17s %10d %9.0f %49.2f%%%n", "total", hechas, hechas / segundos,
+                fraccion * 100);
+        for (Resultado r : resultados.values()) {
+            r.primerosErrores.forEach((mensaje, veces) ->
+                    System.out.printf("  %s: %s (%d veces)%n", r.nombre(), mensaje, veces.sum()));
+        }
+        return fraccion;
+    }
+
+    private String opcion(String nombre, String porDefecto) {
+        return opciones.getOrDefault(nombre, porDefecto);
+    }
+
+    private static int puertoLibre() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /**
+     * Un hilo virtual por cliente si la maquina virtual los tiene; se busca por reflexion
+     * porque el proyecto se compila para Java 17.
+     */
+    private static ExecutorService crearHilos(int clientes) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return Executors.newFixedThreadPool(clientes);
+        }
+    }
+
+    /**
+     * Latencias y errores de una operacion.
+     */
+    private static final class Resultado {
+        // Solo se guardan los mensajes distintos de los primeros errores
+        private static final int MAX_MENSAJES = 5;
+
+        private final Operacion operacion;
+        private final Histograma total;
+        private final Histograma intervalo;
+        private final LongAdder errores = new LongAdder();
+        private final LongAdder erroresIntervalo = new LongAdder();
+        private final LongAdder bloqueos = new LongAdder();
+        private final LongAdder esperas = new LongAdder();
+        // Modificaciones que no se guardaron porque otro cliente cambio la persona antes
+        private final LongAdder conflictos = new LongAdder();
+        private final Map<String, LongAdder> primerosErrores = new ConcurrentHashMap<>();
+
+        private Resultado(Operacion operacion) {
+            this.operacion = operacion;
+            this.total = Metricas.histograma("carga." + nombre());
+            this.intervalo = Metricas.histograma("carga.intervalo." + nombre());
+        }
+
+        private String nombre() {
+            return operacion.name().toLowerCase(Locale.ROOT);
+        }
+
+        private void anotar(long nanos) {
+            total.registrar(nanos);
+            intervalo.registrar(nanos);
+        }
+
+        private void anotarError(SQLException e) {
+            errores.increment();
+            erroresIntervalo.increment();
+            String estado = e.getSQLState() == null ? "" : e.getSQLState();
+            // 40001 e ER_LOCK_DEADLOCK (1213): MySQL deshace la transaccion; HYT00 y 1205: se agoto la espera de un bloqueo
+            if (estado.equals("40001") || e.getErrorCode() == 1213) {
+                bloqueos.increment();
+            } else if (estado.equals("HYT00") || e.getErrorCode() == 1205) {
+                esperas.increment();
+            }
+            String mensaje = e.getMessage() == null ? e.getClass().getName() : e.getMessage().lines().findFirst().orElse("");
+            LongAdder veces = primerosErrores.get(mensaje);
+            if (veces == null && primerosErrores.size() < MAX_MENSAJES) {
+                veces = primerosErrores.computeIfAbsent(mensaje, m -> new LongAdder());
+            }
+            if (veces != null) {
+                veces.increment();
+            }
+        }
+    }
+}
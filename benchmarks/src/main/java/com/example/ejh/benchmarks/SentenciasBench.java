@@ -0,0 +1,140 @@
+package com.example.ejh.benchmarks;
+
+import com.example.ejh.db.ConfiguracionPool;
+import com.example.ejh.db.PoolConexiones;
+import com.example.ejh.db.SentenciasEnCache;
+import com.example.ejh.model.Persona;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latencia de las operaciones de una persona tal y como las hace {@code RepositorioMySql}:
+ * pedir una conexion al pool, preparar la sentencia, ejecutarla y devolverlo todo. Con la
+ * cache del pool ({@link SentenciasEnCache}) la sentencia se prepara una vez por conexion;
+ * sin ella, en cada operacion. Contra la base de datos embebida solo se ahorra el analisis
+ * en el cliente; contra MySQL con {@code useServerPrepStmts=true} se ahorra ademas un viaje
+ * al servidor para prepararla y otro para cerrarla.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SentenciasBench {
+
+    private static final String SQL_BUSCAR = "SELECT id, nombre, apellidos, edad FROM Persona WHERE id = ?";
+    private static final String SQL_INSERTAR = "INSERT INTO Persona (nombre, apellidos, edad) VALUES (?, ?, ?)";
+    private static final String SQL_MODIFICAR = "UPDATE Persona SET nombre = ?, apellidos = ?, edad = ? WHERE id = ?";
+    private static final String SQL_ELIMINAR = "DELETE FROM Persona WHERE id = ?";
+    private static final int FILAS = 10_000;
+
+    @Param({"true", "false"})
+    private boolean cache;
+
+    private Connection base;
+    private PoolConexiones pool;
+    private List<Persona> personas;
+    private int siguiente;
+
+    @Setup(Level.Trial)
+    public void preparar() throws SQLException {
+        // La conexion mantiene viva la base de datos en memoria
+        base = BaseDatosEmbebida.abrir("sentencias");
+        personas = DatosPrueba.personas(FILAS);
+        try (PreparedStatement pstmt = base.prepareStatement(SQL_INSERTAR)) {
+            for (Persona persona : personas) {
+                pstmt.setString(1, persona.getNombre());
+                pstmt.setString(2, persona.getApellidos());
+                pstmt.setInt(3, persona.getEdad());
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+        ConfiguracionPool config = new ConfiguracionPool("jdbc:h2:mem:sentencias;MODE=MySQL", "sa", "");
+        config.setTamanoMinimo(1);
+        config.setTamanoMaximo(1);
+        config.setSentenciasPorConexion(cache ? 32 : 0);
+        pool = new PoolConexiones(config);
+    }
+
+    @TearDown(Level.Trial)
+    public void cerrar() throws SQLException {
+        System.out.println();
+        System.out.println(pool.getEstadisticas());
+        pool.close();
+        base.close();
+    }
+
+    @Benchmark
+    public String buscar() throws SQLException {
+        try (Connection conn = pool.obtenerConexion();
+             PreparedStatement pstmt = SentenciasEnCache.preparar(conn, SQL_BUSCAR)) {
+            pstmt.setInt(1, siguienteId());
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getString(2) : null;
+            }
+        }
+    }
+
+    @Benchmark
+    public int modificar() throws SQLException {
+        Persona persona = personas.get(siguiente % FILAS);
+        try (Connection conn = pool.obtenerConexion();
+             PreparedStatement pstmt = SentenciasEnCache.preparar(conn, SQL_MODIFICAR)) {
+            pstmt.setString(1, persona.getNombre());
+            pstmt.setString(2, persona.getApellidos());
+            pstmt.setInt(3, persona.getEdad() + 1);
+            pstmt.setInt(4, siguienteId());
+            return pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Un alta con la clave generada seguida de su baja, para que la tabla no crezca.
+     */
+    @Benchmark
+    public int altaYBaja() throws SQLException {
+        Persona persona = personas.get(siguiente++ % FILAS);
+        int id;
+        try (Connection conn = pool.obtenerConexion();
+             PreparedStatement pstmt = SentenciasEnCache.preparar(conn, SQL_INSERTAR, Statement.RETURN_GENERATED_KEYS)) {
+            pstmt.setString(1, persona.getNombre());
+            pstmt.setString(2, persona.getApellidos());
+            pstmt.setInt(3, persona.getEdad());
+            pstmt.executeUpdate();
+            try (ResultSet claves = pstmt.getGeneratedKeys()) {
+                claves.next();
+                id = claves.getInt(1);
+            }
+        }
+        try (Connection conn = pool.obtenerConexion();
+             PreparedStatement pstmt = SentenciasEnCache.preparar(conn, SQL_ELIMINAR)) {
+            pstmt.setInt(1, id);
+            return pstmt.executeUpdate();
+        }
+    }
+
+    private int siguienteId() {
+        return siguiente++ % FILAS + 1;
+    }
+}
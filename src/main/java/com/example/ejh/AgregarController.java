@@ -1,6 +1,13 @@
 package com.example.ejh;
 
+import com.example.ejh.db.ColaEscritura;
+import com.example.ejh.db.ErrorBaseDatos;
+import com.example.ejh.db.RepositorioPersonas;
+import com.example.ejh.metricas.Metricas;
 import com.example.ejh.model.Persona;
+import com.example.ejh.model.ValidadorPersona;
+import com.example.ejh.tareas.EjecutorTareas;
+import com.example.ejh.tareas.TareaBD;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.scene.control.Alert;
@@ -8,10 +15,8 @@ import javafx.scene.control.Button;
 import javafx.scene.control.TextField;
 import javafx.stage.Stage;
 
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Optional;
 
 public class AgregarController {
 
@@ -33,6 +38,9 @@ public class AgregarController {
     private PersonasController helloController;
     private Persona personaOriginal;
     private boolean modoModificar;
+    private TareaBD<?> tareaEnCurso;
+    // Cambia cada vez que se reutiliza la ventana, para que un guardado de la vez anterior no la cierre
+    private int apertura;
 
     /**
      * Establece el controlador principal para la comunicacion con la ventana principal.
@@ -65,9 +73,32 @@ public class AgregarController {
         txtEdad.setText(String.valueOf(persona.getEdad()));
     }
 
+    /**
+     * Deja el formulario listo para volver a usarlo: borra los datos de la vez anterior y
+     * activa el modo de agregar o el de modificar segun se indique una persona o no.
+     *
+     * @param persona La persona a modificar, o null para agregar una nueva.
+     */
+    public void reiniciar(Persona persona) {
+        apertura++;
+        tareaEnCurso = null;
+        personaOriginal = null;
+        btnGuardar.setDisable(false);
+        setModoModificar(persona != null);
+        if (persona != null) {
+            llenarCampos(persona);
+        } else {
+            txtNombre.clear();
+            txtApellidos.clear();
+            txtEdad.clear();
+        }
+        txtNombre.requestFocus();
+    }
+
     /**
      * Metodo para guardar o modificar los datos de una persona. Si el modo es
-     * modificar, actualiza la base de datos, si no, inserta una nueva persona.
+     * modificar, actualiza la base de datos, si no, inserta una nueva persona. La
+     * operacion se ejecuta en segundo plano y la ventana se cierra al terminar.
      *
      * @param event El evento de accion al hacer clic en el boton guardar.
      */
@@ -77,76 +108,136 @@ public class AgregarController {
         String apellidos = txtApellidos.getText().trim();
         String edadStr = txtEdad.getText().trim();
 
-        StringBuilder errores = new StringBuilder();
-        if (nombre.isEmpty()) {
-            errores.append("El campo nombre es obligatorio.\n");
-        }
-        if (apellidos.isEmpty()) {
-            errores.append("El campo apellidos es obligatorio.\n");
+        String errores = ValidadorPersona.validar(nombre, apellidos, edadStr);
+        if (!errores.isEmpty()) {
+            mostrarAlertaError("Datos invalidos", errores);
+            return;
         }
+        int edad = Integer.parseInt(edadStr);
 
-        int edad = -1;
-        if (edadStr.isEmpty()) {
-            errores.append("El campo edad es obligatorio.\n");
-        } else {
-            try {
-                edad = Integer.parseInt(edadStr);
-                if (edad < 0) {
-                    errores.append("La edad debe ser un número positivo.\n");
-                }
-            } catch (NumberFormatException e) {
-                errores.append("La edad debe ser un número entero.\n");
+        ColaEscritura cola = helloController.getColaEscritura();
+        if (cola != null) {
+            // Escritura diferida: la tabla se actualiza ya y el cambio se escribe con los siguientes
+            if (modoModificar && personaOriginal != null) {
+                Persona personaModificada = new Persona(personaOriginal.getId(), nombre, apellidos, edad,
+                        personaOriginal.getVersion());
+                cola.modificar(personaOriginal, personaModificada);
+                helloController.modificarPersonaTabla(personaOriginal, personaModificada);
+            } else {
+                helloController.agregarPersonaTabla(cola.agregar(nombre, apellidos, edad));
             }
-        }
-
-        if (errores.length() > 0) {
-            mostrarAlertaError("Datos invalidos", errores.toString());
+            cerrarVentana();
             return;
         }
 
-        Connection connection = helloController.conectarBaseDatos("personas"); // Obtener conexion a la base de datos
+        // La operacion se ejecuta en segundo plano para no bloquear la interfaz
+        btnGuardar.setDisable(true);
+        int aperturaGuardado = apertura;
 
         // Modificar persona existente
+        RepositorioPersonas repositorio = helloController.getRepositorio();
         if (modoModificar && personaOriginal != null) {
-            String sql = "UPDATE Persona SET nombre = ?, apellidos = ?, edad = ? WHERE id = ?";
-            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-                pstmt.setString(1, nombre);
-                pstmt.setString(2, apellidos);
-                pstmt.setInt(3, edad);
-                pstmt.setInt(4, personaOriginal.getId());
-                pstmt.executeUpdate();
-
-                Persona personaModificada = new Persona(personaOriginal.getId(), nombre, apellidos, edad);
-                helloController.modificarPersonaTabla(personaOriginal, personaModificada);
-                mostrarAlertaExito("Info", "Persona modificada correctamente");
-            } catch (SQLException e) {
-                e.printStackTrace();
-                mostrarAlertaError("Error al modificar", "No se pudo modificar la persona en la base de datos.");
-                return;
-            }
+            Persona original = personaOriginal;
+            Persona personaModificada = new Persona(original.getId(), nombre, apellidos, edad, original.getVersion());
+            tareaEnCurso = EjecutorTareas.<Modificacion>lanzar(tarea -> {
+                try (Metricas.Cronometro c = Metricas.cronometrar("bd.modificar")) {
+                    if (repositorio.modificar(tarea, personaModificada)) {
+                        return new Modificacion(new Persona(original.getId(), nombre, apellidos, edad,
+                                original.getVersion() + 1), null);
+                    }
+                    // Conflicto: se lee como esta ahora para mezclar los cambios
+                    Metricas.contar("bd.conflictos", 1);
+                    return new Modificacion(null, repositorio.obtener(tarea, original.getId()));
+                } catch (SQLException e) {
+                    throw new ErrorBaseDatos("Error al modificar", "No se pudo modificar la persona en la base de datos.", e);
+                }
+            }, modificacion -> {
+                if (modificacion.guardada == null) {
+                    resolverConflicto(original, personaModificada, modificacion.actual, aperturaGuardado);
+                    return;
+                }
+                helloController.modificarPersonaTabla(original, modificacion.guardada);
+                if (aperturaGuardado == apertura) {
+                    mostrarAlertaExito("Info", "Persona modificada correctamente");
+                    cerrarVentana();
+                }
+            }, this::errorAlGuardar);
         } else {  // Agregar nueva persona
-            String sql = "INSERT INTO Persona (nombre, apellidos, edad) VALUES (?, ?, ?)";
-            try (PreparedStatement pstmt = connection.prepareStatement(sql, PreparedStatement.RETURN_GENERATED_KEYS)) {
-                pstmt.setString(1, nombre);
-                pstmt.setString(2, apellidos);
-                pstmt.setInt(3, edad);
-                pstmt.executeUpdate();
-
-                ResultSet generatedKeys = pstmt.getGeneratedKeys();
-                if (generatedKeys.next()) {
-                    int id = generatedKeys.getInt(1);
-                    Persona nuevaPersona = new Persona(id, nombre, apellidos, edad);
-
-                    helloController.agregarPersonaTabla(nuevaPersona);
+            tareaEnCurso = EjecutorTareas.<Persona>lanzar(tarea -> {
+                try (Metricas.Cronometro c = Metricas.cronometrar("bd.insertar")) {
+                    return repositorio.insertar(tarea, nombre, apellidos, edad);
+                } catch (SQLException e) {
+                    throw new ErrorBaseDatos("Error al agregar", "No se pudo agregar la persona a la base de datos.", e);
+                }
+            }, nuevaPersona -> {
+                helloController.agregarPersonaTabla(nuevaPersona);
+                if (aperturaGuardado == apertura) {
                     mostrarAlertaExito("Info", "Persona anadida correctamente");
+                    cerrarVentana();
                 }
-            } catch (SQLException e) {
-                e.printStackTrace();
-                mostrarAlertaError("Error al agregar", "No se pudo agregar la persona a la base de datos.");
-                return;
+            }, this::errorAlGuardar);
+        }
+    }
+
+    /**
+     * Resuelve una modificacion que no se ha guardado porque otro usuario cambio o borro a la
+     * persona. Se muestran sus datos actuales en la tabla y, si sigue existiendo, se abre el
+     * {@link DialogoConflicto}; la mezcla elegida se vuelve a guardar sobre la version actual,
+     * y si entretanto ha vuelto a cambiar, se repite el proceso.
+     *
+     * @param base La persona como estaba al abrir la ventana.
+     * @param mia La persona con los datos que no se pudieron guardar.
+     * @param actual La persona como esta guardada ahora, o null si se ha borrado.
+     * @param aperturaGuardado La apertura de la ventana en la que se guardo.
+     */
+    private void resolverConflicto(Persona base, Persona mia, Persona actual, int aperturaGuardado) {
+        if (actual == null) {
+            if (aperturaGuardado == apertura) {
+                btnGuardar.setDisable(false);
+                cerrarVentana();
             }
+            mostrarAlertaError("Error al modificar", "Otro usuario ha eliminado a " + mia.getNombre() + " "
+                    + mia.getApellidos() + " y no se ha podido guardar.");
+            return;
+        }
+        helloController.modificarPersonaTabla(base, actual);
+        if (aperturaGuardado != apertura) {
+            // La ventana ya se esta usando para otra persona: no se puede mezclar aqui
+            mostrarAlertaError("Error al modificar", "Otro usuario ha modificado a " + actual.getNombre() + " "
+                    + actual.getApellidos() + " y tus cambios no se han guardado.");
+            return;
+        }
+        btnGuardar.setDisable(false);
+        Optional<Persona> mezcla = DialogoConflicto.resolver(btnGuardar.getScene().getWindow(), base, mia, actual);
+        if (mezcla.isEmpty() || mezcla.get().equals(actual)) {
+            cerrarVentana();
+            return;
+        }
+        Persona elegida = mezcla.get();
+        llenarCampos(elegida);
+        personaOriginal = actual;
+        guardar(null);
+    }
+
+    /**
+     * Muestra el error de una operacion de guardado y vuelve a habilitar el boton.
+     *
+     * @param error El error producido.
+     */
+    private void errorAlGuardar(Throwable error) {
+        error.printStackTrace();
+        btnGuardar.setDisable(false);
+        if (error instanceof ErrorBaseDatos) {
+            mostrarAlertaError(((ErrorBaseDatos) error).getTitulo(), error.getMessage());
+        } else {
+            mostrarAlertaError("Error", "Se produjo un error inesperado: " + error.getMessage());
         }
+    }
 
+    /**
+     * Cierra la ventana del formulario. La ventana solo se oculta, para volver a usarla.
+     */
+    private void cerrarVentana() {
         Stage stage = (Stage) btnGuardar.getScene().getWindow();
         stage.close();
     }
@@ -158,10 +249,27 @@ public class AgregarController {
      */
     @FXML
     void cancelar(ActionEvent event) {
+        if (tareaEnCurso != null && tareaEnCurso.isRunning()) {
+            tareaEnCurso.cancel(true);
+        }
         Stage stage = (Stage) btnCancelar.getScene().getWindow();
         stage.close();
     }
 
+    /**
+     * Resultado de una modificacion en segundo plano: la persona guardada o, si hubo un
+     * conflicto, la persona como esta ahora.
+     */
+    private static final class Modificacion {
+        private final Persona guardada;
+        private final Persona actual;
+
+        private Modificacion(Persona guardada, Persona actual) {
+            this.guardada = guardada;
+            this.actual = actual;
+        }
+    }
+
     /**
      * Muestra una alerta de exito con el mensaje proporcionado.
      *
@@ -0,0 +1,92 @@
+package com.example.ejh;
+
+import com.example.ejh.model.Persona;
+import javafx.scene.control.ButtonBar;
+import javafx.scene.control.ButtonType;
+import javafx.scene.control.Dialog;
+import javafx.scene.control.Label;
+import javafx.scene.control.RadioButton;
+import javafx.scene.control.ToggleGroup;
+import javafx.scene.layout.GridPane;
+import javafx.stage.Window;
+
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Ventana para resolver una modificacion que choca con la de otro usuario. Para cada dato se
+ * muestra el valor que se queria guardar y el que hay guardado ahora, y se elige uno de los
+ * dos. Por defecto se toma el guardado si solo lo ha cambiado el otro usuario y el propio en
+ * el resto; los datos que han cambiado los dos se marcan en negrita.
+ */
+public class DialogoConflicto {
+
+    private static final String ESTILO_CONFLICTO = "-fx-font-weight: bold; -fx-text-fill: #b00020;";
+
+    private DialogoConflicto() {
+    }
+
+    /**
+     * Muestra la ventana y espera a que se cierre.
+     *
+     * @param owner La ventana propietaria.
+     * @param base La persona como estaba al empezar a modificarla.
+     * @param mia La persona con los datos que se querian guardar.
+     * @param actual La persona como esta guardada ahora.
+     * @return La persona con los datos elegidos y la version de {@code actual}, o vacio si se
+     *         descartan los cambios propios.
+     */
+    public static Optional<Persona> resolver(Window owner, Persona base, Persona mia, Persona actual) {
+        GridPane rejilla = new GridPane();
+        rejilla.setHgap(16);
+        rejilla.setVgap(8);
+        rejilla.addRow(0, new Label("Dato"), new Label("Tus cambios"), new Label("Guardado ahora"));
+        ToggleGroup nombre = fila(rejilla, 1, "Nombre", base.getNombre(), mia.getNombre(), actual.getNombre());
+        ToggleGroup apellidos = fila(rejilla, 2, "Apellidos", base.getApellidos(), mia.getApellidos(),
+                actual.getApellidos());
+        ToggleGroup edad = fila(rejilla, 3, "Edad", String.valueOf(base.getEdad()), String.valueOf(mia.getEdad()),
+                String.valueOf(actual.getEdad()));
+
+        ButtonType guardar = new ButtonType("Guardar", ButtonBar.ButtonData.OK_DONE);
+        ButtonType descartar = new ButtonType("Descartar mis cambios", ButtonBar.ButtonData.CANCEL_CLOSE);
+        Dialog<Persona> dialogo = new Dialog<>();
+        dialogo.initOwner(owner);
+        dialogo.setTitle("Conflicto al guardar");
+        dialogo.setHeaderText("Otro usuario ha modificado a esta persona mientras la editabas.\n"
+                + "Elige el valor que se guarda de cada dato.");
+        dialogo.getDialogPane().setContent(rejilla);
+        dialogo.getDialogPane().getButtonTypes().setAll(guardar, descartar);
+        dialogo.setResultConverter(boton -> boton != guardar ? null : new Persona(actual.getId(),
+                elegido(nombre, mia.getNombre(), actual.getNombre()),
+                elegido(apellidos, mia.getApellidos(), actual.getApellidos()),
+                elegido(edad, mia.getEdad(), actual.getEdad()),
+                actual.getVersion()));
+        return dialogo.showAndWait();
+    }
+
+    /**
+     * Anade la fila de un dato con un boton para cada valor y elige el que toca por defecto.
+     */
+    private static ToggleGroup fila(GridPane rejilla, int indice, String dato, String base, String mio, String actual) {
+        ToggleGroup grupo = new ToggleGroup();
+        RadioButton propio = new RadioButton(Objects.toString(mio, ""));
+        RadioButton guardado = new RadioButton(Objects.toString(actual, ""));
+        propio.setToggleGroup(grupo);
+        guardado.setToggleGroup(grupo);
+        Label etiqueta = new Label(dato);
+        boolean cambiadoPorMi = !Objects.equals(base, mio);
+        boolean cambiadoPorOtro = !Objects.equals(base, actual);
+        if (cambiadoPorMi && cambiadoPorOtro && !Objects.equals(mio, actual)) {
+            etiqueta.setStyle(ESTILO_CONFLICTO);
+        }
+        grupo.selectToggle(cambiadoPorOtro && !cambiadoPorMi ? guardado : propio);
+        // Marca el boton del valor guardado para saber despues cual se ha elegido
+        guardado.setUserData(Boolean.TRUE);
+        rejilla.addRow(indice, etiqueta, propio, guardado);
+        return grupo;
+    }
+
+    private static <T> T elegido(ToggleGroup grupo, T mio, T actual) {
+        return grupo.getSelectedToggle() != null && grupo.getSelectedToggle().getUserData() != null ? actual : mio;
+    }
+}
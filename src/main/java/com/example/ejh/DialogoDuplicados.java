@@ -0,0 +1,91 @@
+package com.example.ejh;
+
+import com.example.ejh.duplicados.GrupoDuplicados;
+import com.example.ejh.model.Persona;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.scene.control.Button;
+import javafx.scene.control.ButtonType;
+import javafx.scene.control.Dialog;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+import javafx.stage.Window;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Ventana con los grupos de personas repetidas encontrados por
+ * {@link com.example.ejh.duplicados.DetectorDuplicados}. Al elegir un grupo se ven sus
+ * personas; al fusionarlo se conserva la persona elegida (por defecto la de id menor, la mas
+ * antigua) y se eliminan las demas, y el grupo desaparece de la lista.
+ */
+public class DialogoDuplicados {
+
+    private DialogoDuplicados() {
+    }
+
+    /**
+     * Muestra la ventana y espera a que se cierre.
+     *
+     * @param owner La ventana propietaria.
+     * @param grupos Los grupos encontrados.
+     * @param eliminar Lo que se hace con las personas que sobran al fusionar un grupo.
+     */
+    public static void mostrar(Window owner, List<GrupoDuplicados> grupos, Consumer<List<Persona>> eliminar) {
+        ObservableList<GrupoDuplicados> pendientes = FXCollections.observableArrayList(grupos);
+        ListView<GrupoDuplicados> listaGrupos = new ListView<>(pendientes);
+        listaGrupos.setPrefSize(320, 360);
+        ListView<Persona> listaPersonas = new ListView<>();
+        listaPersonas.setPrefSize(360, 360);
+        listaPersonas.setCellFactory(lista -> new ListCell<>() {
+            @Override
+            protected void updateItem(Persona persona, boolean vacia) {
+                super.updateItem(persona, vacia);
+                setText(vacia || persona == null ? null : String.format("%d: %s %s (%d)",
+                        persona.getId(), persona.getNombre(), persona.getApellidos(), persona.getEdad()));
+            }
+        });
+        listaGrupos.getSelectionModel().selectedItemProperty().addListener((obs, anterior, grupo) -> {
+            listaPersonas.getItems().setAll(grupo == null ? List.of() : grupo.getPersonas());
+            listaPersonas.getSelectionModel().selectFirst();
+        });
+
+        Button btnFusionar = new Button("Fusionar grupo");
+        btnFusionar.disableProperty().bind(listaPersonas.getSelectionModel().selectedItemProperty().isNull());
+        btnFusionar.setOnAction(e -> {
+            GrupoDuplicados grupo = listaGrupos.getSelectionModel().getSelectedItem();
+            Persona conservada = listaPersonas.getSelectionModel().getSelectedItem();
+            List<Persona> sobrantes = new ArrayList<>(grupo.getPersonas());
+            // Por id: equals compara los datos, y las repetidas exactas son iguales
+            sobrantes.removeIf(persona -> persona.getId() == conservada.getId());
+            eliminar.accept(sobrantes);
+            // Al quitar el grupo se elige el siguiente
+            pendientes.remove(grupo);
+        });
+
+        VBox derecha = new VBox(8, listaPersonas, btnFusionar);
+        VBox.setVgrow(listaPersonas, Priority.ALWAYS);
+        HBox.setHgrow(derecha, Priority.ALWAYS);
+        HBox contenido = new HBox(12, listaGrupos, derecha);
+
+        int personas = 0;
+        for (GrupoDuplicados grupo : grupos) {
+            personas += grupo.size();
+        }
+        Dialog<Void> dialogo = new Dialog<>();
+        dialogo.initOwner(owner);
+        dialogo.setTitle("Personas repetidas");
+        dialogo.setHeaderText(grupos.size() + " grupos con " + personas + " personas que parecen la misma.\n"
+                + "Elige la persona que se conserva de cada grupo: al fusionarlo se eliminan las demas.");
+        dialogo.getDialogPane().setContent(contenido);
+        dialogo.getDialogPane().getButtonTypes().setAll(ButtonType.CLOSE);
+        dialogo.setResizable(true);
+        listaGrupos.getSelectionModel().selectFirst();
+        dialogo.showAndWait();
+    }
+}
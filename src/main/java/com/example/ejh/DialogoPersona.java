@@ -0,0 +1,113 @@
+package com.example.ejh;
+
+import com.example.ejh.metricas.Metricas;
+import com.example.ejh.model.Persona;
+import com.example.ejh.tareas.EjecutorTareas;
+import javafx.fxml.FXMLLoader;
+import javafx.scene.Scene;
+import javafx.stage.Modality;
+import javafx.stage.Stage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Ventana para agregar o modificar una persona. El archivo {@code agregar.fxml} se lee una sola
+ * vez, en segundo plano al arrancar, y la misma ventana y el mismo {@link AgregarController} se
+ * reutilizan cada vez que se abre, limpiando los datos de la vez anterior.
+ *
+ * <p>El tiempo desde que se pide abrir la ventana hasta que se ve se anota en el histograma
+ * {@code fx.dialogo_persona}. Los metodos se deben llamar desde el hilo de JavaFX.</p>
+ */
+public class DialogoPersona {
+
+    private final PersonasController principal;
+    private final CompletableFuture<Formulario> precarga;
+    private Stage stage;
+    private AgregarController controlador;
+    private long inicioApertura;
+
+    /**
+     * Constructor para crear el dialogo. Empieza a leer el archivo FXML en segundo plano.
+     *
+     * @param principal El controlador de la ventana principal.
+     */
+    public DialogoPersona(PersonasController principal) {
+        this.principal = principal;
+        // Los nodos y la escena se pueden crear fuera del hilo de JavaFX mientras no se muestren
+        this.precarga = EjecutorTareas.enSegundoPlano(DialogoPersona::cargar);
+    }
+
+    /**
+     * Abre la ventana vacia para agregar una persona.
+     */
+    public void abrirParaAgregar() {
+        abrir("Nueva Persona", null);
+    }
+
+    /**
+     * Abre la ventana con los datos de una persona para modificarla.
+     *
+     * @param persona La persona a modificar.
+     */
+    public void abrirParaModificar(Persona persona) {
+        abrir("Editar persona", persona);
+    }
+
+    private void abrir(String titulo, Persona persona) {
+        inicioApertura = System.nanoTime();
+        if (stage == null) {
+            crearVentana();
+        }
+        if (stage.isShowing()) {
+            stage.toFront();
+            return;
+        }
+        controlador.reiniciar(persona);
+        stage.setTitle(titulo);
+        stage.showAndWait();
+    }
+
+    private void crearVentana() {
+        Formulario formulario;
+        if (precarga.isDone() && !precarga.isCompletedExceptionally()) {
+            formulario = precarga.join();
+        } else {
+            // El hilo de segundo plano puede estar ocupado con una carga larga: no se le espera
+            precarga.cancel(false);
+            formulario = cargar();
+        }
+        controlador = formulario.controlador;
+        controlador.setMainController(principal);
+
+        stage = new Stage();
+        stage.initModality(Modality.APPLICATION_MODAL);
+        stage.setScene(formulario.scene);
+        stage.setResizable(false);
+        stage.setOnShown(e -> Metricas.histograma("fx.dialogo_persona").registrar(System.nanoTime() - inicioApertura));
+    }
+
+    private static Formulario cargar() {
+        try {
+            FXMLLoader loader = new FXMLLoader(DialogoPersona.class.getResource("agregar.fxml"));
+            Scene scene = new Scene(loader.load());
+            return new Formulario(scene, loader.getController());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Escena leida del archivo FXML junto con su controlador.
+     */
+    private static final class Formulario {
+        private final Scene scene;
+        private final AgregarController controlador;
+
+        private Formulario(Scene scene, AgregarController controlador) {
+            this.scene = scene;
+            this.controlador = controlador;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.ejh;
+
+import javafx.concurrent.Task;
+import javafx.concurrent.Worker;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.Scene;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
+import javafx.scene.layout.VBox;
+import javafx.stage.Modality;
+import javafx.stage.Stage;
+import javafx.stage.Window;
+
+/**
+ * Ventana que muestra el progreso de una tarea larga y permite cancelarla. Se cierra sola
+ * cuando la tarea termina, falla o se cancela.
+ */
+public class DialogoProgreso {
+
+    private DialogoProgreso() {
+    }
+
+    /**
+     * Muestra la ventana de progreso de la tarea sin bloquear.
+     *
+     * @param owner La ventana propietaria.
+     * @param titulo El titulo de la ventana.
+     * @param tarea La tarea cuyo progreso se muestra.
+     */
+    public static void mostrar(Window owner, String titulo, Task<?> tarea) {
+        Label mensaje = new Label();
+        mensaje.textProperty().bind(tarea.messageProperty());
+        ProgressBar barra = new ProgressBar();
+        barra.setPrefWidth(320);
+        barra.progressProperty().bind(tarea.progressProperty());
+        Button btnCancelar = new Button("Cancelar");
+        btnCancelar.setOnAction(e -> tarea.cancel(true));
+
+        VBox contenido = new VBox(10, mensaje, barra, btnCancelar);
+        contenido.setAlignment(Pos.CENTER);
+        contenido.setPadding(new Insets(20));
+
+        Stage stage = new Stage();
+        stage.setTitle(titulo);
+        stage.initOwner(owner);
+        stage.initModality(Modality.WINDOW_MODAL);
+        stage.setScene(new Scene(contenido));
+        stage.setResizable(false);
+        stage.setOnCloseRequest(e -> tarea.cancel(true));
+        tarea.stateProperty().addListener((obs, anterior, estado) -> {
+            if (estado == Worker.State.SUCCEEDED || estado == Worker.State.FAILED
+                    || estado == Worker.State.CANCELLED) {
+                stage.close();
+            }
+        });
+        if (!tarea.isDone()) {
+            stage.show();
+        }
+    }
+}
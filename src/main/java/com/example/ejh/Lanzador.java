@@ -0,0 +1,30 @@
+package com.example.ejh;
+
+import javafx.application.Application;
+
+/**
+ * Punto de entrada que decide si se abre la ventana o se arranca solo el servidor HTTP. No
+ * hereda de {@link Application} porque, si lo hiciera, Java arrancaria JavaFX antes de llamar
+ * a {@code main} y el servidor no podria funcionar en una maquina sin pantalla.
+ */
+public class Lanzador {
+
+    private Lanzador() {
+    }
+
+    /**
+     * Con {@code -Dejh.servidor.puerto} arranca el servidor HTTP de las personas en ese puerto
+     * sin abrir la ventana; si no, abre la aplicacion como {@link PersonasApplication}.
+     *
+     * @param args Argumentos de la linea de comandos.
+     * @throws Exception Si no se puede arrancar el servidor.
+     */
+    public static void main(String[] args) throws Exception {
+        Integer puerto = Integer.getInteger("ejh.servidor.puerto");
+        if (puerto != null) {
+            PersonasApplication.iniciarServidor(puerto);
+        } else {
+            Application.launch(PersonasApplication.class, args);
+        }
+    }
+}
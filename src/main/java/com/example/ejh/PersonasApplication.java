@@ -1,13 +1,26 @@
 package com.example.ejh;
 
+import com.example.ejh.db.ErrorBaseDatos;
+import com.example.ejh.db.PoolConexiones;
+import com.example.ejh.db.RepositorioPersonas;
+import com.example.ejh.metricas.Metricas;
+import com.example.ejh.metricas.VigilanteHiloFX;
+import com.example.ejh.servidor.ServidorPersonas;
 import javafx.application.Application;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
 
 import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 
 public class PersonasApplication extends Application {
+    // Se inicializa al cargar la clase, antes de arrancar JavaFX
+    private static final long INICIO = System.nanoTime();
+
+    private PersonasController controller;
+
     /**
      * Metodo principal que inicia la aplicacion, cargando la interfaz grafica desde el archivo FXML.
      *
@@ -20,16 +33,112 @@ public class PersonasApplication extends Application {
         FXMLLoader fxmlLoader = new FXMLLoader(PersonasApplication.class.getResource("EjH.fxml"));
         // Crea la escena con el contenido cargado desde el archivo FXML
         Scene scene = new Scene(fxmlLoader.load());
+        controller = fxmlLoader.getController();
         // Establece el titulo de la ventana
         stage.setTitle("PERSONAS");
         // Asigna la escena a la ventana principal
         stage.setScene(scene);
         // Establece que la ventana no se pueda redimensionar
         stage.setResizable(false);
+        // Informa del tiempo hasta el primer fotograma, cuando termina el primer pulso con la ventana visible
+        scene.addPostLayoutPulseListener(new Runnable() {
+            @Override
+            public void run() {
+                scene.removePostLayoutPulseListener(this);
+                System.out.printf("Primer fotograma a %d ms del arranque.%n", msDesdeArranque());
+            }
+        });
+        // Los cambios pendientes de la escritura diferida se escriben antes de cerrar, sin bloquear la ventana
+        stage.setOnCloseRequest(evento -> {
+            if (controller.guardarAntesDeCerrar(stage, stage::close)) {
+                evento.consume();
+            }
+        });
+        iniciarMetricas();
+        long bloqueo = Long.getLong("ejh.metricas.bloqueo", 250L);
+        if (bloqueo > 0) {
+            VigilanteHiloFX.iniciar(bloqueo);
+        }
         // Muestra la ventana principal
         stage.show();
     }
 
+    /**
+     * Publica las metricas por JMX (salvo {@code -Dejh.metricas.jmx=false}) y las escribe en la
+     * salida estandar cada {@code -Dejh.metricas.volcado} segundos (60 por defecto, 0 para no
+     * escribirlas). Con ventana se avisa ademas de los bloqueos del hilo de JavaFX de mas de
+     * {@code -Dejh.metricas.bloqueo} milisegundos (250 por defecto, 0 para no vigilarlo).
+     */
+    private static void iniciarMetricas() {
+        if (Boolean.parseBoolean(System.getProperty("ejh.metricas.jmx", "true"))) {
+            Metricas.publicarJmx();
+        }
+        long volcado = Long.getLong("ejh.metricas.volcado", 60L);
+        if (volcado > 0) {
+            Metricas.iniciarVolcado(volcado);
+        }
+    }
+
+    /**
+     * Obtiene el tiempo que ha pasado desde que se arranco la aplicacion.
+     *
+     * @return Los milisegundos desde el arranque.
+     */
+    static long msDesdeArranque() {
+        return (System.nanoTime() - INICIO) / 1_000_000;
+    }
+
+    /**
+     * Metodo que se ejecuta al cerrar la aplicacion. Cierra las conexiones a la base de datos.
+     */
+    @Override
+    public void stop() {
+        VigilanteHiloFX.detener();
+        if (controller != null) {
+            controller.cerrar();
+        }
+        Metricas.detenerVolcado();
+        System.out.print(Metricas.resumen());
+    }
+
+    /**
+     * Arranca sin ventana el servidor HTTP de las personas en el puerto indicado. Se para al
+     * terminar la maquina virtual, por ejemplo con Ctrl+C, cerrando el repositorio y el pool.
+     * Como no pide credenciales, solo escucha en la interfaz local salvo que se indique otra
+     * direccion con {@code -Dejh.servidor.direccion} (por ejemplo {@code 0.0.0.0} para todas).
+     *
+     * @param puerto El puerto en el que escuchar.
+     * @throws IOException Si no se puede abrir el puerto.
+     * @throws ErrorBaseDatos Si no se puede preparar la base de datos.
+     */
+    static void iniciarServidor(int puerto) throws IOException, ErrorBaseDatos {
+        PoolConexiones pool = PersonasController.crearPool();
+        RepositorioPersonas repositorio = PersonasController.crearRepositorio(pool);
+        repositorio.preparar();
+        String direccion = System.getProperty("ejh.servidor.direccion");
+        InetSocketAddress escucha = direccion == null
+                ? new InetSocketAddress(InetAddress.getLoopbackAddress(), puerto)
+                : new InetSocketAddress(direccion, puerto);
+        if (escucha.isUnresolved()) {
+            throw new IOException("No se reconoce la direccion " + direccion);
+        }
+        ServidorPersonas servidor = new ServidorPersonas(repositorio, escucha,
+                Integer.getInteger("ejh.servidor.hilos", 200));
+        iniciarMetricas();
+        servidor.iniciar();
+        System.out.printf("Servidor de personas escuchando en %s:%d (%s), listo a %d ms del arranque.%n",
+                escucha.getAddress().getHostAddress(), servidor.getPuerto(), repositorio.getDescripcion(),
+                msDesdeArranque());
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            servidor.detener(2);
+            repositorio.cerrar();
+            System.out.println(pool.getEstadisticas());
+            pool.close();
+            Metricas.detenerVolcado();
+            System.out.print(Metricas.resumen());
+        }, "ejh-servidor-parada"));
+    }
+
     /**
      * Metodo main para iniciar la aplicacion.
      *
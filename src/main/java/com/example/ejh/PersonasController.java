@@ -1,23 +1,76 @@
 package com.example.ejh;
 
+import com.example.ejh.cache.EsquemaVerificado;
+import com.example.ejh.cache.Instantanea;
+import com.example.ejh.csv.ExportadorPersonas;
+import com.example.ejh.csv.ImportadorCsv;
+import com.example.ejh.csv.ResultadoImportacion;
+import com.example.ejh.db.ColaEscritura;
+import com.example.ejh.db.ConfiguracionPool;
+import com.example.ejh.db.ErrorBaseDatos;
+import com.example.ejh.db.ListaPaginadaPersonas;
+import com.example.ejh.db.PoolConexiones;
+import com.example.ejh.db.RepositorioMySql;
+import com.example.ejh.db.RepositorioPersonas;
+import com.example.ejh.db.SincronizadorInstantanea;
+import com.example.ejh.db.SondeoCambios;
+import com.example.ejh.duplicados.DetectorDuplicados;
+import com.example.ejh.duplicados.GrupoDuplicados;
+import com.example.ejh.indices.IndiceBusqueda;
+import com.example.ejh.indices.IndicePorId;
+import com.example.ejh.indices.MapaEnteros;
+import com.example.ejh.local.RepositorioLocal;
+import com.example.ejh.metricas.Metricas;
+import com.example.ejh.model.AlmacenPersonas;
+import com.example.ejh.model.FiltroPersonas;
+import com.example.ejh.model.OrdenPersonas;
 import com.example.ejh.model.Persona;
+import com.example.ejh.model.ValidadorPersona;
+import com.example.ejh.model.VistaOrdenada;
+import com.example.ejh.tareas.EjecutorTareas;
+import com.example.ejh.tareas.PublicadorLotes;
+import com.example.ejh.tareas.TareaBD;
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
+import javafx.collections.ObservableList;
+import javafx.concurrent.Worker;
+import javafx.collections.transformation.FilteredList;
+import javafx.collections.transformation.SortedList;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
-import javafx.fxml.FXMLLoader;
 import javafx.fxml.Initializable;
-import javafx.scene.Scene;
 import javafx.scene.control.Alert;
+import javafx.scene.control.ButtonType;
+import javafx.scene.control.ComboBox;
+import javafx.scene.control.Dialog;
+import javafx.scene.control.Label;
+import javafx.scene.control.SelectionMode;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
+import javafx.scene.control.TextArea;
 import javafx.scene.control.TextField;
 import javafx.scene.control.cell.PropertyValueFactory;
-import javafx.stage.Modality;
-import javafx.stage.Stage;
+import javafx.scene.layout.HBox;
+import javafx.stage.FileChooser;
+import javafx.stage.Window;
+import javafx.util.Duration;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
 import java.util.ResourceBundle;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 public class PersonasController implements Initializable {
 
@@ -40,127 +93,791 @@ public class PersonasController implements Initializable {
     @FXML
     private TextField txtEdad;
 
-    private Connection connection;
-    private final String db_url = "jdbc:mysql://database-1.cr60ewocg533.us-east-1.rds.amazonaws.com:3306/";
-    private final String user = "admin";
-    private final String password = "12345678";
+    private static final int TAMANO_PAGINA = 200;
+    private static final int MAX_PAGINAS = 50;
+    private static final int PAGINAS_PRECARGA = 2;
+    private static final int LOTE_MAXIMO = 5000;
+    private static final long INTERVALO_LOTE_MS = 50;
+    private static final int LOTE_IMPORTACION = 1000;
+    private static final int TRANSACCION_IMPORTACION = 20_000;
+    private static final int TRAMO_SINCRONIZACION = 1000;
+    // Lo que se relee hacia atras en cada sondeo, por si una transaccion tarda en confirmarse
+    private static final long MARGEN_SONDEO_MS = 5000;
+    // Sube cuando prepararBaseDatos comprueba algo nuevo, para que se vuelva a comprobar una vez
+    private static final int VERSION_ESQUEMA = 2;
+    private static final Path DIRECTORIO_LOCAL = Paths.get(System.getProperty("user.home"), ".ejh");
+    // Con la carga paginada cada cambio del filtro es una consulta; se espera a que se deje de escribir
+    private static final Duration ESPERA_FILTRO_SQL = Duration.millis(200);
+
+    // Los lotes de addBatch se envian como un unico INSERT de varias filas. Las sentencias
+    // preparadas se preparan en el servidor, que las analiza una vez por conexion, y el driver
+    // guarda las cerradas para reutilizarlas; las fijas las guarda ademas el pool (SentenciasEnCache).
+    // Los tiempos maximos de conexion y de lectura evitan esperar sin fin a un servidor que ha
+    // caido sin cerrar la conexion TCP; entonces el error es de conexion y el pool lo trata como tal.
+    // El de lectura es corto para que una pagina o un guardado no se queden colgados: exportar,
+    // importar y leer toda la tabla usan PoolConexiones.obtenerConexionLarga, con uno mayor
+    private static final String DB_OPCIONES = "?rewriteBatchedStatements=true&useServerPrepStmts=true"
+            + "&cachePrepStmts=true&prepStmtCacheSize=64&prepStmtCacheSqlLimit=2048"
+            + "&connectTimeout=5000&socketTimeout=" + Integer.getInteger("ejh.bd.timeout", 10_000);
+
+    private PoolConexiones pool;
+    private RepositorioPersonas repositorio;
+    // true con -Dejh.repositorio=local: los datos estan en archivos locales y no en MySQL
+    private boolean almacenLocal;
+    private ListaPaginadaPersonas listaPaginada;
+    private DialogoPersona dialogoPersona;
+    // Lista con todas las personas; la tabla muestra una vista filtrada y ordenada de ella
+    private ObservableList<Persona> datos;
+    private FilteredList<Persona> filtradas;
+    private IndicePorId indicePorId;
+    private IndiceBusqueda indiceBusqueda;
+    private final PauseTransition esperaFiltro = new PauseTransition(ESPERA_FILTRO_SQL);
+    // Solo con -Dejh.escritura.diferida=true
+    private ColaEscritura colaEscritura;
+    private TareaBD<ColaEscritura.Resultado> tareaCierre;
+    // Copia local de los datos para arrancar sin esperar a la base de datos; null si no se usa
+    private Path archivoInstantanea;
+    // true cuando datos tiene la tabla entera y coincide con la base de datos
+    private boolean datosCompletos;
+    // Carga completa en curso y su publicador, para cancelarla si empieza otra
+    private TareaBD<Integer> cargaEnCurso;
+    private PublicadorLotes<Persona> publicadorCarga;
+    // Trae los cambios de otros equipos; null con -Dejh.sondeo.intervalo=0
+    private SondeoCambios sondeoCambios;
+    private final Path archivoEsquema = DIRECTORIO_LOCAL.resolve("esquema.properties");
+    // Termina cuando la base de datos y la tabla estan listas; las cargas esperan a que termine
+    private volatile CompletableFuture<Void> esquemaListo;
+    // true si el esquema no se ha comprobado en este arranque porque ya se comprobo en otro
+    private volatile boolean esquemaDeCache;
+    private boolean datosVisibles;
+    private static final String db_name = "personas";
+    private static final String db_url = "jdbc:mysql://database-1.cr60ewocg533.us-east-1.rds.amazonaws.com:3306/";
+    private static final String user = "admin";
+    private static final String password = "12345678";
 
     /**
-     * Metodo inicial que configura la conexion con la base de datos, la tabla
-     * y carga los datos de la base de datos si la conexion es exitosa.
+     * Metodo inicial que configura la tabla y lanza en segundo plano la conexion con la
+     * base de datos, la creacion de la tabla y la carga de los datos. Los datos se cargan
+     * por paginas salvo que se indique {@code -Dejh.carga.completa=true}; en ese caso, con
+     * {@code -Dejh.carga.compacta=true} se guardan en un {@link AlmacenPersonas}. Los campos
+     * de busqueda filtran la tabla con un {@link IndiceBusqueda} si los datos estan cargados
+     * enteros, o con una consulta a la base de datos si se cargan por paginas. Con
+     * {@code -Dejh.escritura.diferida=true} los cambios se escriben por lotes con una {@link ColaEscritura}.
+     * Con la carga completa los datos se muestran primero desde una {@link Instantanea} local
+     * (salvo {@code -Dejh.instantanea.activa=false}) y despues solo se descargan los cambios.
+     * Los cambios de otros equipos se consultan cada {@code -Dejh.sondeo.intervalo} milisegundos
+     * (5000 por defecto, 0 para no consultarlos) con un {@link SondeoCambios}. Con
+     * {@code -Dejh.repositorio=local} las personas se guardan en un {@link RepositorioLocal}
+     * en lugar de en MySQL y se cargan siempre enteras.
+     *
+     * <p>Aqui no se espera a nada: la ventana se muestra en cuanto termina este metodo. La
+     * comprobacion del esquema, que se recuerda entre arranques con {@link EsquemaVerificado}
+     * salvo {@code -Dejh.esquema.comprobar=true}, y la lectura de la instantanea van en paralelo,
+     * y la carga de los datos empieza en cuanto el esquema esta listo.</p>
      *
      * @param location La URL de la ubicacion del archivo FXML.
      * @param resources El recurso utilizado por la vista FXML.
      */
     @Override
     public void initialize(URL location, ResourceBundle resources) {
-        connection = conectarBaseDatos("personas");
-        if (connection != null) {
-            crearTablaPersonas();
-            cargarDatosDesdeBaseDeDatos();
-        }
         // Configurar columnas de la tabla
         nombre.setCellValueFactory(new PropertyValueFactory<>("nombre"));
         apellidos.setCellValueFactory(new PropertyValueFactory<>("apellidos"));
         edad.setCellValueFactory(new PropertyValueFactory<>("edad"));
+        tableView.setPlaceholder(new Label("Cargando datos..."));
+        tableView.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+        dialogoPersona = new DialogoPersona(this);
+
+        txtNombre.textProperty().addListener((obs, anterior, nuevo) -> aplicarFiltro());
+        txtApellidos.textProperty().addListener((obs, anterior, nuevo) -> aplicarFiltro());
+        txtEdad.textProperty().addListener((obs, anterior, nuevo) -> aplicarFiltro());
+
+        pool = crearPool();
+        almacenLocal = usaAlmacenLocal();
+        repositorio = crearRepositorio(pool);
+        esquemaListo = prepararEsquema(!almacenLocal && !Boolean.getBoolean("ejh.esquema.comprobar"));
+        if (almacenLocal) {
+            // Los datos ya estan en memoria: no hay paginas, cola, sondeo ni instantanea que valgan
+            System.out.println("Usando el almacen local " + repositorio.getDescripcion());
+        } else if (Boolean.parseBoolean(System.getProperty("ejh.escritura.diferida", "false"))) {
+            Path archivoPendientes = Paths.get(System.getProperty("ejh.escritura.pendientes",
+                    DIRECTORIO_LOCAL.resolve("pendientes.bin").toString()));
+            colaEscritura = new ColaEscritura(repositorio, archivoPendientes, origen(),
+                    Integer.getInteger("ejh.escritura.lote", 500), Long.getLong("ejh.escritura.intervalo", 2000L),
+                    this::cambiosEscritos);
+        }
+        long intervaloSondeo = Long.getLong("ejh.sondeo.intervalo", 5000L);
+        if (intervaloSondeo > 0 && !almacenLocal) {
+            sondeoCambios = new SondeoCambios(pool, intervaloSondeo, MARGEN_SONDEO_MS, this::aplicarCambiosRemotos,
+                    error -> System.err.println("No se pudieron consultar los cambios: " + error.getMessage()));
+        }
+        if (almacenLocal || Boolean.parseBoolean(System.getProperty("ejh.carga.completa", "false"))) {
+            // Las filas se guardan en columnas de int con nombres y apellidos sin repetir
+            AlmacenPersonas almacen = Boolean.parseBoolean(System.getProperty("ejh.carga.compacta", "false"))
+                    ? new AlmacenPersonas() : null;
+            datos = almacen != null ? almacen.vista() : tableView.getItems();
+            indicePorId = new IndicePorId(datos);
+            indiceBusqueda = new IndiceBusqueda(datos, indicePorId);
+            indiceBusqueda.setAlReconstruir(this::aplicarFiltro);
+            filtradas = new FilteredList<>(datos);
+            if (almacen != null) {
+                // Un SortedList guardaria una persona por fila; se ordenan los indices con las columnas del almacen
+                VistaOrdenada ordenadas = new VistaOrdenada(filtradas);
+                tableView.setSortPolicy(tabla -> {
+                    OrdenPersonas orden = ordenActual();
+                    if (orden.esPorId()) {
+                        ordenadas.setComparador(null);
+                    } else {
+                        VistaOrdenada.ComparadorFilas filas = almacen.comparadorFilas(orden);
+                        ordenadas.setComparador((a, b) -> filas.comparar(filtradas.getSourceIndex(a),
+                                filtradas.getSourceIndex(b)));
+                    }
+                    return true;
+                });
+                tableView.setItems(ordenadas);
+            } else {
+                SortedList<Persona> ordenadas = new SortedList<>(filtradas);
+                ordenadas.comparatorProperty().bind(tableView.comparatorProperty());
+                tableView.setItems(ordenadas);
+            }
+            if (!almacenLocal && Boolean.parseBoolean(System.getProperty("ejh.instantanea.activa", "true"))) {
+                archivoInstantanea = Paths.get(System.getProperty("ejh.instantanea.archivo",
+                        DIRECTORIO_LOCAL.resolve("personas.snap").toString()));
+            }
+            // La instantanea se lee mientras se conecta con la base de datos
+            leerInstantanea().thenApplyAsync(this::mostrarInstantanea, EjecutorTareas.HILO_FX)
+                    .thenAcceptAsync(mostrada -> {
+                        if (mostrada) {
+                            sincronizarInstantanea();
+                        } else {
+                            cargarCompleta();
+                        }
+                    }, EjecutorTareas.HILO_FX);
+        } else {
+            // Por defecto las filas se cargan por paginas a medida que se muestran
+            listaPaginada = new ListaPaginadaPersonas(pool, TAMANO_PAGINA, MAX_PAGINAS, PAGINAS_PRECARGA);
+            listaPaginada.setAlFallar(this::mostrarError);
+            datos = listaPaginada;
+            // Ordenar una lista paginada en memoria no tiene sentido: se ordena en la base de datos
+            tableView.setSortPolicy(tabla -> {
+                listaPaginada.setOrden(ordenActual());
+                return true;
+            });
+            esperaFiltro.setOnFinished(e -> {
+                if (tableView.getItems() == listaPaginada) {
+                    listaPaginada.setFiltro(filtroActual());
+                }
+            });
+            this.<ListaPaginadaPersonas.Estructura>lanzarCarga(tarea -> {
+                try {
+                    return listaPaginada.leerEstructura(tarea);
+                } catch (SQLException e) {
+                    throw new ErrorBaseDatos("Error de carga", "No se pudieron cargar los datos de la base de datos.", e);
+                }
+            }, estructura -> {
+                listaPaginada.aplicarEstructura(estructura);
+                tableView.setItems(listaPaginada);
+                tableView.setPlaceholder(new Label("No hay personas"));
+                avisarDatosVisibles();
+                // Por si se ha escrito en los campos de busqueda durante la carga
+                listaPaginada.setFiltro(filtroActual());
+                datosCargados();
+            });
+        }
     }
 
     /**
-     * Metodo para conectar con la base de datos. Si la base de datos no existe, la crea.
+     * Crea el pool de conexiones a la base de datos, con la configuracion de las propiedades
+     * {@code ejh.pool.*}.
      *
-     * @param dbName El nombre de la base de datos a conectar.
-     * @return La conexion a la base de datos.
+     * @return El pool.
      */
-    Connection conectarBaseDatos(String dbName) {
-        Connection conn = null;
-        try {
-            conn = DriverManager.getConnection(db_url + dbName, user, password);
-            mostrarAlertaExito("Info", "Conexión exitosa a la base de datos: " + dbName);
-        } catch (SQLException e) {
-            if (e.getErrorCode() == 1049) {
-                crearBaseDatos();
-                conn = conectarBaseDatos(dbName);
+    static PoolConexiones crearPool() {
+        return new PoolConexiones(ConfiguracionPool.desdePropiedades(db_url + db_name + DB_OPCIONES, user, password));
+    }
+
+    /**
+     * Indica si los datos se guardan en archivos locales ({@code -Dejh.repositorio=local}) en
+     * lugar de en MySQL.
+     *
+     * @return true si se usa el almacen local.
+     */
+    static boolean usaAlmacenLocal() {
+        return "local".equals(System.getProperty("ejh.repositorio"));
+    }
+
+    /**
+     * Crea el repositorio de las personas que indican las propiedades. Lo comparten la ventana
+     * y el servidor HTTP.
+     *
+     * @param pool El pool de conexiones, para el repositorio de MySQL.
+     * @return El repositorio, sin preparar.
+     */
+    static RepositorioPersonas crearRepositorio(PoolConexiones pool) {
+        if (usaAlmacenLocal()) {
+            return new RepositorioLocal(Paths.get(System.getProperty("ejh.local.directorio",
+                    DIRECTORIO_LOCAL.resolve("local").toString())), Boolean.getBoolean("ejh.local.forzar"));
+        }
+        return new RepositorioMySql(pool, db_url, db_name, user, password);
+    }
+
+    /**
+     * Obtiene el filtro que indican los campos de busqueda.
+     *
+     * @return El filtro actual.
+     */
+    private FiltroPersonas filtroActual() {
+        return FiltroPersonas.desdeTexto(txtNombre.getText(), txtApellidos.getText(), txtEdad.getText());
+    }
+
+    /**
+     * Obtiene el orden que indican las columnas de la tabla.
+     *
+     * @return El orden actual.
+     */
+    private OrdenPersonas ordenActual() {
+        OrdenPersonas orden = OrdenPersonas.POR_ID;
+        for (TableColumn<Persona, ?> columna : tableView.getSortOrder()) {
+            boolean ascendente = columna.getSortType() == TableColumn.SortType.ASCENDING;
+            if (columna == nombre) {
+                orden = orden.y(OrdenPersonas.Columna.NOMBRE, ascendente);
+            } else if (columna == apellidos) {
+                orden = orden.y(OrdenPersonas.Columna.APELLIDOS, ascendente);
+            } else if (columna == edad) {
+                orden = orden.y(OrdenPersonas.Columna.EDAD, ascendente);
+            }
+        }
+        return orden;
+    }
+
+    /**
+     * Aplica el filtro de los campos de busqueda. Con todos los datos en memoria, el indice
+     * devuelve los ids que lo cumplen y la tabla solo tiene que comprobar si cada fila esta
+     * entre ellos; mientras el indice se construye se compara fila a fila. Con la carga
+     * paginada se consulta a la base de datos cuando se deja de escribir.
+     */
+    private void aplicarFiltro() {
+        if (listaPaginada != null) {
+            esperaFiltro.playFromStart();
+            return;
+        }
+        FiltroPersonas filtro = filtroActual();
+        if (filtro.estaVacio()) {
+            filtradas.setPredicate(null);
+            return;
+        }
+        MapaEnteros coincidencias = indiceBusqueda.buscar(filtro);
+        filtradas.setPredicate(coincidencias != null ? persona -> coincidencias.contiene(persona.getId()) : filtro::acepta);
+    }
+
+    /**
+     * Carga todas las personas en la tabla. Las filas se van agregando por lotes mientras se leen.
+     */
+    private void cargarCompleta() {
+        // Un cambio aplicado durante la carga se duplicaria al llegar su fila; se trae al terminar
+        if (sondeoCambios != null) {
+            sondeoCambios.detener();
+        }
+        // Una carga anterior que siguiera en curso agregaria sus filas detras del clear
+        if (cargaEnCurso != null) {
+            cargaEnCurso.cancel();
+        }
+        if (publicadorCarga != null) {
+            publicadorCarga.cancelar();
+        }
+        datosCompletos = false;
+        datos.clear();
+        PublicadorLotes<Persona> publicador = new PublicadorLotes<>(lote -> {
+            datos.addAll(lote);
+            avisarDatosVisibles();
+        }, LOTE_MAXIMO, INTERVALO_LOTE_MS);
+        publicadorCarga = publicador;
+        cargaEnCurso = this.<Integer>lanzarCarga(tarea -> cargarDatosDesdeBaseDeDatos(tarea, publicador), filas -> {
+            if (publicador != publicadorCarga) {
+                // Se ha empezado otra carga mientras tanto
+                return;
+            }
+            cargaEnCurso = null;
+            publicadorCarga = null;
+            tableView.setPlaceholder(new Label("No hay personas"));
+            System.out.println("Cargadas " + filas + " personas.");
+            indiceBusqueda.reconstruir();
+            datosCompletos = true;
+            guardarInstantanea();
+            datosCargados();
+        });
+    }
+
+    /**
+     * Lanza en segundo plano una lectura de los datos en cuanto el esquema esta listo. Antes
+     * de leer se toma la marca del sondeo de cambios, para no perder los que lleguen durante
+     * la lectura. Si el esquema venia de un arranque anterior y la lectura falla porque falta
+     * la base de datos, la tabla o una columna, se comprueba de nuevo y se repite.
+     *
+     * @param carga La lectura de los datos.
+     * @param alTerminar Lo que se hace con el resultado, en el hilo de JavaFX.
+     * @param <T> El tipo del resultado.
+     * @return La tarea de la lectura, para poder cancelarla.
+     */
+    private <T> TareaBD<T> lanzarCarga(TareaBD.Trabajo<T> carga, Consumer<T> alTerminar) {
+        return EjecutorTareas.<T>lanzar(tarea -> {
+            esperarEsquema();
+            if (sondeoCambios != null) {
+                try {
+                    sondeoCambios.leerMarca();
+                } catch (SQLException e) {
+                    System.err.println("No se consultaran los cambios de otros equipos: " + e.getMessage());
+                }
+            }
+            return carga.ejecutar(tarea);
+        }, alTerminar, error -> {
+            if (esquemaDeCache && faltaEsquema(error)) {
+                System.out.println("El esquema recordado ya no es valido; se vuelve a comprobar.");
+                esquemaListo = prepararEsquema(false);
+                lanzarCarga(carga, alTerminar);
             } else {
-                mostrarAlertaError("Error de conexión", "No se pudo conectar a la base de datos.");
+                errorAlCargar(error);
+            }
+        });
+    }
+
+    /**
+     * Prepara en segundo plano la base de datos. Si el esquema ya se comprobo en otro arranque
+     * no se repite; solo se limpia el registro de bajas en paralelo con la carga, lo que de
+     * paso deja abierta en el pool la primera conexion.
+     *
+     * @param usarCache false para comprobar el esquema aunque ya se hubiera comprobado.
+     * @return El futuro que termina cuando el esquema esta listo.
+     */
+    private CompletableFuture<Void> prepararEsquema(boolean usarCache) {
+        long inicio = System.nanoTime();
+        return EjecutorTareas.enSegundoPlano(() -> {
+            if (usarCache && EsquemaVerificado.estaVerificado(archivoEsquema, origen(), VERSION_ESQUEMA)) {
+                esquemaDeCache = true;
+                EjecutorTareas.enSegundoPlano(() -> {
+                    repositorio.mantener();
+                    return null;
+                });
+                return null;
+            }
+            if (esquemaDeCache) {
+                // El esquema recordado ha fallado: si la nueva comprobacion tampoco termina, el
+                // siguiente arranque debe comprobarlo en lugar de volver a fiarse del archivo
+                try {
+                    EsquemaVerificado.olvidar(archivoEsquema, origen());
+                } catch (IOException e) {
+                    System.err.println("No se pudo olvidar el esquema recordado: " + e.getMessage());
+                }
+            }
+            esquemaDeCache = false;
+            prepararBaseDatos();
+            System.out.printf("Esquema comprobado en %d ms.%n", (System.nanoTime() - inicio) / 1_000_000);
+            if (almacenLocal) {
+                return null;
+            }
+            try {
+                EsquemaVerificado.marcar(archivoEsquema, origen(), VERSION_ESQUEMA);
+            } catch (IOException e) {
+                System.err.println("No se pudo recordar el esquema: " + e.getMessage());
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Espera a que el esquema este listo. Se ejecuta en segundo plano.
+     *
+     * @throws Exception El error de la preparacion del esquema, si fallo.
+     */
+    private void esperarEsquema() throws Exception {
+        try {
+            esquemaListo.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+
+    /**
+     * Indica si un error se debe a que falta la base de datos (1049), la tabla (1146) o una columna (1054).
+     *
+     * @param error El error producido.
+     * @return true si falta parte del esquema.
+     */
+    private static boolean faltaEsquema(Throwable error) {
+        for (Throwable causa = error; causa != null; causa = causa.getCause()) {
+            if (causa instanceof SQLException) {
+                int codigo = ((SQLException) causa).getErrorCode();
+                if (codigo == 1049 || codigo == 1146 || codigo == 1054) {
+                    return true;
+                }
             }
         }
-        return conn;
+        return false;
     }
 
     /**
-     * Metodo para crear la base de datos si no existe.
+     * Informa, solo la primera vez, del tiempo desde el arranque hasta que hay datos en la tabla.
      */
-    private void crearBaseDatos() {
-        try (Connection conn = DriverManager.getConnection(db_url, user, password);
-             Statement stmt = conn.createStatement()) {
-            String sql = "CREATE DATABASE IF NOT EXISTS personas";
-            stmt.executeUpdate(sql);
-            System.out.println("Base de datos 'personas' creada o ya existía.");
-        } catch (SQLException e) {
-            e.printStackTrace();
-            mostrarAlertaError("Error de creación", "No se pudo crear la base de datos.");
+    private void avisarDatosVisibles() {
+        if (!datosVisibles) {
+            datosVisibles = true;
+            System.out.printf("Datos visibles a %d ms del arranque.%n", PersonasApplication.msDesdeArranque());
+        }
+    }
+
+    private String origen() {
+        return db_url + db_name;
+    }
+
+    /**
+     * Lee en segundo plano la instantanea local. Un archivo danado se ignora: los datos se
+     * cargan entonces de la base de datos y el archivo se vuelve a escribir.
+     *
+     * @return Las personas de la instantanea, o null si no hay ninguna valida.
+     */
+    private CompletableFuture<List<Persona>> leerInstantanea() {
+        if (archivoInstantanea == null) {
+            return CompletableFuture.completedFuture(null);
         }
+        Path archivo = archivoInstantanea;
+        String origen = origen();
+        return EjecutorTareas.enSegundoPlano(() -> Instantanea.leer(archivo, origen))
+                .exceptionally(error -> {
+                    System.err.println("No se pudo leer la instantanea: " + error.getMessage());
+                    return null;
+                });
     }
 
     /**
-     * Metodo para crear la tabla 'Persona' en la base de datos si no existe.
+     * Muestra en la tabla las personas de la instantanea local.
+     *
+     * @param filas Las personas leidas, o null si no habia instantanea.
+     * @return true si se han mostrado.
      */
-    private void crearTablaPersonas() {
-        if (!tablaExiste("Persona")) {
-            String sqlCrearTabla = "CREATE TABLE IF NOT EXISTS Persona ("
-                    + "id INT NOT NULL AUTO_INCREMENT, "
-                    + "nombre VARCHAR(250) NULL DEFAULT NULL, "
-                    + "apellidos VARCHAR(250) NULL DEFAULT NULL, "
-                    + "edad INT NULL DEFAULT NULL, "
-                    + "PRIMARY KEY (id)"
-                    + ") ENGINE=InnoDB DEFAULT CHARSET=latin1;";
+    private boolean mostrarInstantanea(List<Persona> filas) {
+        if (filas == null) {
+            return false;
+        }
+        long inicio = System.nanoTime();
+        datos.setAll(filas);
+        indiceBusqueda.reconstruir();
+        tableView.setPlaceholder(new Label("No hay personas"));
+        System.out.printf("Instantanea: %d personas mostradas en %d ms.%n",
+                filas.size(), (System.nanoTime() - inicio) / 1_000_000);
+        avisarDatosVisibles();
+        return true;
+    }
 
-            try (Statement stmt = connection.createStatement()) {
-                stmt.executeUpdate(sqlCrearTabla);
-                System.out.println("Tabla 'Persona' creada.");
+    /**
+     * Trae de la base de datos solo los cambios posteriores a la instantanea mostrada y los
+     * aplica en la tabla. Los cambios hechos mientras tanto en la tabla se respetan: una alta
+     * que ya esta se actualiza y una baja o modificacion de una fila que ya no esta se ignora.
+     */
+    private void sincronizarInstantanea() {
+        List<Persona> locales = new ArrayList<>(datos.size());
+        for (Persona persona : datos) {
+            // Las altas pendientes de la cola de escritura todavia no estan en la base de datos
+            if (persona.getId() > 0) {
+                locales.add(persona);
+            }
+        }
+        SincronizadorInstantanea sincronizador = new SincronizadorInstantanea(pool, TRAMO_SINCRONIZACION);
+        long inicio = System.nanoTime();
+        this.<SincronizadorInstantanea.Cambios>lanzarCarga(tarea -> {
+            try {
+                return sincronizador.comparar(tarea, locales);
             } catch (SQLException e) {
-                e.printStackTrace();
-                mostrarAlertaError("Error al crear la tabla", "No se pudo crear la tabla Persona.");
+                throw new ErrorBaseDatos("Error de carga", "No se pudieron comprobar los cambios de la base de datos.", e);
+            }
+        }, cambios -> {
+            for (Persona persona : cambios.getBajas()) {
+                quitarPersonaTabla(persona);
+            }
+            for (Persona persona : cambios.getModificadas()) {
+                modificarPersonaTabla(persona, persona);
+            }
+            for (Persona persona : cambios.getAltas()) {
+                ponerPersonaTabla(persona);
+            }
+            System.out.printf("Sincronizado en %d ms: %d de %d tramos distintos, %d filas leidas, "
+                            + "%d altas, %d modificaciones, %d bajas.%n",
+                    (System.nanoTime() - inicio) / 1_000_000, cambios.getTramosDistintos(), cambios.getTramos(),
+                    cambios.getFilasLeidas(), cambios.getAltas().size(), cambios.getModificadas().size(),
+                    cambios.getBajas().size());
+            datosCompletos = true;
+            if (cambios.getTramosDistintos() > 0) {
+                guardarInstantanea();
+            }
+            datosCargados();
+        });
+    }
+
+    /**
+     * Termina la carga de los datos: vuelve a apuntar en la cola de escritura los cambios que
+     * no se pudieron escribir al cerrar la ultima vez y empieza a consultar los cambios de
+     * otros equipos.
+     */
+    private void datosCargados() {
+        if (colaEscritura != null) {
+            // Los cambios que no se pudieron escribir al cerrar la ultima vez se muestran y se vuelven a escribir
+            List<ColaEscritura.Operacion> recuperadas = colaEscritura.recuperar();
+            for (ColaEscritura.Operacion operacion : recuperadas) {
+                Persona persona = operacion.getPersona();
+                switch (operacion.getTipo()) {
+                    case ALTA:
+                        agregarPersonaTabla(persona);
+                        break;
+                    case MODIFICACION:
+                        modificarPersonaTabla(persona, persona);
+                        break;
+                    default:
+                        quitarPersonaTabla(persona);
+                }
+            }
+            if (!recuperadas.isEmpty()) {
+                System.out.println("Recuperados " + recuperadas.size() + " cambios sin escribir del ultimo cierre.");
+            }
+        }
+        if (sondeoCambios != null) {
+            sondeoCambios.iniciar();
+        }
+    }
+
+    /**
+     * Aplica en la tabla los cambios hechos desde otros equipos. Tambien llegan los propios,
+     * que ya estan aplicados y no cambian nada. Con la carga paginada, las bajas se quitan de
+     * una vez de las paginas cargadas y las altas se agregan al final en orden de id, como
+     * en {@link ListaPaginadaPersonas#add}; las filas que no estan en memoria ya se leeran
+     * actualizadas. Solo se vuelve a leer la estructura, una vez, si algun cambio puede mover
+     * filas que no estan en memoria: una baja de una fila no cargada, o un alta o una
+     * modificacion con un filtro o un orden distinto del de id.
+     *
+     * @param cambios Los cambios leidos.
+     */
+    private void aplicarCambiosRemotos(SondeoCambios.Cambios cambios) {
+        if (listaPaginada != null) {
+            boolean porId = listaPaginada.getOrden().esPorId();
+            boolean recargar = !listaPaginada.quitarIds(cambios.getBorradas());
+            List<Persona> altas = new ArrayList<>();
+            for (Persona persona : cambios.getCambiadas()) {
+                int indice = listaPaginada.indiceDeId(persona.getId());
+                if (indice >= 0) {
+                    listaPaginada.set(indice, persona);
+                } else if (persona.getId() > listaPaginada.getUltimoId()) {
+                    altas.add(persona);
+                } else if (!porId || !listaPaginada.getFiltro().estaVacio()) {
+                    // Puede entrar o salir del filtro, o cambiar de posicion
+                    recargar = true;
+                }
+            }
+            if (recargar || (!porId && !altas.isEmpty())) {
+                listaPaginada.recargar();
+            } else {
+                altas.sort(Comparator.comparingInt(Persona::getId));
+                altas.forEach(listaPaginada::add);
             }
+            return;
+        }
+        // Las altas, que tras una importacion pueden ser muchas, se agregan con un solo cambio
+        List<Persona> altas = new ArrayList<>();
+        for (Persona persona : cambios.getCambiadas()) {
+            int indice = buscarFila(persona.getId());
+            if (indice >= 0) {
+                datos.set(indice, persona);
+            } else {
+                altas.add(persona);
+            }
+        }
+        if (!altas.isEmpty()) {
+            altas.sort(Comparator.comparingInt(Persona::getId));
+            datos.addAll(altas);
+        }
+        for (int id : cambios.getBorradas()) {
+            int indice = buscarFila(id);
+            if (indice >= 0) {
+                datos.remove(indice);
+            }
+        }
+    }
+
+    /**
+     * Guarda en segundo plano una copia de los datos en la instantanea local.
+     */
+    private void guardarInstantanea() {
+        if (archivoInstantanea == null) {
+            return;
+        }
+        Path archivo = archivoInstantanea;
+        String origen = origen();
+        List<Persona> copia = new ArrayList<>(datos);
+        EjecutorTareas.enSegundoPlano(() -> {
+            Instantanea.escribir(archivo, origen, copia);
+            return null;
+        }).exceptionally(error -> {
+            System.err.println("No se pudo guardar la instantanea: " + error.getMessage());
+            return null;
+        });
+    }
+
+    /**
+     * Trae a la tabla los datos despues de cambios masivos. Con todos los datos en memoria y
+     * el sondeo de cambios activo no se vuelve a leer la tabla entera: las filas nuevas llegan
+     * como cambios en la siguiente consulta, que se adelanta. Si hay una carga en curso, el
+     * sondeo empezara al terminar desde una marca anterior, asi que tampoco hace falta nada mas.
+     */
+    private void recargarDatos() {
+        if (listaPaginada != null) {
+            listaPaginada.recargar();
+        } else if (sondeoCambios != null) {
+            sondeoCambios.consultarAhora();
         } else {
-            System.out.println("La tabla 'Persona' ya existe.");
+            cargarCompleta();
         }
     }
 
     /**
-     * Verifica si la tabla con el nombre proporcionado existe en la base de datos.
+     * Prepara el repositorio: con MySQL conecta con la base de datos y crea la tabla si hace
+     * falta. Se ejecuta en segundo plano.
      *
-     * @param nombreTabla El nombre de la tabla a verificar.
-     * @return true si la tabla existe, false si no existe.
+     * @throws ErrorBaseDatos Si falla alguno de los pasos.
      */
-    private boolean tablaExiste(String nombreTabla) {
-        try (ResultSet rs = connection.getMetaData().getTables(null, null, nombreTabla, null)) {
-            return rs.next();
-        } catch (SQLException e) {
-            e.printStackTrace();
-            mostrarAlertaError("Error", "No se pudo verificar si la tabla " + nombreTabla + " existe.");
+    private void prepararBaseDatos() throws ErrorBaseDatos {
+        repositorio.preparar();
+        String mensaje = (almacenLocal ? "Almacen local abierto: " : "Conexión exitosa a la base de datos: ")
+                + repositorio.getDescripcion();
+        Platform.runLater(() -> mostrarAlertaExito("Info", mensaje));
+    }
+
+    /**
+     * Muestra el error de la carga inicial.
+     *
+     * @param error El error producido.
+     */
+    private void errorAlCargar(Throwable error) {
+        tableView.setPlaceholder(new Label("No se pudieron cargar los datos"));
+        mostrarError(error);
+    }
+
+    /**
+     * Escribe los cambios de la cola de escritura antes de cerrar la ventana principal, en
+     * segundo plano y con una ventana de progreso en lugar de bloquear el hilo de JavaFX. La
+     * ventana principal se cierra cuando termina o si se cancela; lo que no se haya escrito,
+     * salvo los conflictos, se guarda para el proximo arranque.
+     *
+     * @param owner La ventana principal.
+     * @param cerrarVentana Lo que cierra la ventana principal.
+     * @return true si el cierre se hara al terminar la escritura; false si no hay nada que escribir.
+     */
+    boolean guardarAntesDeCerrar(Window owner, Runnable cerrarVentana) {
+        if (tareaCierre != null) {
+            // Ya se esta escribiendo; la ventana se cerrara al terminar
+            return true;
+        }
+        if (colaEscritura == null || !colaEscritura.hayCambios()) {
             return false;
         }
+        TareaBD<ColaEscritura.Resultado> tarea = colaEscritura.vaciar(fallos -> {
+            if (!fallos.isEmpty()) {
+                avisarSinEscribir(fallos);
+            }
+            cerrarVentana.run();
+        });
+        tarea.stateProperty().addListener((obs, anterior, estado) -> {
+            if (estado == Worker.State.CANCELLED) {
+                cerrarVentana.run();
+            }
+        });
+        tareaCierre = tarea;
+        DialogoProgreso.mostrar(owner, "Guardando cambios pendientes", tarea);
+        return true;
+    }
+
+    /**
+     * Avisa al cerrar de los cambios que no se han podido escribir y espera a que se lea el aviso.
+     *
+     * @param fallos Los cambios que no se han escrito.
+     */
+    private void avisarSinEscribir(List<ColaEscritura.Fallo> fallos) {
+        int conflictos = 0;
+        StringBuilder detalle = new StringBuilder();
+        for (ColaEscritura.Fallo fallo : fallos) {
+            if (fallo.isConflicto()) {
+                conflictos++;
+            }
+            detalle.append(fallo.getOperacion()).append(": ").append(fallo.getMotivo()).append('\n');
+        }
+        Alert alert = new Alert(Alert.AlertType.WARNING);
+        alert.setTitle("Cambios sin guardar");
+        alert.setHeaderText(null);
+        alert.setContentText(fallos.size() + " cambios no se pudieron guardar en la base de datos. "
+                + (fallos.size() - conflictos) + " se volveran a intentar al abrir la aplicacion; "
+                + conflictos + " chocan con cambios de otro equipo y se han descartado.");
+        TextArea areaDetalle = new TextArea(detalle.toString());
+        areaDetalle.setEditable(false);
+        alert.getDialogPane().setExpandableContent(areaDetalle);
+        alert.showAndWait();
     }
 
     /**
-     * Metodo para cargar los datos de la tabla Persona desde la base de datos
-     * y agregarlos a la tabla en la interfaz de usuario.
+     * Cancela las operaciones en curso y cierra el pool de conexiones. Se llama al cerrar la aplicacion.
      */
-    private void cargarDatosDesdeBaseDeDatos() {
-        String sql = "SELECT * FROM Persona";
-        try (Statement stmt = connection.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
-            while (rs.next()) {
-                int id = rs.getInt("id");
-                String nombre = rs.getString("nombre");
-                String apellidos = rs.getString("apellidos");
-                int edad = rs.getInt("edad");
-                tableView.getItems().add(new Persona(id, nombre, apellidos, edad));
+    public void cerrar() {
+        if (sondeoCambios != null) {
+            sondeoCambios.detener();
+        }
+        if (colaEscritura != null) {
+            colaEscritura.cerrar();
+        }
+        // Las filas con id temporal no se guardan; el proximo arranque las trae como altas
+        if (datosCompletos && archivoInstantanea != null) {
+            try {
+                Instantanea.escribir(archivoInstantanea, origen(), new ArrayList<>(datos));
+            } catch (IOException e) {
+                System.err.println("No se pudo guardar la instantanea: " + e.getMessage());
             }
+        }
+        EjecutorTareas.cerrar();
+        if (repositorio != null) {
+            repositorio.cerrar();
+        }
+        if (pool != null) {
+            System.out.println(pool.getEstadisticas());
+            pool.close();
+        }
+    }
+
+    /**
+     * Metodo para cargar los datos de la tabla Persona desde el repositorio. Se ejecuta en
+     * segundo plano leyendo el resultado en streaming, sin traerlo entero a memoria, y las
+     * personas se agregan a la tabla por lotes en el hilo de JavaFX a medida que se leen.
+     *
+     * @param tarea La tarea que ejecuta la carga, para poder cancelarla.
+     * @param publicador El publicador que entrega las personas a la tabla.
+     * @return El numero de personas leidas.
+     * @throws ErrorBaseDatos Si no se pudieron cargar los datos.
+     */
+    private int cargarDatosDesdeBaseDeDatos(TareaBD<?> tarea, PublicadorLotes<Persona> publicador)
+            throws ErrorBaseDatos {
+        int[] filas = {0};
+        long bytesAntes = Metricas.bytesReservadosHilo();
+        try (Metricas.Cronometro c = Metricas.cronometrar("bd.carga_completa")) {
+            repositorio.cargarTodas(tarea, persona -> {
+                publicador.agregar(persona);
+                filas[0]++;
+            });
         } catch (SQLException e) {
-            e.printStackTrace();
-            mostrarAlertaError("Error de carga", "No se pudieron cargar los datos de la base de datos.");
+            throw new ErrorBaseDatos("Error de carga", "No se pudieron cargar los datos de la base de datos.", e);
+        } finally {
+            publicador.enviar();
+            Metricas.contar("carga.filas", filas[0]);
+            if (bytesAntes >= 0) {
+                long bytes = Metricas.bytesReservadosHilo() - bytesAntes;
+                Metricas.contar("carga.bytes", bytes);
+                System.out.printf("Carga: %d filas, %.1f MB reservados (%d bytes/fila).%n",
+                        filas[0], bytes / (1024.0 * 1024), filas[0] > 0 ? bytes / filas[0] : 0);
+            }
         }
+        return filas[0];
     }
 
     /**
@@ -170,81 +887,449 @@ public class PersonasController implements Initializable {
      */
     @FXML
     void agregar(ActionEvent event) {
-        try {
-            FXMLLoader loader = new FXMLLoader(getClass().getResource("agregar.fxml"));
-            Scene scene = new Scene(loader.load());
-
-            AgregarController agregarController = loader.getController();
-            agregarController.setMainController(this);
-            agregarController.setModoModificar(false);
-
-            Stage stage = new Stage();
-            stage.setTitle("Nueva Persona");
-            stage.initModality(Modality.APPLICATION_MODAL);
-            stage.setScene(scene);
-            stage.setResizable(false);
-            stage.showAndWait();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        dialogoPersona.abrirParaAgregar();
     }
 
     /**
-     * Abre una ventana para modificar una persona seleccionada en la tabla.
+     * Abre una ventana para modificar una persona seleccionada en la tabla. Si hay varias
+     * seleccionadas, pide un dato y un valor para ponerlo en todas.
      *
      * @param event El evento de acción.
      */
     @FXML
     void modificar(ActionEvent event) {
+        ListaPaginadaPersonas.Tramos tramos = seleccionSinLeer();
+        if (tramos != null) {
+            modificarTramos(tramos);
+            return;
+        }
+        List<Persona> seleccionadas = seleccionadas();
+        if (seleccionadas.size() > 1) {
+            modificarVarias(seleccionadas);
+            return;
+        }
         Persona personaSeleccionada = tableView.getSelectionModel().getSelectedItem();
         if (personaSeleccionada == null) {
             mostrarAlertaError("Error", "Debes seleccionar una persona para modificarla.");
             return;
         }
 
-        try {
-            FXMLLoader loader = new FXMLLoader(getClass().getResource("agregar.fxml"));
-            Scene scene = new Scene(loader.load());
+        dialogoPersona.abrirParaModificar(personaSeleccionada);
+    }
 
-            AgregarController agregarController = loader.getController();
-            agregarController.setMainController(this);
-            agregarController.setModoModificar(true);
-            agregarController.llenarCampos(personaSeleccionada);
+    /**
+     * Pide un dato y un valor y lo pone en todas las personas seleccionadas con una sola
+     * operacion del repositorio. La tabla se actualiza con un solo cambio de la lista.
+     *
+     * @param seleccionadas Las personas seleccionadas.
+     */
+    private void modificarVarias(List<Persona> seleccionadas) {
+        pedirCambio(seleccionadas.size(), (columna, nuevo) -> modificarVarias(seleccionadas, columna, nuevo));
+    }
 
-            Stage stage = new Stage();
-            stage.setTitle("Editar persona");
-            stage.initModality(Modality.APPLICATION_MODAL);
-            stage.setScene(scene);
-            stage.setResizable(false);
-            stage.showAndWait();
-        } catch (IOException e) {
-            e.printStackTrace();
+    /**
+     * Pide un dato y un valor para varias personas y, si el valor es valido, lo aplica.
+     *
+     * @param numero El numero de personas, para mostrarlo.
+     * @param aplicar Lo que se hace con el dato y el valor: un String para el nombre y los
+     *                apellidos o un Integer para la edad.
+     */
+    private void pedirCambio(int numero, BiConsumer<OrdenPersonas.Columna, Object> aplicar) {
+        ComboBox<OrdenPersonas.Columna> campo = new ComboBox<>();
+        campo.getItems().setAll(OrdenPersonas.Columna.values());
+        campo.setValue(OrdenPersonas.Columna.EDAD);
+        TextField valor = new TextField();
+        HBox contenido = new HBox(10, campo, valor);
+        Dialog<ButtonType> dialogo = new Dialog<>();
+        dialogo.setTitle("Modificar personas");
+        dialogo.setHeaderText("Cambiar un dato de " + numero + " personas");
+        dialogo.getDialogPane().setContent(contenido);
+        dialogo.getDialogPane().getButtonTypes().setAll(ButtonType.OK, ButtonType.CANCEL);
+        dialogo.setOnShown(e -> valor.requestFocus());
+        if (dialogo.showAndWait().orElse(ButtonType.CANCEL) != ButtonType.OK) {
+            return;
         }
+
+        OrdenPersonas.Columna columna = campo.getValue();
+        String texto = valor.getText().trim();
+        String errores = ValidadorPersona.validarCampo(columna, texto);
+        if (!errores.isEmpty()) {
+            mostrarAlertaError("Datos invalidos", errores);
+            return;
+        }
+        aplicar.accept(columna, columna == OrdenPersonas.Columna.EDAD ? (Object) Integer.parseInt(texto) : texto);
+    }
+
+    private void modificarVarias(List<Persona> seleccionadas, OrdenPersonas.Columna columna, Object nuevo) {
+        List<Persona> modificadas = new ArrayList<>(seleccionadas.size());
+        // La cola informa de la nueva version al escribir; el repositorio la sube al momento
+        int aumentoVersion = colaEscritura != null ? 0 : 1;
+        for (Persona persona : seleccionadas) {
+            Persona modificada = new Persona(persona.getId(), persona.getNombre(), persona.getApellidos(), persona.getEdad(),
+                    persona.getVersion() + aumentoVersion);
+            switch (columna) {
+                case NOMBRE:
+                    modificada.setNombre((String) nuevo);
+                    break;
+                case APELLIDOS:
+                    modificada.setApellidos((String) nuevo);
+                    break;
+                default:
+                    modificada.setEdad((Integer) nuevo);
+            }
+            modificadas.add(modificada);
+        }
+
+        if (colaEscritura != null) {
+            for (int i = 0; i < seleccionadas.size(); i++) {
+                colaEscritura.modificar(seleccionadas.get(i), modificadas.get(i));
+            }
+            ponerPersonasTabla(modificadas);
+            return;
+        }
+        List<Integer> ids = ids(seleccionadas);
+        TareaBD<Integer> tarea = EjecutorTareas.lanzar(t -> {
+            try (Metricas.Cronometro c = Metricas.cronometrar("bd.modificar_varias")) {
+                return repositorio.modificarVarias(t, ids, columna, nuevo);
+            } catch (SQLException e) {
+                throw new ErrorBaseDatos("Error al modificar", "No se pudieron modificar las personas en la base de datos.", e);
+            }
+        }, filas -> {
+            ponerPersonasTabla(modificadas);
+            mostrarAlertaExito("Info", filas + " personas modificadas correctamente");
+        }, this::mostrarError);
+        DialogoProgreso.mostrar(tableView.getScene().getWindow(), "Modificando " + ids.size() + " personas", tarea);
+    }
+
+    /**
+     * Pone un dato en las filas seleccionadas de la tabla paginada aunque sus paginas no esten
+     * en memoria: se leen sus ids en segundo plano y se cambian con una sola operacion del
+     * repositorio. No pasa por la cola de escritura diferida, que necesita los datos de cada
+     * persona; los cambios pendientes de esas personas fallaran por conflicto de version.
+     *
+     * @param tramos Las filas seleccionadas.
+     */
+    private void modificarTramos(ListaPaginadaPersonas.Tramos tramos) {
+        pedirCambio(tramos.getFilas(), (columna, nuevo) -> {
+            TareaBD<Integer> tarea = EjecutorTareas.lanzar(t -> {
+                try (Metricas.Cronometro c = Metricas.cronometrar("bd.modificar_varias")) {
+                    t.mensaje("Leyendo las personas seleccionadas...");
+                    List<Integer> ids = listaPaginada.leerIds(t, tramos);
+                    t.mensaje("Modificando " + ids.size() + " personas...");
+                    return repositorio.modificarVarias(t, ids, columna, nuevo);
+                } catch (SQLException e) {
+                    throw new ErrorBaseDatos("Error al modificar", "No se pudieron modificar las personas en la base de datos.", e);
+                }
+            }, filas -> {
+                listaPaginada.recargar();
+                mostrarAlertaExito("Info", filas + " personas modificadas correctamente");
+            }, this::mostrarError);
+            DialogoProgreso.mostrar(tableView.getScene().getWindow(), "Modificando " + tramos.getFilas() + " personas",
+                    tarea);
+        });
     }
 
     /**
-     * Elimina la persona seleccionada de la tabla y la base de datos.
+     * Elimina las personas seleccionadas de la tabla y la base de datos. Si hay mas de una,
+     * se pide confirmacion y se borran todas con una sola operacion del repositorio.
      *
      * @param event El evento de acción.
      */
     @FXML
     void eliminar(ActionEvent event) {
+        ListaPaginadaPersonas.Tramos tramos = seleccionSinLeer();
+        if (tramos != null) {
+            eliminarTramos(tramos);
+            return;
+        }
+        List<Persona> seleccionadas = seleccionadas();
+        if (seleccionadas.size() > 1) {
+            eliminarVarias(seleccionadas);
+            return;
+        }
         Persona personaSeleccionada = tableView.getSelectionModel().getSelectedItem();
         if (personaSeleccionada == null) {
             mostrarAlertaError("Error", "Debes seleccionar una persona para eliminar.");
             return;
         }
 
-        String sql = "DELETE FROM Persona WHERE id = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setInt(1, personaSeleccionada.getId());
-            pstmt.executeUpdate();
-            tableView.getItems().remove(personaSeleccionada);
+        if (colaEscritura != null) {
+            colaEscritura.eliminar(personaSeleccionada);
+            quitarPersonaTabla(personaSeleccionada);
+            return;
+        }
+        EjecutorTareas.<Boolean>lanzar(tarea -> {
+            try (Metricas.Cronometro c = Metricas.cronometrar("bd.eliminar")) {
+                return repositorio.eliminar(tarea, personaSeleccionada.getId());
+            } catch (SQLException e) {
+                throw new ErrorBaseDatos("Error al eliminar", "No se pudo eliminar la persona de la base de datos.", e);
+            }
+        }, eliminada -> {
+            quitarPersonaTabla(personaSeleccionada);
             mostrarAlertaExito("Info", "Persona eliminada correctamente");
-        } catch (SQLException e) {
-            e.printStackTrace();
-            mostrarAlertaError("Error al eliminar", "No se pudo eliminar la persona de la base de datos.");
+        }, this::mostrarError);
+    }
+
+    /**
+     * Borra varias personas despues de confirmarlo. La tabla se actualiza con un solo cambio de la lista.
+     *
+     * @param seleccionadas Las personas seleccionadas.
+     */
+    private void eliminarVarias(List<Persona> seleccionadas) {
+        if (!confirmarEliminar(seleccionadas.size())) {
+            return;
+        }
+
+        if (colaEscritura != null) {
+            for (Persona persona : seleccionadas) {
+                colaEscritura.eliminar(persona);
+            }
+            quitarPersonasTabla(seleccionadas);
+            return;
+        }
+        List<Integer> ids = ids(seleccionadas);
+        TareaBD<Integer> tarea = EjecutorTareas.lanzar(t -> {
+            try (Metricas.Cronometro c = Metricas.cronometrar("bd.eliminar_varias")) {
+                return repositorio.eliminarVarias(t, ids);
+            } catch (SQLException e) {
+                throw new ErrorBaseDatos("Error al eliminar", "No se pudieron eliminar las personas de la base de datos.", e);
+            }
+        }, filas -> {
+            quitarPersonasTabla(seleccionadas);
+            mostrarAlertaExito("Info", filas + " personas eliminadas correctamente");
+        }, this::mostrarError);
+        DialogoProgreso.mostrar(tableView.getScene().getWindow(), "Eliminando " + ids.size() + " personas", tarea);
+    }
+
+    /**
+     * Borra las filas seleccionadas de la tabla paginada aunque sus paginas no esten en
+     * memoria, despues de confirmarlo: se leen sus ids en segundo plano y se borran con una
+     * sola operacion del repositorio. No pasa por la cola de escritura diferida, que necesita
+     * los datos de cada persona.
+     *
+     * @param tramos Las filas seleccionadas.
+     */
+    private void eliminarTramos(ListaPaginadaPersonas.Tramos tramos) {
+        if (!confirmarEliminar(tramos.getFilas())) {
+            return;
+        }
+        TareaBD<Integer> tarea = EjecutorTareas.lanzar(t -> {
+            try (Metricas.Cronometro c = Metricas.cronometrar("bd.eliminar_varias")) {
+                t.mensaje("Leyendo las personas seleccionadas...");
+                List<Integer> ids = listaPaginada.leerIds(t, tramos);
+                t.mensaje("Eliminando " + ids.size() + " personas...");
+                return repositorio.eliminarVarias(t, ids);
+            } catch (SQLException e) {
+                throw new ErrorBaseDatos("Error al eliminar", "No se pudieron eliminar las personas de la base de datos.", e);
+            }
+        }, filas -> {
+            listaPaginada.recargar();
+            mostrarAlertaExito("Info", filas + " personas eliminadas correctamente");
+        }, this::mostrarError);
+        DialogoProgreso.mostrar(tableView.getScene().getWindow(), "Eliminando " + tramos.getFilas() + " personas", tarea);
+    }
+
+    private static boolean confirmarEliminar(int numero) {
+        Alert confirmacion = new Alert(Alert.AlertType.CONFIRMATION,
+                "¿Eliminar las " + numero + " personas seleccionadas?", ButtonType.OK, ButtonType.CANCEL);
+        confirmacion.setTitle("Eliminar personas");
+        confirmacion.setHeaderText(null);
+        return confirmacion.showAndWait().orElse(ButtonType.CANCEL) == ButtonType.OK;
+    }
+
+    /**
+     * Busca personas repetidas en segundo plano: lee todas las personas del repositorio, las
+     * compara con {@link DetectorDuplicados} y muestra los grupos encontrados para fusionarlos.
+     *
+     * @param event El evento de acción.
+     */
+    @FXML
+    void buscarDuplicados(ActionEvent event) {
+        DetectorDuplicados detector = new DetectorDuplicados();
+        TareaBD<List<GrupoDuplicados>> tarea = EjecutorTareas.lanzar(t -> {
+            List<Persona> personas = new ArrayList<>();
+            t.mensaje("Leyendo personas...");
+            try {
+                repositorio.cargarTodas(t, personas::add);
+            } catch (SQLException e) {
+                throw new ErrorBaseDatos("Error al buscar duplicados", "No se pudieron leer las personas.", e);
+            }
+            t.mensaje("Comparando " + personas.size() + " personas...");
+            return detector.buscar(personas, t::isCancelled);
+        }, grupos -> {
+            if (grupos.isEmpty()) {
+                mostrarAlertaExito("Duplicados", "No se han encontrado personas repetidas.");
+            } else {
+                DialogoDuplicados.mostrar(tableView.getScene().getWindow(), grupos, this::eliminarRepetidas);
+            }
+        }, this::mostrarError);
+        DialogoProgreso.mostrar(tableView.getScene().getWindow(), "Buscando personas repetidas", tarea);
+    }
+
+    /**
+     * Elimina las personas que sobran al fusionar un grupo de repetidas, sin pedir confirmacion:
+     * ya se ha pedido al elegir la persona que se conserva.
+     *
+     * @param repetidas Las personas a eliminar.
+     */
+    private void eliminarRepetidas(List<Persona> repetidas) {
+        if (colaEscritura != null) {
+            for (Persona persona : repetidas) {
+                colaEscritura.eliminar(persona);
+            }
+            quitarPersonasTabla(repetidas);
+            return;
+        }
+        List<Integer> ids = ids(repetidas);
+        EjecutorTareas.<Integer>lanzar(t -> {
+            try (Metricas.Cronometro c = Metricas.cronometrar("bd.eliminar_varias")) {
+                return repositorio.eliminarVarias(t, ids);
+            } catch (SQLException e) {
+                throw new ErrorBaseDatos("Error al fusionar", "No se pudieron eliminar las personas repetidas.", e);
+            }
+        }, filas -> quitarPersonasTabla(repetidas), this::mostrarError);
+    }
+
+    /**
+     * Obtiene la seleccion de la tabla paginada si abarca filas cuyas paginas no estan en
+     * memoria, que {@link #seleccionadas} no puede devolver.
+     *
+     * @return Las filas seleccionadas, o null si no hay carga paginada o estan todas leidas.
+     */
+    private ListaPaginadaPersonas.Tramos seleccionSinLeer() {
+        if (listaPaginada == null || tableView.getItems() != listaPaginada) {
+            return null;
+        }
+        ListaPaginadaPersonas.Tramos tramos = listaPaginada.tramos(tableView.getSelectionModel().getSelectedIndices());
+        return tramos.isCargadas() ? null : tramos;
+    }
+
+    /**
+     * Obtiene las personas seleccionadas en la tabla. Con la carga paginada solo se incluyen
+     * las filas ya leidas; si la seleccion abarca paginas sin leer se usa {@link #seleccionSinLeer}.
+     *
+     * @return Las personas seleccionadas.
+     */
+    private List<Persona> seleccionadas() {
+        List<Persona> seleccionadas = new ArrayList<>(tableView.getSelectionModel().getSelectedItems());
+        seleccionadas.removeIf(Objects::isNull);
+        return seleccionadas;
+    }
+
+    private static List<Integer> ids(List<Persona> personas) {
+        List<Integer> ids = new ArrayList<>(personas.size());
+        for (Persona persona : personas) {
+            ids.add(persona.getId());
+        }
+        return ids;
+    }
+
+    /**
+     * Importa personas desde un archivo CSV con columnas nombre, apellidos y edad.
+     *
+     * @param event El evento de acción.
+     */
+    @FXML
+    void importarCsv(ActionEvent event) {
+        if (almacenLocal) {
+            mostrarAlertaError("Error", "No se puede importar con el almacen local.");
+            return;
+        }
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle("Importar personas");
+        chooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("CSV", "*.csv", "*.txt"));
+        File archivo = chooser.showOpenDialog(tableView.getScene().getWindow());
+        if (archivo == null) {
+            return;
         }
+
+        ImportadorCsv importador = new ImportadorCsv(pool, LOTE_IMPORTACION, TRANSACCION_IMPORTACION);
+        TareaBD<ResultadoImportacion> tarea = EjecutorTareas.lanzar(t -> {
+            try {
+                return importador.importar(archivo.toPath(), StandardCharsets.UTF_8, t);
+            } catch (IOException | SQLException e) {
+                throw new ErrorBaseDatos("Error de importación", "No se pudo importar el archivo " + archivo.getName() + ".", e);
+            }
+        }, resultado -> {
+            recargarDatos();
+            mostrarResultadoImportacion(resultado, archivo);
+        }, this::mostrarError);
+        DialogoProgreso.mostrar(tableView.getScene().getWindow(), "Importando " + archivo.getName(), tarea);
+    }
+
+    /**
+     * Exporta todas las personas a CSV o NDJSON, opcionalmente comprimido con gzip. El formato
+     * se elige por la extension del archivo.
+     *
+     * @param event El evento de acción.
+     */
+    @FXML
+    void exportar(ActionEvent event) {
+        if (almacenLocal) {
+            mostrarAlertaError("Error", "No se puede exportar con el almacen local.");
+            return;
+        }
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle("Exportar personas");
+        chooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("CSV", "*.csv"),
+                new FileChooser.ExtensionFilter("CSV comprimido", "*.csv.gz"),
+                new FileChooser.ExtensionFilter("NDJSON", "*.ndjson"),
+                new FileChooser.ExtensionFilter("NDJSON comprimido", "*.ndjson.gz"));
+        chooser.setInitialFileName("personas.csv");
+        File archivo = chooser.showSaveDialog(tableView.getScene().getWindow());
+        if (archivo == null) {
+            return;
+        }
+
+        String nombreArchivo = archivo.getName().toLowerCase();
+        boolean gzip = nombreArchivo.endsWith(".gz");
+        ExportadorPersonas.Formato formato = nombreArchivo.contains(".ndjson") || nombreArchivo.contains(".json")
+                ? ExportadorPersonas.Formato.NDJSON : ExportadorPersonas.Formato.CSV;
+        ExportadorPersonas exportador = new ExportadorPersonas(pool);
+        long inicio = System.nanoTime();
+        TareaBD<Long> tarea = EjecutorTareas.lanzar(t -> {
+            try {
+                return exportador.exportar(archivo.toPath(), formato, gzip, t);
+            } catch (IOException | SQLException e) {
+                throw new ErrorBaseDatos("Error de exportación", "No se pudo exportar al archivo " + archivo.getName() + ".", e);
+            }
+        }, filas -> mostrarAlertaExito("Exportación", String.format("%d personas exportadas a %s en %.1f s.",
+                filas, archivo.getName(), (System.nanoTime() - inicio) / 1_000_000_000.0)), this::mostrarError);
+        DialogoProgreso.mostrar(tableView.getScene().getWindow(), "Exportando a " + archivo.getName(), tarea);
+    }
+
+    /**
+     * Muestra el resumen de una importacion. Si hubo filas rechazadas, escribe el informe
+     * junto al archivo importado y muestra las primeras en la alerta.
+     *
+     * @param resultado El resultado de la importacion.
+     * @param archivo El archivo importado.
+     */
+    private void mostrarResultadoImportacion(ResultadoImportacion resultado, File archivo) {
+        String resumen = String.format("%s%d personas importadas en %.1f s (%.0f filas/s).%n%d filas rechazadas.",
+                resultado.isCancelada() ? "Importación cancelada. " : "", resultado.getInsertadas(),
+                resultado.getSegundos(), resultado.getFilasPorSegundo(), resultado.getRechazadas());
+        Alert alert = new Alert(Alert.AlertType.INFORMATION);
+        alert.setTitle("Importación");
+        alert.setHeaderText(null);
+        if (resultado.getRechazadas() > 0) {
+            File informe = new File(archivo.getPath() + ".rechazados.txt");
+            try {
+                resultado.escribirInforme(informe.toPath());
+                resumen += "\nInforme de rechazos: " + informe.getPath();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            StringBuilder detalle = new StringBuilder();
+            resultado.getRechazos().stream().limit(200).forEach(r ->
+                    detalle.append("Linea ").append(r.getLinea()).append(": ").append(r.getMotivo()).append('\n'));
+            TextArea areaDetalle = new TextArea(detalle.toString());
+            areaDetalle.setEditable(false);
+            alert.getDialogPane().setExpandableContent(areaDetalle);
+        }
+        alert.setContentText(resumen);
+        alert.showAndWait();
     }
 
     /**
@@ -253,7 +1338,167 @@ public class PersonasController implements Initializable {
      * @param persona La persona a agregar.
      */
     public void agregarPersonaTabla(Persona persona) {
-        tableView.getItems().add(persona);
+        datos.add(persona);
+    }
+
+    /**
+     * Pone en la tabla los datos actuales de una persona: sustituye su fila si ya esta o la agrega si no.
+     *
+     * @param persona La persona.
+     */
+    private void ponerPersonaTabla(Persona persona) {
+        int indice = buscarFila(persona.getId());
+        if (indice >= 0) {
+            datos.set(indice, persona);
+        } else {
+            datos.add(persona);
+        }
+    }
+
+    /**
+     * Quita a una persona de la tabla en la interfaz de usuario.
+     *
+     * @param persona La persona a quitar.
+     */
+    private void quitarPersonaTabla(Persona persona) {
+        int indice = buscarFila(persona.getId());
+        if (indice >= 0) {
+            datos.remove(indice);
+        }
+    }
+
+    /**
+     * Quita varias personas de la tabla con un solo cambio de la lista, en lugar de uno por
+     * fila. La lista se rehace sin ellas: {@code removeAll} tambien avisa una sola vez, pero
+     * quita las filas de una en una desplazando las siguientes. Con la carga paginada se
+     * vuelve a leer la estructura.
+     *
+     * @param personas Las personas a quitar.
+     */
+    private void quitarPersonasTabla(List<Persona> personas) {
+        if (listaPaginada != null) {
+            listaPaginada.recargar();
+            return;
+        }
+        MapaEnteros ids = new MapaEnteros(personas.size());
+        for (Persona persona : personas) {
+            ids.put(persona.getId(), 0);
+        }
+        List<Persona> restantes = new ArrayList<>(datos.size());
+        for (Persona persona : datos) {
+            if (!ids.contiene(persona.getId())) {
+                restantes.add(persona);
+            }
+        }
+        datos.setAll(restantes);
+    }
+
+    /**
+     * Pone en la tabla los datos actuales de varias personas con un solo cambio de la lista.
+     * Con la carga paginada se vuelve a leer la estructura, porque pueden haber cambiado de posicion.
+     *
+     * @param personas Las personas con sus nuevos datos.
+     */
+    private void ponerPersonasTabla(List<Persona> personas) {
+        if (listaPaginada != null) {
+            listaPaginada.recargar();
+            return;
+        }
+        List<Persona> nuevas = new ArrayList<>(datos);
+        for (Persona persona : personas) {
+            int indice = buscarFila(persona.getId());
+            if (indice >= 0) {
+                nuevas.set(indice, persona);
+            }
+        }
+        datos.setAll(nuevas);
+    }
+
+    /**
+     * Obtiene la cola de escritura diferida.
+     *
+     * @return La cola, o null si los cambios se escriben al momento.
+     */
+    ColaEscritura getColaEscritura() {
+        return colaEscritura;
+    }
+
+    /**
+     * Obtiene el repositorio donde se guardan las personas.
+     *
+     * @return El repositorio de MySQL o el local.
+     */
+    RepositorioPersonas getRepositorio() {
+        return repositorio;
+    }
+
+    /**
+     * Aplica en la tabla el resultado de una escritura de la cola: las altas pasan a tener
+     * su id definitivo, las modificaciones su nueva version y los cambios que fallaron se
+     * deshacen y se muestran.
+     *
+     * @param resultado El resultado de la escritura.
+     */
+    private void cambiosEscritos(ColaEscritura.Resultado resultado) {
+        for (Persona modificada : resultado.getModificadas()) {
+            int indice = buscarFila(modificada.getId());
+            if (indice >= 0) {
+                // Los datos de la fila pueden tener ya otro cambio pendiente: solo cambia la version
+                Persona fila = datos.get(indice);
+                datos.set(indice, new Persona(fila.getId(), fila.getNombre(), fila.getApellidos(), fila.getEdad(),
+                        modificada.getVersion()));
+            }
+        }
+        for (ColaEscritura.Alta alta : resultado.getAltas()) {
+            if (buscarFila(alta.getDefinitiva().getId()) >= 0) {
+                // El sondeo de cambios ya la ha traido con su id definitivo
+                quitarPersonaTabla(alta.getTemporal());
+            } else {
+                modificarPersonaTabla(alta.getTemporal(), alta.getDefinitiva());
+            }
+        }
+        if (resultado.getFallos().isEmpty()) {
+            return;
+        }
+        StringBuilder detalle = new StringBuilder();
+        for (ColaEscritura.Fallo fallo : resultado.getFallos()) {
+            ColaEscritura.Operacion operacion = fallo.getOperacion();
+            Persona persona = operacion.getPersona();
+            switch (operacion.getTipo()) {
+                case ALTA:
+                    quitarPersonaTabla(persona);
+                    detalle.append("Alta de ");
+                    break;
+                case MODIFICACION:
+                    modificarPersonaTabla(persona, operacion.getOriginal());
+                    detalle.append("Modificacion de ");
+                    break;
+                default:
+                    // Una baja recuperada al arrancar no se habia quitado de la tabla
+                    ponerPersonaTabla(operacion.getOriginal());
+                    detalle.append("Baja de ");
+            }
+            detalle.append(persona.getNombre()).append(' ').append(persona.getApellidos())
+                    .append(": ").append(fallo.getMotivo()).append('\n');
+        }
+        Alert alert = new Alert(Alert.AlertType.ERROR);
+        alert.setTitle("Error al guardar");
+        alert.setHeaderText(null);
+        alert.setContentText(resultado.getFallos().size() + " cambios no se pudieron guardar y se han deshecho.");
+        TextArea areaDetalle = new TextArea(detalle.toString());
+        areaDetalle.setEditable(false);
+        alert.getDialogPane().setExpandableContent(areaDetalle);
+        alert.show();
+    }
+
+    /**
+     * Busca la fila de la tabla que muestra a la persona con el id indicado, sin recorrer la tabla.
+     *
+     * @param id El id de la persona.
+     * @return La posicion de la fila, o -1 si no esta cargada.
+     */
+    private int buscarFila(int id) {
+        return listaPaginada != null ? listaPaginada.indiceDeId(id) : indicePorId.posicion(id);
     }
 
     /**
@@ -263,8 +1508,25 @@ public class PersonasController implements Initializable {
      * @param personaModificada La persona con los nuevos datos.
      */
     public void modificarPersonaTabla(Persona personaOriginal, Persona personaModificada) {
-        int indice = tableView.getItems().indexOf(personaOriginal);
-        tableView.getItems().set(indice, personaModificada);
+        int indice = buscarFila(personaOriginal.getId());
+        // Con la carga paginada la fila puede no estar ya en memoria; se leera actualizada
+        if (indice >= 0) {
+            datos.set(indice, personaModificada);
+        }
+    }
+
+    /**
+     * Muestra una alerta con el error de una operacion en segundo plano.
+     *
+     * @param error El error producido.
+     */
+    void mostrarError(Throwable error) {
+        error.printStackTrace();
+        if (error instanceof ErrorBaseDatos) {
+            mostrarAlertaError(((ErrorBaseDatos) error).getTitulo(), error.getMessage());
+        } else {
+            mostrarAlertaError("Error", "Se produjo un error inesperado: " + error.getMessage());
+        }
     }
 
     /**
@@ -0,0 +1,89 @@
+package com.example.ejh.cache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * Recuerda en un archivo local que el esquema de una base de datos ya se comprobo, para no
+ * repetir en cada arranque las consultas que comprueban la base de datos, la tabla, las
+ * columnas, los indices y el trigger. Cada origen (URL de la base de datos) guarda la version
+ * del esquema que se comprobo; si la aplicacion necesita una version mayor, se vuelve a comprobar.
+ */
+public final class EsquemaVerificado {
+
+    private EsquemaVerificado() {
+    }
+
+    /**
+     * Indica si el esquema de un origen ya se comprobo con la version indicada.
+     *
+     * @param archivo El archivo donde se guardan las comprobaciones.
+     * @param origen El origen de los datos.
+     * @param version La version del esquema que necesita la aplicacion.
+     * @return true si ya se comprobo; false si no, o si el archivo no se puede leer.
+     */
+    public static boolean estaVerificado(Path archivo, String origen, int version) {
+        return Integer.toString(version).equals(leer(archivo).getProperty(origen));
+    }
+
+    /**
+     * Apunta que el esquema de un origen se ha comprobado.
+     *
+     * @param archivo El archivo donde se guardan las comprobaciones.
+     * @param origen El origen de los datos.
+     * @param version La version del esquema comprobada.
+     * @throws IOException Si no se pudo escribir el archivo.
+     */
+    public static synchronized void marcar(Path archivo, String origen, int version) throws IOException {
+        Properties verificados = leer(archivo);
+        verificados.setProperty(origen, Integer.toString(version));
+        escribir(archivo, verificados);
+    }
+
+    /**
+     * Olvida la comprobacion de un origen, por ejemplo porque una consulta ha fallado por
+     * falta de una tabla o una columna.
+     *
+     * @param archivo El archivo donde se guardan las comprobaciones.
+     * @param origen El origen de los datos.
+     * @throws IOException Si no se pudo escribir el archivo.
+     */
+    public static synchronized void olvidar(Path archivo, String origen) throws IOException {
+        Properties verificados = leer(archivo);
+        if (verificados.remove(origen) != null) {
+            escribir(archivo, verificados);
+        }
+    }
+
+    private static Properties leer(Path archivo) {
+        Properties verificados = new Properties();
+        if (Files.isRegularFile(archivo)) {
+            try (InputStream in = Files.newInputStream(archivo)) {
+                verificados.load(in);
+            } catch (IOException | IllegalArgumentException e) {
+                // Un archivo danado equivale a no haber comprobado nada
+                verificados.clear();
+            }
+        }
+        return verificados;
+    }
+
+    private static void escribir(Path archivo, Properties verificados) throws IOException {
+        Path directorio = archivo.toAbsolutePath().getParent();
+        Files.createDirectories(directorio);
+        Path temporal = Files.createTempFile(directorio, archivo.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temporal)) {
+                verificados.store(out, "Esquemas comprobados por EjH");
+            }
+            Files.move(temporal, archivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporal);
+        }
+    }
+}
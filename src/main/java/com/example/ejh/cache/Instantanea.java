@@ -0,0 +1,160 @@
+package com.example.ejh.cache;
+
+import com.example.ejh.model.Persona;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Copia local de la tabla Persona en un archivo binario, para mostrar los datos al
+ * arrancar sin esperar a la base de datos. El archivo se lee proyectandolo en memoria
+ * ({@link FileChannel#map}), sin copias intermedias.
+ *
+ * <p>Formato: cabecera con la marca {@code EJHS}, la version, el origen de los datos (la
+ * URL de la base de datos), la fecha y el numero de filas; despues cada fila con el id, la
+ * edad, la version (desde la version 2 del formato) y el nombre y los apellidos en UTF-8
+ * precedidos de su longitud, o -1 si son null. Los archivos de la version 1 se siguen leyendo,
+ * con todas las personas en la version 0.</p>
+ */
+public final class Instantanea {
+
+    private static final int MARCA = 0x454A4853; // "EJHS"
+    private static final int VERSION = 2;
+    private static final int VERSION_SIN_VERSIONES = 1;
+    private static final int TAMANO_BUFFER = 256 * 1024;
+
+    private Instantanea() {
+    }
+
+    /**
+     * Lee las personas de una instantanea.
+     *
+     * @param archivo El archivo.
+     * @param origen El origen que se espera, para no mezclar datos de otra base de datos.
+     * @return Las personas, o null si el archivo no existe, es de otro origen o de otra version.
+     * @throws IOException Si no se pudo leer o esta danado.
+     */
+    public static List<Persona> leer(Path archivo, String origen) throws IOException {
+        if (!Files.isRegularFile(archivo)) {
+            return null;
+        }
+        try (FileChannel canal = FileChannel.open(archivo, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+            if (buffer.getInt() != MARCA) {
+                return null;
+            }
+            int version = buffer.getInt();
+            if ((version != VERSION && version != VERSION_SIN_VERSIONES) || !origen.equals(leerCadena(buffer, new byte[1024]))) {
+                return null;
+            }
+            boolean conVersiones = version == VERSION;
+            buffer.getLong(); // fecha de creacion
+            int filas = buffer.getInt();
+            List<Persona> personas = new ArrayList<>(filas);
+            byte[] bytes = new byte[1024];
+            // Los nombres y apellidos se repiten mucho; se comparte una sola copia de cada uno
+            Map<String, String> cadenas = new HashMap<>();
+            for (int i = 0; i < filas; i++) {
+                int id = buffer.getInt();
+                int edad = buffer.getInt();
+                int versionFila = conVersiones ? buffer.getInt() : 0;
+                String nombre = compartir(cadenas, leerCadena(buffer, bytes));
+                String apellidos = compartir(cadenas, leerCadena(buffer, bytes));
+                personas.add(new Persona(id, nombre, apellidos, edad, versionFila));
+            }
+            return personas;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("La instantanea " + archivo + " esta incompleta", e);
+        }
+    }
+
+    /**
+     * Escribe las personas en una instantanea. Se escribe primero en un archivo temporal que
+     * despues sustituye al anterior, para no dejar nunca un archivo a medias.
+     *
+     * @param archivo El archivo.
+     * @param origen El origen de los datos.
+     * @param personas Las personas; las que tienen id temporal (no positivo) no se guardan.
+     * @throws IOException Si no se pudo escribir.
+     */
+    public static void escribir(Path archivo, String origen, List<Persona> personas) throws IOException {
+        Path directorio = archivo.toAbsolutePath().getParent();
+        Files.createDirectories(directorio);
+        Path temporal = Files.createTempFile(directorio, archivo.getFileName().toString(), ".tmp");
+        try {
+            int filas = 0;
+            for (Persona persona : personas) {
+                if (persona != null && persona.getId() > 0) {
+                    filas++;
+                }
+            }
+            try (FileChannel canal = FileChannel.open(temporal, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(canal), TAMANO_BUFFER))) {
+                out.writeInt(MARCA);
+                out.writeInt(VERSION);
+                escribirCadena(out, origen);
+                out.writeLong(System.currentTimeMillis());
+                out.writeInt(filas);
+                for (Persona persona : personas) {
+                    if (persona != null && persona.getId() > 0) {
+                        out.writeInt(persona.getId());
+                        out.writeInt(persona.getEdad());
+                        out.writeInt(persona.getVersion());
+                        escribirCadena(out, persona.getNombre());
+                        escribirCadena(out, persona.getApellidos());
+                    }
+                }
+                out.flush();
+                canal.force(false);
+            }
+            Files.move(temporal, archivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporal);
+        }
+    }
+
+    private static String leerCadena(MappedByteBuffer buffer, byte[] bytes) {
+        int longitud = buffer.getShort();
+        if (longitud < 0) {
+            return null;
+        }
+        byte[] destino = longitud <= bytes.length ? bytes : new byte[longitud];
+        buffer.get(destino, 0, longitud);
+        return new String(destino, 0, longitud, StandardCharsets.UTF_8);
+    }
+
+    private static void escribirCadena(DataOutputStream out, String valor) throws IOException {
+        if (valor == null) {
+            out.writeShort(-1);
+            return;
+        }
+        byte[] bytes = valor.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > Short.MAX_VALUE) {
+            throw new IOException("Cadena demasiado larga para la instantanea: " + bytes.length + " bytes");
+        }
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String compartir(Map<String, String> cadenas, String valor) {
+        if (valor == null) {
+            return null;
+        }
+        String existente = cadenas.putIfAbsent(valor, valor);
+        return existente != null ? existente : valor;
+    }
+}
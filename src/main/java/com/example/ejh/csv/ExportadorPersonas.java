@@ -0,0 +1,149 @@
+package com.example.ejh.csv;
+
+import com.example.ejh.db.FuenteConexiones;
+import com.example.ejh.json.JsonPersona;
+import com.example.ejh.model.Persona;
+import com.example.ejh.tareas.TareaBD;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Exportacion de la tabla Persona a CSV o NDJSON (un objeto JSON por linea). Las filas se
+ * leen de la base de datos en streaming y se escriben directamente en el archivo, asi que
+ * la memoria usada no depende del numero de filas.
+ */
+public class ExportadorPersonas {
+
+    /**
+     * Formatos de exportacion disponibles.
+     */
+    public enum Formato {
+        CSV, NDJSON
+    }
+
+    private static final String SQL_EXPORTAR = "SELECT id, nombre, apellidos, edad, version FROM Persona ORDER BY id";
+    private static final int TAMANO_BUFFER = 256 * 1024;
+    private static final int FILAS_POR_PROGRESO = 5000;
+
+    private final FuenteConexiones fuente;
+
+    /**
+     * Constructor para crear el exportador.
+     *
+     * @param fuente El origen de las conexiones a la base de datos.
+     */
+    public ExportadorPersonas(FuenteConexiones fuente) {
+        this.fuente = fuente;
+    }
+
+    /**
+     * Exporta todas las personas al archivo indicado. Si la tarea se cancela, el archivo queda
+     * con las filas escritas hasta ese momento.
+     *
+     * @param destino El archivo de destino; se sobrescribe si existe.
+     * @param formato El formato del archivo.
+     * @param gzip Si es verdadero, el archivo se comprime con gzip.
+     * @param tarea La tarea que ejecuta la exportacion, para informar del progreso y cancelarla.
+     * @return El numero de filas exportadas.
+     * @throws IOException Si falla la escritura del archivo.
+     * @throws SQLException Si falla la lectura de la base de datos.
+     */
+    public long exportar(Path destino, Formato formato, boolean gzip, TareaBD<?> tarea)
+            throws IOException, SQLException {
+        long filas = 0;
+        try (Connection conn = fuente.obtenerConexionLarga()) {
+            long total = contar(conn, tarea);
+            try (Writer out = abrir(destino, gzip);
+                 Statement stmt = tarea.registrar(conn.createStatement(ResultSet.TYPE_FORWARD_ONLY,
+                         ResultSet.CONCUR_READ_ONLY))) {
+                // Resultado en streaming: Connector/J no guarda las filas en memoria
+                stmt.setFetchSize(Integer.MIN_VALUE);
+                if (formato == Formato.CSV) {
+                    out.write("id,nombre,apellidos,edad\n");
+                }
+                try (ResultSet rs = stmt.executeQuery(SQL_EXPORTAR)) {
+                    while (rs.next() && !tarea.isCancelled()) {
+                        Persona persona = new Persona(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getInt(4),
+                                rs.getInt(5));
+                        if (formato == Formato.CSV) {
+                            escribirCsv(out, persona);
+                        } else {
+                            JsonPersona.escribir(out, persona);
+                            out.write('\n');
+                        }
+                        if (++filas % FILAS_POR_PROGRESO == 0) {
+                            tarea.progreso(filas, total);
+                            tarea.mensaje(filas + " de " + total + " personas exportadas");
+                        }
+                    }
+                }
+            }
+        }
+        tarea.progreso(filas, filas);
+        return filas;
+    }
+
+    private static long contar(Connection conn, TareaBD<?> tarea) throws SQLException {
+        try (Statement stmt = tarea.registrar(conn.createStatement());
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM Persona")) {
+            return rs.next() ? rs.getLong(1) : -1;
+        }
+    }
+
+    private static Writer abrir(Path destino, boolean gzip) throws IOException {
+        FileChannel canal = FileChannel.open(destino, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        OutputStream salida = new BufferedOutputStream(Channels.newOutputStream(canal), TAMANO_BUFFER);
+        if (gzip) {
+            salida = new GZIPOutputStream(salida, TAMANO_BUFFER);
+        }
+        return new BufferedWriter(new OutputStreamWriter(salida, StandardCharsets.UTF_8), TAMANO_BUFFER);
+    }
+
+    private static void escribirCsv(Writer out, Persona persona) throws IOException {
+        out.write(Integer.toString(persona.getId()));
+        out.write(',');
+        escribirCampo(out, persona.getNombre());
+        out.write(',');
+        escribirCampo(out, persona.getApellidos());
+        out.write(',');
+        out.write(Integer.toString(persona.getEdad()));
+        out.write('\n');
+    }
+
+    /**
+     * Escribe un campo CSV, entre comillas solo si contiene comas, comillas o saltos de linea.
+     */
+    private static void escribirCampo(Writer out, String valor) throws IOException {
+        if (valor == null) {
+            return;
+        }
+        boolean comillas = false;
+        for (int i = 0; i < valor.length() && !comillas; i++) {
+            char c = valor.charAt(i);
+            comillas = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!comillas) {
+            out.write(valor);
+            return;
+        }
+        out.write('"');
+        out.write(valor.replace("\"", "\"\""));
+        out.write('"');
+    }
+}
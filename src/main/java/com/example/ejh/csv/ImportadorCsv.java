@@ -0,0 +1,372 @@
+package com.example.ejh.csv;
+
+import com.example.ejh.db.FuenteConexiones;
+import com.example.ejh.model.Persona;
+import com.example.ejh.model.ValidadorPersona;
+import com.example.ejh.tareas.EjecutorTareas;
+import com.example.ejh.tareas.TareaBD;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Importacion masiva de personas desde un CSV con columnas nombre, apellidos y edad.
+ *
+ * <p>El trabajo se reparte en tres etapas: un hilo lee el archivo en streaming y lo corta en
+ * bloques, los bloques se validan en paralelo con las mismas reglas que el formulario y el
+ * hilo de la tarea inserta las filas validas con {@code addBatch}/{@code executeBatch},
+ * confirmando cada cierto numero de filas. Con {@code rewriteBatchedStatements=true} en la
+ * URL, Connector/J envia cada lote como un unico INSERT de varias filas.</p>
+ */
+public class ImportadorCsv {
+
+    private static final String SQL_INSERTAR = "INSERT INTO Persona (nombre, apellidos, edad) VALUES (?, ?, ?)";
+    private static final int FILAS_POR_BLOQUE = 2000;
+    private static final int BLOQUES_EN_VUELO = 8;
+
+    private final FuenteConexiones fuente;
+    private final int tamanoLote;
+    private final int tamanoTransaccion;
+
+    /**
+     * Constructor para crear el importador.
+     *
+     * @param fuente El origen de las conexiones a la base de datos.
+     * @param tamanoLote El numero de filas de cada {@code executeBatch}.
+     * @param tamanoTransaccion El numero de filas de cada transaccion.
+     */
+    public ImportadorCsv(FuenteConexiones fuente, int tamanoLote, int tamanoTransaccion) {
+        if (tamanoLote < 1 || tamanoTransaccion < tamanoLote) {
+            throw new IllegalArgumentException("La transaccion debe tener al menos un lote");
+        }
+        this.fuente = fuente;
+        this.tamanoLote = tamanoLote;
+        this.tamanoTransaccion = tamanoTransaccion;
+    }
+
+    /**
+     * Importa el archivo. El separador se deduce de la primera linea y si esa linea es una
+     * cabecera (su ultima columna es "edad") se salta. Si la cabecera empieza por "id", como
+     * en los archivos exportados, esa columna se ignora.
+     *
+     * @param archivo El archivo CSV.
+     * @param charset La codificacion del archivo.
+     * @param tarea La tarea que ejecuta la importacion, para informar del progreso y cancelarla.
+     * @return El resultado con las filas insertadas y las rechazadas.
+     * @throws IOException Si falla la lectura del archivo.
+     * @throws SQLException Si falla la conexion con la base de datos.
+     */
+    public ResultadoImportacion importar(Path archivo, Charset charset, TareaBD<?> tarea)
+            throws IOException, SQLException {
+        long inicio = System.nanoTime();
+        long tamanoArchivo = Files.size(archivo);
+        char separador;
+        try (BufferedReader primera = Files.newBufferedReader(archivo, charset)) {
+            String linea = primera.readLine();
+            separador = LectorCsv.detectarSeparador(linea == null ? "" : linea);
+        }
+
+        ResultadoImportacion resultado = new ResultadoImportacion();
+        AtomicLong bytesLeidos = new AtomicLong();
+        BlockingQueue<CompletableFuture<Bloque>> cola = new ArrayBlockingQueue<>(BLOQUES_EN_VUELO);
+        InputStream entrada = new ContadorBytes(Files.newInputStream(archivo), bytesLeidos);
+        AtomicBoolean parar = new AtomicBoolean();
+        CompletableFuture.runAsync(
+                () -> leer(new LectorCsv(new InputStreamReader(entrada, charset), separador), cola, parar, tarea),
+                EjecutorTareas.getEjecutor());
+
+        try (Connection conn = fuente.obtenerConexionLarga();
+             PreparedStatement pstmt = tarea.registrar(conn.prepareStatement(SQL_INSERTAR))) {
+            conn.setAutoCommit(false);
+            List<Persona> transaccion = new ArrayList<>(tamanoTransaccion);
+            int enLote = 0;
+            while (!tarea.isCancelled()) {
+                Bloque bloque = siguiente(cola);
+                if (bloque == null) {
+                    break;
+                }
+                resultado.sumarLeidas(bloque.leidas);
+                bloque.rechazos.forEach(r -> resultado.rechazar(r.getLinea(), r.getMotivo()));
+                for (int i = 0; i < bloque.validas.size(); i++) {
+                    Persona persona = bloque.validas.get(i);
+                    pstmt.setString(1, persona.getNombre());
+                    pstmt.setString(2, persona.getApellidos());
+                    pstmt.setInt(3, persona.getEdad());
+                    pstmt.addBatch();
+                    transaccion.add(persona);
+                    if (++enLote == tamanoLote || transaccion.size() == tamanoTransaccion) {
+                        enLote = 0;
+                        if (transaccion.size() == tamanoTransaccion) {
+                            confirmar(conn, pstmt, transaccion, resultado, tarea);
+                        } else {
+                            ejecutarLote(conn, pstmt, transaccion, resultado, tarea);
+                        }
+                    }
+                }
+                tarea.progreso(bytesLeidos.get(), tamanoArchivo);
+                tarea.mensaje(resultado.getInsertadas() + " personas importadas, "
+                        + resultado.getRechazadas() + " rechazadas");
+            }
+            if (tarea.isCancelled()) {
+                // Lo que no se ha confirmado no se importa
+                conn.rollback();
+            } else if (!transaccion.isEmpty()) {
+                confirmar(conn, pstmt, transaccion, resultado, tarea);
+            }
+        } finally {
+            // Si se sale antes de tiempo se desbloquea al lector vaciando la cola
+            parar.set(true);
+            cola.clear();
+            try {
+                entrada.close();
+            } catch (IOException e) {
+                // Ya no se va a leer mas
+            }
+        }
+        resultado.terminar(System.nanoTime() - inicio, tarea.isCancelled());
+        return resultado;
+    }
+
+    /**
+     * Etapa de lectura: corta el archivo en bloques y lanza su validacion en paralelo. Los
+     * futuros se encolan en orden, asi el insertador respeta el orden del archivo.
+     */
+    private void leer(LectorCsv lector, BlockingQueue<CompletableFuture<Bloque>> cola, AtomicBoolean parar,
+                      TareaBD<?> tarea) {
+        try (lector) {
+            List<String> registro = lector.leerRegistro();
+            int desplazamiento = 0;
+            if (registro != null && registro.size() >= 3
+                    && registro.get(registro.size() - 1).trim().equalsIgnoreCase("edad")) {
+                // Los archivos exportados por la aplicacion llevan el id en la primera columna
+                desplazamiento = registro.get(0).trim().equalsIgnoreCase("id") ? 1 : 0;
+                registro = lector.leerRegistro();
+            }
+            int columnaInicial = desplazamiento;
+            while (registro != null && !parar.get() && !tarea.isCancelled()) {
+                List<List<String>> registros = new ArrayList<>(FILAS_POR_BLOQUE);
+                long[] lineas = new long[FILAS_POR_BLOQUE];
+                int n = 0;
+                while (registro != null && n < FILAS_POR_BLOQUE) {
+                    registros.add(registro);
+                    lineas[n++] = lector.getLinea();
+                    registro = lector.leerRegistro();
+                }
+                encolar(cola, CompletableFuture.supplyAsync(() -> validar(registros, lineas, columnaInicial),
+                        ForkJoinPool.commonPool()), parar);
+            }
+            encolar(cola, CompletableFuture.completedFuture(Bloque.FIN), parar);
+        } catch (IOException | RuntimeException e) {
+            encolar(cola, CompletableFuture.failedFuture(e), parar);
+        }
+    }
+
+    private static void encolar(BlockingQueue<CompletableFuture<Bloque>> cola, CompletableFuture<Bloque> bloque,
+                                AtomicBoolean parar) {
+        try {
+            while (!parar.get() && !cola.offer(bloque, 100, TimeUnit.MILLISECONDS)) {
+                // Se espera a que el insertador libere sitio
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Bloque siguiente(BlockingQueue<CompletableFuture<Bloque>> cola) throws IOException {
+        try {
+            Bloque bloque = cola.take().join();
+            return bloque == Bloque.FIN ? null : bloque;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Etapa de validacion, que se ejecuta en paralelo para varios bloques.
+     */
+    private static Bloque validar(List<List<String>> registros, long[] lineas, int columnaInicial) {
+        Bloque bloque = new Bloque(registros.size());
+        for (int i = 0; i < registros.size(); i++) {
+            List<String> campos = registros.get(i);
+            if (campos.size() != columnaInicial + 3) {
+                bloque.rechazos.add(new ResultadoImportacion.Rechazo(lineas[i], "Se esperaban "
+                        + (columnaInicial + 3) + " columnas y hay " + campos.size() + "."));
+                continue;
+            }
+            // Si el archivo trae id se ignora: la base de datos asigna uno nuevo
+            String nombre = campos.get(columnaInicial).trim();
+            String apellidos = campos.get(columnaInicial + 1).trim();
+            String edadStr = campos.get(columnaInicial + 2).trim();
+            String errores = ValidadorPersona.validar(nombre, apellidos, edadStr);
+            if (errores.isEmpty()) {
+                // Hasta insertarla, el id de la persona guarda su linea del archivo para el informe
+                bloque.validas.add(new Persona((int) lineas[i], nombre, apellidos, Integer.parseInt(edadStr)));
+            } else {
+                bloque.rechazos.add(new ResultadoImportacion.Rechazo(lineas[i], errores.trim().replace('\n', ' ')));
+            }
+        }
+        return bloque;
+    }
+
+    private void ejecutarLote(Connection conn, PreparedStatement pstmt, List<Persona> transaccion,
+                              ResultadoImportacion resultado, TareaBD<?> tarea) throws SQLException {
+        try {
+            pstmt.executeBatch();
+        } catch (SQLException e) {
+            reintentarFilaAFila(conn, pstmt, transaccion, resultado, tarea, e);
+        }
+    }
+
+    private void confirmar(Connection conn, PreparedStatement pstmt, List<Persona> transaccion,
+                           ResultadoImportacion resultado, TareaBD<?> tarea) throws SQLException {
+        try {
+            pstmt.executeBatch();
+            if (tarea.isCancelled()) {
+                deshacer(conn, transaccion);
+                return;
+            }
+            conn.commit();
+            resultado.sumarInsertadas(transaccion.size());
+            transaccion.clear();
+        } catch (SQLException e) {
+            reintentarFilaAFila(conn, pstmt, transaccion, resultado, tarea, e);
+        }
+    }
+
+    /**
+     * Si un lote falla por los datos de alguna fila (SQLSTATE 22 o 23) se deshace la
+     * transaccion y se repiten sus filas una a una, para rechazar solo las que fallan. Si la
+     * tarea se ha cancelado, lo que cancela tambien la sentencia en curso, solo se deshace la
+     * transaccion; cualquier otro error se lanza sin reintentar.
+     */
+    private void reintentarFilaAFila(Connection conn, PreparedStatement pstmt, List<Persona> transaccion,
+                                     ResultadoImportacion resultado, TareaBD<?> tarea, SQLException causa)
+            throws SQLException {
+        pstmt.clearBatch();
+        if (tarea.isCancelled()) {
+            deshacer(conn, transaccion);
+            return;
+        }
+        conn.rollback();
+        if (!esErrorDeDatos(causa)) {
+            throw causa;
+        }
+        // Se cuenta al confirmar, por si se cancela a mitad
+        int insertadas = 0;
+        List<ResultadoImportacion.Rechazo> rechazos = new ArrayList<>();
+        for (Persona persona : transaccion) {
+            if (tarea.isCancelled()) {
+                break;
+            }
+            pstmt.setString(1, persona.getNombre());
+            pstmt.setString(2, persona.getApellidos());
+            pstmt.setInt(3, persona.getEdad());
+            try {
+                pstmt.executeUpdate();
+                insertadas++;
+            } catch (SQLException e) {
+                if (tarea.isCancelled()) {
+                    break;
+                }
+                if (!esErrorDeDatos(e)) {
+                    conn.rollback();
+                    throw e;
+                }
+                rechazos.add(new ResultadoImportacion.Rechazo(persona.getId(), e.getMessage()));
+            }
+        }
+        if (tarea.isCancelled()) {
+            deshacer(conn, transaccion);
+            return;
+        }
+        conn.commit();
+        resultado.sumarInsertadas(insertadas);
+        rechazos.forEach(r -> resultado.rechazar(r.getLinea(), r.getMotivo()));
+        transaccion.clear();
+    }
+
+    private static void deshacer(Connection conn, List<Persona> transaccion) throws SQLException {
+        conn.rollback();
+        transaccion.clear();
+    }
+
+    /**
+     * Indica si un error se debe a los datos de una fila: clase 22 (dato no valido, por ejemplo
+     * demasiado largo) o 23 (restriccion de integridad).
+     */
+    private static boolean esErrorDeDatos(SQLException e) {
+        String estado = e.getSQLState();
+        return estado != null && (estado.startsWith("22") || estado.startsWith("23"));
+    }
+
+    /**
+     * Bloque de registros ya validado.
+     */
+    private static final class Bloque {
+        private static final Bloque FIN = new Bloque(0);
+
+        private final int leidas;
+        private final List<Persona> validas;
+        private final List<ResultadoImportacion.Rechazo> rechazos = new ArrayList<>();
+
+        private Bloque(int leidas) {
+            this.leidas = leidas;
+            this.validas = new ArrayList<>(leidas);
+        }
+    }
+
+    /**
+     * Flujo que cuenta los bytes leidos para calcular el progreso.
+     */
+    private static final class ContadorBytes extends FilterInputStream {
+        private final AtomicLong contador;
+
+        private ContadorBytes(InputStream in, AtomicLong contador) {
+            super(in);
+            this.contador = contador;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                contador.incrementAndGet();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int leidos = super.read(b, off, len);
+            if (leidos > 0) {
+                contador.addAndGet(leidos);
+            }
+            return leidos;
+        }
+    }
+}
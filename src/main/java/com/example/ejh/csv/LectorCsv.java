@@ -0,0 +1,142 @@
+package com.example.ejh.csv;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lector de CSV en streaming: lee registro a registro sin cargar el archivo en memoria.
+ * Admite campos entre comillas dobles con separadores, saltos de linea y comillas
+ * escapadas ({@code ""}) dentro.
+ */
+public class LectorCsv implements Closeable {
+
+    private final Reader reader;
+    private final char separador;
+    private final char[] buffer = new char[64 * 1024];
+    private int posicion;
+    private int limite;
+    private long linea = 1;
+    private long lineaRegistro;
+    private final StringBuilder campo = new StringBuilder();
+
+    /**
+     * Constructor para crear el lector.
+     *
+     * @param reader El origen de los caracteres. No hace falta que tenga buffer.
+     * @param separador El separador de campos, normalmente ',' o ';'.
+     */
+    public LectorCsv(Reader reader, char separador) {
+        this.reader = reader;
+        this.separador = separador;
+    }
+
+    /**
+     * Elige el separador mas probable a partir de la primera linea del archivo.
+     *
+     * @param primeraLinea La primera linea del archivo.
+     * @return ';' si aparece mas veces que ',', o ',' en otro caso.
+     */
+    public static char detectarSeparador(String primeraLinea) {
+        long comas = primeraLinea.chars().filter(c -> c == ',').count();
+        long puntosYComa = primeraLinea.chars().filter(c -> c == ';').count();
+        return puntosYComa > comas ? ';' : ',';
+    }
+
+    /**
+     * Lee el siguiente registro. Las lineas vacias se ignoran.
+     *
+     * @return Los campos del registro, o null si se ha llegado al final.
+     * @throws IOException Si falla la lectura.
+     */
+    public List<String> leerRegistro() throws IOException {
+        List<String> campos = new ArrayList<>(4);
+        campo.setLength(0);
+        lineaRegistro = linea;
+        boolean entreComillas = false;
+        boolean hayDatos = false;
+        int c;
+        while ((c = leer()) != -1) {
+            char ch = (char) c;
+            if (entreComillas) {
+                if (ch == '"') {
+                    if (mirar() == '"') {
+                        leer();
+                        campo.append('"');
+                    } else {
+                        entreComillas = false;
+                    }
+                } else {
+                    if (ch == '\n') {
+                        linea++;
+                    }
+                    campo.append(ch);
+                }
+            } else if (ch == '"' && campo.length() == 0) {
+                entreComillas = true;
+                hayDatos = true;
+            } else if (ch == separador) {
+                campos.add(campo.toString());
+                campo.setLength(0);
+                hayDatos = true;
+            } else if (ch == '\r') {
+                // Se ignora: el fin de registro lo marca '\n'
+            } else if (ch == '\n') {
+                linea++;
+                if (hayDatos || campo.length() > 0) {
+                    campos.add(campo.toString());
+                    return campos;
+                }
+                lineaRegistro = linea;
+            } else {
+                campo.append(ch);
+                hayDatos = true;
+            }
+        }
+        if (hayDatos || campo.length() > 0) {
+            campos.add(campo.toString());
+            return campos;
+        }
+        return null;
+    }
+
+    /**
+     * Obtiene el numero de linea en el que empieza el ultimo registro leido.
+     *
+     * @return El numero de linea, empezando en 1.
+     */
+    public long getLinea() {
+        return lineaRegistro;
+    }
+
+    private int leer() throws IOException {
+        if (posicion == limite && !rellenar()) {
+            return -1;
+        }
+        return buffer[posicion++];
+    }
+
+    private int mirar() throws IOException {
+        if (posicion == limite && !rellenar()) {
+            return -1;
+        }
+        return buffer[posicion];
+    }
+
+    private boolean rellenar() throws IOException {
+        int leidos = reader.read(buffer, 0, buffer.length);
+        if (leidos <= 0) {
+            return false;
+        }
+        posicion = 0;
+        limite = leidos;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
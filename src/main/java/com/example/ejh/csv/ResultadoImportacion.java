@@ -0,0 +1,121 @@
+package com.example.ejh.csv;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Resultado de una importacion masiva: filas insertadas y filas rechazadas con su motivo.
+ */
+public class ResultadoImportacion {
+
+    /**
+     * Numero maximo de rechazos que se guardan con detalle; del resto solo se cuentan.
+     */
+    public static final int MAX_RECHAZOS_DETALLADOS = 10_000;
+
+    private long leidas;
+    private long insertadas;
+    private long rechazadas;
+    private long duracionNanos;
+    private boolean cancelada;
+    private final List<Rechazo> rechazos = new ArrayList<>();
+
+    void sumarLeidas(long filas) {
+        leidas += filas;
+    }
+
+    void sumarInsertadas(long filas) {
+        insertadas += filas;
+    }
+
+    void rechazar(long linea, String motivo) {
+        rechazadas++;
+        if (rechazos.size() < MAX_RECHAZOS_DETALLADOS) {
+            rechazos.add(new Rechazo(linea, motivo));
+        }
+    }
+
+    void terminar(long duracionNanos, boolean cancelada) {
+        this.duracionNanos = duracionNanos;
+        this.cancelada = cancelada;
+    }
+
+    public long getLeidas() {
+        return leidas;
+    }
+
+    public long getInsertadas() {
+        return insertadas;
+    }
+
+    public long getRechazadas() {
+        return rechazadas;
+    }
+
+    public boolean isCancelada() {
+        return cancelada;
+    }
+
+    /**
+     * Obtiene los rechazos guardados con detalle, como mucho {@link #MAX_RECHAZOS_DETALLADOS}.
+     *
+     * @return Los rechazos en el orden del archivo.
+     */
+    public List<Rechazo> getRechazos() {
+        return Collections.unmodifiableList(rechazos);
+    }
+
+    public double getSegundos() {
+        return duracionNanos / 1_000_000_000.0;
+    }
+
+    public double getFilasPorSegundo() {
+        return duracionNanos == 0 ? 0 : insertadas / getSegundos();
+    }
+
+    /**
+     * Escribe el informe de filas rechazadas, una por linea con su numero de linea y motivo.
+     *
+     * @param archivo El archivo en el que se escribe el informe.
+     * @throws IOException Si no se pudo escribir.
+     */
+    public void escribirInforme(Path archivo) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(archivo, StandardCharsets.UTF_8)) {
+            for (Rechazo rechazo : rechazos) {
+                out.write("Linea " + rechazo.getLinea() + ": " + rechazo.getMotivo());
+                out.newLine();
+            }
+            if (rechazadas > rechazos.size()) {
+                out.write("... y " + (rechazadas - rechazos.size()) + " filas rechazadas mas.");
+                out.newLine();
+            }
+        }
+    }
+
+    /**
+     * Fila rechazada durante la importacion.
+     */
+    public static final class Rechazo {
+        private final long linea;
+        private final String motivo;
+
+        Rechazo(long linea, String motivo) {
+            this.linea = linea;
+            this.motivo = motivo;
+        }
+
+        public long getLinea() {
+            return linea;
+        }
+
+        public String getMotivo() {
+            return motivo;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.ejh.db;
+
+import java.sql.SQLTransientConnectionException;
+
+/**
+ * Error que da el {@link PoolConexiones} sin intentar conectar mientras la base de datos no
+ * responde, en lugar de esperar a que venza el tiempo de conexion. El pool sigue intentando
+ * reconectar en segundo plano; no tiene sentido repetir la operacion hasta entonces.
+ */
+public class BaseDatosNoDisponible extends SQLTransientConnectionException {
+    private final long reintentoMs;
+
+    /**
+     * Constructor para crear el error.
+     *
+     * @param reintentoMs El tiempo que falta para el siguiente intento de reconexion.
+     */
+    public BaseDatosNoDisponible(long reintentoMs) {
+        super("La base de datos no responde; se volvera a intentar conectar en " + reintentoMs + " ms", "08001");
+        this.reintentoMs = reintentoMs;
+    }
+
+    /**
+     * Obtiene el tiempo que faltaba para el siguiente intento de reconexion al dar el error.
+     *
+     * @return El tiempo en milisegundos.
+     */
+    public long getReintentoMs() {
+        return reintentoMs;
+    }
+}
@@ -0,0 +1,742 @@
+package com.example.ejh.db;
+
+import com.example.ejh.metricas.Metricas;
+import com.example.ejh.model.Persona;
+import com.example.ejh.tareas.EjecutorTareas;
+import com.example.ejh.tareas.TareaBD;
+import javafx.animation.PauseTransition;
+import javafx.util.Duration;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Cola de escritura diferida de las altas, modificaciones y bajas de personas. Los cambios
+ * se aplican en la tabla al momento y se guardan aqui; varios cambios sobre la misma
+ * persona se combinan en uno, y la cola se escribe en una sola transaccion cuando llega a
+ * un numero de cambios o cuando pasa un tiempo desde el primero.
+ *
+ * <p>Las altas reciben un id temporal negativo hasta que se escriben; despues se entrega
+ * el id definitivo para sustituir la fila. Si la transaccion falla, se repite cambio a
+ * cambio y se informa de los que no se pudieron escribir, con sus datos originales para
+ * deshacerlos en la tabla.</p>
+ *
+ * <p>Las modificaciones solo se escriben si la persona sigue en la version que tenia antes
+ * del primer cambio pendiente; si otro equipo la ha cambiado entretanto, la modificacion
+ * falla como conflicto en lugar de pisar sus datos. Las bajas se escriben siempre.</p>
+ *
+ * <p>Al cerrar la aplicacion, los cambios que no se pueden escribir, salvo los conflictos, se
+ * guardan en un archivo y se vuelven a apuntar en el siguiente arranque con {@link #recuperar}.</p>
+ *
+ * <p>Todos los metodos se deben llamar desde el hilo de JavaFX.</p>
+ */
+public class ColaEscritura {
+
+    private static final String MOTIVO_CONFLICTO = "La persona ha cambiado o ya no existe en la base de datos.";
+    private static final int MARCA = 0x454A4850; // "EJHP"
+    private static final int VERSION = 1;
+
+    /**
+     * Tipo de cambio pendiente.
+     */
+    public enum Tipo {
+        ALTA, MODIFICACION, BAJA
+    }
+
+    private final RepositorioPersonas repositorio;
+    private final Path archivoPendientes;
+    private final String origen;
+    private final int maximoPendientes;
+    // Null si solo se escribe al llegar al maximo
+    private final PauseTransition temporizador;
+    private final Consumer<Resultado> alEscribir;
+
+    // Cambios pendientes por id, en el orden en el que se hicieron
+    private final Map<Integer, Operacion> pendientes = new LinkedHashMap<>();
+    private TareaBD<Resultado> enCurso;
+    // Los cambios que se estan escribiendo, en enCurso o en la escritura del cierre
+    private List<Operacion> escribiendo = List.of();
+    private int siguienteIdTemporal = -1;
+    // Al cerrar: se completa con los pendientes cuando termina la escritura en curso
+    private CompletableFuture<List<Operacion>> alVaciar;
+    private final List<Fallo> conflictosCierre = new ArrayList<>();
+
+    /**
+     * Constructor para crear la cola.
+     *
+     * @param repositorio El almacen en el que se escriben los cambios.
+     * @param archivoPendientes El archivo en el que se guardan al cerrar los cambios que no se pudieron escribir.
+     * @param origen El origen de los datos, para no escribir los cambios guardados en otra base de datos.
+     * @param maximoPendientes El numero de cambios a partir del cual se escribe la cola.
+     * @param intervaloMs El tiempo maximo que espera un cambio a ser escrito, o 0 para escribir
+     *                    solo al llegar al numero maximo de cambios, al pedirlo o al cerrar.
+     * @param alEscribir Lo que se hace con el resultado de cada escritura, en el hilo de JavaFX.
+     */
+    public ColaEscritura(RepositorioPersonas repositorio, Path archivoPendientes, String origen, int maximoPendientes,
+                         long intervaloMs, Consumer<Resultado> alEscribir) {
+        this.repositorio = repositorio;
+        this.archivoPendientes = archivoPendientes;
+        this.origen = origen;
+        this.maximoPendientes = maximoPendientes;
+        this.alEscribir = alEscribir;
+        if (intervaloMs > 0) {
+            this.temporizador = new PauseTransition(Duration.millis(intervaloMs));
+            this.temporizador.setOnFinished(e -> escribir());
+        } else {
+            this.temporizador = null;
+        }
+    }
+
+    /**
+     * Apunta el alta de una persona.
+     *
+     * @param nombre El nombre.
+     * @param apellidos Los apellidos.
+     * @param edad La edad.
+     * @return La persona con un id temporal, para mostrarla en la tabla.
+     */
+    public Persona agregar(String nombre, String apellidos, int edad) {
+        Persona persona = new Persona(siguienteIdTemporal--, nombre, apellidos, edad);
+        apuntar(new Operacion(Tipo.ALTA, persona, null));
+        return persona;
+    }
+
+    /**
+     * Apunta la modificacion de una persona.
+     *
+     * @param anterior La persona tal y como esta en la tabla.
+     * @param nueva La persona con los nuevos datos y el mismo id.
+     */
+    public void modificar(Persona anterior, Persona nueva) {
+        apuntar(new Operacion(Tipo.MODIFICACION, nueva, anterior));
+    }
+
+    /**
+     * Apunta la baja de una persona.
+     *
+     * @param persona La persona tal y como esta en la tabla.
+     */
+    public void eliminar(Persona persona) {
+        apuntar(new Operacion(Tipo.BAJA, persona, persona));
+    }
+
+    /**
+     * Obtiene el numero de cambios que esperan a ser escritos, sin contar los que se estan escribiendo.
+     *
+     * @return El numero de cambios pendientes.
+     */
+    public int getPendientes() {
+        return pendientes.size();
+    }
+
+    /**
+     * Indica si queda algo por escribir: cambios pendientes o una escritura en curso.
+     *
+     * @return true si hay cambios sin escribir.
+     */
+    public boolean hayCambios() {
+        return !pendientes.isEmpty() || !escribiendo.isEmpty();
+    }
+
+    private void apuntar(Operacion operacion) {
+        combinar(operacion);
+        if (pendientes.size() >= maximoPendientes) {
+            escribir();
+        } else if (alVaciar == null && temporizador != null
+                && temporizador.getStatus() != PauseTransition.Status.RUNNING) {
+            temporizador.playFromStart();
+        }
+    }
+
+    /**
+     * Junta un cambio con el que ya estuviera pendiente sobre la misma persona y deja el
+     * resultado al final de los pendientes.
+     */
+    private void combinar(Operacion operacion) {
+        int id = operacion.persona.getId();
+        Operacion previa = pendientes.remove(id);
+        Operacion combinada = previa == null ? operacion : combinar(previa, operacion);
+        if (combinada != null) {
+            pendientes.put(id, combinada);
+        }
+    }
+
+    /**
+     * Combina dos cambios sobre la misma persona en el que los sustituye, o null si se anulan.
+     */
+    private static Operacion combinar(Operacion anterior, Operacion siguiente) {
+        if (anterior.tipo == Tipo.ALTA) {
+            // Todavia no se ha escrito: se da de alta directamente con los datos nuevos, o no llega a la base de datos
+            return siguiente.tipo == Tipo.BAJA ? null : new Operacion(Tipo.ALTA, siguiente.persona, null);
+        }
+        if (anterior.tipo == Tipo.MODIFICACION) {
+            Persona persona = siguiente.tipo == Tipo.BAJA ? anterior.original : siguiente.persona;
+            return new Operacion(siguiente.tipo, persona, anterior.original);
+        }
+        return siguiente;
+    }
+
+    /**
+     * Escribe ahora los cambios pendientes en segundo plano. Si ya hay una escritura en
+     * curso, se escriben cuando termine.
+     */
+    public void escribir() {
+        detenerTemporizador();
+        if (alVaciar != null || enCurso != null || pendientes.isEmpty()) {
+            return;
+        }
+        List<Operacion> operaciones = sacarPendientes();
+        escribiendo = operaciones;
+        enCurso = EjecutorTareas.lanzar(tarea -> escribir(tarea, operaciones), this::terminar,
+                error -> terminar(Resultado.fallido(operaciones, error)));
+    }
+
+    private void detenerTemporizador() {
+        if (temporizador != null) {
+            temporizador.stop();
+        }
+    }
+
+    /**
+     * Saca los cambios pendientes para escribirlos, en el orden en el que se apuntaron.
+     */
+    List<Operacion> sacarPendientes() {
+        List<Operacion> operaciones = new ArrayList<>(pendientes.values());
+        pendientes.clear();
+        return operaciones;
+    }
+
+    private void terminar(Resultado resultado) {
+        enCurso = null;
+        escribiendo = List.of();
+        if (alVaciar != null) {
+            // Se esta cerrando: lo que ha fallado sin ser un conflicto se intenta otra vez con los pendientes
+            for (Fallo fallo : resultado.fallos) {
+                if (fallo.conflicto) {
+                    conflictosCierre.add(fallo);
+                } else {
+                    devolver(fallo.operacion);
+                }
+            }
+            resultado.fallos.clear();
+            reasignarIds(resultado);
+            escribiendo = sacarPendientes();
+            alVaciar.complete(escribiendo);
+            return;
+        }
+        reasignarIds(resultado);
+        alEscribir.accept(resultado);
+        if (pendientes.size() >= maximoPendientes) {
+            escribir();
+        } else if (!pendientes.isEmpty() && temporizador != null) {
+            temporizador.playFromStart();
+        }
+    }
+
+    /**
+     * Vuelve a poner en los pendientes un cambio que no se pudo escribir, delante de los que
+     * se apuntaron despues sobre la misma persona.
+     */
+    private void devolver(Operacion operacion) {
+        int id = operacion.persona.getId();
+        Operacion posterior = pendientes.remove(id);
+        Operacion combinada = posterior == null ? operacion : combinar(operacion, posterior);
+        if (combinada != null) {
+            pendientes.put(id, combinada);
+        }
+    }
+
+    /**
+     * Pasa los cambios apuntados sobre un id temporal mientras se escribia su alta al id
+     * definitivo, o los descarta si el alta ha fallado. Los cambios apuntados sobre una persona
+     * mientras se escribia una modificacion suya parten ahora de lo escrito y de su nueva version.
+     */
+    void reasignarIds(Resultado resultado) {
+        for (Persona modificada : resultado.modificadas) {
+            Operacion operacion = pendientes.get(modificada.getId());
+            if (operacion != null && operacion.tipo != Tipo.ALTA) {
+                Persona persona = operacion.tipo == Tipo.BAJA ? modificada : operacion.persona;
+                pendientes.put(modificada.getId(), new Operacion(operacion.tipo, persona, modificada));
+            }
+        }
+        for (Alta alta : resultado.altas) {
+            Operacion operacion = pendientes.remove(alta.temporal.getId());
+            if (operacion != null) {
+                int id = alta.definitiva.getId();
+                Persona original = operacion.original == null ? alta.definitiva : operacion.original;
+                pendientes.put(id, new Operacion(operacion.tipo, conId(operacion.persona, id), conId(original, id)));
+            }
+        }
+        for (Fallo fallo : resultado.fallos) {
+            if (fallo.operacion.tipo == Tipo.ALTA) {
+                pendientes.remove(fallo.operacion.persona.getId());
+            }
+        }
+    }
+
+    /**
+     * Escribe todos los cambios antes de cerrar la aplicacion sin bloquear el hilo de JavaFX:
+     * se espera en segundo plano a la escritura en curso y despues se escriben los pendientes.
+     * Desde ese momento la cola ya no escribe por su cuenta. Los cambios que no se pueden
+     * escribir, salvo los conflictos, se guardan en el archivo de pendientes.
+     *
+     * @param alTerminar Lo que se hace con los cambios que no se han escrito, en el hilo de JavaFX.
+     *                   No se llama si se cancela la tarea.
+     * @return La tarea de la escritura, para mostrar su progreso o cancelarla.
+     */
+    public TareaBD<Resultado> vaciar(Consumer<List<Fallo>> alTerminar) {
+        detenerTemporizador();
+        CompletableFuture<List<Operacion>> restantes = new CompletableFuture<>();
+        alVaciar = restantes;
+        if (enCurso == null) {
+            escribiendo = sacarPendientes();
+            restantes.complete(escribiendo);
+        }
+        return EjecutorTareas.lanzar(tarea -> {
+            if (!restantes.isDone()) {
+                tarea.mensaje("Esperando a la escritura en curso...");
+            }
+            List<Operacion> operaciones = restantes.get();
+            tarea.mensaje("Guardando " + operaciones.size() + " cambios pendientes...");
+            return operaciones.isEmpty() ? new Resultado() : escribir(tarea, operaciones);
+        }, resultado -> vaciado(resultado, alTerminar),
+                error -> vaciado(Resultado.fallido(escribiendo, error), alTerminar));
+    }
+
+    private void vaciado(Resultado resultado, Consumer<List<Fallo>> alTerminar) {
+        escribiendo = List.of();
+        List<Fallo> sinEscribir = new ArrayList<>(conflictosCierre);
+        for (Fallo fallo : resultado.fallos) {
+            sinEscribir.add(fallo);
+            if (!fallo.conflicto) {
+                devolver(fallo.operacion);
+            }
+        }
+        conflictosCierre.clear();
+        // Las altas escritas no hacen falta: los pendientes que quedan son los que han fallado
+        guardarPendientes();
+        alTerminar.accept(sinEscribir);
+    }
+
+    /**
+     * Guarda en el archivo de pendientes los cambios que no se han escrito, incluidos los de
+     * una escritura que no ha terminado, sin esperar a nada. Se llama al cerrar la aplicacion;
+     * despues de {@link #vaciar} normalmente ya no queda ninguno. Si la escritura en curso
+     * llega a confirmarse, sus altas se repetiran en el proximo arranque, pero no se pierden.
+     */
+    public void cerrar() {
+        detenerTemporizador();
+        if (!escribiendo.isEmpty()) {
+            List<Operacion> apuntados = sacarPendientes();
+            escribiendo.forEach(this::combinar);
+            apuntados.forEach(this::combinar);
+            escribiendo = List.of();
+        }
+        guardarPendientes();
+    }
+
+    /**
+     * Vuelve a apuntar los cambios guardados en el archivo de pendientes al cerrar la ultima
+     * vez, con nuevos ids temporales para las altas, y borra el archivo. Si los cambios son de
+     * otro origen, no se apuntan y el archivo se conserva.
+     *
+     * @return Los cambios apuntados, para aplicarlos en la tabla.
+     */
+    public List<Operacion> recuperar() {
+        List<Operacion> recuperadas = new ArrayList<>();
+        if (archivoPendientes == null || !Files.isRegularFile(archivoPendientes)) {
+            return recuperadas;
+        }
+        try {
+            List<Operacion> guardadas = leerPendientes(archivoPendientes, origen);
+            if (guardadas == null) {
+                // Son de otra base de datos: se dejan para cuando se vuelva a usar
+                return recuperadas;
+            }
+            for (Operacion operacion : guardadas) {
+                if (operacion.tipo == Tipo.ALTA) {
+                    operacion = new Operacion(Tipo.ALTA, conId(operacion.persona, siguienteIdTemporal--), null);
+                }
+                recuperadas.add(operacion);
+                apuntar(operacion);
+            }
+            Files.delete(archivoPendientes);
+        } catch (IOException e) {
+            System.err.println("No se pudieron recuperar los cambios pendientes de " + archivoPendientes + ": " + e);
+        }
+        return recuperadas;
+    }
+
+    private void guardarPendientes() {
+        if (pendientes.isEmpty()) {
+            return;
+        }
+        Metricas.contar("escritura.guardados_al_cerrar", pendientes.size());
+        try {
+            if (archivoPendientes == null) {
+                throw new IOException("No hay archivo de pendientes");
+            }
+            escribirPendientes(archivoPendientes, origen, pendientes.values());
+            pendientes.clear();
+        } catch (IOException e) {
+            // Ultimo recurso para no perderlos del todo
+            System.err.println("No se pudieron guardar los cambios pendientes: " + e.getMessage());
+            for (Operacion operacion : pendientes.values()) {
+                System.err.println("  " + operacion);
+            }
+        }
+    }
+
+    /**
+     * Escribe los cambios en el archivo de pendientes: cabecera con la marca {@code EJHP}, la
+     * version, el origen y el numero de cambios; despues cada cambio con su tipo, la persona y,
+     * salvo en las altas, la original. Se escribe en un temporal que sustituye al anterior.
+     */
+    private static void escribirPendientes(Path archivo, String origen, Collection<Operacion> operaciones)
+            throws IOException {
+        Path directorio = archivo.toAbsolutePath().getParent();
+        Files.createDirectories(directorio);
+        Path temporal = Files.createTempFile(directorio, archivo.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporal)))) {
+                out.writeInt(MARCA);
+                out.writeInt(VERSION);
+                out.writeUTF(origen);
+                out.writeInt(operaciones.size());
+                for (Operacion operacion : operaciones) {
+                    out.writeByte(operacion.tipo.ordinal());
+                    escribirPersona(out, operacion.persona);
+                    if (operacion.tipo != Tipo.ALTA) {
+                        escribirPersona(out, operacion.original);
+                    }
+                }
+            }
+            Files.move(temporal, archivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporal);
+        }
+    }
+
+    /**
+     * Lee los cambios del archivo de pendientes, o devuelve null si son de otro origen.
+     */
+    private static List<Operacion> leerPendientes(Path archivo, String origen) throws IOException {
+        List<Operacion> operaciones = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(archivo)))) {
+            if (in.readInt() != MARCA || in.readInt() != VERSION) {
+                throw new IOException("No es un archivo de cambios pendientes");
+            }
+            if (!origen.equals(in.readUTF())) {
+                return null;
+            }
+            int cambios = in.readInt();
+            Tipo[] tipos = Tipo.values();
+            for (int i = 0; i < cambios; i++) {
+                Tipo tipo = tipos[in.readByte()];
+                Persona persona = leerPersona(in);
+                Persona original = tipo == Tipo.ALTA ? null : leerPersona(in);
+                operaciones.add(new Operacion(tipo, persona, original));
+            }
+        }
+        return operaciones;
+    }
+
+    private static void escribirPersona(DataOutputStream out, Persona persona) throws IOException {
+        out.writeInt(persona.getId());
+        out.writeUTF(persona.getNombre());
+        out.writeUTF(persona.getApellidos());
+        out.writeInt(persona.getEdad());
+        out.writeInt(persona.getVersion());
+    }
+
+    private static Persona leerPersona(DataInputStream in) throws IOException {
+        return new Persona(in.readInt(), in.readUTF(), in.readUTF(), in.readInt(), in.readInt());
+    }
+
+    /**
+     * Escribe los cambios de una vez con {@link RepositorioPersonas#escribirVarias}. Si falla,
+     * los escribe uno a uno para saber cuales fallan. Se ejecuta en segundo plano.
+     */
+    private Resultado escribir(TareaBD<?> tarea, List<Operacion> operaciones) throws SQLException {
+        long inicio = System.nanoTime();
+        Resultado resultado;
+        try {
+            resultado = escribirLote(tarea, operaciones);
+        } catch (SQLException e) {
+            if (esErrorConexion(e)) {
+                throw e;
+            }
+            resultado = escribirUnoAUno(tarea, operaciones);
+        }
+        Metricas.histograma("bd.escritura_diferida").registrar(System.nanoTime() - inicio);
+        Metricas.contar("escritura.cambios", operaciones.size());
+        Metricas.contar("escritura.fallos", resultado.fallos.size());
+        return resultado;
+    }
+
+    private Resultado escribirLote(TareaBD<?> tarea, List<Operacion> operaciones) throws SQLException {
+        List<Operacion> altas = new ArrayList<>();
+        List<Operacion> modificaciones = new ArrayList<>();
+        List<Integer> bajas = new ArrayList<>();
+        for (Operacion operacion : operaciones) {
+            if (operacion.tipo == Tipo.ALTA) {
+                altas.add(operacion);
+            } else if (operacion.tipo == Tipo.MODIFICACION) {
+                modificaciones.add(operacion);
+            } else {
+                bajas.add(operacion.persona.getId());
+            }
+        }
+        List<Persona> personasModificadas = new ArrayList<>(modificaciones.size());
+        for (Operacion operacion : modificaciones) {
+            personasModificadas.add(aEscribir(operacion));
+        }
+        List<Persona> personasAltas = new ArrayList<>(altas.size());
+        for (Operacion operacion : altas) {
+            personasAltas.add(operacion.persona);
+        }
+        LoteEscrito lote = repositorio.escribirVarias(tarea, bajas, personasModificadas, personasAltas);
+        Resultado resultado = new Resultado();
+        for (int i = 0; i < modificaciones.size(); i++) {
+            if (lote.isGuardada(i)) {
+                resultado.modificadas.add(escrita(modificaciones.get(i)));
+            } else {
+                resultado.fallos.add(Fallo.conflicto(modificaciones.get(i)));
+            }
+        }
+        for (int i = 0; i < altas.size(); i++) {
+            Persona persona = altas.get(i).persona;
+            resultado.altas.add(new Alta(persona, conId(persona, lote.getAltas().get(i).getId())));
+        }
+        return resultado;
+    }
+
+    private Resultado escribirUnoAUno(TareaBD<?> tarea, List<Operacion> operaciones) {
+        Resultado resultado = new Resultado();
+        SQLException errorConexion = null;
+        for (Operacion operacion : operaciones) {
+            if (errorConexion != null) {
+                resultado.fallos.add(new Fallo(operacion, errorConexion.getMessage()));
+                continue;
+            }
+            try {
+                escribirUna(tarea, operacion, resultado);
+            } catch (SQLException e) {
+                resultado.fallos.add(new Fallo(operacion, e.getMessage()));
+                if (esErrorConexion(e)) {
+                    errorConexion = e;
+                }
+            }
+        }
+        return resultado;
+    }
+
+    private void escribirUna(TareaBD<?> tarea, Operacion operacion, Resultado resultado) throws SQLException {
+        Persona persona = operacion.persona;
+        switch (operacion.tipo) {
+            case ALTA:
+                Persona definitiva = repositorio.insertar(tarea, persona.getNombre(), persona.getApellidos(),
+                        persona.getEdad());
+                resultado.altas.add(new Alta(persona, conId(persona, definitiva.getId())));
+                break;
+            case MODIFICACION:
+                if (repositorio.modificar(tarea, aEscribir(operacion))) {
+                    resultado.modificadas.add(escrita(operacion));
+                } else {
+                    resultado.fallos.add(Fallo.conflicto(operacion));
+                }
+                break;
+            default:
+                repositorio.eliminar(tarea, persona.getId());
+        }
+    }
+
+    /**
+     * Obtiene la persona con los datos nuevos y la version que tenia antes del primer cambio
+     * pendiente, que es la que se comprueba al escribirla.
+     */
+    private static Persona aEscribir(Operacion operacion) {
+        Persona persona = operacion.persona;
+        return new Persona(persona.getId(), persona.getNombre(), persona.getApellidos(), persona.getEdad(),
+                operacion.original.getVersion());
+    }
+
+    /**
+     * Obtiene la persona como queda en la base de datos despues de escribir su modificacion.
+     */
+    private static Persona escrita(Operacion operacion) {
+        Persona persona = operacion.persona;
+        return new Persona(persona.getId(), persona.getNombre(), persona.getApellidos(), persona.getEdad(),
+                operacion.original.getVersion() + 1);
+    }
+
+    private static Persona conId(Persona persona, int id) {
+        return new Persona(id, persona.getNombre(), persona.getApellidos(), persona.getEdad(), persona.getVersion());
+    }
+
+    private static boolean esErrorConexion(SQLException e) {
+        return e.getSQLState() != null && e.getSQLState().startsWith("08");
+    }
+
+    /**
+     * Cambio pendiente sobre una persona.
+     */
+    public static final class Operacion {
+        private final Tipo tipo;
+        private final Persona persona;
+        private final Persona original;
+
+        private Operacion(Tipo tipo, Persona persona, Persona original) {
+            this.tipo = tipo;
+            this.persona = persona;
+            this.original = original;
+        }
+
+        public Tipo getTipo() {
+            return tipo;
+        }
+
+        /**
+         * Obtiene la persona con los datos que se quieren escribir; en una baja, la eliminada.
+         *
+         * @return La persona.
+         */
+        public Persona getPersona() {
+            return persona;
+        }
+
+        /**
+         * Obtiene la persona como estaba antes del primer cambio pendiente, o null en un alta.
+         *
+         * @return La persona original.
+         */
+        public Persona getOriginal() {
+            return original;
+        }
+
+        @Override
+        public String toString() {
+            return tipo + " " + persona;
+        }
+    }
+
+    /**
+     * Alta escrita: la persona con el id temporal y con el definitivo.
+     */
+    public static final class Alta {
+        private final Persona temporal;
+        private final Persona definitiva;
+
+        Alta(Persona temporal, Persona definitiva) {
+            this.temporal = temporal;
+            this.definitiva = definitiva;
+        }
+
+        public Persona getTemporal() {
+            return temporal;
+        }
+
+        public Persona getDefinitiva() {
+            return definitiva;
+        }
+    }
+
+    /**
+     * Cambio que no se pudo escribir.
+     */
+    public static final class Fallo {
+        private final Operacion operacion;
+        private final String motivo;
+        private final boolean conflicto;
+
+        Fallo(Operacion operacion, String motivo) {
+            this(operacion, motivo, false);
+        }
+
+        private Fallo(Operacion operacion, String motivo, boolean conflicto) {
+            this.operacion = operacion;
+            this.motivo = motivo;
+            this.conflicto = conflicto;
+        }
+
+        static Fallo conflicto(Operacion operacion) {
+            return new Fallo(operacion, MOTIVO_CONFLICTO, true);
+        }
+
+        public Operacion getOperacion() {
+            return operacion;
+        }
+
+        public String getMotivo() {
+            return motivo;
+        }
+
+        /**
+         * Indica si el cambio ha fallado porque otro equipo ha cambiado o borrado la persona.
+         * Los demas fallos, como los de conexion, pueden salir bien si se repiten.
+         *
+         * @return true si es un conflicto.
+         */
+        public boolean isConflicto() {
+            return conflicto;
+        }
+    }
+
+    /**
+     * Resultado de una escritura de la cola.
+     */
+    public static final class Resultado {
+        private final List<Alta> altas = new ArrayList<>();
+        private final List<Persona> modificadas = new ArrayList<>();
+        private final List<Fallo> fallos = new ArrayList<>();
+
+        Resultado() {
+        }
+
+        Resultado(List<Alta> altas, List<Persona> modificadas, List<Fallo> fallos) {
+            this.altas.addAll(altas);
+            this.modificadas.addAll(modificadas);
+            this.fallos.addAll(fallos);
+        }
+
+        private static Resultado fallido(List<Operacion> operaciones, Throwable error) {
+            Resultado resultado = new Resultado();
+            for (Operacion operacion : operaciones) {
+                resultado.fallos.add(new Fallo(operacion, error.getMessage()));
+            }
+            return resultado;
+        }
+
+        public List<Alta> getAltas() {
+            return Collections.unmodifiableList(altas);
+        }
+
+        /**
+         * Obtiene las personas modificadas tal y como han quedado, con su nueva version.
+         *
+         * @return Las personas modificadas.
+         */
+        public List<Persona> getModificadas() {
+            return Collections.unmodifiableList(modificadas);
+        }
+
+        public List<Fallo> getFallos() {
+            return Collections.unmodifiableList(fallos);
+        }
+    }
+}
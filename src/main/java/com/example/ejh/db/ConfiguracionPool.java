@@ -0,0 +1,259 @@
+package com.example.ejh.db;
+
+public class ConfiguracionPool {
+    private final String url;
+    private final String user;
+    private final String password;
+
+    private int tamanoMinimo = 2;
+    private int tamanoMaximo = 10;
+    private long tiempoEsperaMs = 10_000;
+    private long tiempoInactividadMs = 5 * 60_000;
+    private long validarSiInactivaMs = 500;
+    private int timeoutValidacionSeg = 3;
+    private long umbralFugaMs = 60_000;
+    private long intervaloMantenimientoMs = 15_000;
+    private int sentenciasPorConexion = 32;
+    private long keepaliveMs = 60_000;
+    private int fallosParaAbrir = 3;
+    private long esperaReintentoMinimaMs = 250;
+    private long esperaReintentoMaximaMs = 10_000;
+    private long tiempoLecturaLargaMs = 10 * 60_000;
+
+    /**
+     * Constructor para crear la configuracion del pool con los datos de conexion.
+     *
+     * @param url La URL JDBC de la base de datos.
+     * @param user El usuario de la base de datos.
+     * @param password La contrasena del usuario.
+     */
+    public ConfiguracionPool(String url, String user, String password) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+    }
+
+    /**
+     * Crea una configuracion leyendo los tamanos y tiempos de las propiedades del sistema
+     * ({@code ejh.pool.min}, {@code ejh.pool.max}, {@code ejh.pool.espera},
+     * {@code ejh.pool.inactividad}, {@code ejh.pool.fuga}, {@code ejh.pool.sentencias},
+     * {@code ejh.pool.keepalive}, {@code ejh.pool.fallos}, {@code ejh.pool.reintento.max},
+     * {@code ejh.pool.lectura.larga}). Las que no existan mantienen su valor por defecto.
+     *
+     * @param url La URL JDBC de la base de datos.
+     * @param user El usuario de la base de datos.
+     * @param password La contrasena del usuario.
+     * @return La configuracion creada.
+     */
+    public static ConfiguracionPool desdePropiedades(String url, String user, String password) {
+        ConfiguracionPool config = new ConfiguracionPool(url, user, password);
+        config.setTamanoMinimo(Integer.getInteger("ejh.pool.min", config.tamanoMinimo));
+        config.setTamanoMaximo(Integer.getInteger("ejh.pool.max", config.tamanoMaximo));
+        config.setTiempoEsperaMs(Long.getLong("ejh.pool.espera", config.tiempoEsperaMs));
+        config.setTiempoInactividadMs(Long.getLong("ejh.pool.inactividad", config.tiempoInactividadMs));
+        config.setUmbralFugaMs(Long.getLong("ejh.pool.fuga", config.umbralFugaMs));
+        config.setSentenciasPorConexion(Integer.getInteger("ejh.pool.sentencias", config.sentenciasPorConexion));
+        config.setKeepaliveMs(Long.getLong("ejh.pool.keepalive", config.keepaliveMs));
+        config.setFallosParaAbrir(Integer.getInteger("ejh.pool.fallos", config.fallosParaAbrir));
+        config.setEsperaReintentoMaximaMs(Long.getLong("ejh.pool.reintento.max", config.esperaReintentoMaximaMs));
+        config.setTiempoLecturaLargaMs(Long.getLong("ejh.pool.lectura.larga", config.tiempoLecturaLargaMs));
+        return config;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getUser() {
+        return user;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    /**
+     * Obtiene el numero de conexiones que el pool mantiene abiertas aunque no se usen.
+     *
+     * @return El tamano minimo del pool.
+     */
+    public int getTamanoMinimo() {
+        return tamanoMinimo;
+    }
+
+    public void setTamanoMinimo(int tamanoMinimo) {
+        if (tamanoMinimo < 0) {
+            throw new IllegalArgumentException("El tamano minimo no puede ser negativo");
+        }
+        this.tamanoMinimo = tamanoMinimo;
+    }
+
+    /**
+     * Obtiene el numero maximo de conexiones abiertas a la vez.
+     *
+     * @return El tamano maximo del pool.
+     */
+    public int getTamanoMaximo() {
+        return tamanoMaximo;
+    }
+
+    public void setTamanoMaximo(int tamanoMaximo) {
+        if (tamanoMaximo < 1) {
+            throw new IllegalArgumentException("El tamano maximo debe ser al menos 1");
+        }
+        this.tamanoMaximo = tamanoMaximo;
+    }
+
+    /**
+     * Obtiene cuanto espera {@link PoolConexiones#obtenerConexion()} a que quede una conexion libre.
+     *
+     * @return El tiempo de espera en milisegundos.
+     */
+    public long getTiempoEsperaMs() {
+        return tiempoEsperaMs;
+    }
+
+    public void setTiempoEsperaMs(long tiempoEsperaMs) {
+        this.tiempoEsperaMs = tiempoEsperaMs;
+    }
+
+    /**
+     * Obtiene el tiempo tras el cual una conexion inactiva por encima del minimo se cierra.
+     *
+     * @return El tiempo de inactividad en milisegundos.
+     */
+    public long getTiempoInactividadMs() {
+        return tiempoInactividadMs;
+    }
+
+    public void setTiempoInactividadMs(long tiempoInactividadMs) {
+        this.tiempoInactividadMs = tiempoInactividadMs;
+    }
+
+    /**
+     * Obtiene el tiempo de inactividad a partir del cual una conexion se valida antes de prestarla.
+     * Las conexiones devueltas hace menos tiempo se entregan sin ida y vuelta extra al servidor.
+     *
+     * @return El tiempo en milisegundos.
+     */
+    public long getValidarSiInactivaMs() {
+        return validarSiInactivaMs;
+    }
+
+    public void setValidarSiInactivaMs(long validarSiInactivaMs) {
+        this.validarSiInactivaMs = validarSiInactivaMs;
+    }
+
+    public int getTimeoutValidacionSeg() {
+        return timeoutValidacionSeg;
+    }
+
+    public void setTimeoutValidacionSeg(int timeoutValidacionSeg) {
+        this.timeoutValidacionSeg = timeoutValidacionSeg;
+    }
+
+    /**
+     * Obtiene el tiempo que una conexion puede estar prestada antes de avisar de una posible fuga.
+     * Un valor de 0 desactiva la deteccion.
+     *
+     * @return El umbral en milisegundos.
+     */
+    public long getUmbralFugaMs() {
+        return umbralFugaMs;
+    }
+
+    public void setUmbralFugaMs(long umbralFugaMs) {
+        this.umbralFugaMs = umbralFugaMs;
+    }
+
+    public long getIntervaloMantenimientoMs() {
+        return intervaloMantenimientoMs;
+    }
+
+    public void setIntervaloMantenimientoMs(long intervaloMantenimientoMs) {
+        this.intervaloMantenimientoMs = intervaloMantenimientoMs;
+    }
+
+    /**
+     * Obtiene el numero maximo de sentencias que guarda cada conexion para reutilizarlas con
+     * {@link SentenciasEnCache}. Un valor de 0 desactiva la cache.
+     *
+     * @return El numero de sentencias.
+     */
+    public int getSentenciasPorConexion() {
+        return sentenciasPorConexion;
+    }
+
+    public void setSentenciasPorConexion(int sentenciasPorConexion) {
+        this.sentenciasPorConexion = sentenciasPorConexion;
+    }
+
+    /**
+     * Obtiene cada cuanto se comprueban en segundo plano las conexiones inactivas. Asi se
+     * descartan las que ha cortado el servidor y las demas no llegan a su {@code wait_timeout}.
+     * Un valor de 0 desactiva la comprobacion.
+     *
+     * @return El tiempo en milisegundos.
+     */
+    public long getKeepaliveMs() {
+        return keepaliveMs;
+    }
+
+    public void setKeepaliveMs(long keepaliveMs) {
+        this.keepaliveMs = keepaliveMs;
+    }
+
+    /**
+     * Obtiene el numero de fallos de conexion seguidos a partir del cual el pool deja de
+     * intentar conectar y falla al momento hasta que la base de datos vuelva a responder.
+     *
+     * @return El numero de fallos.
+     */
+    public int getFallosParaAbrir() {
+        return fallosParaAbrir;
+    }
+
+    public void setFallosParaAbrir(int fallosParaAbrir) {
+        if (fallosParaAbrir < 1) {
+            throw new IllegalArgumentException("Hace falta al menos un fallo para dejar de conectar");
+        }
+        this.fallosParaAbrir = fallosParaAbrir;
+    }
+
+    /**
+     * Obtiene la espera antes del primer intento de reconexion. Cada intento fallido la dobla
+     * hasta {@link #getEsperaReintentoMaximaMs()}.
+     *
+     * @return El tiempo en milisegundos.
+     */
+    public long getEsperaReintentoMinimaMs() {
+        return esperaReintentoMinimaMs;
+    }
+
+    public void setEsperaReintentoMinimaMs(long esperaReintentoMinimaMs) {
+        this.esperaReintentoMinimaMs = esperaReintentoMinimaMs;
+    }
+
+    public long getEsperaReintentoMaximaMs() {
+        return esperaReintentoMaximaMs;
+    }
+
+    public void setEsperaReintentoMaximaMs(long esperaReintentoMaximaMs) {
+        this.esperaReintentoMaximaMs = esperaReintentoMaximaMs;
+    }
+
+    /**
+     * Obtiene cuanto puede esperar a una respuesta del servidor una conexion obtenida con
+     * {@link PoolConexiones#obtenerConexionLarga()}. Las demas usan el {@code socketTimeout}
+     * de la URL, que es corto para no quedarse colgadas si la red se corta sin avisar.
+     *
+     * @return El tiempo en milisegundos; 0 para esperar sin limite.
+     */
+    public long getTiempoLecturaLargaMs() {
+        return tiempoLecturaLargaMs;
+    }
+
+    public void setTiempoLecturaLargaMs(long tiempoLecturaLargaMs) {
+        this.tiempoLecturaLargaMs = tiempoLecturaLargaMs;
+    }
+}
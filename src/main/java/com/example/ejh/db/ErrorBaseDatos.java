@@ -0,0 +1,31 @@
+package com.example.ejh.db;
+
+/**
+ * Error de una operacion de base de datos con el titulo y el mensaje que se muestran al usuario.
+ * Permite que el trabajo en segundo plano decida el texto de la alerta que luego se
+ * muestra en el hilo de JavaFX.
+ */
+public class ErrorBaseDatos extends Exception {
+    private final String titulo;
+
+    /**
+     * Constructor para crear el error con su titulo, mensaje y causa.
+     *
+     * @param titulo El titulo de la alerta.
+     * @param mensaje El mensaje de la alerta.
+     * @param causa La excepcion que provoco el error.
+     */
+    public ErrorBaseDatos(String titulo, String mensaje, Throwable causa) {
+        super(mensaje, causa);
+        this.titulo = titulo;
+    }
+
+    /**
+     * Obtiene el titulo de la alerta que se debe mostrar.
+     *
+     * @return El titulo del error.
+     */
+    public String getTitulo() {
+        return titulo;
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.ejh.db;
+
+/**
+ * Foto de las metricas de un {@link PoolConexiones} en un instante dado.
+ */
+public class EstadisticasPool {
+    private final int total;
+    private final int activas;
+    private final int inactivas;
+    private final int esperando;
+    private final long creadas;
+    private final long cerradas;
+    private final long prestamos;
+    private final long timeouts;
+    private final long fallosValidacion;
+    private final long fugasDetectadas;
+    private final long tiempoEsperaTotalNanos;
+    private final long sentenciasPreparadas;
+    private final long sentenciasReutilizadas;
+    private final boolean sinConexion;
+    private final long fallosConexion;
+    private final long rechazadas;
+    private final long reconexiones;
+
+    EstadisticasPool(int total, int activas, int inactivas, int esperando, long creadas, long cerradas,
+                     long prestamos, long timeouts, long fallosValidacion, long fugasDetectadas,
+                     long tiempoEsperaTotalNanos, long sentenciasPreparadas, long sentenciasReutilizadas,
+                     boolean sinConexion, long fallosConexion, long rechazadas, long reconexiones) {
+        this.total = total;
+        this.activas = activas;
+        this.inactivas = inactivas;
+        this.esperando = esperando;
+        this.creadas = creadas;
+        this.cerradas = cerradas;
+        this.prestamos = prestamos;
+        this.timeouts = timeouts;
+        this.fallosValidacion = fallosValidacion;
+        this.fugasDetectadas = fugasDetectadas;
+        this.tiempoEsperaTotalNanos = tiempoEsperaTotalNanos;
+        this.sentenciasPreparadas = sentenciasPreparadas;
+        this.sentenciasReutilizadas = sentenciasReutilizadas;
+        this.sinConexion = sinConexion;
+        this.fallosConexion = fallosConexion;
+        this.rechazadas = rechazadas;
+        this.reconexiones = reconexiones;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public int getActivas() {
+        return activas;
+    }
+
+    public int getInactivas() {
+        return inactivas;
+    }
+
+    public int getEsperando() {
+        return esperando;
+    }
+
+    public long getCreadas() {
+        return creadas;
+    }
+
+    public long getCerradas() {
+        return cerradas;
+    }
+
+    public long getPrestamos() {
+        return prestamos;
+    }
+
+    public long getTimeouts() {
+        return timeouts;
+    }
+
+    public long getFallosValidacion() {
+        return fallosValidacion;
+    }
+
+    public long getFugasDetectadas() {
+        return fugasDetectadas;
+    }
+
+    /**
+     * Obtiene el tiempo medio que se ha esperado para obtener una conexion.
+     *
+     * @return El tiempo medio de espera en milisegundos.
+     */
+    public double getEsperaMediaMs() {
+        return prestamos == 0 ? 0 : tiempoEsperaTotalNanos / 1_000_000.0 / prestamos;
+    }
+
+    public long getSentenciasPreparadas() {
+        return sentenciasPreparadas;
+    }
+
+    public long getSentenciasReutilizadas() {
+        return sentenciasReutilizadas;
+    }
+
+    /**
+     * Obtiene la proporcion de sentencias pedidas con {@link SentenciasEnCache} que se han reutilizado.
+     *
+     * @return Un valor entre 0 y 1.
+     */
+    public double getAciertosSentencias() {
+        long pedidas = sentenciasPreparadas + sentenciasReutilizadas;
+        return pedidas == 0 ? 0 : (double) sentenciasReutilizadas / pedidas;
+    }
+
+    /**
+     * Indica si el pool habia dejado de conectar porque la base de datos no respondia.
+     *
+     * @return true si los prestamos fallaban al momento.
+     */
+    public boolean isSinConexion() {
+        return sinConexion;
+    }
+
+    public long getFallosConexion() {
+        return fallosConexion;
+    }
+
+    /**
+     * Obtiene los prestamos que han fallado al momento mientras la base de datos no respondia.
+     *
+     * @return El numero de prestamos rechazados.
+     */
+    public long getRechazadas() {
+        return rechazadas;
+    }
+
+    public long getReconexiones() {
+        return reconexiones;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Pool[total=%d, activas=%d, inactivas=%d, esperando=%d, creadas=%d, cerradas=%d, "
+                        + "prestamos=%d, timeouts=%d, fallosValidacion=%d, fugas=%d, esperaMedia=%.3fms, "
+                        + "sentencias=%d preparadas/%d reutilizadas (%.0f%%), sinConexion=%b, fallosConexion=%d, "
+                        + "rechazadas=%d, reconexiones=%d]",
+                total, activas, inactivas, esperando, creadas, cerradas, prestamos, timeouts,
+                fallosValidacion, fugasDetectadas, getEsperaMediaMs(),
+                sentenciasPreparadas, sentenciasReutilizadas, getAciertosSentencias() * 100,
+                sinConexion, fallosConexion, rechazadas, reconexiones);
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.ejh.db;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Origen de conexiones a la base de datos. La conexion obtenida se debe cerrar despues de usarla.
+ */
+@FunctionalInterface
+public interface FuenteConexiones {
+
+    /**
+     * Obtiene una conexion a la base de datos.
+     *
+     * @return Una conexion lista para usar.
+     * @throws SQLException Si no se pudo obtener la conexion.
+     */
+    Connection obtenerConexion() throws SQLException;
+
+    /**
+     * Obtiene una conexion para un trabajo largo, como exportar, importar o leer toda la
+     * tabla, que puede esperar al servidor mas que el tiempo maximo de lectura normal.
+     *
+     * @return Una conexion lista para usar; por defecto, una normal.
+     * @throws SQLException Si no se pudo obtener la conexion.
+     */
+    default Connection obtenerConexionLarga() throws SQLException {
+        return obtenerConexion();
+    }
+}
@@ -0,0 +1,1156 @@
+package com.example.ejh.db;
+
+import com.example.ejh.indices.MapaEnteros;
+import com.example.ejh.metricas.Metricas;
+import com.example.ejh.model.FiltroPersonas;
+import com.example.ejh.model.OrdenPersonas;
+import com.example.ejh.model.Persona;
+import com.example.ejh.tareas.EjecutorTareas;
+import com.example.ejh.tareas.TareaBD;
+import javafx.animation.PauseTransition;
+import javafx.collections.ObservableListBase;
+import javafx.util.Duration;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * Lista observable de personas que se carga por paginas a medida que la tabla las pide.
+ * Las paginas se leen por keyset ({@code WHERE id > ? ORDER BY id LIMIT ?}), se guardan en
+ * una cache LRU acotada y se precargan las siguientes en la direccion del desplazamiento.
+ * Mientras una pagina no ha llegado, sus filas se devuelven como null y la tabla las
+ * muestra vacias.
+ *
+ * <p>Con {@link #setOrden} las filas se ordenan en la base de datos con ORDER BY y los
+ * cursores pasan a ser el valor de las columnas de ordenacion y el id de una fila. Solo se
+ * guardan los cursores de las filas que ya se han leido, por su posicion: al recargar se lee
+ * la primera pagina y el numero de filas, contado hasta {@value #CONTEO_MAXIMO} y estimado
+ * con EXPLAIN a partir de ahi, y una pagina lejana se alcanza saltando hacia delante con
+ * {@code LIMIT 1 OFFSET ?} desde el cursor conocido mas cercano, leyendo solo el indice.
+ * Asi cambiar el orden o el filtro cuesta lo mismo con diez filas que con diez millones, y
+ * solo lo que se salta se paga al desplazarse. Con un numero estimado la lista se ajusta
+ * al llegar al final de verdad.</p>
+ *
+ * <p>Con {@link #setFiltro} la lista muestra solo las personas que cumplen el filtro. Las
+ * condiciones se anaden a todas las consultas como {@code nombre LIKE 'x%'}, que MySQL
+ * resuelve con los indices secundarios de nombre, apellidos y edad.</p>
+ *
+ * <p>Una seleccion que abarca paginas sin leer se convierte con {@link #tramos} en tramos
+ * de posiciones seguidas, y {@link #leerIds} lee en segundo plano los ids de sus filas
+ * desde los cursores conocidos, para borrarlas o cambiarlas todas aunque no esten en memoria.</p>
+ *
+ * <p>Todos los metodos se deben llamar desde el hilo de JavaFX, salvo las lecturas en
+ * segundo plano que lo indican.</p>
+ */
+public class ListaPaginadaPersonas extends ObservableListBase<Persona> {
+
+    // %1$s es la condicion del filtro, vacia o terminada en AND; %2$s la del cursor y %3$s el ORDER BY
+    private static final String SQL_PAGINA =
+            "SELECT id, nombre, apellidos, edad, version FROM Persona WHERE %1$s %2$s ORDER BY %3$s LIMIT ?";
+    // Numero de filas hasta un maximo, para que contar cueste lo mismo con cualquier tamano
+    private static final String SQL_CONTAR = "SELECT COUNT(*) FROM (SELECT 1 FROM Persona WHERE %1$s %2$s LIMIT ?) t";
+    private static final String SQL_ESTIMAR = "EXPLAIN SELECT id FROM Persona WHERE %s TRUE";
+    private static final String SQL_MAXIMO = "SELECT COALESCE(MAX(id), 0) FROM Persona";
+    // Cursor de la fila que esta OFFSET filas despues de otro; %4$s son las columnas de ordenacion,
+    // que con el id son lo unico que se lee del indice
+    private static final String SQL_SALTAR =
+            "SELECT id%4$s FROM Persona WHERE %1$s %2$s ORDER BY %3$s LIMIT 1 OFFSET ?";
+    // Ids de las filas que van despues de un cursor, con las columnas de ordenacion para el cursor de la ultima
+    private static final String SQL_IDS =
+            "SELECT id%4$s FROM Persona WHERE %1$s %2$s ORDER BY %3$s LIMIT ?";
+    private static final int CONTEO_MAXIMO = 10_000;
+    private static final Duration ESPERA_RECARGA = Duration.seconds(5);
+
+    private final FuenteConexiones fuente;
+    private final int tamanoPagina;
+    private final int maxPaginas;
+    private final int paginasPrecarga;
+
+    private final Map<Integer, List<Persona>> paginas;
+    // Paginas que se estan leyendo, con el numero de su peticion; si la pagina se descarta
+    // mientras tanto, la respuesta no coincide y se ignora
+    private final Map<Integer, Integer> cargando = new HashMap<>();
+    // Paginas que esperan a que llegue una anterior para no saltar desde mas atras
+    private final Set<Integer> aplazadas = new HashSet<>();
+    // Posicion de cada persona de las paginas cargadas, por id
+    private final MapaEnteros posiciones = new MapaEnteros();
+    // Cursores conocidos por la posicion de su fila; la posicion -1 es el principio
+    private final NavigableMap<Integer, Cursor> cursores = new TreeMap<>();
+
+    private int tamano;
+    private boolean tamanoExacto;
+    private int ultimoId;
+    private int ultimaPaginaPedida;
+    private int generacion;
+    private int peticiones;
+    private boolean cursoresValidos;
+    // Filtro y orden de los cursores, para saber si se pueden seguir usando si falla una recarga
+    private FiltroPersonas filtroCursores;
+    private OrdenPersonas ordenCursores;
+    private int recargas;
+    private int fallosRecarga;
+    private PauseTransition reintentoRecarga;
+    private volatile FiltroPersonas filtro = FiltroPersonas.NINGUNO;
+    private volatile OrdenPersonas orden = OrdenPersonas.POR_ID;
+    private Consumer<Throwable> alFallar = Throwable::printStackTrace;
+
+    /**
+     * Constructor para crear la lista paginada.
+     *
+     * @param fuente El origen de las conexiones a la base de datos.
+     * @param tamanoPagina El numero de filas de cada pagina.
+     * @param maxPaginas El numero maximo de paginas que se guardan en memoria.
+     * @param paginasPrecarga El numero de paginas que se cargan por delante del desplazamiento.
+     */
+    public ListaPaginadaPersonas(FuenteConexiones fuente, int tamanoPagina, int maxPaginas, int paginasPrecarga) {
+        if (tamanoPagina < 1 || maxPaginas < paginasPrecarga + 1) {
+            throw new IllegalArgumentException("Tamano de pagina o numero de paginas no validos");
+        }
+        this.fuente = fuente;
+        this.tamanoPagina = tamanoPagina;
+        this.maxPaginas = maxPaginas;
+        this.paginasPrecarga = paginasPrecarga;
+        this.paginas = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, List<Persona>> eldest) {
+                if (size() > ListaPaginadaPersonas.this.maxPaginas) {
+                    olvidarPagina(eldest.getKey(), eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Establece lo que se hace cuando falla la carga de una pagina. Se llama en el hilo de JavaFX.
+     *
+     * @param alFallar El manejador del error.
+     */
+    public void setAlFallar(Consumer<Throwable> alFallar) {
+        this.alFallar = alFallar;
+    }
+
+    /**
+     * Cambia el filtro de la lista y vuelve a leer las filas que lo cumplen.
+     *
+     * @param filtro El nuevo filtro, o {@link FiltroPersonas#NINGUNO} para mostrar todas.
+     */
+    public void setFiltro(FiltroPersonas filtro) {
+        if (!filtro.equals(this.filtro)) {
+            this.filtro = filtro;
+            recargar();
+        }
+    }
+
+    public FiltroPersonas getFiltro() {
+        return filtro;
+    }
+
+    /**
+     * Cambia el orden de la lista y vuelve a leer las paginas en ese orden.
+     *
+     * @param orden El nuevo orden.
+     */
+    public void setOrden(OrdenPersonas orden) {
+        if (!orden.equals(this.orden)) {
+            this.orden = orden;
+            recargar();
+        }
+    }
+
+    public OrdenPersonas getOrden() {
+        return orden;
+    }
+
+    /**
+     * Lee la primera pagina y el numero de filas, exacto si no pasa de {@value #CONTEO_MAXIMO}
+     * y estimado si pasa. Se ejecuta en segundo plano y debe llamarse antes de mostrar la
+     * lista; despues se aplica con {@link #aplicarEstructura}. Si la conexion se corta, la
+     * lectura se repite con {@link Reintentos}.
+     *
+     * @param tarea La tarea que ejecuta la lectura, para poder cancelarla.
+     * @return La estructura leida.
+     * @throws SQLException Si falla la consulta.
+     */
+    public Estructura leerEstructura(TareaBD<?> tarea) throws SQLException {
+        FiltroPersonas filtro = this.filtro;
+        OrdenPersonas orden = this.orden;
+        return Reintentos.leer(tarea, () -> leerEstructura(tarea, filtro, orden));
+    }
+
+    private Estructura leerEstructura(TareaBD<?> tarea, FiltroPersonas filtro, OrdenPersonas orden)
+            throws SQLException {
+        try (Metricas.Cronometro c = Metricas.cronometrar("bd.estructura");
+             Connection conn = fuente.obtenerConexion()) {
+            Pagina primera = leerPagina(conn, tarea, null, 0, filtro, orden);
+            int total = primera.filas.size();
+            boolean exacto = total < tamanoPagina;
+            if (!exacto) {
+                total = contar(conn, tarea, null, CONTEO_MAXIMO, filtro, orden);
+                exacto = total < CONTEO_MAXIMO;
+                if (!exacto) {
+                    total = (int) Math.min(Integer.MAX_VALUE - 1, Math.max(total, estimar(conn, tarea, filtro)));
+                }
+            }
+            int maximo;
+            try (PreparedStatement pstmt = tarea.registrar(conn.prepareStatement(SQL_MAXIMO));
+                 ResultSet rs = pstmt.executeQuery()) {
+                rs.next();
+                maximo = rs.getInt(1);
+            }
+            return new Estructura(total, exacto, primera, maximo, filtro, orden);
+        }
+    }
+
+    /**
+     * Cuenta las filas que hay despues de un cursor, hasta un maximo.
+     */
+    private int contar(Connection conn, TareaBD<?> tarea, Cursor desde, int maximo, FiltroPersonas filtro,
+                       OrdenPersonas orden) throws SQLException {
+        String sql = String.format(SQL_CONTAR, condicion(filtro), condicionCursor(orden, desde));
+        try (PreparedStatement pstmt = tarea.registrar(conn.prepareStatement(sql))) {
+            pstmt.setInt(asignarCursor(pstmt, asignarParametros(pstmt, filtro), orden, desde), maximo);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    /**
+     * Estima las filas que cumplen el filtro con el plan de MySQL, que las calcula con las
+     * estadisticas de la tabla o bajando por el indice, sin recorrer las filas.
+     *
+     * @return La estimacion, o 0 si la base de datos no la da.
+     */
+    private static long estimar(Connection conn, TareaBD<?> tarea, FiltroPersonas filtro) {
+        try (PreparedStatement pstmt = tarea.registrar(conn.prepareStatement(String.format(SQL_ESTIMAR, condicion(filtro))))) {
+            asignarParametros(pstmt, filtro);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? (long) (rs.getLong("rows") * rs.getDouble("filtered") / 100) : 0;
+            }
+        } catch (SQLException e) {
+            // Sin estimacion la lista crece a medida que se llega al final
+            return 0;
+        }
+    }
+
+    /**
+     * Construye las condiciones del filtro para la clausula WHERE.
+     *
+     * @param filtro El filtro.
+     * @return Las condiciones seguidas de AND, o una cadena vacia si el filtro esta vacio.
+     */
+    static String condicion(FiltroPersonas filtro) {
+        StringBuilder sql = new StringBuilder();
+        if (!filtro.getPrefijoNombre().isEmpty()) {
+            sql.append("nombre LIKE ? AND ");
+        }
+        if (!filtro.getPrefijoApellidos().isEmpty()) {
+            sql.append("apellidos LIKE ? AND ");
+        }
+        if (filtro.tieneEdad()) {
+            sql.append("edad BETWEEN ? AND ? AND ");
+        }
+        return sql.toString();
+    }
+
+    /**
+     * Asigna los parametros de las condiciones de {@link #condicion}.
+     *
+     * @param pstmt La sentencia.
+     * @param filtro El filtro.
+     * @return El indice del siguiente parametro libre.
+     * @throws SQLException Si falla la asignacion.
+     */
+    static int asignarParametros(PreparedStatement pstmt, FiltroPersonas filtro) throws SQLException {
+        int i = 1;
+        if (!filtro.getPrefijoNombre().isEmpty()) {
+            pstmt.setString(i++, patronPrefijo(filtro.getPrefijoNombre()));
+        }
+        if (!filtro.getPrefijoApellidos().isEmpty()) {
+            pstmt.setString(i++, patronPrefijo(filtro.getPrefijoApellidos()));
+        }
+        if (filtro.tieneEdad()) {
+            pstmt.setInt(i++, filtro.getEdadMinima());
+            pstmt.setInt(i++, filtro.getEdadMaxima());
+        }
+        return i;
+    }
+
+    /**
+     * Construye la clausula ORDER BY, con el id al final para que no haya empates.
+     */
+    private static String orderBy(OrdenPersonas orden) {
+        StringBuilder sql = new StringBuilder();
+        for (int i = 0; i < orden.getNumColumnas(); i++) {
+            sql.append(orden.getColumna(i).getNombreColumna()).append(orden.isAscendente(i) ? " ASC, " : " DESC, ");
+        }
+        return sql.append(orden.isIdAscendente() ? "id ASC" : "id DESC").toString();
+    }
+
+    /**
+     * Construye la condicion de las filas que van despues del cursor en el orden indicado.
+     * Para columnas (a, b) es {@code a > ? OR (a = ? AND b > ?) OR (a = ? AND b = ? AND id > ?)},
+     * teniendo en cuenta que MySQL pone los NULL al principio en orden ascendente y al final
+     * en descendente.
+     *
+     * @param orden El orden.
+     * @param cursor El cursor, o null para la primera pagina.
+     * @return La condicion.
+     */
+    private static String condicionCursor(OrdenPersonas orden, Cursor cursor) {
+        if (cursor == null) {
+            return "TRUE";
+        }
+        StringBuilder sql = new StringBuilder("(");
+        StringBuilder iguales = new StringBuilder();
+        for (int i = 0; i < orden.getNumColumnas(); i++) {
+            String columna = orden.getColumna(i).getNombreColumna();
+            Object valor = cursor.valores[i];
+            String despues;
+            if (orden.isAscendente(i)) {
+                despues = valor == null ? columna + " IS NOT NULL" : columna + " > ?";
+            } else {
+                despues = valor == null ? "FALSE" : "(" + columna + " < ? OR " + columna + " IS NULL)";
+            }
+            sql.append('(').append(iguales).append(despues).append(") OR ");
+            iguales.append(valor == null ? columna + " IS NULL" : columna + " = ?").append(" AND ");
+        }
+        return sql.append('(').append(iguales).append(orden.isIdAscendente() ? "id > ?" : "id < ?")
+                .append("))").toString();
+    }
+
+    /**
+     * Asigna los parametros de la condicion de {@link #condicionCursor}, en el mismo orden
+     * en el que aparecen.
+     *
+     * @return El indice del siguiente parametro libre.
+     */
+    private static int asignarCursor(PreparedStatement pstmt, int indice, OrdenPersonas orden, Cursor cursor)
+            throws SQLException {
+        if (cursor == null) {
+            return indice;
+        }
+        for (int i = 0; i <= orden.getNumColumnas(); i++) {
+            for (int j = 0; j < i; j++) {
+                if (cursor.valores[j] != null) {
+                    pstmt.setObject(indice++, cursor.valores[j]);
+                }
+            }
+            if (i < orden.getNumColumnas()) {
+                if (cursor.valores[i] != null) {
+                    pstmt.setObject(indice++, cursor.valores[i]);
+                }
+            } else {
+                pstmt.setInt(indice++, cursor.id);
+            }
+        }
+        return indice;
+    }
+
+    /**
+     * Convierte un prefijo en un patron de LIKE, escapando los comodines para que el
+     * prefijo se busque tal cual y MySQL pueda usar el indice.
+     */
+    private static String patronPrefijo(String prefijo) {
+        StringBuilder patron = new StringBuilder(prefijo.length() + 1);
+        for (int i = 0; i < prefijo.length(); i++) {
+            char c = prefijo.charAt(i);
+            if (c == '%' || c == '_' || c == '\\') {
+                patron.append('\\');
+            }
+            patron.append(c);
+        }
+        return patron.append('%').toString();
+    }
+
+    /**
+     * Aplica la estructura leida en segundo plano: descarta las paginas y los cursores
+     * conocidos y pone la primera pagina.
+     *
+     * @param estructura La estructura leida con {@link #leerEstructura}.
+     */
+    public void aplicarEstructura(Estructura estructura) {
+        if (!estructura.filtro.equals(filtro) || !estructura.orden.equals(orden)) {
+            // Se leyo con un filtro o un orden que ya ha cambiado; llegara otra estructura
+            return;
+        }
+        int anterior = tamano;
+        generacion++;
+        paginas.clear();
+        posiciones.clear();
+        cargando.clear();
+        aplazadas.clear();
+        cursores.clear();
+        cursores.put(-1, null);
+        ultimoId = estructura.maximo;
+        tamano = estructura.total;
+        tamanoExacto = estructura.exacto;
+        cursoresValidos = true;
+        filtroCursores = estructura.filtro;
+        ordenCursores = estructura.orden;
+        fallosRecarga = 0;
+
+        // Se notifica como sustitucion de las filas comunes para que la tabla conserve el desplazamiento
+        int comunes = Math.min(anterior, tamano);
+        beginChange();
+        if (comunes > 0) {
+            nextReplace(0, comunes, Collections.nCopies(comunes, (Persona) null));
+        }
+        if (tamano > anterior) {
+            nextAdd(anterior, tamano);
+        } else if (anterior > tamano) {
+            nextRemove(tamano, Collections.nCopies(anterior - tamano, (Persona) null));
+        }
+        publicar(0, estructura.primera);
+        endChange();
+    }
+
+    /**
+     * Vuelve a leer la primera pagina y el numero de filas en segundo plano, por ejemplo tras
+     * un cambio masivo, y descarta las demas paginas.
+     */
+    public void recargar() {
+        cursoresValidos = false;
+        if (reintentoRecarga != null) {
+            reintentoRecarga.stop();
+        }
+        int recarga = ++recargas;
+        EjecutorTareas.lanzar(this::leerEstructura, this::aplicarEstructura, error -> recargaFallida(recarga, error));
+    }
+
+    /**
+     * Si falla la ultima recarga, la lista no se puede quedar sin cursores, porque no pediria
+     * mas paginas. Si los cursores anteriores son del filtro y el orden actuales se siguen
+     * usando y se vuelven a pedir las filas que falten; si no, la recarga se repite al cabo de
+     * {@code ESPERA_RECARGA}, y el error solo se avisa la primera vez.
+     */
+    private void recargaFallida(int recarga, Throwable error) {
+        if (recarga != recargas) {
+            // Hay otra recarga en curso que traera la estructura
+            return;
+        }
+        if (fallosRecarga++ == 0) {
+            alFallar.accept(error);
+        }
+        if (filtroCursores != null && filtroCursores.equals(filtro) && ordenCursores.equals(orden)) {
+            // Sin reintentos no hay avisos repetidos: el siguiente fallo se vuelve a avisar
+            fallosRecarga = 0;
+            cursoresValidos = true;
+            if (tamano > 0) {
+                // La tabla vuelve a pedir las filas que se muestran y se leen las paginas que faltan
+                beginChange();
+                nextReplace(0, tamano, Collections.nCopies(tamano, (Persona) null));
+                endChange();
+            }
+            return;
+        }
+        if (reintentoRecarga == null) {
+            reintentoRecarga = new PauseTransition(ESPERA_RECARGA);
+            reintentoRecarga.setOnFinished(e -> recargar());
+        }
+        reintentoRecarga.playFromStart();
+    }
+
+    @Override
+    public Persona get(int index) {
+        if (index < 0 || index >= tamano) {
+            throw new IndexOutOfBoundsException("Indice " + index + " fuera de rango (tamano " + tamano + ")");
+        }
+        int pagina = index / tamanoPagina;
+        List<Persona> filas = paginas.get(pagina);
+        if (pagina != ultimaPaginaPedida) {
+            precargar(pagina, pagina > ultimaPaginaPedida ? 1 : -1);
+            ultimaPaginaPedida = pagina;
+        }
+        if (filas == null) {
+            solicitar(pagina);
+            return null;
+        }
+        int posicion = index % tamanoPagina;
+        return posicion < filas.size() ? filas.get(posicion) : null;
+    }
+
+    @Override
+    public int size() {
+        return tamano;
+    }
+
+    /**
+     * Obtiene la posicion de la persona con el id indicado, si su pagina esta cargada.
+     *
+     * @param id El id de la persona.
+     * @return La posicion de la persona, o -1 si su pagina no esta en memoria.
+     */
+    public int indiceDeId(int id) {
+        return posiciones.get(id, -1);
+    }
+
+    /**
+     * Busca la persona por su id solo entre las paginas cargadas, para no leer toda la tabla.
+     *
+     * @param o La persona a buscar.
+     * @return El indice de la persona, o -1 si no esta en ninguna pagina cargada.
+     */
+    @Override
+    public int indexOf(Object o) {
+        if (!(o instanceof Persona)) {
+            return -1;
+        }
+        int index = indiceDeId(((Persona) o).getId());
+        return index >= 0 && o.equals(get(index)) ? index : -1;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+
+    /**
+     * Sustituye una persona de una pagina cargada.
+     *
+     * @param index El indice de la fila.
+     * @param persona La nueva persona.
+     * @return La persona sustituida.
+     */
+    @Override
+    public Persona set(int index, Persona persona) {
+        List<Persona> filas = paginas.get(index / tamanoPagina);
+        int posicion = index % tamanoPagina;
+        if (filas == null || posicion >= filas.size()) {
+            throw new IllegalStateException("La fila " + index + " no esta cargada");
+        }
+        Persona anterior = filas.set(posicion, persona);
+        if (posiciones.get(anterior.getId(), -1) == index) {
+            posiciones.remove(anterior.getId());
+        }
+        posiciones.put(persona.getId(), index);
+        beginChange();
+        nextSet(index, anterior);
+        endChange();
+        return anterior;
+    }
+
+    /**
+     * Obtiene el mayor id que se conoce, para distinguir las altas de otros equipos de las
+     * modificaciones de filas que no estan en memoria.
+     *
+     * @return El mayor id leido o agregado.
+     */
+    public int getUltimoId() {
+        return ultimoId;
+    }
+
+    /**
+     * Agrega una persona nueva. Como los ids son autoincrementales, en orden de id la nueva
+     * fila siempre es la ultima; con otro orden se vuelve a leer la lista para que aparezca
+     * en su sitio. Si no cumple el filtro actual no se muestra.
+     *
+     * @param persona La persona agregada.
+     * @return true si se ha agregado a la lista.
+     */
+    @Override
+    public boolean add(Persona persona) {
+        if (!filtro.acepta(persona)) {
+            return false;
+        }
+        if (!orden.esPorId()) {
+            recargar();
+            return true;
+        }
+        int index = tamano;
+        List<Persona> filas = paginas.get(index / tamanoPagina);
+        if (tamanoExacto && filas != null && filas.size() == index % tamanoPagina) {
+            filas.add(persona);
+            posiciones.put(persona.getId(), index);
+            cursores.put(index, new Cursor(new Object[0], persona.getId()));
+        }
+        ultimoId = Math.max(ultimoId, persona.getId());
+        tamano++;
+        beginChange();
+        nextAdd(index, index + 1);
+        endChange();
+        return true;
+    }
+
+    /**
+     * Elimina una fila. Las filas de las paginas cargadas se desplazan en memoria, igual que
+     * en {@link #add}: cada pagina posterior pasa su primera fila a la anterior. Solo se
+     * descarta la pagina que se queda incompleta porque la siguiente no esta cargada, y se
+     * vuelve a pedir cuando se muestre.
+     *
+     * @param index El indice de la fila.
+     * @return La persona eliminada, o null si su pagina no estaba cargada.
+     */
+    @Override
+    public Persona remove(int index) {
+        if (index < 0 || index >= tamano) {
+            throw new IndexOutOfBoundsException("Indice " + index + " fuera de rango (tamano " + tamano + ")");
+        }
+        beginChange();
+        Persona eliminada = quitar(index);
+        endChange();
+        return eliminada;
+    }
+
+    /**
+     * Quita una fila y desplaza las paginas y los cursores posteriores. Se llama entre
+     * {@code beginChange} y {@code endChange}.
+     */
+    private Persona quitar(int index) {
+        int pagina = index / tamanoPagina;
+        // Lo que se esta leyendo a partir de la fila ya no cae en su sitio; se pedira de nuevo
+        cargando.keySet().removeIf(otra -> otra >= pagina);
+        aplazadas.removeIf(otra -> otra >= pagina);
+
+        List<Integer> afectadas = new ArrayList<>();
+        for (int otra : paginas.keySet()) {
+            if (otra >= pagina) {
+                afectadas.add(otra);
+            }
+        }
+        Collections.sort(afectadas);
+        for (int otra : afectadas) {
+            olvidarPagina(otra, paginas.get(otra));
+        }
+        Persona eliminada = null;
+        for (int otra : afectadas) {
+            List<Persona> filas = paginas.get(otra);
+            if (otra == pagina) {
+                int posicion = index % tamanoPagina;
+                eliminada = posicion < filas.size() ? filas.remove(posicion) : null;
+            } else {
+                filas.remove(0);
+            }
+            List<Persona> siguiente = paginas.get(otra + 1);
+            boolean ultima = (long) (otra + 1) * tamanoPagina >= tamano;
+            if (siguiente != null && !siguiente.isEmpty()) {
+                filas.add(siguiente.get(0));
+            } else if (!ultima || filas.isEmpty()) {
+                // Le falta la fila que venia de la pagina siguiente, que no esta en memoria
+                paginas.remove(otra);
+                continue;
+            }
+            int desde = otra * tamanoPagina;
+            for (int i = 0; i < filas.size(); i++) {
+                posiciones.put(filas.get(i).getId(), desde + i);
+            }
+        }
+
+        // El cursor de la fila eliminada se descarta y los posteriores retroceden una posicion
+        NavigableMap<Integer, Cursor> posteriores = cursores.tailMap(index, true);
+        NavigableMap<Integer, Cursor> desplazados = new TreeMap<>(posteriores);
+        posteriores.clear();
+        for (Map.Entry<Integer, Cursor> entrada : desplazados.entrySet()) {
+            if (entrada.getKey() > index) {
+                cursores.put(entrada.getKey() - 1, entrada.getValue());
+            }
+        }
+        tamano--;
+        nextRemove(index, eliminada);
+        return eliminada;
+    }
+
+    /**
+     * Quita varias filas por id con un solo aviso de cambio. Las que no estan en memoria no
+     * se pueden quitar, porque no se sabe en que posicion estan.
+     *
+     * @param ids Los ids de las filas.
+     * @return true si estaban todas en memoria; si no, hay que volver a leer la estructura.
+     */
+    public boolean quitarIds(List<Integer> ids) {
+        boolean todas = true;
+        int[] indices = new int[ids.size()];
+        int n = 0;
+        for (int id : ids) {
+            int index = indiceDeId(id);
+            if (index >= 0) {
+                indices[n++] = index;
+            } else {
+                todas = false;
+            }
+        }
+        if (n > 0) {
+            // De la ultima a la primera, para que quitar una no mueva las que faltan
+            Arrays.sort(indices, 0, n);
+            beginChange();
+            for (int i = n - 1; i >= 0; i--) {
+                quitar(indices[i]);
+            }
+            endChange();
+        }
+        return todas;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        int index = indexOf(o);
+        if (index < 0) {
+            return false;
+        }
+        remove(index);
+        return true;
+    }
+
+    private void precargar(int pagina, int direccion) {
+        for (int i = 1; i <= paginasPrecarga; i++) {
+            int siguiente = pagina + i * direccion;
+            if (siguiente < 0 || (long) siguiente * tamanoPagina >= tamano) {
+                break;
+            }
+            if (!paginas.containsKey(siguiente)) {
+                solicitar(siguiente);
+            }
+        }
+    }
+
+    /**
+     * Pide una pagina en segundo plano. Se lee desde el cursor conocido mas cercano por
+     * detras: si es el de la fila anterior a la pagina, directamente; si no, saltando antes
+     * las filas que faltan. Si ya se esta leyendo una pagina intermedia, se espera a que
+     * llegue para saltar desde ella.
+     */
+    private void solicitar(int pagina) {
+        if (!cursoresValidos || cargando.containsKey(pagina) || paginas.containsKey(pagina)) {
+            return;
+        }
+        int anterior = pagina * tamanoPagina - 1;
+        Map.Entry<Integer, Cursor> conocido = cursores.floorEntry(anterior);
+        int saltar = anterior - conocido.getKey();
+        if (saltar > 0) {
+            for (int otra : cargando.keySet()) {
+                if (otra < pagina && otra * tamanoPagina > conocido.getKey()) {
+                    aplazadas.add(pagina);
+                    return;
+                }
+            }
+        }
+        int peticion = ++peticiones;
+        cargando.put(pagina, peticion);
+        int base = conocido.getKey();
+        Cursor desde = conocido.getValue();
+        FiltroPersonas filtroPagina = filtro;
+        OrdenPersonas ordenPagina = orden;
+        EjecutorTareas.<Pagina>lanzar(tarea -> Reintentos.leer(tarea, () -> {
+            try (Metricas.Cronometro c = Metricas.cronometrar("bd.pagina");
+                 Connection conn = fuente.obtenerConexion()) {
+                return leerPagina(conn, tarea, desde, saltar, filtroPagina, ordenPagina);
+            }
+        }), leida -> {
+            if (!cargando.remove(pagina, peticion)) {
+                // La pagina se ha descartado o se ha recargado la lista mientras se leia
+                return;
+            }
+            beginChange();
+            if (leida.total >= 0) {
+                // La pagina empieza despues del final: la lista termina donde se acabaron las filas
+                ajustarTamano(base + 1 + leida.total);
+                tamanoExacto = true;
+            } else {
+                publicar(pagina, leida);
+            }
+            endChange();
+            reintentarAplazadas();
+        }, error -> {
+            cargando.remove(pagina, peticion);
+            reintentarAplazadas();
+            alFallar.accept(error);
+        });
+    }
+
+    private void reintentarAplazadas() {
+        if (aplazadas.isEmpty()) {
+            return;
+        }
+        List<Integer> pendientes = new ArrayList<>(aplazadas);
+        aplazadas.clear();
+        for (int pagina : pendientes) {
+            if ((long) pagina * tamanoPagina < tamano) {
+                solicitar(pagina);
+            }
+        }
+    }
+
+    /**
+     * Lee una pagina. Si {@code saltar} es mayor que cero, primero busca el cursor de la fila
+     * anterior a la pagina, que esta {@code saltar} filas despues de {@code desde}; si no hay
+     * tantas, cuenta las que hay para saber donde termina la lista.
+     */
+    private Pagina leerPagina(Connection conn, TareaBD<?> tarea, Cursor desde, int saltar, FiltroPersonas filtro,
+                              OrdenPersonas orden) throws SQLException {
+        Cursor inicio = desde;
+        if (saltar > 0) {
+            inicio = saltar(conn, tarea, desde, saltar, filtro, orden);
+            if (inicio == null) {
+                return new Pagina(null, List.of(), null, contar(conn, tarea, desde, saltar, filtro, orden));
+            }
+        }
+        List<Persona> filas = new ArrayList<>(tamanoPagina);
+        Cursor ultimo = null;
+        String sql = String.format(SQL_PAGINA, condicion(filtro), condicionCursor(orden, inicio), orderBy(orden));
+        try (PreparedStatement pstmt = tarea.registrar(conn.prepareStatement(sql))) {
+            int i = asignarCursor(pstmt, asignarParametros(pstmt, filtro), orden, inicio);
+            pstmt.setInt(i, tamanoPagina);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    filas.add(new Persona(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getInt(4), rs.getInt(5)));
+                    if (filas.size() == tamanoPagina) {
+                        ultimo = Cursor.leer(rs, orden, false);
+                    }
+                }
+            }
+        }
+        return new Pagina(inicio, filas, ultimo, -1);
+    }
+
+    /**
+     * Agrupa las posiciones seleccionadas en tramos de posiciones seguidas, para leer despues
+     * los ids de sus filas con {@link #leerIds}. Se guardan el filtro, el orden y los cursores
+     * conocidos en este momento.
+     *
+     * @param indices Las posiciones seleccionadas, en cualquier orden.
+     * @return Los tramos.
+     */
+    public Tramos tramos(List<Integer> indices) {
+        int[] ordenados = new int[indices.size()];
+        for (int i = 0; i < ordenados.length; i++) {
+            ordenados[i] = indices.get(i);
+        }
+        Arrays.sort(ordenados);
+        int[] desdes = new int[16];
+        int[] hastas = new int[16];
+        int numero = 0;
+        int filas = 0;
+        for (int i = 0; i < ordenados.length; i++) {
+            int index = ordenados[i];
+            if (index < 0 || index >= tamano || (i > 0 && index == ordenados[i - 1])) {
+                continue;
+            }
+            filas++;
+            if (numero > 0 && hastas[numero - 1] == index) {
+                hastas[numero - 1]++;
+                continue;
+            }
+            if (numero == desdes.length) {
+                desdes = Arrays.copyOf(desdes, numero * 2);
+                hastas = Arrays.copyOf(hastas, numero * 2);
+            }
+            desdes[numero] = index;
+            hastas[numero] = index + 1;
+            numero++;
+        }
+        boolean cargadas = true;
+        for (int k = 0; k < numero && cargadas; k++) {
+            for (int pagina = desdes[k] / tamanoPagina; pagina <= (hastas[k] - 1) / tamanoPagina; pagina++) {
+                // containsKey no cambia el orden LRU de las paginas
+                if (!paginas.containsKey(pagina)) {
+                    cargadas = false;
+                    break;
+                }
+            }
+        }
+        // Con un tamano estimado, la seleccion que llega al final sigue hasta la ultima fila de verdad
+        boolean hastaElFinal = !tamanoExacto && numero > 0 && hastas[numero - 1] == tamano;
+        NavigableMap<Integer, Cursor> conocidos = new TreeMap<>();
+        if (cursoresValidos) {
+            conocidos.putAll(cursores);
+        } else {
+            conocidos.put(-1, null);
+        }
+        return new Tramos(Arrays.copyOf(desdes, numero), Arrays.copyOf(hastas, numero), filas, cargadas,
+                hastaElFinal, filtro, orden, conocidos);
+    }
+
+    /**
+     * Lee los ids de las filas de unos tramos, en el orden de la lista. Cada tramo se alcanza
+     * desde el cursor conocido mas cercano por detras, saltando como al pedir una pagina, y de
+     * sus filas solo se leen el id y las columnas de ordenacion, que estan en el indice. Se
+     * ejecuta en segundo plano; si la conexion se corta, la lectura se repite con {@link Reintentos}.
+     *
+     * @param tarea La tarea que ejecuta la lectura, para poder cancelarla.
+     * @param tramos Los tramos obtenidos con {@link #tramos}.
+     * @return Los ids; menos que filas tienen los tramos si la lista se ha acortado mientras tanto.
+     * @throws SQLException Si falla la consulta.
+     */
+    public List<Integer> leerIds(TareaBD<?> tarea, Tramos tramos) throws SQLException {
+        return Reintentos.leer(tarea, () -> {
+            try (Metricas.Cronometro c = Metricas.cronometrar("bd.ids");
+                 Connection conn = fuente.obtenerConexionLarga()) {
+                return leerIds(conn, tarea, tramos);
+            }
+        });
+    }
+
+    private List<Integer> leerIds(Connection conn, TareaBD<?> tarea, Tramos tramos) throws SQLException {
+        List<Integer> ids = new ArrayList<>(tramos.filas);
+        NavigableMap<Integer, Cursor> conocidos = new TreeMap<>(tramos.cursores);
+        StringBuilder columnas = new StringBuilder();
+        for (int i = 0; i < tramos.orden.getNumColumnas(); i++) {
+            columnas.append(", ").append(tramos.orden.getColumna(i).getNombreColumna());
+        }
+        for (int k = 0; k < tramos.desdes.length && !tarea.isCancelled(); k++) {
+            int anterior = tramos.desdes[k] - 1;
+            Map.Entry<Integer, Cursor> conocido = conocidos.floorEntry(anterior);
+            Cursor desde = conocido.getValue();
+            int saltar = anterior - conocido.getKey();
+            if (saltar > 0) {
+                desde = saltar(conn, tarea, desde, saltar, tramos.filtro, tramos.orden);
+                if (desde == null) {
+                    // La lista ya termina antes del tramo
+                    break;
+                }
+            }
+            boolean ultimo = k == tramos.desdes.length - 1;
+            int limite = ultimo && tramos.hastaElFinal ? Integer.MAX_VALUE : tramos.hastas[k] - tramos.desdes[k];
+            String sql = String.format(SQL_IDS, condicion(tramos.filtro), condicionCursor(tramos.orden, desde),
+                    orderBy(tramos.orden), columnas);
+            int leidas = 0;
+            Cursor fin = null;
+            try (PreparedStatement pstmt = tarea.registrar(conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY,
+                    ResultSet.CONCUR_READ_ONLY))) {
+                // Con Connector/J, MIN_VALUE hace que las filas lleguen en streaming, como en la carga completa
+                pstmt.setFetchSize(Integer.getInteger("ejh.carga.fetch", Integer.MIN_VALUE));
+                pstmt.setInt(asignarCursor(pstmt, asignarParametros(pstmt, tramos.filtro), tramos.orden, desde),
+                        limite);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next() && !tarea.isCancelled()) {
+                        ids.add(rs.getInt(1));
+                        fin = Cursor.leer(rs, tramos.orden, true);
+                        leidas++;
+                    }
+                }
+            }
+            if (fin != null) {
+                // El siguiente tramo puede saltar desde el final de este
+                conocidos.put(tramos.desdes[k] + leidas - 1, fin);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Busca el cursor de la fila que esta {@code saltar} filas despues de otro cursor.
+     *
+     * @return El cursor, o null si no hay tantas filas.
+     */
+    private static Cursor saltar(Connection conn, TareaBD<?> tarea, Cursor desde, int saltar, FiltroPersonas filtro,
+                                 OrdenPersonas orden) throws SQLException {
+        StringBuilder columnas = new StringBuilder();
+        for (int i = 0; i < orden.getNumColumnas(); i++) {
+            columnas.append(", ").append(orden.getColumna(i).getNombreColumna());
+        }
+        String sql = String.format(SQL_SALTAR, condicion(filtro), condicionCursor(orden, desde), orderBy(orden), columnas);
+        try (Metricas.Cronometro c = Metricas.cronometrar("bd.saltar");
+             PreparedStatement pstmt = tarea.registrar(conn.prepareStatement(sql))) {
+            pstmt.setInt(asignarCursor(pstmt, asignarParametros(pstmt, filtro), orden, desde), saltar - 1);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? Cursor.leer(rs, orden, true) : null;
+            }
+        }
+    }
+
+    /**
+     * Pone en la lista una pagina leida y apunta sus cursores. Si la pagina no esta completa
+     * la lista termina en ella y el tamano pasa a ser exacto; si el tamano era una estimacion
+     * y la pagina llega hasta el final, se alarga una pagina mas para que se pida la siguiente.
+     * Se llama entre {@code beginChange} y {@code endChange}.
+     */
+    private void publicar(int pagina, Pagina leida) {
+        int desde = pagina * tamanoPagina;
+        List<Persona> filas = leida.filas;
+        cursores.put(desde - 1, leida.inicio);
+        if (leida.ultimo != null) {
+            cursores.put(desde + filas.size() - 1, leida.ultimo);
+        }
+        if (filas.size() < tamanoPagina) {
+            ajustarTamano(desde + filas.size());
+            tamanoExacto = true;
+        } else if (!tamanoExacto && desde + tamanoPagina >= tamano) {
+            ajustarTamano(desde + 2 * tamanoPagina);
+        }
+        if (filas.isEmpty()) {
+            return;
+        }
+        paginas.put(pagina, filas);
+        for (int i = 0; i < filas.size(); i++) {
+            posiciones.put(filas.get(i).getId(), desde + i);
+        }
+        nextReplace(desde, desde + filas.size(), Collections.nCopies(filas.size(), (Persona) null));
+    }
+
+    /**
+     * Cambia el tamano de la lista al descubrir donde termina. Si se acorta, se descartan las
+     * paginas y los cursores que quedan fuera. Se llama entre {@code beginChange} y {@code endChange}.
+     */
+    private void ajustarTamano(int nuevo) {
+        if (nuevo > tamano) {
+            nextAdd(tamano, nuevo);
+        } else if (nuevo < tamano) {
+            int primeraFuera = nuevo / tamanoPagina;
+            paginas.entrySet().removeIf(entrada -> {
+                if (entrada.getKey() >= primeraFuera) {
+                    olvidarPagina(entrada.getKey(), entrada.getValue());
+                    return true;
+                }
+                return false;
+            });
+            cursores.tailMap(nuevo, true).clear();
+            nextRemove(nuevo, Collections.nCopies(tamano - nuevo, (Persona) null));
+        }
+        tamano = nuevo;
+    }
+
+    private void olvidarPagina(int pagina, List<Persona> filas) {
+        int desde = pagina * tamanoPagina;
+        for (int i = 0; i < filas.size(); i++) {
+            int id = filas.get(i).getId();
+            if (posiciones.get(id, -1) == desde + i) {
+                posiciones.remove(id);
+            }
+        }
+    }
+
+    /**
+     * Posicion en el orden de la lista: los valores de las columnas de ordenacion y el id
+     * de una fila.
+     */
+    private static final class Cursor {
+        private final Object[] valores;
+        private final int id;
+
+        private Cursor(Object[] valores, int id) {
+            this.valores = valores;
+            this.id = id;
+        }
+
+        /**
+         * Lee el cursor de la fila actual.
+         *
+         * @param soloOrden true si la fila tiene el id y solo las columnas de ordenacion, false
+         *                  si tiene id, nombre, apellidos y edad.
+         */
+        private static Cursor leer(ResultSet rs, OrdenPersonas orden, boolean soloOrden) throws SQLException {
+            Object[] valores = new Object[orden.getNumColumnas()];
+            for (int i = 0; i < valores.length; i++) {
+                valores[i] = rs.getObject(soloOrden ? i + 2 : orden.getColumna(i).ordinal() + 2);
+            }
+            return new Cursor(valores, rs.getInt(1));
+        }
+    }
+
+    /**
+     * Filas de una pagina con el cursor de la fila anterior y el de la ultima, si la pagina
+     * esta completa. Si la pagina empieza despues del final, {@code total} es el numero de
+     * filas que quedaban despues del cursor desde el que se salto; si no, es -1.
+     */
+    private static final class Pagina {
+        private final Cursor inicio;
+        private final List<Persona> filas;
+        private final Cursor ultimo;
+        private final int total;
+
+        private Pagina(Cursor inicio, List<Persona> filas, Cursor ultimo, int total) {
+            this.inicio = inicio;
+            this.filas = filas;
+            this.ultimo = ultimo;
+            this.total = total;
+        }
+    }
+
+    /**
+     * Posiciones seleccionadas agrupadas en tramos seguidos, con el filtro, el orden y los
+     * cursores que habia al seleccionarlas. El tramo k va de {@code desdes[k]} a
+     * {@code hastas[k]} sin incluir.
+     */
+    public static final class Tramos {
+        private final int[] desdes;
+        private final int[] hastas;
+        private final int filas;
+        private final boolean cargadas;
+        private final boolean hastaElFinal;
+        private final FiltroPersonas filtro;
+        private final OrdenPersonas orden;
+        private final NavigableMap<Integer, Cursor> cursores;
+
+        private Tramos(int[] desdes, int[] hastas, int filas, boolean cargadas, boolean hastaElFinal,
+                       FiltroPersonas filtro, OrdenPersonas orden, NavigableMap<Integer, Cursor> cursores) {
+            this.desdes = desdes;
+            this.hastas = hastas;
+            this.filas = filas;
+            this.cargadas = cargadas;
+            this.hastaElFinal = hastaElFinal;
+            this.filtro = filtro;
+            this.orden = orden;
+            this.cursores = cursores;
+        }
+
+        /**
+         * Obtiene el numero de filas seleccionadas.
+         *
+         * @return Las filas de todos los tramos; si el tamano de la lista es estimado, tambien lo es.
+         */
+        public int getFilas() {
+            return filas;
+        }
+
+        /**
+         * Indica si todas las filas seleccionadas estan en paginas cargadas.
+         *
+         * @return true si basta con las personas de la lista; false si hay que leer sus ids.
+         */
+        public boolean isCargadas() {
+            return cargadas;
+        }
+    }
+
+    /**
+     * Numero de filas, exacto o estimado, y primera pagina leidos de la base de datos.
+     */
+    public static final class Estructura {
+        private final int total;
+        private final boolean exacto;
+        private final Pagina primera;
+        private final int maximo;
+        private final FiltroPersonas filtro;
+        private final OrdenPersonas orden;
+
+        private Estructura(int total, boolean exacto, Pagina primera, int maximo, FiltroPersonas filtro,
+                           OrdenPersonas orden) {
+            this.total = total;
+            this.exacto = exacto;
+            this.primera = primera;
+            this.maximo = maximo;
+            this.filtro = filtro;
+            this.orden = orden;
+        }
+
+        public int getTotal() {
+            return total;
+        }
+
+        /**
+         * Indica si el total es exacto o una estimacion.
+         *
+         * @return true si se han contado todas las filas.
+         */
+        public boolean isExacto() {
+            return exacto;
+        }
+    }
+}
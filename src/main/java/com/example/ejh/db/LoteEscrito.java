@@ -0,0 +1,39 @@
+package com.example.ejh.db;
+
+import com.example.ejh.model.Persona;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Resultado de {@link RepositorioPersonas#escribirVarias}: que modificaciones se han guardado
+ * y las altas con el id asignado, en el mismo orden en el que se pidieron.
+ */
+public class LoteEscrito {
+    private final boolean[] guardadas;
+    private final List<Persona> altas;
+
+    LoteEscrito(boolean[] guardadas, List<Persona> altas) {
+        this.guardadas = guardadas;
+        this.altas = Collections.unmodifiableList(altas);
+    }
+
+    /**
+     * Indica si una modificacion se ha guardado.
+     *
+     * @param indice La posicion de la modificacion en la lista pedida.
+     * @return true si la persona seguia en su version y se ha guardado; false si ha cambiado o ya no existe.
+     */
+    public boolean isGuardada(int indice) {
+        return guardadas[indice];
+    }
+
+    /**
+     * Obtiene las altas escritas.
+     *
+     * @return Las personas dadas de alta con su id definitivo.
+     */
+    public List<Persona> getAltas() {
+        return altas;
+    }
+}
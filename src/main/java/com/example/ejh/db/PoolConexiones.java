@@ -0,0 +1,916 @@
+package com.example.ejh.db;
+
+import com.example.ejh.metricas.Metricas;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pool de conexiones JDBC de larga duracion. Las conexiones se prestan con
+ * {@link #obtenerConexion()} y vuelven al pool al llamar a {@code close()} sobre ellas,
+ * por lo que deben usarse siempre dentro de un try-with-resources. Cada conexion fisica
+ * guarda las sentencias que se le piden con {@link SentenciasEnCache}.
+ *
+ * <p>Si la base de datos deja de responder (un cambio de servidor en RDS, un corte de red),
+ * las conexiones rotas no vuelven al pool y, tras varios fallos seguidos al abrir una conexion
+ * nueva, el pool deja de intentar conectar: {@link #obtenerConexion()} falla al momento con
+ * {@link BaseDatosNoDisponible} en lugar de esperar al tiempo de conexion de cada intento. En
+ * segundo plano se prueba a reconectar con esperas que se doblan hasta un maximo, y en cuanto
+ * una conexion se abre el pool vuelve a funcionar. Ademas, las conexiones inactivas se
+ * comprueban cada cierto tiempo para descartar las que el servidor ha cerrado.</p>
+ */
+public class PoolConexiones implements FuenteConexiones, AutoCloseable {
+
+    private final ConfiguracionPool config;
+    private final ReentrantLock lock = new ReentrantLock(true);
+    private final Condition disponible = lock.newCondition();
+    // Las conexiones devueltas se insertan al principio: la primera es la mas reciente
+    private final Deque<ConexionFisica> inactivas = new ArrayDeque<>();
+    private final Set<ConexionFisica> prestadas = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final ScheduledExecutorService mantenimiento;
+
+    private int total;
+    private int esperando;
+    private boolean cerrado;
+    // Fallos de conexion desde el ultimo exito y estado del corte; se leen sin el lock para fallar rapido
+    private int fallosSeguidos;
+    private volatile boolean sinConexion;
+    private volatile long proximoIntento;
+    private long esperaReintentoMs;
+
+    private final AtomicLong creadas = new AtomicLong();
+    private final AtomicLong cerradas = new AtomicLong();
+    private final AtomicLong prestamos = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong fallosValidacion = new AtomicLong();
+    private final AtomicLong fugasDetectadas = new AtomicLong();
+    private final AtomicLong tiempoEsperaTotal = new AtomicLong();
+    private final AtomicLong sentenciasPreparadas = new AtomicLong();
+    private final AtomicLong sentenciasReutilizadas = new AtomicLong();
+    private final AtomicLong fallosConexion = new AtomicLong();
+    private final AtomicLong rechazadas = new AtomicLong();
+    private final AtomicLong reconexiones = new AtomicLong();
+
+    /**
+     * Crea el pool. Las conexiones no se abren hasta el primer prestamo; a partir de ahi
+     * el mantenimiento periodico mantiene al menos el tamano minimo configurado.
+     *
+     * @param config La configuracion del pool.
+     */
+    public PoolConexiones(ConfiguracionPool config) {
+        if (config.getTamanoMinimo() > config.getTamanoMaximo()) {
+            throw new IllegalArgumentException("El tamano minimo no puede superar al maximo");
+        }
+        this.config = config;
+        this.mantenimiento = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread hilo = new Thread(r, "ejh-pool-mantenimiento");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        long intervalo = config.getIntervaloMantenimientoMs();
+        mantenimiento.scheduleWithFixedDelay(this::mantener, intervalo, intervalo, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Presta una conexion del pool. Si no hay ninguna libre y el pool esta lleno, espera
+     * como maximo el tiempo configurado.
+     *
+     * @return Una conexion que vuelve al pool al cerrarla.
+     * @throws SQLException Si no se pudo abrir una conexion o se agoto el tiempo de espera.
+     */
+    @Override
+    public Connection obtenerConexion() throws SQLException {
+        return prestar().crearProxy();
+    }
+
+    /**
+     * Presta una conexion con el tiempo maximo de lectura largo de la configuracion en lugar
+     * del de la URL. Al devolverla vuelve a tener el normal.
+     *
+     * @return Una conexion que vuelve al pool al cerrarla.
+     * @throws SQLException Si no se pudo abrir una conexion o se agoto el tiempo de espera.
+     */
+    @Override
+    public Connection obtenerConexionLarga() throws SQLException {
+        ConexionFisica fisica = prestar();
+        try {
+            int normal = fisica.real.getNetworkTimeout();
+            // El driver aplica el cambio con el ejecutor; en el mismo hilo queda hecho al volver
+            fisica.real.setNetworkTimeout(Runnable::run, (int) Math.min(Integer.MAX_VALUE,
+                    config.getTiempoLecturaLargaMs()));
+            fisica.tiempoRedNormal = normal;
+        } catch (SQLFeatureNotSupportedException e) {
+            // Sin tiempo de red configurable la conexion ya espera lo que diga el driver
+        } catch (SQLException e) {
+            devolver(fisica);
+            throw e;
+        }
+        return fisica.crearProxy();
+    }
+
+    private ConexionFisica prestar() throws SQLException {
+        long inicio = System.nanoTime();
+        long limite = inicio + TimeUnit.MILLISECONDS.toNanos(config.getTiempoEsperaMs());
+        comprobarDisponible();
+        ConexionFisica fisica = reservar(limite);
+        if (fisica == null) {
+            fisica = abrirReservada();
+        } else if (!validar(fisica)) {
+            // Una conexion inactiva caducada no dice nada de la base de datos: se cierra y
+            // se abre otra en su hueco, que es lo unico que cuenta para el circuito
+            cerrarFisica(fisica);
+            fisica = abrirReservada();
+        }
+        long ahora = System.nanoTime();
+        fisica.prestadaDesde = ahora;
+        fisica.fugaAvisada = false;
+        fisica.origen = config.getUmbralFugaMs() > 0 ? new Throwable("Conexion obtenida aqui") : null;
+        lock.lock();
+        try {
+            prestadas.add(fisica);
+        } finally {
+            lock.unlock();
+        }
+        prestamos.incrementAndGet();
+        tiempoEsperaTotal.addAndGet(ahora - inicio);
+        return fisica;
+    }
+
+    /**
+     * Toma una conexion inactiva o reserva hueco para abrir una nueva.
+     *
+     * @return La conexion inactiva, o null si se ha reservado hueco para abrir una nueva.
+     */
+    private ConexionFisica reservar(long limite) throws SQLException {
+        lock.lock();
+        try {
+            while (true) {
+                if (cerrado) {
+                    throw new SQLException("El pool de conexiones esta cerrado");
+                }
+                ConexionFisica fisica = inactivas.pollFirst();
+                if (fisica != null) {
+                    return fisica;
+                }
+                if (total < config.getTamanoMaximo()) {
+                    total++;
+                    return null;
+                }
+                long restante = limite - System.nanoTime();
+                if (restante <= 0) {
+                    timeouts.incrementAndGet();
+                    throw new SQLTransientConnectionException("No hay conexiones libres tras "
+                            + config.getTiempoEsperaMs() + " ms (maximo " + config.getTamanoMaximo() + ")");
+                }
+                esperando++;
+                try {
+                    disponible.awaitNanos(restante);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("Interrumpido esperando una conexion", e);
+                } finally {
+                    esperando--;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Falla al momento si el pool ha dejado de conectar porque la base de datos no responde.
+     */
+    private void comprobarDisponible() throws BaseDatosNoDisponible {
+        if (sinConexion) {
+            rechazadas.incrementAndGet();
+            Metricas.contar("bd.circuito.rechazadas", 1);
+            throw new BaseDatosNoDisponible(Math.max(0, TimeUnit.NANOSECONDS.toMillis(proximoIntento - System.nanoTime())));
+        }
+    }
+
+    /**
+     * Abre una conexion fisica para un hueco ya reservado, liberandolo si falla.
+     */
+    private ConexionFisica abrirReservada() throws SQLException {
+        try (Metricas.Cronometro c = Metricas.cronometrar("bd.conectar")) {
+            Connection real = DriverManager.getConnection(config.getUrl(), config.getUser(), config.getPassword());
+            creadas.incrementAndGet();
+            registrarExito();
+            return new ConexionFisica(real);
+        } catch (SQLException e) {
+            liberarHueco();
+            if (Reintentos.esErrorConexion(e)) {
+                registrarFalloConexion();
+            }
+            throw e;
+        } catch (RuntimeException e) {
+            liberarHueco();
+            throw e;
+        }
+    }
+
+    private void registrarExito() {
+        lock.lock();
+        try {
+            fallosSeguidos = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Anota un fallo de conexion. Al llegar al numero configurado de fallos seguidos, el pool
+     * deja de conectar, cierra las conexiones inactivas (tras un corte lo normal es que esten
+     * rotas todas) y programa el primer intento de reconexion.
+     */
+    private void registrarFalloConexion() {
+        fallosConexion.incrementAndGet();
+        List<ConexionFisica> aCerrar;
+        long espera;
+        lock.lock();
+        try {
+            fallosSeguidos++;
+            if (cerrado || sinConexion || fallosSeguidos < config.getFallosParaAbrir()) {
+                return;
+            }
+            sinConexion = true;
+            aCerrar = new ArrayList<>(inactivas);
+            total -= inactivas.size();
+            inactivas.clear();
+            esperaReintentoMs = config.getEsperaReintentoMinimaMs();
+            espera = programarIntento();
+        } finally {
+            lock.unlock();
+        }
+        Metricas.contar("bd.circuito.aperturas", 1);
+        System.err.println("La base de datos no responde tras " + config.getFallosParaAbrir()
+                + " fallos de conexion seguidos; se volvera a intentar en " + espera + " ms.");
+        aCerrar.forEach(this::cerrarFisica);
+    }
+
+    /**
+     * Programa el siguiente intento de reconexion. La espera es aleatoria entre la mitad y el
+     * total de la actual, para que varios equipos no reconecten todos a la vez. Se llama con el lock.
+     *
+     * @return La espera elegida en milisegundos.
+     */
+    private long programarIntento() {
+        long espera = esperaReintentoMs / 2 + ThreadLocalRandom.current().nextLong(esperaReintentoMs / 2 + 1);
+        proximoIntento = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(espera);
+        try {
+            mantenimiento.schedule(this::reconectar, espera, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // El pool se esta cerrando
+        }
+        return espera;
+    }
+
+    /**
+     * Intento de reconexion en segundo plano. Si la conexion se abre, se guarda en el pool y
+     * se vuelven a atender los prestamos; si no, se programa otro intento con el doble de
+     * espera, hasta el maximo configurado.
+     */
+    private void reconectar() {
+        lock.lock();
+        try {
+            if (cerrado || !sinConexion) {
+                return;
+            }
+            total++;
+        } finally {
+            lock.unlock();
+        }
+        reconexiones.incrementAndGet();
+        ConexionFisica fisica;
+        try {
+            fisica = abrirReservada();
+        } catch (SQLException | RuntimeException e) {
+            long espera;
+            lock.lock();
+            try {
+                if (cerrado) {
+                    return;
+                }
+                esperaReintentoMs = Math.min(esperaReintentoMs * 2, config.getEsperaReintentoMaximaMs());
+                espera = programarIntento();
+            } finally {
+                lock.unlock();
+            }
+            System.err.println("No se pudo reconectar con la base de datos (" + e.getMessage()
+                    + "); se volvera a intentar en " + espera + " ms.");
+            return;
+        }
+        lock.lock();
+        try {
+            sinConexion = false;
+            fisica.ultimoUso = System.nanoTime();
+            inactivas.addFirst(fisica);
+            disponible.signal();
+        } finally {
+            lock.unlock();
+        }
+        System.out.println("Conexion con la base de datos recuperada.");
+    }
+
+    private boolean validar(ConexionFisica fisica) {
+        long inactivaMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - fisica.ultimaComprobacion());
+        if (inactivaMs < config.getValidarSiInactivaMs()) {
+            return true;
+        }
+        return comprobar(fisica);
+    }
+
+    /**
+     * Comprueba con el servidor que la conexion sigue viva, esperando como maximo el tiempo de validacion.
+     */
+    private boolean comprobar(ConexionFisica fisica) {
+        try {
+            if (fisica.real.isValid(config.getTimeoutValidacionSeg())) {
+                fisica.ultimaValidacion = System.nanoTime();
+                return true;
+            }
+        } catch (SQLException e) {
+            // Se trata igual que una conexion no valida
+        }
+        fallosValidacion.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Recibe una conexion devuelta por el codigo cliente al cerrarla.
+     */
+    private void devolver(ConexionFisica fisica) {
+        boolean sana = !fisica.rota;
+        if (sana) {
+            try {
+                if (!fisica.real.getAutoCommit()) {
+                    fisica.real.rollback();
+                    fisica.real.setAutoCommit(true);
+                }
+                if (fisica.tiempoRedNormal >= 0) {
+                    fisica.real.setNetworkTimeout(Runnable::run, fisica.tiempoRedNormal);
+                    fisica.tiempoRedNormal = -1;
+                }
+                fisica.real.clearWarnings();
+            } catch (SQLException e) {
+                sana = false;
+            }
+        }
+        boolean cerrar;
+        lock.lock();
+        try {
+            prestadas.remove(fisica);
+            cerrar = cerrado || !sana;
+            if (sana) {
+                // Se ha usado sin errores de conexion: la base de datos responde
+                fallosSeguidos = 0;
+            }
+            if (cerrar) {
+                total--;
+            } else {
+                fisica.ultimoUso = System.nanoTime();
+                inactivas.addFirst(fisica);
+            }
+            disponible.signal();
+        } finally {
+            lock.unlock();
+        }
+        if (cerrar) {
+            cerrarFisica(fisica);
+        }
+    }
+
+    private void descartar(ConexionFisica fisica) {
+        liberarHueco();
+        cerrarFisica(fisica);
+    }
+
+    private void liberarHueco() {
+        lock.lock();
+        try {
+            total--;
+            disponible.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void cerrarFisica(ConexionFisica fisica) {
+        cerradas.incrementAndGet();
+        try {
+            fisica.real.close();
+        } catch (SQLException e) {
+            // La conexion ya no se va a usar
+        }
+    }
+
+    /**
+     * Tarea periodica: cierra las conexiones inactivas que sobran, comprueba las demas, rellena
+     * hasta el minimo y avisa de las conexiones prestadas durante demasiado tiempo.
+     */
+    private void mantener() {
+        try {
+            cerrarInactivasSobrantes();
+            comprobarInactivas();
+            rellenarMinimo();
+            detectarFugas();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void cerrarInactivasSobrantes() {
+        long limite = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(config.getTiempoInactividadMs());
+        List<ConexionFisica> sobrantes = new ArrayList<>();
+        lock.lock();
+        try {
+            Iterator<ConexionFisica> it = inactivas.descendingIterator();
+            while (it.hasNext() && total > config.getTamanoMinimo()) {
+                ConexionFisica fisica = it.next();
+                if (fisica.ultimoUso - limite > 0) {
+                    break;
+                }
+                it.remove();
+                total--;
+                sobrantes.add(fisica);
+            }
+        } finally {
+            lock.unlock();
+        }
+        sobrantes.forEach(this::cerrarFisica);
+    }
+
+    /**
+     * Comprueba las conexiones inactivas que llevan mas del tiempo de keepalive sin usarse ni
+     * comprobarse. Mientras se comprueban no se prestan; las rotas se cierran sin contar como
+     * fallo, igual que al prestarlas: solo cuenta no poder abrir una conexion nueva.
+     */
+    private void comprobarInactivas() {
+        long keepalive = config.getKeepaliveMs();
+        if (keepalive <= 0 || sinConexion) {
+            return;
+        }
+        long limite = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(keepalive);
+        List<ConexionFisica> aComprobar = new ArrayList<>();
+        lock.lock();
+        try {
+            Iterator<ConexionFisica> it = inactivas.iterator();
+            while (it.hasNext()) {
+                ConexionFisica fisica = it.next();
+                if (fisica.ultimaComprobacion() - limite <= 0) {
+                    it.remove();
+                    aComprobar.add(fisica);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (ConexionFisica fisica : aComprobar) {
+            if (comprobar(fisica)) {
+                boolean cerrar;
+                lock.lock();
+                try {
+                    cerrar = cerrado;
+                    if (cerrar) {
+                        total--;
+                    } else {
+                        inactivas.addLast(fisica);
+                        disponible.signal();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                if (cerrar) {
+                    cerrarFisica(fisica);
+                }
+            } else {
+                descartar(fisica);
+            }
+        }
+    }
+
+    private void rellenarMinimo() {
+        // Solo se rellena una vez que el pool se ha usado, para no conectar si la base de datos no existe aun;
+        // sin conexion, ya se encarga la reconexion
+        if (creadas.get() == 0 || sinConexion) {
+            return;
+        }
+        while (true) {
+            lock.lock();
+            try {
+                if (cerrado || total >= config.getTamanoMinimo()) {
+                    return;
+                }
+                total++;
+            } finally {
+                lock.unlock();
+            }
+            ConexionFisica fisica;
+            try {
+                fisica = abrirReservada();
+            } catch (SQLException e) {
+                System.err.println("No se pudo abrir una conexion para el minimo del pool: " + e.getMessage());
+                return;
+            }
+            lock.lock();
+            try {
+                fisica.ultimoUso = System.nanoTime();
+                inactivas.addLast(fisica);
+                disponible.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void detectarFugas() {
+        long umbral = config.getUmbralFugaMs();
+        if (umbral <= 0) {
+            return;
+        }
+        long ahora = System.nanoTime();
+        List<ConexionFisica> sospechosas = new ArrayList<>();
+        lock.lock();
+        try {
+            for (ConexionFisica fisica : prestadas) {
+                if (!fisica.fugaAvisada && TimeUnit.NANOSECONDS.toMillis(ahora - fisica.prestadaDesde) > umbral) {
+                    fisica.fugaAvisada = true;
+                    sospechosas.add(fisica);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (ConexionFisica fisica : sospechosas) {
+            fugasDetectadas.incrementAndGet();
+            System.err.println("Posible fuga de conexion: prestada hace mas de " + umbral + " ms sin devolverse.");
+            if (fisica.origen != null) {
+                fisica.origen.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Obtiene las metricas actuales del pool.
+     *
+     * @return Una foto de las estadisticas del pool.
+     */
+    public EstadisticasPool getEstadisticas() {
+        lock.lock();
+        try {
+            return new EstadisticasPool(total, prestadas.size(), inactivas.size(), esperando,
+                    creadas.get(), cerradas.get(), prestamos.get(), timeouts.get(),
+                    fallosValidacion.get(), fugasDetectadas.get(), tiempoEsperaTotal.get(),
+                    sentenciasPreparadas.get(), sentenciasReutilizadas.get(), sinConexion,
+                    fallosConexion.get(), rechazadas.get(), reconexiones.get());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Indica si el pool ha dejado de conectar porque la base de datos no responde.
+     *
+     * @return true mientras los prestamos fallan al momento.
+     */
+    public boolean isSinConexion() {
+        return sinConexion;
+    }
+
+    public ConfiguracionPool getConfiguracion() {
+        return config;
+    }
+
+    /**
+     * Cierra el pool y todas sus conexiones inactivas. Las conexiones prestadas se cierran
+     * cuando se devuelven.
+     */
+    @Override
+    public void close() {
+        List<ConexionFisica> aCerrar;
+        lock.lock();
+        try {
+            if (cerrado) {
+                return;
+            }
+            cerrado = true;
+            aCerrar = new ArrayList<>(inactivas);
+            total -= inactivas.size();
+            inactivas.clear();
+            disponible.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        mantenimiento.shutdownNow();
+        aCerrar.forEach(this::cerrarFisica);
+    }
+
+    /**
+     * Conexion real al servidor junto con el estado que el pool guarda de ella.
+     */
+    private final class ConexionFisica {
+        private final Connection real;
+        // Solo la usa quien tiene prestada la conexion; el prestamo ya sincroniza los hilos
+        private final Map<String, SentenciaGuardada> sentencias = new HashMap<>();
+        private volatile long ultimoUso = System.nanoTime();
+        private volatile long ultimaValidacion = ultimoUso;
+        private volatile long prestadaDesde;
+        private volatile boolean fugaAvisada;
+        private volatile boolean rota;
+        private volatile Throwable origen;
+        // Tiempo de red que hay que restaurar al devolverla si se presto como larga, o -1
+        private int tiempoRedNormal = -1;
+
+        private ConexionFisica(Connection real) {
+            this.real = real;
+        }
+
+        /**
+         * Obtiene el ultimo momento en que se supo que la conexion estaba viva.
+         */
+        private long ultimaComprobacion() {
+            return ultimaValidacion - ultimoUso > 0 ? ultimaValidacion : ultimoUso;
+        }
+
+        /**
+         * Marca la conexion como rota tras un error de conexion: no volvera al pool. No cuenta
+         * como fallo; si la base de datos esta caida, fallara la siguiente al abrirse.
+         */
+        private void romper() {
+            rota = true;
+        }
+
+        private Connection crearProxy() {
+            return (Connection) Proxy.newProxyInstance(PoolConexiones.class.getClassLoader(),
+                    new Class<?>[]{Connection.class, SentenciasEnCache.class}, new Manejador(this));
+        }
+
+        /**
+         * Devuelve la sentencia guardada para el SQL, o la prepara y la guarda si cabe. Si ya
+         * esta en uso o la cache esta llena, se prepara una normal.
+         */
+        private PreparedStatement prepararEnCache(Connection conexion, String sql, int clavesGeneradas)
+                throws SQLException {
+            String clave = clavesGeneradas + ":" + sql;
+            SentenciaGuardada guardada = sentencias.get(clave);
+            if (guardada != null && !guardada.enUso) {
+                sentenciasReutilizadas.incrementAndGet();
+                Metricas.contar("bd.sentencias.reutilizadas", 1);
+            } else {
+                sentenciasPreparadas.incrementAndGet();
+                Metricas.contar("bd.sentencias.preparadas", 1);
+                PreparedStatement pstmt = real.prepareStatement(sql, clavesGeneradas);
+                if (guardada != null || sentencias.size() >= config.getSentenciasPorConexion()) {
+                    return (PreparedStatement) envolver(PreparedStatement.class, pstmt, conexion);
+                }
+                guardada = new SentenciaGuardada(this, clave, pstmt);
+                sentencias.put(clave, guardada);
+            }
+            guardada.enUso = true;
+            return (PreparedStatement) Proxy.newProxyInstance(PoolConexiones.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, new ManejadorSentencia(guardada, conexion));
+        }
+
+        /**
+         * Envuelve una sentencia que no va a la cache para que {@code getConnection()} devuelva
+         * la conexion prestada y no la real.
+         */
+        private Statement envolver(Class<?> tipo, Statement sentencia, Connection conexion) {
+            return (Statement) Proxy.newProxyInstance(PoolConexiones.class.getClassLoader(),
+                    new Class<?>[]{tipo}, new ManejadorSentenciaSuelta(this, sentencia, conexion));
+        }
+    }
+
+    /**
+     * Sentencia preparada que una conexion fisica guarda para reutilizarla.
+     */
+    private static final class SentenciaGuardada {
+        private final ConexionFisica fisica;
+        private final String clave;
+        private final PreparedStatement real;
+        private boolean enUso;
+
+        private SentenciaGuardada(ConexionFisica fisica, String clave, PreparedStatement real) {
+            this.fisica = fisica;
+            this.clave = clave;
+            this.real = real;
+        }
+
+        /**
+         * La deja lista para el siguiente uso, o la descarta si no se puede limpiar.
+         */
+        private void devolver() {
+            try {
+                ResultSet rs = real.getResultSet();
+                if (rs != null) {
+                    rs.close();
+                }
+                real.clearParameters();
+                real.clearBatch();
+                real.clearWarnings();
+                enUso = false;
+            } catch (SQLException e) {
+                descartar();
+            }
+        }
+
+        private void descartar() {
+            fisica.sentencias.remove(clave, this);
+            try {
+                real.close();
+            } catch (SQLException e) {
+                // La sentencia ya no se va a usar
+            }
+        }
+    }
+
+    /**
+     * Delega en la sentencia guardada salvo {@code close()}, que la devuelve a la cache. Si la
+     * sentencia falla se descarta, por si el servidor la ha invalidado.
+     */
+    private static final class ManejadorSentencia implements InvocationHandler {
+        private final SentenciaGuardada guardada;
+        private final Connection conexion;
+        private boolean cerrada;
+
+        private ManejadorSentencia(SentenciaGuardada guardada, Connection conexion) {
+            this.guardada = guardada;
+            this.conexion = conexion;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!cerrada) {
+                        cerrada = true;
+                        guardada.devolver();
+                    }
+                    return null;
+                case "isClosed":
+                    return cerrada || guardada.real.isClosed();
+                case "getConnection":
+                    return conexion;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "SentenciaPool[" + guardada.real + "]";
+                default:
+                    break;
+            }
+            if (cerrada) {
+                throw new SQLException("La sentencia ya se cerro");
+            }
+            try {
+                return method.invoke(guardada.real, args);
+            } catch (InvocationTargetException e) {
+                Throwable causa = e.getCause();
+                if (causa instanceof SQLException) {
+                    String estado = ((SQLException) causa).getSQLState();
+                    if (estado != null && estado.startsWith("08")) {
+                        guardada.fisica.romper();
+                    }
+                    cerrada = true;
+                    guardada.descartar();
+                }
+                throw causa;
+            }
+        }
+    }
+
+    /**
+     * Delega en una sentencia que no esta en la cache salvo {@code getConnection()}, que devuelve
+     * la conexion prestada: si quien la obtiene la cierra, vuelve al pool en lugar de cerrarse
+     * la conexion real.
+     */
+    private static final class ManejadorSentenciaSuelta implements InvocationHandler {
+        private final ConexionFisica fisica;
+        private final Statement real;
+        private final Connection conexion;
+
+        private ManejadorSentenciaSuelta(ConexionFisica fisica, Statement real, Connection conexion) {
+            this.fisica = fisica;
+            this.real = real;
+            this.conexion = conexion;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "getConnection":
+                    return conexion;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "SentenciaPool[" + real + "]";
+                default:
+                    break;
+            }
+            try {
+                return method.invoke(real, args);
+            } catch (InvocationTargetException e) {
+                Throwable causa = e.getCause();
+                if (causa instanceof SQLException) {
+                    String estado = ((SQLException) causa).getSQLState();
+                    if (estado != null && estado.startsWith("08")) {
+                        fisica.romper();
+                    }
+                }
+                throw causa;
+            }
+        }
+    }
+
+    /**
+     * Delega todas las llamadas en la conexion real salvo {@code close()}, que la devuelve al pool.
+     * Cada prestamo tiene su propio manejador, asi una referencia antigua no puede usar la conexion.
+     */
+    private final class Manejador implements InvocationHandler {
+        private final ConexionFisica fisica;
+        private boolean cerrada;
+
+        private Manejador(ConexionFisica fisica) {
+            this.fisica = fisica;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!cerrada) {
+                        cerrada = true;
+                        devolver(fisica);
+                    }
+                    return null;
+                case "isClosed":
+                    return cerrada || fisica.real.isClosed();
+                case "prepararEnCache":
+                    if (cerrada) {
+                        throw new SQLException("La conexion ya se devolvio al pool");
+                    }
+                    return fisica.prepararEnCache((Connection) proxy, (String) args[0], (Integer) args[1]);
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "ConexionPool[" + fisica.real + "]";
+                default:
+                    break;
+            }
+            if (cerrada) {
+                throw new SQLException("La conexion ya se devolvio al pool");
+            }
+            try {
+                Object resultado = method.invoke(fisica.real, args);
+                // createStatement, prepareStatement y prepareCall
+                if (resultado instanceof Statement) {
+                    return fisica.envolver(method.getReturnType(), (Statement) resultado, (Connection) proxy);
+                }
+                return resultado;
+            } catch (InvocationTargetException e) {
+                Throwable causa = e.getCause();
+                if (causa instanceof SQLException) {
+                    String estado = ((SQLException) causa).getSQLState();
+                    // Clase 08: error de conexion, la conexion fisica no debe volver al pool
+                    if (estado != null && estado.startsWith("08")) {
+                        fisica.romper();
+                    }
+                }
+                throw causa;
+            }
+        }
+    }
+}
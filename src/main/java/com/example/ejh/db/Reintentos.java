@@ -0,0 +1,92 @@
+package com.example.ejh.db;
+
+import com.example.ejh.metricas.Metricas;
+import com.example.ejh.tareas.TareaBD;
+
+import java.sql.SQLException;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Repeticion de las lecturas que fallan porque se ha cortado la conexion, por ejemplo tras un
+ * cambio de servidor en RDS o un {@code wait_timeout}. La conexion rota no vuelve al pool, asi
+ * que el siguiente intento usa otra. Solo se repiten lecturas: una escritura cortada puede
+ * haberse aplicado o no, y repetirla podria aplicarla dos veces.
+ *
+ * <p>Se hacen como maximo {@code ejh.bd.reintentos} intentos (3 por defecto) con esperas que
+ * se doblan desde {@value #ESPERA_INICIAL_MS} ms. Si el pool ha dejado de conectar
+ * ({@link BaseDatosNoDisponible}) no se repite: el error llega al momento.</p>
+ */
+public final class Reintentos {
+
+    private static final int INTENTOS = Math.max(1, Integer.getInteger("ejh.bd.reintentos", 3));
+    private static final long ESPERA_INICIAL_MS = 100;
+
+    private Reintentos() {
+    }
+
+    /**
+     * Lectura que se puede repetir entera.
+     *
+     * @param <T> El tipo del resultado.
+     */
+    @FunctionalInterface
+    public interface Lectura<T> {
+        T leer() throws SQLException;
+    }
+
+    /**
+     * Ejecuta una lectura y la repite si falla por un error de conexion.
+     *
+     * @param tarea La tarea que ejecuta la lectura; si se cancela, no se repite.
+     * @param lectura La lectura.
+     * @param <T> El tipo del resultado.
+     * @return El resultado de la lectura.
+     * @throws SQLException El error del ultimo intento.
+     */
+    public static <T> T leer(TareaBD<?> tarea, Lectura<T> lectura) throws SQLException {
+        return leer(tarea, () -> true, lectura);
+    }
+
+    /**
+     * Ejecuta una lectura y la repite si falla por un error de conexion y todavia se puede
+     * repetir, por ejemplo porque aun no ha entregado ninguna fila.
+     *
+     * @param tarea La tarea que ejecuta la lectura; si se cancela, no se repite.
+     * @param repetible Indica, despues de un fallo, si la lectura se puede repetir.
+     * @param lectura La lectura.
+     * @param <T> El tipo del resultado.
+     * @return El resultado de la lectura.
+     * @throws SQLException El error del ultimo intento.
+     */
+    public static <T> T leer(TareaBD<?> tarea, BooleanSupplier repetible, Lectura<T> lectura) throws SQLException {
+        long espera = ESPERA_INICIAL_MS;
+        for (int intento = 1; ; intento++) {
+            try {
+                return lectura.leer();
+            } catch (SQLException e) {
+                if (intento >= INTENTOS || !esErrorConexion(e) || (tarea != null && tarea.isCancelled())
+                        || !repetible.getAsBoolean()) {
+                    throw e;
+                }
+                Metricas.contar("bd.reintentos", 1);
+                try {
+                    Thread.sleep(espera);
+                } catch (InterruptedException interrupcion) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+                espera *= 2;
+            }
+        }
+    }
+
+    /**
+     * Indica si un error se debe a la conexion (clase 08 de SQLSTATE) y no a la sentencia.
+     *
+     * @param e El error.
+     * @return true si la conexion se ha cortado o no se pudo abrir.
+     */
+    public static boolean esErrorConexion(SQLException e) {
+        return !(e instanceof BaseDatosNoDisponible) && e.getSQLState() != null && e.getSQLState().startsWith("08");
+    }
+}
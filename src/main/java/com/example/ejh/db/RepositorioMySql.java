@@ -0,0 +1,580 @@
+package com.example.ejh.db;
+
+import com.example.ejh.model.FiltroPersonas;
+import com.example.ejh.model.OrdenPersonas;
+import com.example.ejh.model.Persona;
+import com.example.ejh.tareas.TareaBD;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Personas guardadas en la tabla Persona de MySQL. Las conexiones se toman de un
+ * {@link PoolConexiones}; el pool no se cierra aqui porque lo comparten la lista paginada, la
+ * cola de escritura y el sondeo de cambios.
+ */
+public class RepositorioMySql implements RepositorioPersonas {
+
+    // Las bajas mas antiguas no hacen falta: un equipo que lleva tanto sin sondear recarga al arrancar
+    private static final int DIAS_REGISTRO_BAJAS = 7;
+    private static final String COLUMNA_ACTUALIZADA = "actualizada TIMESTAMP(6) NOT NULL "
+            + "DEFAULT CURRENT_TIMESTAMP(6) ON UPDATE CURRENT_TIMESTAMP(6)";
+    private static final String COLUMNA_VERSION = "version INT NOT NULL DEFAULT 0";
+
+    private static final String SQL_TODAS = "SELECT id, nombre, apellidos, edad, version FROM Persona";
+    private static final String SQL_OBTENER = "SELECT id, nombre, apellidos, edad, version FROM Persona WHERE id = ?";
+    private static final String SQL_INSERTAR = "INSERT INTO Persona (nombre, apellidos, edad) VALUES (?, ?, ?)";
+    private static final String SQL_MODIFICAR = "UPDATE Persona SET nombre = ?, apellidos = ?, edad = ?, "
+            + "version = version + 1 WHERE id = ? AND version = ?";
+    private static final String SQL_ELIMINAR = "DELETE FROM Persona WHERE id = ?";
+    // Ids por sentencia en las operaciones sobre varias personas
+    private static final int LOTE_IDS = 1000;
+
+    private final PoolConexiones pool;
+    private final String urlServidor;
+    private final String nombreBaseDatos;
+    private final String usuario;
+    private final String contrasena;
+
+    /**
+     * Constructor para crear el repositorio.
+     *
+     * @param pool El pool con las conexiones a la base de datos.
+     * @param urlServidor La URL JDBC del servidor, sin la base de datos, para crearla si falta.
+     * @param nombreBaseDatos El nombre de la base de datos.
+     * @param usuario El usuario de MySQL.
+     * @param contrasena La contrasena del usuario.
+     */
+    public RepositorioMySql(PoolConexiones pool, String urlServidor, String nombreBaseDatos,
+                            String usuario, String contrasena) {
+        this.pool = pool;
+        this.urlServidor = urlServidor;
+        this.nombreBaseDatos = nombreBaseDatos;
+        this.usuario = usuario;
+        this.contrasena = contrasena;
+    }
+
+    /**
+     * Conecta con la base de datos y crea la tabla si hace falta. Se ejecuta en segundo plano.
+     *
+     * @throws ErrorBaseDatos Si falla alguno de los pasos.
+     */
+    @Override
+    public void preparar() throws ErrorBaseDatos {
+        conectarBaseDatos();
+        crearTablaPersonas();
+        crearRegistroBajas();
+        limpiarRegistroBajas();
+    }
+
+    /**
+     * Borra del registro de bajas las que ya no hacen falta.
+     */
+    @Override
+    public void mantener() {
+        limpiarRegistroBajas();
+    }
+
+    @Override
+    public String getDescripcion() {
+        return nombreBaseDatos;
+    }
+
+    /**
+     * Lee el resultado en streaming, sin traerlo entero a memoria. Si la conexion se corta antes
+     * de entregar la primera fila, la lectura se repite con otra conexion.
+     */
+    @Override
+    public int cargarTodas(TareaBD<?> tarea, Consumer<Persona> destino) throws SQLException {
+        int[] entregadas = new int[1];
+        return Reintentos.leer(tarea, () -> entregadas[0] == 0, () -> {
+            cargarTodas(tarea, destino, entregadas);
+            return entregadas[0];
+        });
+    }
+
+    private void cargarTodas(TareaBD<?> tarea, Consumer<Persona> destino, int[] filas) throws SQLException {
+        try (Connection conn = pool.obtenerConexionLarga();
+             Statement stmt = tarea.registrar(conn.createStatement(ResultSet.TYPE_FORWARD_ONLY,
+                     ResultSet.CONCUR_READ_ONLY))) {
+            // Con Connector/J, MIN_VALUE hace que las filas lleguen una a una en streaming; con
+            // useCursorFetch=true en la URL se puede indicar un tamano positivo para usar un cursor
+            stmt.setFetchSize(Integer.getInteger("ejh.carga.fetch", Integer.MIN_VALUE));
+            try (ResultSet rs = stmt.executeQuery(SQL_TODAS)) {
+                while (rs.next() && !tarea.isCancelled()) {
+                    destino.accept(leerPersona(rs));
+                    filas[0]++;
+                }
+            }
+        }
+    }
+
+    @Override
+    public List<Persona> buscar(TareaBD<?> tarea, FiltroPersonas filtro, int limite) throws SQLException {
+        String sql = "SELECT id, nombre, apellidos, edad, version FROM Persona WHERE "
+                + ListaPaginadaPersonas.condicion(filtro) + "TRUE ORDER BY id LIMIT ?";
+        return Reintentos.leer(tarea, () -> {
+            List<Persona> personas = new ArrayList<>();
+            try (Connection conn = pool.obtenerConexion();
+                 PreparedStatement pstmt = tarea.registrar(conn.prepareStatement(sql))) {
+                int i = ListaPaginadaPersonas.asignarParametros(pstmt, filtro);
+                pstmt.setInt(i, limite);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        personas.add(leerPersona(rs));
+                    }
+                }
+            }
+            return personas;
+        });
+    }
+
+    @Override
+    public Persona obtener(TareaBD<?> tarea, int id) throws SQLException {
+        return Reintentos.leer(tarea, () -> {
+            try (Connection conn = pool.obtenerConexion();
+                 PreparedStatement pstmt = tarea.registrar(SentenciasEnCache.preparar(conn, SQL_OBTENER))) {
+                pstmt.setInt(1, id);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    return rs.next() ? leerPersona(rs) : null;
+                }
+            }
+        });
+    }
+
+    @Override
+    public Persona insertar(TareaBD<?> tarea, String nombre, String apellidos, int edad) throws SQLException {
+        try (Connection conn = pool.obtenerConexion();
+             PreparedStatement pstmt = tarea.registrar(
+                     SentenciasEnCache.preparar(conn, SQL_INSERTAR, PreparedStatement.RETURN_GENERATED_KEYS))) {
+            asignarDatos(pstmt, nombre, apellidos, edad);
+            pstmt.executeUpdate();
+            try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
+                if (generatedKeys.next()) {
+                    return new Persona(generatedKeys.getInt(1), nombre, apellidos, edad);
+                }
+                throw new SQLException("MySQL no ha devuelto el id de la persona");
+            }
+        }
+    }
+
+    @Override
+    public boolean modificar(TareaBD<?> tarea, Persona persona) throws SQLException {
+        try (Connection conn = pool.obtenerConexion();
+             PreparedStatement pstmt = tarea.registrar(SentenciasEnCache.preparar(conn, SQL_MODIFICAR))) {
+            asignarModificacion(pstmt, persona);
+            // Sin useAffectedRows, MySQL cuenta las filas encontradas aunque no cambien; la
+            // version cambia siempre, asi que 0 filas es que la persona no existe o ha cambiado
+            return pstmt.executeUpdate() > 0;
+        }
+    }
+
+    @Override
+    public boolean eliminar(TareaBD<?> tarea, int id) throws SQLException {
+        try (Connection conn = pool.obtenerConexion();
+             PreparedStatement pstmt = tarea.registrar(SentenciasEnCache.preparar(conn, SQL_ELIMINAR))) {
+            pstmt.setInt(1, id);
+            return pstmt.executeUpdate() > 0;
+        }
+    }
+
+    /**
+     * Las personas se borran con {@code DELETE ... WHERE id IN (...)} de {@link #LOTE_IDS} en
+     * {@link #LOTE_IDS} ids, todas en la misma transaccion.
+     */
+    @Override
+    public int eliminarVarias(TareaBD<?> tarea, List<Integer> ids) throws SQLException {
+        return porLotes(tarea, "DELETE FROM Persona WHERE id IN (", ids, null);
+    }
+
+    /**
+     * Cada lote de {@link #LOTE_IDS} ids es un solo {@code UPDATE ... WHERE id IN (...)}, todos
+     * en la misma transaccion. Como no se comprueba la version, una modificacion en curso sobre
+     * alguna de estas personas fallara despues por conflicto en vez de pisar este cambio.
+     */
+    @Override
+    public int modificarVarias(TareaBD<?> tarea, List<Integer> ids, OrdenPersonas.Columna columna, Object valor)
+            throws SQLException {
+        return porLotes(tarea, "UPDATE Persona SET " + columna.getNombreColumna()
+                + " = ?, version = version + 1 WHERE id IN (", ids, valor);
+    }
+
+    /**
+     * Todo va en una transaccion: las bajas en lotes de {@link #LOTE_IDS} ids, como en
+     * {@link #eliminarVarias}, y las modificaciones y las altas en un lote de JDBC cada una.
+     */
+    @Override
+    public LoteEscrito escribirVarias(TareaBD<?> tarea, List<Integer> bajas, List<Persona> modificaciones,
+                                      List<Persona> altas) throws SQLException {
+        try (Connection conn = pool.obtenerConexion()) {
+            conn.setAutoCommit(false);
+            try {
+                porLotes(tarea, conn, "DELETE FROM Persona WHERE id IN (", bajas, null);
+                boolean[] guardadas = modificarLote(tarea, conn, modificaciones);
+                List<Persona> escritas = insertarLote(tarea, conn, altas);
+                conn.commit();
+                return new LoteEscrito(guardadas, escritas);
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    @Override
+    public void cerrar() {
+    }
+
+    private boolean[] modificarLote(TareaBD<?> tarea, Connection conn, List<Persona> personas) throws SQLException {
+        boolean[] guardadas = new boolean[personas.size()];
+        if (personas.isEmpty()) {
+            return guardadas;
+        }
+        try (PreparedStatement pstmt = tarea.registrar(SentenciasEnCache.preparar(conn, SQL_MODIFICAR))) {
+            for (Persona persona : personas) {
+                asignarModificacion(pstmt, persona);
+                pstmt.addBatch();
+            }
+            int[] filas = pstmt.executeBatch();
+            for (int i = 0; i < filas.length; i++) {
+                // Como en modificar, 0 filas es que la persona no existe o ha cambiado
+                guardadas[i] = filas[i] != 0;
+            }
+        }
+        return guardadas;
+    }
+
+    private List<Persona> insertarLote(TareaBD<?> tarea, Connection conn, List<Persona> personas) throws SQLException {
+        List<Persona> escritas = new ArrayList<>(personas.size());
+        if (personas.isEmpty()) {
+            return escritas;
+        }
+        try (PreparedStatement pstmt = tarea.registrar(
+                SentenciasEnCache.preparar(conn, SQL_INSERTAR, PreparedStatement.RETURN_GENERATED_KEYS))) {
+            for (Persona persona : personas) {
+                asignarDatos(pstmt, persona.getNombre(), persona.getApellidos(), persona.getEdad());
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+            // Las claves generadas llegan en el mismo orden que las filas del lote
+            try (ResultSet claves = pstmt.getGeneratedKeys()) {
+                for (Persona persona : personas) {
+                    if (!claves.next()) {
+                        throw new SQLException("MySQL no ha devuelto los ids de todas las altas");
+                    }
+                    escritas.add(new Persona(claves.getInt(1), persona.getNombre(), persona.getApellidos(),
+                            persona.getEdad()));
+                }
+            }
+        }
+        return escritas;
+    }
+
+    private static void asignarDatos(PreparedStatement pstmt, String nombre, String apellidos, int edad)
+            throws SQLException {
+        pstmt.setString(1, nombre);
+        pstmt.setString(2, apellidos);
+        pstmt.setInt(3, edad);
+    }
+
+    private static void asignarModificacion(PreparedStatement pstmt, Persona persona) throws SQLException {
+        asignarDatos(pstmt, persona.getNombre(), persona.getApellidos(), persona.getEdad());
+        pstmt.setInt(4, persona.getId());
+        pstmt.setInt(5, persona.getVersion());
+    }
+
+    private static Persona leerPersona(ResultSet rs) throws SQLException {
+        return new Persona(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getInt(4), rs.getInt(5));
+    }
+
+    /**
+     * Ejecuta una sentencia sobre los ids por lotes en una transaccion. Los lotes completos
+     * reutilizan la misma sentencia preparada y el resto usa otra. Si se cancela la tarea
+     * entre dos lotes, se deshace todo.
+     *
+     * @param inicio La sentencia hasta el parentesis de la lista de ids.
+     * @param valor El valor del primer parametro, o null si la sentencia no tiene mas parametros que los ids.
+     * @return La suma de las filas afectadas.
+     */
+    private int porLotes(TareaBD<?> tarea, String inicio, List<Integer> ids, Object valor) throws SQLException {
+        try (Connection conn = pool.obtenerConexion()) {
+            conn.setAutoCommit(false);
+            try {
+                int filas = porLotes(tarea, conn, inicio, ids, valor);
+                conn.commit();
+                return filas;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * Ejecuta una sentencia sobre los ids por lotes en una conexion que ya esta en una transaccion.
+     */
+    private int porLotes(TareaBD<?> tarea, Connection conn, String inicio, List<Integer> ids, Object valor)
+            throws SQLException {
+        int completos = ids.size() / LOTE_IDS;
+        int resto = ids.size() % LOTE_IDS;
+        int filas = 0;
+        if (completos > 0) {
+            try (PreparedStatement pstmt = tarea.registrar(conn.prepareStatement(sentenciaLote(inicio, LOTE_IDS)))) {
+                for (int lote = 0; lote < completos; lote++) {
+                    if (tarea.isCancelled()) {
+                        throw new SQLException("Operacion cancelada");
+                    }
+                    filas += ejecutarLote(pstmt, ids.subList(lote * LOTE_IDS, (lote + 1) * LOTE_IDS), valor);
+                }
+            }
+        }
+        if (resto > 0) {
+            try (PreparedStatement pstmt = tarea.registrar(conn.prepareStatement(sentenciaLote(inicio, resto)))) {
+                filas += ejecutarLote(pstmt, ids.subList(ids.size() - resto, ids.size()), valor);
+            }
+        }
+        return filas;
+    }
+
+    private static int ejecutarLote(PreparedStatement pstmt, List<Integer> lote, Object valor) throws SQLException {
+        int i = 1;
+        if (valor != null) {
+            pstmt.setObject(i++, valor);
+        }
+        for (int id : lote) {
+            pstmt.setInt(i++, id);
+        }
+        return pstmt.executeUpdate();
+    }
+
+    private static String sentenciaLote(String inicio, int numIds) {
+        StringBuilder sql = new StringBuilder(inicio.length() + numIds * 2 + 1).append(inicio);
+        for (int i = 0; i < numIds; i++) {
+            sql.append(i == 0 ? "?" : ",?");
+        }
+        return sql.append(')').toString();
+    }
+
+    /**
+     * Metodo para comprobar la conexion con la base de datos. Si la base de datos no existe, la
+     * crea y vuelve a intentarlo una sola vez.
+     *
+     * @throws ErrorBaseDatos Si no se pudo conectar.
+     */
+    private void conectarBaseDatos() throws ErrorBaseDatos {
+        boolean creada = false;
+        while (true) {
+            try {
+                pool.obtenerConexion().close();
+                System.out.println("Conexión exitosa a la base de datos: " + nombreBaseDatos);
+                return;
+            } catch (SQLException e) {
+                if (e.getErrorCode() != 1049 || creada) {
+                    throw new ErrorBaseDatos("Error de conexión", "No se pudo conectar a la base de datos.", e);
+                }
+                crearBaseDatos();
+                creada = true;
+            }
+        }
+    }
+
+    /**
+     * Metodo para crear la base de datos si no existe.
+     *
+     * @throws ErrorBaseDatos Si no se pudo crear la base de datos.
+     */
+    private void crearBaseDatos() throws ErrorBaseDatos {
+        try (Connection conn = DriverManager.getConnection(urlServidor, usuario, contrasena);
+             Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("CREATE DATABASE IF NOT EXISTS " + nombreBaseDatos);
+            System.out.println("Base de datos '" + nombreBaseDatos + "' creada o ya existía.");
+        } catch (SQLException e) {
+            throw new ErrorBaseDatos("Error de creación", "No se pudo crear la base de datos.", e);
+        }
+    }
+
+    /**
+     * Metodo para crear la tabla 'Persona' en la base de datos si no existe. Los indices
+     * secundarios sirven para los filtros de busqueda y para ordenar por cada columna: en
+     * InnoDB cada entrada lleva tambien la clave primaria, asi que equivalen a (columna, id),
+     * que es justo el orden de las paginas. La columna {@code actualizada} la mantiene MySQL
+     * con la hora de la ultima modificacion de cada fila, para el {@link SondeoCambios}, y la
+     * columna {@code version} cuenta las modificaciones para detectar las que se pisan.
+     *
+     * @throws ErrorBaseDatos Si no se pudo crear la tabla.
+     */
+    private void crearTablaPersonas() throws ErrorBaseDatos {
+        if (!tablaExiste("Persona")) {
+            String sqlCrearTabla = "CREATE TABLE IF NOT EXISTS Persona ("
+                    + "id INT NOT NULL AUTO_INCREMENT, "
+                    + "nombre VARCHAR(250) NULL DEFAULT NULL, "
+                    + "apellidos VARCHAR(250) NULL DEFAULT NULL, "
+                    + "edad INT NULL DEFAULT NULL, "
+                    + COLUMNA_ACTUALIZADA + ", "
+                    + COLUMNA_VERSION + ", "
+                    + "PRIMARY KEY (id), "
+                    + "INDEX idx_persona_nombre (nombre), "
+                    + "INDEX idx_persona_apellidos (apellidos), "
+                    + "INDEX idx_persona_edad (edad), "
+                    + "INDEX idx_persona_actualizada (actualizada)"
+                    + ") ENGINE=InnoDB DEFAULT CHARSET=latin1;";
+
+            try (Connection conn = pool.obtenerConexion(); Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate(sqlCrearTabla);
+                System.out.println("Tabla 'Persona' creada.");
+            } catch (SQLException e) {
+                throw new ErrorBaseDatos("Error al crear la tabla", "No se pudo crear la tabla Persona.", e);
+            }
+        } else {
+            System.out.println("La tabla 'Persona' ya existe.");
+            crearColumnaActualizada();
+            crearColumnaVersion();
+            crearIndicesSecundarios();
+        }
+    }
+
+    /**
+     * Agrega la columna {@code actualizada} a una tabla creada antes de que existiera. Las
+     * filas que ya habia quedan con la hora actual. Un fallo solo se avisa: el sondeo de
+     * cambios fallara y la tabla no se actualizara sola.
+     */
+    private void crearColumnaActualizada() {
+        try (Connection conn = pool.obtenerConexionLarga(); Statement stmt = conn.createStatement()) {
+            if (columnaExiste(stmt, "actualizada")) {
+                return;
+            }
+            stmt.executeUpdate("ALTER TABLE Persona ADD COLUMN " + COLUMNA_ACTUALIZADA);
+            System.out.println("Columna 'actualizada' creada.");
+        } catch (SQLException e) {
+            System.err.println("No se pudo crear la columna actualizada: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Agrega la columna {@code version} a una tabla creada antes de que existiera, con las
+     * filas que ya habia en la version 0. Sin ella no se puede leer ni modificar ninguna persona.
+     *
+     * @throws ErrorBaseDatos Si no se pudo crear la columna.
+     */
+    private void crearColumnaVersion() throws ErrorBaseDatos {
+        try (Connection conn = pool.obtenerConexionLarga(); Statement stmt = conn.createStatement()) {
+            if (columnaExiste(stmt, "version")) {
+                return;
+            }
+            stmt.executeUpdate("ALTER TABLE Persona ADD COLUMN " + COLUMNA_VERSION);
+            System.out.println("Columna 'version' creada.");
+        } catch (SQLException e) {
+            throw new ErrorBaseDatos("Error al crear la tabla", "No se pudo crear la columna version.", e);
+        }
+    }
+
+    private static boolean columnaExiste(Statement stmt, String columna) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM information_schema.COLUMNS "
+                + "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'Persona' AND COLUMN_NAME = '" + columna + "'")) {
+            return rs.next() && rs.getInt(1) > 0;
+        }
+    }
+
+    /**
+     * Crea la tabla 'PersonaBorrada', donde un trigger apunta el id y la hora de cada baja
+     * para que los demas equipos se enteren. Si no se puede
+     * crear el trigger (en RDS con el log binario activo hace falta
+     * {@code log_bin_trust_function_creators}), las bajas de otros equipos no se veran hasta
+     * el siguiente arranque.
+     */
+    private void crearRegistroBajas() {
+        String sqlCrearTabla = "CREATE TABLE IF NOT EXISTS PersonaBorrada ("
+                + "id INT NOT NULL, "
+                + "borrada TIMESTAMP(6) NOT NULL DEFAULT CURRENT_TIMESTAMP(6), "
+                + "PRIMARY KEY (id), "
+                + "INDEX idx_persona_borrada (borrada)"
+                + ") ENGINE=InnoDB";
+        String sqlExisteTrigger = "SELECT COUNT(*) FROM information_schema.TRIGGERS "
+                + "WHERE TRIGGER_SCHEMA = DATABASE() AND TRIGGER_NAME = 'persona_al_borrar'";
+        String sqlCrearTrigger = "CREATE TRIGGER persona_al_borrar AFTER DELETE ON Persona FOR EACH ROW "
+                + "INSERT INTO PersonaBorrada (id, borrada) VALUES (OLD.id, NOW(6)) "
+                + "ON DUPLICATE KEY UPDATE borrada = NOW(6)";
+        try (Connection conn = pool.obtenerConexion(); Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate(sqlCrearTabla);
+            try (ResultSet rs = stmt.executeQuery(sqlExisteTrigger)) {
+                if (rs.next() && rs.getInt(1) == 0) {
+                    stmt.executeUpdate(sqlCrearTrigger);
+                    System.out.println("Trigger 'persona_al_borrar' creado.");
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("No se pudo crear el registro de bajas: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Borra del registro de bajas las que ya no hacen falta. Se ejecuta en segundo plano.
+     */
+    private void limpiarRegistroBajas() {
+        try (Connection conn = pool.obtenerConexionLarga(); Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("DELETE FROM PersonaBorrada WHERE borrada < NOW(6) - INTERVAL "
+                    + DIAS_REGISTRO_BAJAS + " DAY");
+        } catch (SQLException e) {
+            System.err.println("No se pudo limpiar el registro de bajas: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Crea en una tabla ya existente los indices que usan los filtros de busqueda y la ordenacion, si faltan.
+     * Sin ellos todo funciona igual pero recorriendo la tabla, asi que un fallo solo se avisa.
+     */
+    private void crearIndicesSecundarios() {
+        String[][] indices = {
+                {"idx_persona_nombre", "nombre"},
+                {"idx_persona_apellidos", "apellidos"},
+                {"idx_persona_edad", "edad"},
+                {"idx_persona_actualizada", "actualizada"}};
+        String sqlExistentes = "SELECT DISTINCT INDEX_NAME FROM information_schema.STATISTICS "
+                + "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'Persona'";
+        try (Connection conn = pool.obtenerConexionLarga(); Statement stmt = conn.createStatement()) {
+            Set<String> existentes = new HashSet<>();
+            try (ResultSet rs = stmt.executeQuery(sqlExistentes)) {
+                while (rs.next()) {
+                    existentes.add(rs.getString(1).toLowerCase());
+                }
+            }
+            for (String[] indice : indices) {
+                if (!existentes.contains(indice[0])) {
+                    stmt.executeUpdate("CREATE INDEX " + indice[0] + " ON Persona (" + indice[1] + ")");
+                    System.out.println("Indice '" + indice[0] + "' creado.");
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("No se pudieron crear los indices secundarios: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Verifica si la tabla con el nombre proporcionado existe en la base de datos.
+     *
+     * @param nombreTabla El nombre de la tabla a verificar.
+     * @return true si la tabla existe, false si no existe.
+     * @throws ErrorBaseDatos Si no se pudo hacer la comprobacion.
+     */
+    private boolean tablaExiste(String nombreTabla) throws ErrorBaseDatos {
+        try (Connection conn = pool.obtenerConexion();
+             ResultSet rs = conn.getMetaData().getTables(null, null, nombreTabla, null)) {
+            return rs.next();
+        } catch (SQLException e) {
+            throw new ErrorBaseDatos("Error", "No se pudo verificar si la tabla " + nombreTabla + " existe.", e);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.ejh.db;
+
+import com.example.ejh.model.FiltroPersonas;
+import com.example.ejh.model.OrdenPersonas;
+import com.example.ejh.model.Persona;
+import com.example.ejh.tareas.TareaBD;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Almacen de las personas. Hay una implementacion contra MySQL ({@link RepositorioMySql}) y
+ * otra local, en archivos, para trabajar sin red. Todos los metodos se ejecutan en segundo
+ * plano y se pueden llamar desde varios hilos a la vez.
+ */
+public interface RepositorioPersonas {
+
+    /**
+     * Deja el almacen listo para usarse: conecta y crea lo que falte.
+     *
+     * @throws ErrorBaseDatos Si no se pudo preparar.
+     */
+    void preparar() throws ErrorBaseDatos;
+
+    /**
+     * Hace el mantenimiento que no hace falta para leer ni escribir, y por tanto puede ir en
+     * paralelo con la carga. Los fallos solo se avisan.
+     */
+    default void mantener() {
+    }
+
+    /**
+     * Obtiene una descripcion del almacen para mostrarla al usuario.
+     *
+     * @return La descripcion, por ejemplo el nombre de la base de datos.
+     */
+    String getDescripcion();
+
+    /**
+     * Lee todas las personas en orden de id, entregandolas una a una sin guardarlas todas en memoria.
+     *
+     * @param tarea La tarea que ejecuta la lectura, para poder cancelarla.
+     * @param destino Lo que se hace con cada persona leida.
+     * @return El numero de personas leidas.
+     * @throws SQLException Si falla la lectura.
+     */
+    int cargarTodas(TareaBD<?> tarea, Consumer<Persona> destino) throws SQLException;
+
+    /**
+     * Busca las personas que cumplen un filtro, en orden de id.
+     *
+     * @param tarea La tarea que ejecuta la busqueda, para poder cancelarla.
+     * @param filtro El filtro.
+     * @param limite El numero maximo de personas devueltas.
+     * @return Las personas encontradas.
+     * @throws SQLException Si falla la busqueda.
+     */
+    List<Persona> buscar(TareaBD<?> tarea, FiltroPersonas filtro, int limite) throws SQLException;
+
+    /**
+     * Busca una persona por su id.
+     *
+     * @param tarea La tarea que ejecuta la busqueda, para poder cancelarla.
+     * @param id El id de la persona.
+     * @return La persona, o null si no existe.
+     * @throws SQLException Si falla la busqueda.
+     */
+    Persona obtener(TareaBD<?> tarea, int id) throws SQLException;
+
+    /**
+     * Da de alta una persona.
+     *
+     * @param tarea La tarea que ejecuta el alta, para poder cancelarla.
+     * @param nombre El nombre.
+     * @param apellidos Los apellidos.
+     * @param edad La edad.
+     * @return La persona con el id asignado.
+     * @throws SQLException Si falla el alta.
+     */
+    Persona insertar(TareaBD<?> tarea, String nombre, String apellidos, int edad) throws SQLException;
+
+    /**
+     * Guarda los datos de una persona existente solo si nadie la ha cambiado desde que se leyo,
+     * es decir, si su version guardada sigue siendo la de {@code persona}. Si se guarda, la
+     * version guardada pasa a ser la siguiente. Si no, el llamante puede leer los datos actuales
+     * con {@link #obtener} para saber si la persona se ha borrado o se ha cambiado.
+     *
+     * @param tarea La tarea que ejecuta la modificacion, para poder cancelarla.
+     * @param persona La persona con los nuevos datos y la version de la que se partio.
+     * @return true si la persona existia con esa version y se ha guardado.
+     * @throws SQLException Si falla la modificacion.
+     */
+    boolean modificar(TareaBD<?> tarea, Persona persona) throws SQLException;
+
+    /**
+     * Da de baja una persona.
+     *
+     * @param tarea La tarea que ejecuta la baja, para poder cancelarla.
+     * @param id El id de la persona.
+     * @return true si la persona existia.
+     * @throws SQLException Si falla la baja.
+     */
+    boolean eliminar(TareaBD<?> tarea, int id) throws SQLException;
+
+    /**
+     * Da de baja varias personas de una vez. Con MySQL se borran todas o ninguna.
+     *
+     * @param tarea La tarea que ejecuta las bajas, para poder cancelarla.
+     * @param ids Los ids de las personas.
+     * @return El numero de personas que existian y se han borrado.
+     * @throws SQLException Si fallan las bajas.
+     */
+    int eliminarVarias(TareaBD<?> tarea, List<Integer> ids) throws SQLException;
+
+    /**
+     * Pone el mismo valor en un dato de varias personas. Con MySQL se cambian todas o ninguna.
+     * No se comprueba la version de cada una, pero todas pasan a la siguiente.
+     *
+     * @param tarea La tarea que ejecuta la modificacion, para poder cancelarla.
+     * @param ids Los ids de las personas.
+     * @param columna El dato que se cambia.
+     * @param valor El nuevo valor: un String para el nombre y los apellidos o un Integer para la edad.
+     * @return El numero de personas que existian y se han modificado.
+     * @throws SQLException Si falla la modificacion.
+     */
+    int modificarVarias(TareaBD<?> tarea, List<Integer> ids, OrdenPersonas.Columna columna, Object valor)
+            throws SQLException;
+
+    /**
+     * Escribe de una vez bajas, modificaciones y altas, en ese orden. Cada modificacion solo se
+     * guarda si la persona sigue en su version, como en {@link #modificar}; las que no, se
+     * indican en el resultado sin que falle el resto. Con MySQL se escriben todas o ninguna y
+     * cada tipo de cambio va en un solo lote. Por defecto se escriben una a una.
+     *
+     * @param tarea La tarea que ejecuta la escritura, para poder cancelarla.
+     * @param bajas Los ids de las personas que se dan de baja.
+     * @param modificaciones Las personas con los nuevos datos y la version de la que se partio.
+     * @param altas Las personas que se dan de alta; su id no se usa.
+     * @return Las modificaciones guardadas y las altas con su id.
+     * @throws SQLException Si falla la escritura.
+     */
+    default LoteEscrito escribirVarias(TareaBD<?> tarea, List<Integer> bajas, List<Persona> modificaciones,
+                                       List<Persona> altas) throws SQLException {
+        eliminarVarias(tarea, bajas);
+        boolean[] guardadas = new boolean[modificaciones.size()];
+        for (int i = 0; i < guardadas.length; i++) {
+            guardadas[i] = modificar(tarea, modificaciones.get(i));
+        }
+        List<Persona> escritas = new ArrayList<>(altas.size());
+        for (Persona persona : altas) {
+            escritas.add(insertar(tarea, persona.getNombre(), persona.getApellidos(), persona.getEdad()));
+        }
+        return new LoteEscrito(guardadas, escritas);
+    }
+
+    /**
+     * Libera los recursos del almacen. Se llama al cerrar la aplicacion.
+     */
+    void cerrar();
+}
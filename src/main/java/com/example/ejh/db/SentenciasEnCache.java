@@ -0,0 +1,58 @@
+package com.example.ejh.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Conexion que guarda sus sentencias preparadas para reutilizarlas. Las conexiones de
+ * {@link PoolConexiones} lo son: cada conexion fisica guarda las sentencias que se le han
+ * pedido y, al cerrar la sentencia, en lugar de cerrarla se limpian sus parametros y se
+ * deja lista para el siguiente prestamo de la conexion. Con {@code useServerPrepStmts=true}
+ * en la URL, MySQL analiza cada sentencia una sola vez por conexion.
+ *
+ * <p>Solo tiene sentido para las sentencias fijas que se repiten mucho. La sentencia devuelta
+ * se debe cerrar, como cualquier otra, y no se deben cambiar opciones como el fetch size,
+ * que se conservarian en el siguiente uso.</p>
+ */
+public interface SentenciasEnCache {
+
+    /**
+     * Obtiene la sentencia preparada para el SQL indicado, reutilizando la de un uso anterior si la hay.
+     *
+     * @param sql El SQL de la sentencia.
+     * @param clavesGeneradas {@link Statement#RETURN_GENERATED_KEYS} o {@link Statement#NO_GENERATED_KEYS}.
+     * @return La sentencia; al cerrarla vuelve a la cache.
+     * @throws SQLException Si no se pudo preparar.
+     */
+    PreparedStatement prepararEnCache(String sql, int clavesGeneradas) throws SQLException;
+
+    /**
+     * Prepara una sentencia reutilizable si la conexion lo permite, o una normal si no.
+     *
+     * @param conn La conexion.
+     * @param sql El SQL de la sentencia.
+     * @return La sentencia.
+     * @throws SQLException Si no se pudo preparar.
+     */
+    static PreparedStatement preparar(Connection conn, String sql) throws SQLException {
+        return preparar(conn, sql, Statement.NO_GENERATED_KEYS);
+    }
+
+    /**
+     * Prepara una sentencia reutilizable si la conexion lo permite, o una normal si no.
+     *
+     * @param conn La conexion.
+     * @param sql El SQL de la sentencia.
+     * @param clavesGeneradas {@link Statement#RETURN_GENERATED_KEYS} o {@link Statement#NO_GENERATED_KEYS}.
+     * @return La sentencia.
+     * @throws SQLException Si no se pudo preparar.
+     */
+    static PreparedStatement preparar(Connection conn, String sql, int clavesGeneradas) throws SQLException {
+        if (conn instanceof SentenciasEnCache) {
+            return ((SentenciasEnCache) conn).prepararEnCache(sql, clavesGeneradas);
+        }
+        return conn.prepareStatement(sql, clavesGeneradas);
+    }
+}
@@ -0,0 +1,211 @@
+package com.example.ejh.db;
+
+import com.example.ejh.metricas.Metricas;
+import com.example.ejh.model.Persona;
+import com.example.ejh.tareas.TareaBD;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Compara una copia local de la tabla Persona con la base de datos sin descargarla entera.
+ * Los ids se reparten en tramos de tamano fijo y de cada tramo se calcula una huella con el
+ * numero de filas y la combinacion (XOR y suma) del CRC32 de cada fila. MySQL calcula las
+ * huellas de todos los tramos en una sola consulta y solo se descargan los tramos cuya
+ * huella no coincide con la local.
+ */
+public class SincronizadorInstantanea {
+
+    // El CRC32 se calcula sobre el texto en UTF-8 para obtener el mismo valor que en Java
+    private static final String SQL_HUELLAS = "SELECT id DIV ? AS tramo, COUNT(*), BIT_XOR(h), SUM(h) FROM ("
+            + "SELECT id, CRC32(CONVERT(CONCAT_WS('|', id, nombre, apellidos, COALESCE(edad, 0), version) USING utf8mb4)) AS h "
+            + "FROM Persona) t GROUP BY tramo";
+    private static final String SQL_TRAMO = "SELECT id, nombre, apellidos, edad, version FROM Persona WHERE id >= ? AND id < ? ORDER BY id";
+
+    private final FuenteConexiones fuente;
+    private final int tamanoTramo;
+
+    /**
+     * Constructor para crear el sincronizador.
+     *
+     * @param fuente El origen de las conexiones a la base de datos.
+     * @param tamanoTramo El numero de ids de cada tramo.
+     */
+    public SincronizadorInstantanea(FuenteConexiones fuente, int tamanoTramo) {
+        this.fuente = fuente;
+        this.tamanoTramo = tamanoTramo;
+    }
+
+    /**
+     * Busca las diferencias entre las personas locales y la base de datos. Se ejecuta en
+     * segundo plano.
+     *
+     * @param tarea La tarea que ejecuta la comparacion, para poder cancelarla.
+     * @param locales Las personas de la copia local.
+     * @return Los cambios que hay que aplicar a la copia local.
+     * @throws SQLException Si falla alguna consulta.
+     */
+    public Cambios comparar(TareaBD<?> tarea, List<Persona> locales) throws SQLException {
+        Map<Integer, List<Persona>> localesPorTramo = new HashMap<>();
+        Map<Integer, Huella> huellasLocales = new HashMap<>();
+        for (Persona persona : locales) {
+            int tramo = persona.getId() / tamanoTramo;
+            localesPorTramo.computeIfAbsent(tramo, t -> new ArrayList<>()).add(persona);
+            huellasLocales.computeIfAbsent(tramo, t -> new Huella()).agregar(crc(persona));
+        }
+
+        Cambios cambios = new Cambios();
+        try (Metricas.Cronometro c = Metricas.cronometrar("bd.sincronizacion");
+             Connection conn = fuente.obtenerConexionLarga()) {
+            Map<Integer, Huella> huellasRemotas = new HashMap<>();
+            try (PreparedStatement pstmt = tarea.registrar(conn.prepareStatement(SQL_HUELLAS))) {
+                pstmt.setInt(1, tamanoTramo);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        huellasRemotas.put(rs.getInt(1), new Huella(rs.getLong(2), rs.getLong(3), rs.getLong(4)));
+                    }
+                }
+            }
+
+            Set<Integer> tramos = new HashSet<>(huellasLocales.keySet());
+            tramos.addAll(huellasRemotas.keySet());
+            cambios.tramos = tramos.size();
+            try (PreparedStatement pstmt = tarea.registrar(conn.prepareStatement(SQL_TRAMO))) {
+                for (int tramo : tramos) {
+                    if (Objects.equals(huellasLocales.get(tramo), huellasRemotas.get(tramo)) || tarea.isCancelled()) {
+                        continue;
+                    }
+                    cambios.tramosDistintos++;
+                    pstmt.setInt(1, tramo * tamanoTramo);
+                    pstmt.setInt(2, (tramo + 1) * tamanoTramo);
+                    Map<Integer, Persona> remotas = new HashMap<>();
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            Persona persona = new Persona(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getInt(4),
+                                    rs.getInt(5));
+                            remotas.put(persona.getId(), persona);
+                        }
+                    }
+                    cambios.filasLeidas += remotas.size();
+                    for (Persona local : localesPorTramo.getOrDefault(tramo, List.of())) {
+                        Persona remota = remotas.remove(local.getId());
+                        if (remota == null) {
+                            cambios.bajas.add(local);
+                        } else if (!mismosDatos(remota, local)) {
+                            cambios.modificadas.add(remota);
+                        }
+                    }
+                    cambios.altas.addAll(remotas.values());
+                }
+            }
+        }
+        return cambios;
+    }
+
+    private static boolean mismosDatos(Persona a, Persona b) {
+        return a.getEdad() == b.getEdad() && a.getVersion() == b.getVersion() && Objects.equals(a.getNombre(), b.getNombre())
+                && Objects.equals(a.getApellidos(), b.getApellidos());
+    }
+
+    /**
+     * Calcula el CRC32 de una fila igual que {@link #SQL_HUELLAS}: CONCAT_WS omite los null.
+     */
+    private static long crc(Persona persona) {
+        StringBuilder texto = new StringBuilder().append(persona.getId());
+        if (persona.getNombre() != null) {
+            texto.append('|').append(persona.getNombre());
+        }
+        if (persona.getApellidos() != null) {
+            texto.append('|').append(persona.getApellidos());
+        }
+        texto.append('|').append(persona.getEdad()).append('|').append(persona.getVersion());
+        CRC32 crc = new CRC32();
+        crc.update(texto.toString().getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+
+    /**
+     * Huella de un tramo: numero de filas, XOR y suma de sus CRC32.
+     */
+    private static final class Huella {
+        private long filas;
+        private long xor;
+        private long suma;
+
+        private Huella() {
+        }
+
+        private Huella(long filas, long xor, long suma) {
+            this.filas = filas;
+            this.xor = xor;
+            this.suma = suma;
+        }
+
+        private void agregar(long crc) {
+            filas++;
+            xor ^= crc;
+            suma += crc;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Huella)) {
+                return false;
+            }
+            Huella otra = (Huella) o;
+            return filas == otra.filas && xor == otra.xor && suma == otra.suma;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(filas, xor, suma);
+        }
+    }
+
+    /**
+     * Diferencias entre la copia local y la base de datos.
+     */
+    public static final class Cambios {
+        private final List<Persona> altas = new ArrayList<>();
+        private final List<Persona> modificadas = new ArrayList<>();
+        private final List<Persona> bajas = new ArrayList<>();
+        private int tramos;
+        private int tramosDistintos;
+        private int filasLeidas;
+
+        public List<Persona> getAltas() {
+            return altas;
+        }
+
+        public List<Persona> getModificadas() {
+            return modificadas;
+        }
+
+        public List<Persona> getBajas() {
+            return bajas;
+        }
+
+        public int getTramos() {
+            return tramos;
+        }
+
+        public int getTramosDistintos() {
+            return tramosDistintos;
+        }
+
+        public int getFilasLeidas() {
+            return filasLeidas;
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package com.example.ejh.db;
+
+import com.example.ejh.metricas.Metricas;
+import com.example.ejh.model.Persona;
+import com.example.ejh.tareas.EjecutorTareas;
+import com.example.ejh.tareas.TareaBD;
+import javafx.animation.PauseTransition;
+import javafx.util.Duration;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Consulta cada cierto tiempo las personas cambiadas por otros equipos. Cada fila de Persona
+ * lleva en la columna {@code actualizada} el momento de su ultimo cambio y cada baja deja un
+ * registro en la tabla {@code PersonaBorrada}, asi que basta con leer las filas posteriores
+ * a la ultima consulta.
+ *
+ * <p>La marca de cada consulta es la hora de MySQL al empezarla. Una transaccion que tarda en
+ * confirmarse puede dejar filas con una hora anterior a la marca, por eso se lee con un margen
+ * hacia atras; las filas del margen que ya se entregaron no se vuelven a entregar.</p>
+ *
+ * <p>Los metodos se deben llamar desde el hilo de JavaFX salvo {@link #leerMarca}.</p>
+ */
+public class SondeoCambios {
+
+    private static final String SQL_AHORA = "SELECT NOW(6)";
+    private static final String SQL_CAMBIADAS = "SELECT id, nombre, apellidos, edad, actualizada, version FROM Persona WHERE actualizada >= ?";
+    private static final String SQL_BORRADAS = "SELECT id, borrada FROM PersonaBorrada WHERE borrada >= ?";
+
+    private final FuenteConexiones fuente;
+    private final long margenMs;
+    private final PauseTransition temporizador;
+    private final Consumer<Cambios> alCambiar;
+    private final Consumer<Throwable> alFallar;
+
+    private volatile Timestamp marca;
+    // Filas del margen ya entregadas, con la hora del cambio entregado
+    private Map<Integer, Timestamp> cambiadasEntregadas = new HashMap<>();
+    private Map<Integer, Timestamp> borradasEntregadas = new HashMap<>();
+    private TareaBD<Cambios> enCurso;
+    // Cambia al detener para descartar el resultado de una consulta que ya habia terminado
+    private int generacion;
+    private boolean activo;
+    // Se ha pedido una consulta mientras habia otra en curso
+    private boolean repetir;
+
+    /**
+     * Constructor para crear el sondeo.
+     *
+     * @param fuente El origen de las conexiones a la base de datos.
+     * @param intervaloMs El tiempo entre el final de una consulta y el principio de la siguiente.
+     * @param margenMs Lo que se lee hacia atras de la marca.
+     * @param alCambiar Lo que se hace con los cambios, en el hilo de JavaFX. Solo se llama si hay alguno.
+     * @param alFallar Lo que se hace si falla una consulta, en el hilo de JavaFX. El sondeo sigue.
+     */
+    public SondeoCambios(FuenteConexiones fuente, long intervaloMs, long margenMs,
+                         Consumer<Cambios> alCambiar, Consumer<Throwable> alFallar) {
+        this.fuente = fuente;
+        this.margenMs = margenMs;
+        this.alCambiar = alCambiar;
+        this.alFallar = alFallar;
+        this.temporizador = new PauseTransition(Duration.millis(intervaloMs));
+        this.temporizador.setOnFinished(e -> consultar());
+    }
+
+    /**
+     * Lee la hora de MySQL y la guarda como marca. Se llama en segundo plano antes de cargar
+     * los datos, para que el primer sondeo traiga lo que cambie durante la carga.
+     *
+     * @throws SQLException Si falla la consulta.
+     */
+    public void leerMarca() throws SQLException {
+        try (Connection conn = fuente.obtenerConexion()) {
+            marca = ahora(conn);
+        }
+    }
+
+    /**
+     * Empieza a consultar los cambios, o sigue si estaba detenido.
+     */
+    public void iniciar() {
+        activo = true;
+        if (enCurso == null) {
+            temporizador.playFromStart();
+        }
+    }
+
+    /**
+     * Consulta los cambios sin esperar al intervalo, por ejemplo tras un cambio masivo hecho
+     * desde este equipo. Si hay una consulta en curso, se repite al terminar. Si el sondeo
+     * esta detenido no hace nada: al iniciarse traera los cambios desde la marca.
+     */
+    public void consultarAhora() {
+        if (!activo) {
+            return;
+        }
+        if (enCurso != null) {
+            repetir = true;
+            return;
+        }
+        temporizador.stop();
+        consultar();
+    }
+
+    /**
+     * Deja de consultar los cambios. Una consulta en curso termina, pero sus cambios no se
+     * entregan; se volveran a leer al iniciar de nuevo porque la marca no avanza.
+     */
+    public void detener() {
+        activo = false;
+        repetir = false;
+        generacion++;
+        temporizador.stop();
+        if (enCurso != null) {
+            enCurso.cancel();
+            enCurso = null;
+        }
+    }
+
+    private void consultar() {
+        if (!activo || enCurso != null || marca == null) {
+            return;
+        }
+        int generacionConsulta = generacion;
+        Timestamp desde = new Timestamp(marca.getTime() - margenMs);
+        // La consulta trabaja sobre copias: si no llega a entregar sus cambios, no cuentan como entregados
+        Map<Integer, Timestamp> cambiadas = new HashMap<>(cambiadasEntregadas);
+        Map<Integer, Timestamp> borradas = new HashMap<>(borradasEntregadas);
+        enCurso = EjecutorTareas.lanzar(tarea -> leerCambios(tarea, desde, cambiadas, borradas), cambios -> {
+            if (generacionConsulta != generacion) {
+                return;
+            }
+            enCurso = null;
+            marca = cambios.marca;
+            cambiadasEntregadas = cambiadas;
+            borradasEntregadas = borradas;
+            if (!cambios.cambiadas.isEmpty() || !cambios.borradas.isEmpty()) {
+                alCambiar.accept(cambios);
+            }
+            siguiente();
+        }, error -> {
+            if (generacionConsulta != generacion) {
+                return;
+            }
+            enCurso = null;
+            alFallar.accept(error);
+            siguiente();
+        });
+    }
+
+    private void siguiente() {
+        if (repetir) {
+            repetir = false;
+            consultar();
+        } else {
+            temporizador.playFromStart();
+        }
+    }
+
+    /**
+     * Lee los cambios desde el momento indicado, sin repetir los ya entregados. Se ejecuta en segundo plano.
+     */
+    private Cambios leerCambios(TareaBD<?> tarea, Timestamp desde, Map<Integer, Timestamp> cambiadasEntregadas,
+                                Map<Integer, Timestamp> borradasEntregadas) throws SQLException {
+        Cambios cambios = new Cambios();
+        try (Metricas.Cronometro c = Metricas.cronometrar("bd.sondeo");
+             Connection conn = fuente.obtenerConexion()) {
+            cambios.marca = ahora(conn);
+            try (PreparedStatement pstmt = tarea.registrar(SentenciasEnCache.preparar(conn, SQL_CAMBIADAS))) {
+                pstmt.setTimestamp(1, desde);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        int id = rs.getInt(1);
+                        if (esNuevo(cambiadasEntregadas, id, rs.getTimestamp(5))) {
+                            cambios.cambiadas.add(new Persona(id, rs.getString(2), rs.getString(3), rs.getInt(4), rs.getInt(6)));
+                        }
+                    }
+                }
+            }
+            try (PreparedStatement pstmt = tarea.registrar(SentenciasEnCache.preparar(conn, SQL_BORRADAS))) {
+                pstmt.setTimestamp(1, desde);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        int id = rs.getInt(1);
+                        if (esNuevo(borradasEntregadas, id, rs.getTimestamp(2))) {
+                            cambios.borradas.add(id);
+                        }
+                    }
+                }
+            }
+        }
+        // Lo que queda fuera del proximo margen ya no se puede repetir
+        Timestamp limite = new Timestamp(cambios.marca.getTime() - margenMs);
+        cambiadasEntregadas.values().removeIf(momento -> momento.before(limite));
+        borradasEntregadas.values().removeIf(momento -> momento.before(limite));
+        return cambios;
+    }
+
+    private static boolean esNuevo(Map<Integer, Timestamp> entregadas, int id, Timestamp momento) {
+        return !momento.equals(entregadas.put(id, momento));
+    }
+
+    private static Timestamp ahora(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(SQL_AHORA)) {
+            rs.next();
+            return rs.getTimestamp(1);
+        }
+    }
+
+    /**
+     * Cambios leidos en una consulta.
+     */
+    public static final class Cambios {
+        private final List<Persona> cambiadas = new ArrayList<>();
+        private final List<Integer> borradas = new ArrayList<>();
+        private Timestamp marca;
+
+        /**
+         * Obtiene las personas dadas de alta o modificadas, con sus datos actuales.
+         *
+         * @return Las personas cambiadas.
+         */
+        public List<Persona> getCambiadas() {
+            return cambiadas;
+        }
+
+        /**
+         * Obtiene los ids de las personas dadas de baja.
+         *
+         * @return Los ids borrados.
+         */
+        public List<Integer> getBorradas() {
+            return borradas;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.example.ejh.duplicados;
+
+import java.text.Normalizer;
+
+/**
+ * Claves para agrupar las personas que pueden estar repetidas: el texto normalizado, un
+ * codigo fonetico de los apellidos pensado para el espanol y la franja de edad. Dos personas
+ * solo se comparan si comparten alguna clave, lo que evita comparar cada persona con todas.
+ */
+public final class ClavesDuplicados {
+
+    /** Letras del principio de los apellidos normalizados que forman la clave de prefijo. */
+    public static final int LETRAS_PREFIJO = 4;
+    /** Longitud maxima del codigo fonetico. */
+    public static final int LONGITUD_FONETICA = 6;
+    /** Anos de cada franja de edad. */
+    public static final int ANCHO_FRANJA = 5;
+
+    private ClavesDuplicados() {
+    }
+
+    /**
+     * Normaliza un texto para compararlo: quita los acentos y la dieresis (la enie pasa a ser
+     * una n), pasa a minusculas, cambia por espacios lo que no es letra ni numero y deja un
+     * solo espacio entre palabras. Asi "Muñoz  Pérez" y "munoz perez" quedan iguales, aunque
+     * uno venga con acentos y el otro se haya escrito sin ellos por la tabla en latin1.
+     *
+     * @param texto El texto, que puede ser null.
+     * @return El texto normalizado, o una cadena vacia.
+     */
+    public static String normalizar(String texto) {
+        if (texto == null || texto.isEmpty()) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(texto.length());
+        boolean espacio = false;
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            if (c >= 0x80) {
+                // Solo se descompone lo que no es ASCII: la mayoria de los nombres no lo necesita
+                String base = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD);
+                c = base.charAt(0);
+            }
+            if (Character.isLetterOrDigit(c)) {
+                if (espacio && sb.length() > 0) {
+                    sb.append(' ');
+                }
+                espacio = false;
+                sb.append(Character.toLowerCase(c));
+            } else if (Character.getType(c) != Character.NON_SPACING_MARK) {
+                espacio = true;
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Obtiene el prefijo de un texto normalizado que forma la clave, sin contar los espacios.
+     *
+     * @param normalizado El texto normalizado con {@link #normalizar}.
+     * @return Las primeras {@value #LETRAS_PREFIJO} letras.
+     */
+    public static String prefijo(String normalizado) {
+        StringBuilder sb = new StringBuilder(LETRAS_PREFIJO);
+        for (int i = 0; i < normalizado.length() && sb.length() < LETRAS_PREFIJO; i++) {
+            char c = normalizado.charAt(i);
+            if (c != ' ') {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Calcula un codigo fonetico para el espanol: las letras que suenan igual tienen el mismo
+     * codigo (b y v; c, s y z; ll e y; g y j ante e o i; c, k y qu), la h muda se ignora, las
+     * vocales solo cuentan al principio y no se repite el mismo codigo seguido. Asi "Gonzalez",
+     * "Gonzales" y "Gonsalez" tienen el mismo codigo.
+     *
+     * @param normalizado El texto normalizado con {@link #normalizar}.
+     * @return El codigo, de {@value #LONGITUD_FONETICA} caracteres como maximo.
+     */
+    public static String fonetico(String normalizado) {
+        StringBuilder sb = new StringBuilder(LONGITUD_FONETICA);
+        int n = normalizado.length();
+        char anterior = 0;
+        for (int i = 0; i < n && sb.length() < LONGITUD_FONETICA; i++) {
+            char c = normalizado.charAt(i);
+            char siguiente = i + 1 < n ? normalizado.charAt(i + 1) : ' ';
+            char codigo;
+            switch (c) {
+                case 'a':
+                case 'e':
+                case 'i':
+                case 'o':
+                case 'u':
+                    codigo = sb.length() == 0 ? Character.toUpperCase(c) : 0;
+                    break;
+                case 'b':
+                case 'v':
+                case 'w':
+                    codigo = 'B';
+                    break;
+                case 'c':
+                    if (siguiente == 'h') {
+                        codigo = 'C';
+                        i++;
+                    } else {
+                        codigo = siguiente == 'e' || siguiente == 'i' ? 'S' : 'K';
+                    }
+                    break;
+                case 'k':
+                    codigo = 'K';
+                    break;
+                case 'q':
+                    codigo = 'K';
+                    if (siguiente == 'u') {
+                        i++;
+                    }
+                    break;
+                case 's':
+                case 'z':
+                case 'x':
+                    codigo = 'S';
+                    break;
+                case 'g':
+                    if (siguiente == 'e' || siguiente == 'i') {
+                        codigo = 'J';
+                    } else {
+                        codigo = 'G';
+                        char despues = i + 2 < n ? normalizado.charAt(i + 2) : ' ';
+                        if (siguiente == 'u' && (despues == 'e' || despues == 'i')) {
+                            i++;
+                        }
+                    }
+                    break;
+                case 'j':
+                    codigo = 'J';
+                    break;
+                case 'l':
+                    if (siguiente == 'l') {
+                        codigo = 'Y';
+                        i++;
+                    } else {
+                        codigo = 'L';
+                    }
+                    break;
+                case 'y':
+                    codigo = 'Y';
+                    break;
+                case 'h':
+                case ' ':
+                    codigo = 0;
+                    break;
+                default:
+                    codigo = Character.toUpperCase(c);
+            }
+            if (codigo != 0 && codigo != anterior) {
+                sb.append(codigo);
+            }
+            // Una vocal separa dos consonantes iguales; un espacio o una h no
+            if (codigo != 0 || (c != ' ' && c != 'h')) {
+                anterior = codigo;
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Obtiene la franja de edad de una persona.
+     *
+     * @param edad La edad.
+     * @return El numero de franja, de {@value #ANCHO_FRANJA} anos cada una.
+     */
+    public static int franjaEdad(int edad) {
+        return Math.floorDiv(edad, ANCHO_FRANJA);
+    }
+
+    /**
+     * Indica si una edad es la ultima de su franja, de modo que la misma persona con un ano
+     * mas caeria en la franja siguiente.
+     *
+     * @param edad La edad.
+     * @return true si {@code edad + 1} esta en otra franja.
+     */
+    public static boolean ultimaDeFranja(int edad) {
+        return Math.floorMod(edad, ANCHO_FRANJA) == ANCHO_FRANJA - 1;
+    }
+}
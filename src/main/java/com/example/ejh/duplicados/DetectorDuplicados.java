@@ -0,0 +1,493 @@
+package com.example.ejh.duplicados;
+
+import com.example.ejh.metricas.Metricas;
+import com.example.ejh.model.Persona;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.stream.IntStream;
+
+/**
+ * Busca personas repetidas aunque no esten escritas igual: con erratas, con o sin acentos o
+ * con la edad desplazada un ano. Comparar cada persona con todas seria cuadratico, asi que se
+ * usan dos pasadas de bloques (prefijo de los apellidos y franja de edad, y codigo fonetico de
+ * los apellidos y franja de edad, ver {@link ClavesDuplicados}) y solo se comparan las
+ * personas de un mismo bloque. Las personas con la ultima edad de una franja entran tambien
+ * en el bloque de la franja siguiente, para que dos edades seguidas siempre coincidan en
+ * alguno; alli solo se comparan con las personas de esa franja.
+ *
+ * <p>Los bloques se forman ordenando un array de long con el hash de la clave en la parte
+ * alta y la fila en la baja, y se comparan en paralelo con tareas fork/join que se reparten
+ * las filas. Dentro de un bloque de hasta {@code maxBloque} personas se comparan todos los
+ * pares; los bloques mas grandes (un apellido muy comun) se ordenan por el texto y cada
+ * persona se compara con las {@code ventana} siguientes. En la segunda pasada no se vuelven
+ * a comparar las personas que ya compartian bloque en la primera. Dos personas se consideran la misma
+ * si su edad se diferencia como mucho en un ano y la distancia de edicion entre
+ * "nombre apellidos" normalizados no pasa del {@code 1 - similitud} de la longitud. Los pares
+ * encontrados se unen en grupos con union-find.</p>
+ *
+ * <p>El numero de comparaciones se anota en el contador {@code duplicados.comparaciones} y
+ * el tiempo total en {@code duplicados.buscar}.</p>
+ */
+public class DetectorDuplicados {
+
+    /** Similitud minima por defecto, configurable con {@code -Dejh.duplicados.similitud}. */
+    public static final double SIMILITUD = Double.parseDouble(System.getProperty("ejh.duplicados.similitud", "0.85"));
+    private static final int MAX_BLOQUE = Integer.getInteger("ejh.duplicados.bloque", 64);
+    private static final int VENTANA = Integer.getInteger("ejh.duplicados.ventana", 16);
+    private static final int DIFERENCIA_EDAD = 1;
+    // Filas de bloques que compara cada tarea sin dividirse mas
+    private static final int FILAS_POR_TAREA = 4096;
+    // Marca en la parte baja de la clave las filas de la segunda pasada
+    private static final long SEGUNDA_PASADA = 1L << 31;
+    // Marca las filas que entran en el bloque desde la franja de edad anterior
+    private static final int VECINA = 1 << 30;
+    private static final int FILA = VECINA - 1;
+
+    private final double similitud;
+    private final int maxBloque;
+    private final int ventana;
+    private final ForkJoinPool hilos;
+
+    /**
+     * Constructor con la similitud, el tamano de bloque y la ventana por defecto, que usa el
+     * pool comun de fork/join.
+     */
+    public DetectorDuplicados() {
+        this(SIMILITUD, MAX_BLOQUE, VENTANA, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructor para crear el detector.
+     *
+     * @param similitud La similitud minima entre 0 y 1; 1 solo encuentra textos iguales.
+     * @param maxBloque El tamano maximo de bloque en el que se comparan todos los pares.
+     * @param ventana Las personas siguientes con las que se compara cada una en los bloques mayores.
+     * @param hilos El pool de fork/join donde se comparan los bloques.
+     */
+    public DetectorDuplicados(double similitud, int maxBloque, int ventana, ForkJoinPool hilos) {
+        if (similitud <= 0 || similitud > 1) {
+            throw new IllegalArgumentException("La similitud debe estar entre 0 y 1: " + similitud);
+        }
+        this.similitud = similitud;
+        this.maxBloque = Math.max(2, maxBloque);
+        this.ventana = Math.max(1, ventana);
+        this.hilos = hilos;
+    }
+
+    /**
+     * Busca los grupos de personas repetidas.
+     *
+     * @param personas Las personas; las posiciones null se ignoran.
+     * @param cancelada Indica si se ha cancelado la busqueda, para dejarla a medias.
+     * @return Los grupos, ordenados por el id menor de cada uno; vacio si se cancela.
+     */
+    public List<GrupoDuplicados> buscar(List<Persona> personas, BooleanSupplier cancelada) {
+        try (Metricas.Cronometro c = Metricas.cronometrar("duplicados.buscar")) {
+            Persona[] filas = personas.toArray(new Persona[0]);
+            int n = filas.length;
+            String[] textos = new String[n];
+            int[] primeras = new int[n];
+            // Posicion de las claves de la franja siguiente de cada fila, o -1 si no tiene
+            int[] vecinas = new int[n];
+            int total = 2 * n;
+            for (int i = 0; i < n; i++) {
+                if (filas[i] != null && ClavesDuplicados.ultimaDeFranja(filas[i].getEdad())) {
+                    vecinas[i] = total;
+                    total += 2;
+                } else {
+                    vecinas[i] = -1;
+                }
+            }
+            long[] claves = new long[total];
+            IntStream.range(0, n).parallel().forEach(i -> claves(filas, i, textos, primeras, vecinas, claves));
+            int[] rangos = rangos(textos);
+            Arrays.parallelSort(claves);
+            if (cancelada.getAsBoolean()) {
+                return List.of();
+            }
+
+            Bloques bloques = Bloques.leer(claves);
+            Comparacion comparacion = new Comparacion(filas, textos, rangos, primeras, claves, bloques,
+                    cancelada);
+            Pares pares = hilos.invoke(comparacion.parte(0, bloques.numero));
+            Metricas.contar("duplicados.comparaciones", comparacion.comparaciones.sum());
+            if (cancelada.getAsBoolean()) {
+                return List.of();
+            }
+            return agrupar(filas, pares);
+        }
+    }
+
+    /**
+     * Calcula el texto normalizado de una fila y sus dos claves de bloque, mas otras dos con
+     * la franja siguiente si la edad es la ultima de la suya. El hash del prefijo se guarda
+     * aparte, para saber despues si dos filas ya se han comparado en la primera pasada.
+     */
+    private static void claves(Persona[] filas, int i, String[] textos, int[] primeras, int[] vecinas,
+                               long[] claves) {
+        Persona persona = filas[i];
+        if (persona == null) {
+            // El hash -1 no forma bloque: la fila no se compara
+            claves[i] = -1L << 32 | i;
+            claves[filas.length + i] = -1L << 32 | i;
+            return;
+        }
+        String nombre = ClavesDuplicados.normalizar(persona.getNombre());
+        String apellidos = ClavesDuplicados.normalizar(persona.getApellidos());
+        textos[i] = nombre.isEmpty() ? apellidos : apellidos.isEmpty() ? nombre : nombre + " " + apellidos;
+        int franja = ClavesDuplicados.franjaEdad(persona.getEdad());
+        String prefijo = ClavesDuplicados.prefijo(apellidos);
+        String fonetico = ClavesDuplicados.fonetico(apellidos);
+        claves[i] = clave(1, prefijo, franja, i);
+        primeras[i] = prefijo.hashCode();
+        claves[filas.length + i] = clave(2, fonetico, franja, i) | SEGUNDA_PASADA;
+        if (vecinas[i] >= 0) {
+            claves[vecinas[i]] = clave(1, prefijo, franja + 1, i) | VECINA;
+            claves[vecinas[i] + 1] = clave(2, fonetico, franja + 1, i) | SEGUNDA_PASADA | VECINA;
+        }
+    }
+
+    /**
+     * Calcula la posicion de cada fila con los textos ordenados, para ordenar despues los
+     * bloques grandes comparando enteros en lugar de cadenas.
+     */
+    private static int[] rangos(String[] textos) {
+        Integer[] orden = new Integer[textos.length];
+        for (int i = 0; i < orden.length; i++) {
+            orden[i] = i;
+        }
+        Arrays.parallelSort(orden, Comparator.comparing(i -> textos[i], Comparator.nullsLast(Comparator.naturalOrder())));
+        int[] rangos = new int[textos.length];
+        for (int k = 0; k < orden.length; k++) {
+            rangos[orden[k]] = k;
+        }
+        return rangos;
+    }
+
+    private static long clave(int pasada, String valor, int franja, int fila) {
+        int hash = (31 * pasada + valor.hashCode()) * 31 + franja;
+        // El hash -1 se reserva para las filas vacias
+        if (hash == -1) {
+            hash = 0;
+        }
+        return (long) hash << 32 | fila;
+    }
+
+    /**
+     * Une los pares encontrados en grupos con union-find.
+     */
+    private static List<GrupoDuplicados> agrupar(Persona[] filas, Pares pares) {
+        int[] padre = new int[filas.length];
+        for (int i = 0; i < padre.length; i++) {
+            padre[i] = i;
+        }
+        for (int k = 0; k < pares.numero; k++) {
+            int a = raiz(padre, (int) (pares.valores[k] >>> 32));
+            int b = raiz(padre, (int) pares.valores[k]);
+            if (a != b) {
+                // La raiz es siempre la fila menor, para recorrer los grupos en orden
+                padre[Math.max(a, b)] = Math.min(a, b);
+            }
+        }
+        List<List<Persona>> porRaiz = new ArrayList<>();
+        int[] grupoDe = new int[filas.length];
+        Arrays.fill(grupoDe, -1);
+        for (int i = 0; i < filas.length; i++) {
+            int r = raiz(padre, i);
+            if (r == i) {
+                // Las raices entran en su grupo con la primera fila que se les une
+                continue;
+            }
+            if (grupoDe[r] < 0) {
+                grupoDe[r] = porRaiz.size();
+                List<Persona> grupo = new ArrayList<>();
+                grupo.add(filas[r]);
+                porRaiz.add(grupo);
+            }
+            porRaiz.get(grupoDe[r]).add(filas[i]);
+        }
+        List<GrupoDuplicados> grupos = new ArrayList<>(porRaiz.size());
+        for (List<Persona> grupo : porRaiz) {
+            grupo.sort(Comparator.comparingInt(Persona::getId));
+            grupos.add(new GrupoDuplicados(grupo));
+        }
+        grupos.sort(Comparator.comparingInt(g -> g.getPersonas().get(0).getId()));
+        return grupos;
+    }
+
+    private static int raiz(int[] padre, int i) {
+        while (padre[i] != i) {
+            padre[i] = padre[padre[i]];
+            i = padre[i];
+        }
+        return i;
+    }
+
+    /**
+     * Distancia de edicion (Levenshtein) limitada: solo se calcula la banda de la diagonal de
+     * ancho {@code maximo} y se deja en cuanto toda la fila pasa del maximo.
+     *
+     * @param a El primer texto.
+     * @param b El segundo texto.
+     * @param maximo La distancia maxima que interesa.
+     * @param filas Dos filas de trabajo de al menos {@code b.length() + 1} posiciones.
+     * @return La distancia, o {@code maximo + 1} si es mayor que el maximo.
+     */
+    static int distancia(String a, String b, int maximo, int[][] filas) {
+        int la = a.length();
+        int lb = b.length();
+        int fuera = maximo + 1;
+        if (Math.abs(la - lb) > maximo) {
+            return fuera;
+        }
+        // El principio y el final comunes no cambian la distancia
+        int inicio = 0;
+        while (inicio < la && inicio < lb && a.charAt(inicio) == b.charAt(inicio)) {
+            inicio++;
+        }
+        while (la > inicio && lb > inicio && a.charAt(la - 1) == b.charAt(lb - 1)) {
+            la--;
+            lb--;
+        }
+        la -= inicio;
+        lb -= inicio;
+        if (la == 0 || lb == 0) {
+            return Math.max(la, lb);
+        }
+        int[] anterior = filas[0];
+        int[] actual = filas[1];
+        for (int j = 0; j <= lb; j++) {
+            anterior[j] = j <= maximo ? j : fuera;
+        }
+        for (int i = 1; i <= la; i++) {
+            int desde = Math.max(1, i - maximo);
+            int hasta = Math.min(lb, i + maximo);
+            actual[0] = i <= maximo ? i : fuera;
+            actual[desde - 1] = desde == 1 ? actual[0] : fuera;
+            int minimo = actual[desde - 1];
+            char ca = a.charAt(inicio + i - 1);
+            for (int j = desde; j <= hasta; j++) {
+                int sustitucion = anterior[j - 1] + (ca == b.charAt(inicio + j - 1) ? 0 : 1);
+                int valor = Math.min(sustitucion, Math.min(anterior[j], actual[j - 1]) + 1);
+                actual[j] = Math.min(valor, fuera);
+                minimo = Math.min(minimo, actual[j]);
+            }
+            if (hasta < lb) {
+                actual[hasta + 1] = fuera;
+            }
+            if (minimo > maximo) {
+                return fuera;
+            }
+            int[] cambio = anterior;
+            anterior = actual;
+            actual = cambio;
+        }
+        return anterior[lb];
+    }
+
+    /**
+     * Bloques con mas de una fila del array de claves ordenado: el bloque k ocupa las
+     * posiciones de {@code inicios[k]} a {@code fines[k]} sin incluir.
+     */
+    private static final class Bloques {
+        private final int[] inicios;
+        private final int[] fines;
+        // Filas acumuladas antes de cada bloque, para repartir el trabajo por filas
+        private final long[] acumuladas;
+        private final int numero;
+
+        private Bloques(int[] inicios, int[] fines, long[] acumuladas, int numero) {
+            this.inicios = inicios;
+            this.fines = fines;
+            this.acumuladas = acumuladas;
+            this.numero = numero;
+        }
+
+        private static Bloques leer(long[] claves) {
+            int[] inicios = new int[16];
+            int[] fines = new int[16];
+            long[] acumuladas = new long[17];
+            int numero = 0;
+            int i = 0;
+            while (i < claves.length) {
+                int hash = (int) (claves[i] >>> 32);
+                int fin = i + 1;
+                while (fin < claves.length && (int) (claves[fin] >>> 32) == hash) {
+                    fin++;
+                }
+                if (fin - i > 1 && hash != -1) {
+                    if (numero == inicios.length) {
+                        inicios = Arrays.copyOf(inicios, numero * 2);
+                        fines = Arrays.copyOf(fines, numero * 2);
+                        acumuladas = Arrays.copyOf(acumuladas, numero * 2 + 1);
+                    }
+                    inicios[numero] = i;
+                    fines[numero] = fin;
+                    acumuladas[numero + 1] = acumuladas[numero] + (fin - i);
+                    numero++;
+                }
+                i = fin;
+            }
+            return new Bloques(inicios, fines, acumuladas, numero);
+        }
+    }
+
+    /**
+     * Pares de filas parecidas, cada uno como un long con la fila menor en la parte alta.
+     */
+    private static final class Pares {
+        private long[] valores = new long[16];
+        private int numero;
+
+        private void agregar(int a, int b) {
+            if (numero == valores.length) {
+                valores = Arrays.copyOf(valores, numero * 2);
+            }
+            valores[numero++] = (long) Math.min(a, b) << 32 | Math.max(a, b);
+        }
+
+        private Pares unir(Pares otros) {
+            if (otros.numero > numero) {
+                return otros.unir(this);
+            }
+            if (numero + otros.numero > valores.length) {
+                valores = Arrays.copyOf(valores, numero + otros.numero);
+            }
+            System.arraycopy(otros.valores, 0, valores, numero, otros.numero);
+            numero += otros.numero;
+            return this;
+        }
+    }
+
+    /**
+     * Datos comunes de las tareas que comparan los bloques.
+     */
+    private final class Comparacion {
+        private final Persona[] filas;
+        private final String[] textos;
+        private final int[] rangos;
+        private final int[] primeras;
+        private final long[] claves;
+        private final Bloques bloques;
+        private final BooleanSupplier cancelada;
+        private final LongAdder comparaciones = new LongAdder();
+
+        private Comparacion(Persona[] filas, String[] textos, int[] rangos, int[] primeras, long[] claves,
+                            Bloques bloques, BooleanSupplier cancelada) {
+            this.filas = filas;
+            this.textos = textos;
+            this.rangos = rangos;
+            this.primeras = primeras;
+            this.claves = claves;
+            this.bloques = bloques;
+            this.cancelada = cancelada;
+        }
+
+        private Parte parte(int desde, int hasta) {
+            return new Parte(desde, hasta);
+        }
+
+        /**
+         * Tarea que compara los bloques de {@code desde} a {@code hasta}, o los divide en dos
+         * mitades con el mismo numero de filas si son demasiadas.
+         */
+        private final class Parte extends RecursiveTask<Pares> {
+            private final int desde;
+            private final int hasta;
+
+            private Parte(int desde, int hasta) {
+                this.desde = desde;
+                this.hasta = hasta;
+            }
+
+            @Override
+            protected Pares compute() {
+                long filasParte = bloques.acumuladas[hasta] - bloques.acumuladas[desde];
+                if (hasta - desde > 1 && filasParte > FILAS_POR_TAREA) {
+                    long mitad = bloques.acumuladas[desde] + filasParte / 2;
+                    int corte = Arrays.binarySearch(bloques.acumuladas, desde, hasta, mitad);
+                    corte = Math.min(Math.max(corte < 0 ? -corte - 1 : corte, desde + 1), hasta - 1);
+                    Parte izquierda = new Parte(desde, corte);
+                    izquierda.fork();
+                    Pares derecha = new Parte(corte, hasta).compute();
+                    return izquierda.join().unir(derecha);
+                }
+                Pares pares = new Pares();
+                int[][] memoria = new int[2][64];
+                for (int k = desde; k < hasta && !cancelada.getAsBoolean(); k++) {
+                    memoria = compararBloque(bloques.inicios[k], bloques.fines[k], pares, memoria);
+                }
+                return pares;
+            }
+        }
+
+        private int[][] compararBloque(int inicio, int fin, Pares pares, int[][] memoria) {
+            int tamano = fin - inicio;
+            boolean segunda = (claves[inicio] & SEGUNDA_PASADA) != 0;
+            int[] miembros = new int[tamano];
+            // Cada miembro es la fila con la marca VECINA
+            if (tamano <= maxBloque) {
+                for (int k = 0; k < tamano; k++) {
+                    miembros[k] = (int) (claves[inicio + k] & ~SEGUNDA_PASADA);
+                }
+            } else {
+                // Vecindario ordenado: las personas parecidas quedan cerca al ordenar por el texto
+                long[] orden = new long[tamano];
+                for (int k = 0; k < tamano; k++) {
+                    int miembro = (int) (claves[inicio + k] & ~SEGUNDA_PASADA);
+                    orden[k] = (long) rangos[miembro & FILA] << 32 | miembro;
+                }
+                Arrays.sort(orden);
+                for (int k = 0; k < tamano; k++) {
+                    miembros[k] = (int) orden[k];
+                }
+            }
+            int alcance = tamano <= maxBloque ? tamano : ventana + 1;
+            long hechas = 0;
+            for (int x = 0; x < tamano; x++) {
+                int hasta = Math.min(tamano, x + alcance);
+                for (int y = x + 1; y < hasta; y++) {
+                    if ((miembros[x] & miembros[y] & VECINA) != 0) {
+                        // Las dos vienen de la franja anterior: ya se han comparado en la suya
+                        continue;
+                    }
+                    int a = miembros[x] & FILA;
+                    int b = miembros[y] & FILA;
+                    if (segunda && primeras[a] == primeras[b]) {
+                        // Mismo prefijo: si las edades se diferencian en un ano o menos, ya
+                        // han coincidido en algun bloque de la primera pasada
+                        continue;
+                    }
+                    hechas++;
+                    memoria = comparar(a, b, pares, memoria);
+                }
+            }
+            comparaciones.add(hechas);
+            return memoria;
+        }
+
+        private int[][] comparar(int a, int b, Pares pares, int[][] memoria) {
+            if (Math.abs(filas[a].getEdad() - filas[b].getEdad()) > DIFERENCIA_EDAD) {
+                return memoria;
+            }
+            String ta = textos[a];
+            String tb = textos[b];
+            int largo = Math.max(ta.length(), tb.length());
+            int maximo = (int) (largo * (1 - similitud) + 1e-9);
+            if (tb.length() >= memoria[0].length) {
+                memoria = new int[2][tb.length() * 2];
+            }
+            if (ta.equals(tb) || distancia(ta, tb, maximo, memoria) <= maximo) {
+                pares.agregar(a, b);
+            }
+            return memoria;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.ejh.duplicados;
+
+import com.example.ejh.model.Persona;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Grupo de personas que parecen la misma, encontrado por {@link DetectorDuplicados}. Cada
+ * persona se parece al menos a otra del grupo, aunque dos de ellas pueden no parecerse entre
+ * si (Jose a Josep y Josep a Joseph).
+ */
+public final class GrupoDuplicados {
+
+    private final List<Persona> personas;
+
+    GrupoDuplicados(List<Persona> personas) {
+        this.personas = Collections.unmodifiableList(personas);
+    }
+
+    /**
+     * Obtiene las personas del grupo.
+     *
+     * @return Las personas, ordenadas por id; al menos dos.
+     */
+    public List<Persona> getPersonas() {
+        return personas;
+    }
+
+    public int size() {
+        return personas.size();
+    }
+
+    @Override
+    public String toString() {
+        Persona primera = personas.get(0);
+        return primera.getNombre() + " " + primera.getApellidos() + " (" + primera.getEdad() + ") y "
+                + (personas.size() - 1) + " mas";
+    }
+}
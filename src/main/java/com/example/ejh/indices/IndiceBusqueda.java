@@ -0,0 +1,339 @@
+package com.example.ejh.indices;
+
+import com.example.ejh.model.DiccionarioCadenas;
+import com.example.ejh.model.FiltroPersonas;
+import com.example.ejh.model.Persona;
+import com.example.ejh.tareas.EjecutorTareas;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Indice para buscar personas por prefijo del nombre, prefijo de los apellidos y rango de
+ * edad sin recorrer la lista. De los nombres y los apellidos solo se guardan ordenados los
+ * valores distintos, normalizados una vez cada uno; un prefijo es un rango de valores que
+ * se encuentra con dos busquedas binarias y que da el rango de ids de las filas que los
+ * tienen. Las edades se guardan ordenadas junto al id en un array de long.
+ *
+ * <p>Los arrays ordenados se construyen en segundo plano con {@link #reconstruir()}. Las
+ * filas agregadas o modificadas despues se apuntan como pendientes y se revisan una a una
+ * en cada busqueda; cuando son muchas se vuelve a construir el indice. Las entradas que
+ * han quedado antiguas no se borran: cada candidato se comprueba contra la fila actual
+ * de la lista antes de darlo por bueno.</p>
+ *
+ * <p>Todos los metodos se deben llamar desde el hilo de JavaFX.</p>
+ */
+public class IndiceBusqueda implements ListChangeListener<Persona> {
+
+    private static final int MIN_PENDIENTES_RECONSTRUIR = 4096;
+
+    private final ObservableList<Persona> lista;
+    private final IndicePorId indicePorId;
+    private Runnable alReconstruir = () -> { };
+
+    private Ordenados ordenados;
+    private boolean construyendo;
+    // Ids agregados o modificados desde la ultima copia, sin repetir
+    private int[] pendientes = new int[64];
+    private int numPendientes;
+    private final MapaEnteros posicionPendiente = new MapaEnteros();
+    // Numero de pendientes que ya estaban antes de la copia que se esta indexando
+    private int marcaCopia;
+
+    /**
+     * Constructor para crear el indice y empezar a escuchar los cambios de la lista. El
+     * indice esta vacio hasta que se llama a {@link #reconstruir()}.
+     *
+     * @param lista La lista a indexar.
+     * @param indicePorId El indice de posiciones de la misma lista, para comprobar los candidatos.
+     */
+    public IndiceBusqueda(ObservableList<Persona> lista, IndicePorId indicePorId) {
+        this.lista = lista;
+        this.indicePorId = indicePorId;
+        lista.addListener(this);
+    }
+
+    /**
+     * Establece lo que se hace cuando termina de construirse el indice, por ejemplo volver
+     * a aplicar el filtro actual.
+     *
+     * @param alReconstruir La accion, que se ejecuta en el hilo de JavaFX.
+     */
+    public void setAlReconstruir(Runnable alReconstruir) {
+        this.alReconstruir = alReconstruir;
+    }
+
+    /**
+     * Indica si el indice se puede usar para buscar.
+     *
+     * @return true si ya se ha construido alguna vez.
+     */
+    public boolean estaListo() {
+        return ordenados != null;
+    }
+
+    /**
+     * Copia los datos de la lista y construye los arrays ordenados en segundo plano. Mientras
+     * tanto se sigue usando el indice anterior.
+     */
+    public void reconstruir() {
+        if (construyendo) {
+            return;
+        }
+        construyendo = true;
+        int n = lista.size();
+        int[] ids = new int[n];
+        String[] nombres = new String[n];
+        String[] apellidos = new String[n];
+        int[] edades = new int[n];
+        for (int i = 0; i < n; i++) {
+            Persona persona = lista.get(i);
+            if (persona != null) {
+                ids[i] = persona.getId();
+                nombres[i] = persona.getNombre();
+                apellidos[i] = persona.getApellidos();
+                edades[i] = persona.getEdad();
+            }
+        }
+        marcaCopia = numPendientes;
+        EjecutorTareas.enSegundoPlano(() -> new Ordenados(ids, nombres, apellidos, edades))
+                .whenCompleteAsync((nuevos, error) -> {
+                    construyendo = false;
+                    if (error != null) {
+                        marcaCopia = 0;
+                        error.printStackTrace();
+                        return;
+                    }
+                    ordenados = nuevos;
+                    descartarPendientesCopiados();
+                    alReconstruir.run();
+                }, EjecutorTareas.HILO_FX);
+    }
+
+    @Override
+    public void onChanged(Change<? extends Persona> c) {
+        if (ordenados == null && !construyendo) {
+            // Todavia no hay indice; la primera construccion copiara la lista entera
+            return;
+        }
+        while (c.next()) {
+            if (c.wasAdded()) {
+                for (Persona persona : c.getAddedSubList()) {
+                    if (persona != null) {
+                        apuntarPendiente(persona.getId());
+                    }
+                }
+            }
+        }
+        // Las filas eliminadas no se tocan: sus entradas no pasan la comprobacion
+        if (ordenados != null && numPendientes > Math.max(MIN_PENDIENTES_RECONSTRUIR, lista.size() / 16)) {
+            reconstruir();
+        }
+    }
+
+    /**
+     * Busca las personas que cumplen el filtro. Recorre solo el rango mas pequeno de los
+     * que marca el filtro y las filas pendientes.
+     *
+     * @param filtro El filtro.
+     * @return Los ids de las personas que lo cumplen, o null si el indice no esta listo o
+     *         el filtro esta vacio.
+     */
+    public MapaEnteros buscar(FiltroPersonas filtro) {
+        if (ordenados == null || filtro.estaVacio()) {
+            return null;
+        }
+        Rango rango = ordenados.rangoMasPequeno(filtro);
+        MapaEnteros resultado = new MapaEnteros(Math.min(rango.hasta - rango.desde, lista.size()) + numPendientes);
+        for (int i = rango.desde; i < rango.hasta; i++) {
+            comprobar(rango.id(i), filtro, resultado);
+        }
+        for (int i = 0; i < numPendientes; i++) {
+            comprobar(pendientes[i], filtro, resultado);
+        }
+        return resultado;
+    }
+
+    private void comprobar(int id, FiltroPersonas filtro, MapaEnteros resultado) {
+        if (resultado.contiene(id)) {
+            return;
+        }
+        int posicion = indicePorId.posicion(id);
+        if (posicion >= 0 && filtro.acepta(lista.get(posicion))) {
+            resultado.put(id, posicion);
+        }
+    }
+
+    private void apuntarPendiente(int id) {
+        // Si solo estaba entre los ya copiados, se vuelve a apuntar para no perderlo al descartarlos
+        if (posicionPendiente.get(id, -1) >= marcaCopia) {
+            return;
+        }
+        if (numPendientes == pendientes.length) {
+            pendientes = Arrays.copyOf(pendientes, numPendientes * 2);
+        }
+        posicionPendiente.put(id, numPendientes);
+        pendientes[numPendientes++] = id;
+    }
+
+    private void descartarPendientesCopiados() {
+        int restantes = numPendientes - marcaCopia;
+        System.arraycopy(pendientes, marcaCopia, pendientes, 0, restantes);
+        numPendientes = restantes;
+        marcaCopia = 0;
+        posicionPendiente.clear();
+        for (int i = 0; i < numPendientes; i++) {
+            posicionPendiente.put(pendientes[i], i);
+        }
+    }
+
+    /**
+     * Rango de posiciones de uno de los arrays ordenados.
+     */
+    private static final class Rango {
+        private final int[] ids;
+        private final long[] edades;
+        private final int desde;
+        private final int hasta;
+
+        private Rango(int[] ids, long[] edades, int desde, int hasta) {
+            this.ids = ids;
+            this.edades = edades;
+            this.desde = desde;
+            this.hasta = hasta;
+        }
+
+        private int id(int i) {
+            return ids != null ? ids[i] : (int) edades[i];
+        }
+    }
+
+    /**
+     * Arrays ordenados de una copia de la lista. No se modifican una vez construidos.
+     */
+    private static final class Ordenados {
+        private final Prefijos nombres;
+        private final Prefijos apellidos;
+        // Edad en los 32 bits altos e id en los bajos, para ordenar por edad con un solo array
+        private final long[] edades;
+
+        private Ordenados(int[] ids, String[] nombres, String[] apellidos, int[] edades) {
+            int n = ids.length;
+            this.nombres = new Prefijos(ids, nombres);
+            this.apellidos = new Prefijos(ids, apellidos);
+            this.edades = new long[n];
+            for (int i = 0; i < n; i++) {
+                this.edades[i] = ((long) edades[i] << 32) | (ids[i] & 0xFFFFFFFFL);
+            }
+            Arrays.parallelSort(this.edades);
+        }
+
+        private Rango rangoMasPequeno(FiltroPersonas filtro) {
+            Rango mejor = new Rango(null, edades, 0, edades.length);
+            if (filtro.tieneEdad()) {
+                mejor = new Rango(null, edades, primeroDesde(edades, (long) filtro.getEdadMinima() << 32),
+                        filtro.getEdadMaxima() == Integer.MAX_VALUE ? edades.length
+                                : primeroDesde(edades, (long) (filtro.getEdadMaxima() + 1) << 32));
+            }
+            mejor = menor(mejor, nombres.rango(filtro.getPrefijoNombre()));
+            mejor = menor(mejor, apellidos.rango(filtro.getPrefijoApellidos()));
+            return mejor;
+        }
+
+        private static Rango menor(Rango a, Rango b) {
+            return b != null && b.hasta - b.desde < a.hasta - a.desde ? b : a;
+        }
+
+        private static int primeroDesde(long[] claves, long clave) {
+            int desde = 0;
+            int hasta = claves.length;
+            while (desde < hasta) {
+                int medio = (desde + hasta) >>> 1;
+                if (claves[medio] < clave) {
+                    desde = medio + 1;
+                } else {
+                    hasta = medio;
+                }
+            }
+            return desde;
+        }
+    }
+
+    /**
+     * Valores distintos de una columna de texto, normalizados y ordenados, con los ids de las
+     * filas agrupados por valor: las filas del valor k estan en {@code ids[inicios[k]]} hasta
+     * {@code ids[inicios[k + 1]]}. Con muchas filas y pocos valores distintos, como los nombres,
+     * ocupa poco mas que los ids.
+     */
+    private static final class Prefijos {
+        private final String[] claves;
+        private final int[] inicios;
+        private final int[] ids;
+
+        private Prefijos(int[] idsFilas, String[] valores) {
+            int n = valores.length;
+            // Cada valor distinto se normaliza una sola vez; los que quedan iguales se juntan
+            DiccionarioCadenas distintos = new DiccionarioCadenas();
+            int[] codigos = new int[n];
+            for (int i = 0; i < n; i++) {
+                codigos[i] = distintos.codificar(valores[i]);
+            }
+            DiccionarioCadenas normalizados = new DiccionarioCadenas();
+            int[] clavePorCodigo = new int[distintos.size() + 1];
+            // La posicion 0 es la de los null, que se buscan como cadena vacia
+            clavePorCodigo[0] = normalizados.codificar(FiltroPersonas.normalizar(null));
+            for (int c = 0; c < distintos.size(); c++) {
+                clavePorCodigo[c + 1] = normalizados.codificar(FiltroPersonas.normalizar(distintos.valor(c)));
+            }
+            int k = normalizados.size();
+            Integer[] orden = new Integer[k];
+            for (int i = 0; i < k; i++) {
+                orden[i] = i;
+            }
+            Arrays.sort(orden, Comparator.comparing(normalizados::valor));
+            claves = new String[k];
+            int[] posicion = new int[k];
+            for (int i = 0; i < k; i++) {
+                claves[i] = normalizados.valor(orden[i]);
+                posicion[orden[i]] = i;
+            }
+            // Ordenacion por recuento: cuantas filas tiene cada valor y despues donde va cada id
+            inicios = new int[k + 1];
+            for (int i = 0; i < n; i++) {
+                inicios[posicion[clavePorCodigo[codigos[i] + 1]] + 1]++;
+            }
+            for (int i = 0; i < k; i++) {
+                inicios[i + 1] += inicios[i];
+            }
+            ids = new int[n];
+            int[] siguiente = Arrays.copyOf(inicios, k);
+            for (int i = 0; i < n; i++) {
+                ids[siguiente[posicion[clavePorCodigo[codigos[i] + 1]]]++] = idsFilas[i];
+            }
+        }
+
+        private Rango rango(String prefijo) {
+            if (prefijo.isEmpty()) {
+                return null;
+            }
+            return new Rango(ids, null, inicios[primeroDesde(claves, prefijo)],
+                    inicios[primeroDesde(claves, prefijo + Character.MAX_VALUE)]);
+        }
+
+        private static int primeroDesde(String[] claves, String clave) {
+            int desde = 0;
+            int hasta = claves.length;
+            while (desde < hasta) {
+                int medio = (desde + hasta) >>> 1;
+                if (claves[medio].compareTo(clave) < 0) {
+                    desde = medio + 1;
+                } else {
+                    hasta = medio;
+                }
+            }
+            return desde;
+        }
+    }
+}
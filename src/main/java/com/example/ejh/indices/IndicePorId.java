@@ -0,0 +1,181 @@
+package com.example.ejh.indices;
+
+import com.example.ejh.model.Persona;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Indice de id a posicion para una lista observable de personas, que se mantiene al dia
+ * escuchando los cambios de la lista.
+ *
+ * <p>Cada persona recibe un hueco fijo al entrar en la lista. Su posicion es su hueco menos
+ * el numero de huecos anteriores que ya se han eliminado, que se cuenta con un arbol de
+ * Fenwick. Asi, buscar, agregar al final, sustituir y eliminar cuestan O(log n) sin
+ * recorrer la lista, y las personas repetidas no se confunden porque se busca por id y no
+ * con {@code equals}. Los cambios poco habituales, como ordenar o insertar en medio,
+ * reconstruyen el indice.</p>
+ */
+public class IndicePorId implements ListChangeListener<Persona> {
+
+    private final ObservableList<Persona> lista;
+    private final MapaEnteros huecos = new MapaEnteros();
+    // Arbol de Fenwick con los huecos eliminados; se indexa desde 1
+    private int[] eliminados = new int[16];
+    private int numHuecos;
+    private int numEliminados;
+
+    /**
+     * Constructor para crear el indice y empezar a escuchar los cambios de la lista.
+     *
+     * @param lista La lista a indexar.
+     */
+    public IndicePorId(ObservableList<Persona> lista) {
+        this.lista = lista;
+        reconstruir();
+        lista.addListener(this);
+    }
+
+    /**
+     * Obtiene la posicion de la persona con el id indicado.
+     *
+     * @param id El id de la persona.
+     * @return La posicion en la lista, o -1 si no esta.
+     */
+    public int posicion(int id) {
+        int hueco = huecos.get(id, -1);
+        if (hueco < 0) {
+            return -1;
+        }
+        int posicion = hueco - contarEliminados(hueco);
+        if (posicion < lista.size() && lista.get(posicion).getId() == id) {
+            return posicion;
+        }
+        // No deberia pasar; si el indice se ha desincronizado se reconstruye
+        reconstruir();
+        hueco = huecos.get(id, -1);
+        return hueco;
+    }
+
+    @Override
+    public void onChanged(Change<? extends Persona> c) {
+        while (c.next()) {
+            if (c.wasPermutated()) {
+                reconstruir();
+                return;
+            }
+            List<? extends Persona> quitadas = c.getRemoved();
+            List<? extends Persona> agregadas = c.getAddedSubList();
+            if (c.wasReplaced() && quitadas.size() == agregadas.size()) {
+                // Las nuevas ocupan los huecos de las sustituidas
+                for (int i = 0; i < quitadas.size(); i++) {
+                    int hueco = huecoEn(c.getFrom() + i);
+                    olvidar(quitadas.get(i), hueco);
+                    if (agregadas.get(i) != null) {
+                        huecos.put(agregadas.get(i).getId(), hueco);
+                    }
+                }
+                continue;
+            }
+            for (Persona persona : quitadas) {
+                // Tras marcar cada hueco, el siguiente pasa a ocupar la misma posicion
+                int hueco = huecoEn(c.getFrom());
+                olvidar(persona, hueco);
+                marcarEliminado(hueco);
+            }
+            if (!agregadas.isEmpty()) {
+                if (c.getTo() != lista.size()) {
+                    reconstruir();
+                    return;
+                }
+                for (Persona persona : agregadas) {
+                    nuevoHueco(persona.getId());
+                }
+            }
+        }
+        // Si se han eliminado muchas filas se compacta para que el arbol no crezca sin limite
+        if (numEliminados > 1024 && numEliminados > numHuecos / 2) {
+            reconstruir();
+        }
+    }
+
+    /**
+     * Vuelve a crear el indice recorriendo la lista entera.
+     */
+    public void reconstruir() {
+        huecos.clear();
+        numHuecos = 0;
+        numEliminados = 0;
+        eliminados = new int[Integer.highestOneBit(Math.max(16, lista.size() + 1)) << 1];
+        for (Persona persona : lista) {
+            if (persona != null) {
+                huecos.put(persona.getId(), numHuecos);
+            }
+            numHuecos++;
+        }
+    }
+
+    /**
+     * Quita el id de la persona del mapa solo si apunta al hueco indicado. Al intercambiar
+     * filas con {@code set} el id puede haber pasado ya a otro hueco.
+     */
+    private void olvidar(Persona persona, int hueco) {
+        if (persona != null && huecos.get(persona.getId(), -1) == hueco) {
+            huecos.remove(persona.getId());
+        }
+    }
+
+    /**
+     * Obtiene el hueco que ocupa la posicion indicada, bajando por el arbol de Fenwick.
+     */
+    private int huecoEn(int posicion) {
+        int restantes = posicion + 1;
+        int indice = 0;
+        for (int paso = eliminados.length >> 1; paso > 0; paso >>= 1) {
+            int siguiente = indice + paso;
+            // Huecos vivos en el tramo que cubre el nodo: su tamano menos los eliminados
+            if (siguiente < eliminados.length && paso - eliminados[siguiente] < restantes) {
+                indice = siguiente;
+                restantes -= paso - eliminados[siguiente];
+            }
+        }
+        return indice;
+    }
+
+    private void nuevoHueco(int id) {
+        if (numHuecos + 1 >= eliminados.length) {
+            ampliar();
+        }
+        huecos.put(id, numHuecos++);
+    }
+
+    private void marcarEliminado(int hueco) {
+        numEliminados++;
+        for (int i = hueco + 1; i < eliminados.length; i += i & -i) {
+            eliminados[i]++;
+        }
+    }
+
+    /**
+     * Cuenta los huecos eliminados antes del indicado.
+     */
+    private int contarEliminados(int hueco) {
+        int suma = 0;
+        for (int i = hueco; i > 0; i -= i & -i) {
+            suma += eliminados[i];
+        }
+        return suma;
+    }
+
+    /**
+     * Duplica la capacidad del arbol. Con tamanos potencia de dos, el unico nodo nuevo que
+     * cubre huecos antiguos es el ultimo, que cubre todo el arbol.
+     */
+    private void ampliar() {
+        int anterior = eliminados.length;
+        eliminados = Arrays.copyOf(eliminados, anterior * 2);
+        eliminados[anterior] = numEliminados;
+    }
+}
@@ -0,0 +1,191 @@
+package com.example.ejh.indices;
+
+import java.util.Arrays;
+
+/**
+ * Mapa de int a int con direccionamiento abierto y sondeo lineal, sin objetos por entrada
+ * ni boxing. Las claves y los valores se guardan en dos arrays paralelos y al borrar se
+ * desplazan las entradas siguientes, asi que no quedan marcas de borrado.
+ */
+public class MapaEnteros {
+
+    private static final int VACIO = Integer.MIN_VALUE;
+    private static final float CARGA_MAXIMA = 0.6f;
+
+    private int[] claves;
+    private int[] valores;
+    private int mascara;
+    private int tamano;
+    private int umbral;
+    // La clave VACIO no cabe en los arrays y se guarda aparte
+    private boolean tieneVacio;
+    private int valorVacio;
+
+    /**
+     * Constructor para crear un mapa con capacidad para el numero de entradas indicado.
+     *
+     * @param capacidadInicial El numero de entradas que se esperan.
+     */
+    public MapaEnteros(int capacidadInicial) {
+        int capacidad = Integer.highestOneBit(Math.max(16, (int) (capacidadInicial / CARGA_MAXIMA)) - 1) << 1;
+        reservar(capacidad);
+    }
+
+    /**
+     * Constructor para crear un mapa vacio.
+     */
+    public MapaEnteros() {
+        this(16);
+    }
+
+    private void reservar(int capacidad) {
+        claves = new int[capacidad];
+        Arrays.fill(claves, VACIO);
+        valores = new int[capacidad];
+        mascara = capacidad - 1;
+        umbral = (int) (capacidad * CARGA_MAXIMA);
+    }
+
+    private int hueco(int clave) {
+        // Mezcla de bits para que ids consecutivos no formen racimos
+        int h = clave * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mascara;
+    }
+
+    /**
+     * Obtiene el valor asociado a una clave.
+     *
+     * @param clave La clave a buscar.
+     * @param porDefecto El valor que se devuelve si la clave no esta.
+     * @return El valor de la clave, o el valor por defecto.
+     */
+    public int get(int clave, int porDefecto) {
+        if (clave == VACIO) {
+            return tieneVacio ? valorVacio : porDefecto;
+        }
+        for (int i = hueco(clave); ; i = (i + 1) & mascara) {
+            int actual = claves[i];
+            if (actual == clave) {
+                return valores[i];
+            }
+            if (actual == VACIO) {
+                return porDefecto;
+            }
+        }
+    }
+
+    /**
+     * Comprueba si la clave esta en el mapa.
+     *
+     * @param clave La clave a buscar.
+     * @return true si la clave esta en el mapa.
+     */
+    public boolean contiene(int clave) {
+        if (clave == VACIO) {
+            return tieneVacio;
+        }
+        for (int i = hueco(clave); ; i = (i + 1) & mascara) {
+            int actual = claves[i];
+            if (actual == clave) {
+                return true;
+            }
+            if (actual == VACIO) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Asocia un valor a una clave, sustituyendo el anterior si lo habia.
+     *
+     * @param clave La clave.
+     * @param valor El valor.
+     */
+    public void put(int clave, int valor) {
+        if (clave == VACIO) {
+            if (!tieneVacio) {
+                tamano++;
+            }
+            tieneVacio = true;
+            valorVacio = valor;
+            return;
+        }
+        for (int i = hueco(clave); ; i = (i + 1) & mascara) {
+            int actual = claves[i];
+            if (actual == clave) {
+                valores[i] = valor;
+                return;
+            }
+            if (actual == VACIO) {
+                claves[i] = clave;
+                valores[i] = valor;
+                if (++tamano > umbral) {
+                    crecer();
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Elimina una clave del mapa.
+     *
+     * @param clave La clave a eliminar.
+     * @return true si la clave estaba en el mapa.
+     */
+    public boolean remove(int clave) {
+        if (clave == VACIO) {
+            boolean estaba = tieneVacio;
+            if (estaba) {
+                tieneVacio = false;
+                tamano--;
+            }
+            return estaba;
+        }
+        int i = hueco(clave);
+        while (claves[i] != clave) {
+            if (claves[i] == VACIO) {
+                return false;
+            }
+            i = (i + 1) & mascara;
+        }
+        // Se desplazan hacia atras las entradas que dependian de este hueco
+        int libre = i;
+        for (int j = (i + 1) & mascara; claves[j] != VACIO; j = (j + 1) & mascara) {
+            int ideal = hueco(claves[j]);
+            if (((j - ideal) & mascara) >= ((j - libre) & mascara)) {
+                claves[libre] = claves[j];
+                valores[libre] = valores[j];
+                libre = j;
+            }
+        }
+        claves[libre] = VACIO;
+        tamano--;
+        return true;
+    }
+
+    public int size() {
+        return tamano;
+    }
+
+    /**
+     * Vacia el mapa manteniendo su capacidad.
+     */
+    public void clear() {
+        Arrays.fill(claves, VACIO);
+        tamano = 0;
+        tieneVacio = false;
+    }
+
+    private void crecer() {
+        int[] clavesAnteriores = claves;
+        int[] valoresAnteriores = valores;
+        reservar(claves.length * 2);
+        tamano = tieneVacio ? 1 : 0;
+        for (int i = 0; i < clavesAnteriores.length; i++) {
+            if (clavesAnteriores[i] != VACIO) {
+                put(clavesAnteriores[i], valoresAnteriores[i]);
+            }
+        }
+    }
+}
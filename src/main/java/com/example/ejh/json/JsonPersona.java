@@ -0,0 +1,74 @@
+package com.example.ejh.json;
+
+import com.example.ejh.model.Persona;
+
+import java.io.IOException;
+
+/**
+ * Escritura de personas en JSON sin dependencias externas. Cada persona se escribe como un
+ * objeto {@code {"id":1,"nombre":"...","apellidos":"...","edad":30,"version":0}}.
+ */
+public final class JsonPersona {
+
+    private JsonPersona() {
+    }
+
+    /**
+     * Escribe una persona como objeto JSON.
+     *
+     * @param out El destino.
+     * @param persona La persona a escribir.
+     * @throws IOException Si falla la escritura.
+     */
+    public static void escribir(Appendable out, Persona persona) throws IOException {
+        out.append("{\"id\":").append(Integer.toString(persona.getId()));
+        out.append(",\"nombre\":");
+        escribirCadena(out, persona.getNombre());
+        out.append(",\"apellidos\":");
+        escribirCadena(out, persona.getApellidos());
+        out.append(",\"edad\":").append(Integer.toString(persona.getEdad()));
+        out.append(",\"version\":").append(Integer.toString(persona.getVersion())).append('}');
+    }
+
+    /**
+     * Escribe una cadena JSON entre comillas, escapando los caracteres que lo necesitan.
+     *
+     * @param out El destino.
+     * @param valor La cadena, o null para escribir {@code null}.
+     * @throws IOException Si falla la escritura.
+     */
+    public static void escribirCadena(Appendable out, String valor) throws IOException {
+        if (valor == null) {
+            out.append("null");
+            return;
+        }
+        out.append('"');
+        for (int i = 0; i < valor.length(); i++) {
+            char c = valor.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+}
@@ -0,0 +1,216 @@
+package com.example.ejh.json;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lectura de JSON sin dependencias externas, para los cuerpos pequenos de las peticiones. Los
+ * objetos se leen como {@link Map}, las listas como {@link List}, los numeros enteros como
+ * {@link Long} y el resto de numeros como {@link Double}.
+ */
+public final class LectorJson {
+
+    private final String texto;
+    private int pos;
+
+    private LectorJson(String texto) {
+        this.texto = texto;
+    }
+
+    /**
+     * Lee un objeto JSON.
+     *
+     * @param texto El texto con el objeto.
+     * @return Los campos del objeto, en el orden en que aparecen.
+     * @throws IllegalArgumentException Si el texto no es un objeto JSON valido.
+     */
+    @SuppressWarnings("unchecked")
+    public static Map<String, Object> leerObjeto(String texto) {
+        LectorJson lector = new LectorJson(texto);
+        lector.saltarEspacios();
+        if (lector.pos >= texto.length() || texto.charAt(lector.pos) != '{') {
+            throw lector.error("se esperaba un objeto");
+        }
+        Object valor = lector.leerValor();
+        lector.saltarEspacios();
+        if (lector.pos < texto.length()) {
+            throw lector.error("sobra texto al final");
+        }
+        return (Map<String, Object>) valor;
+    }
+
+    private Object leerValor() {
+        saltarEspacios();
+        if (pos >= texto.length()) {
+            throw error("falta un valor");
+        }
+        char c = texto.charAt(pos);
+        switch (c) {
+            case '{':
+                return leerMapa();
+            case '[':
+                return leerLista();
+            case '"':
+                return leerCadena();
+            case 't':
+                return leerPalabra("true", Boolean.TRUE);
+            case 'f':
+                return leerPalabra("false", Boolean.FALSE);
+            case 'n':
+                return leerPalabra("null", null);
+            default:
+                return leerNumero();
+        }
+    }
+
+    private Map<String, Object> leerMapa() {
+        Map<String, Object> mapa = new LinkedHashMap<>();
+        pos++;
+        saltarEspacios();
+        if (consumir('}')) {
+            return mapa;
+        }
+        do {
+            saltarEspacios();
+            if (pos >= texto.length() || texto.charAt(pos) != '"') {
+                throw error("se esperaba el nombre de un campo");
+            }
+            String nombre = leerCadena();
+            saltarEspacios();
+            if (!consumir(':')) {
+                throw error("se esperaban dos puntos");
+            }
+            mapa.put(nombre, leerValor());
+            saltarEspacios();
+        } while (consumir(','));
+        if (!consumir('}')) {
+            throw error("se esperaba una coma o el final del objeto");
+        }
+        return mapa;
+    }
+
+    private List<Object> leerLista() {
+        List<Object> lista = new ArrayList<>();
+        pos++;
+        saltarEspacios();
+        if (consumir(']')) {
+            return lista;
+        }
+        do {
+            lista.add(leerValor());
+            saltarEspacios();
+        } while (consumir(','));
+        if (!consumir(']')) {
+            throw error("se esperaba una coma o el final de la lista");
+        }
+        return lista;
+    }
+
+    private String leerCadena() {
+        StringBuilder sb = new StringBuilder();
+        pos++;
+        while (pos < texto.length()) {
+            char c = texto.charAt(pos++);
+            if (c == '"') {
+                return sb.toString();
+            }
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            if (pos >= texto.length()) {
+                break;
+            }
+            char escape = texto.charAt(pos++);
+            switch (escape) {
+                case 'b':
+                    sb.append('\b');
+                    break;
+                case 'f':
+                    sb.append('\f');
+                    break;
+                case 'n':
+                    sb.append('\n');
+                    break;
+                case 'r':
+                    sb.append('\r');
+                    break;
+                case 't':
+                    sb.append('\t');
+                    break;
+                case 'u':
+                    if (pos + 4 > texto.length()) {
+                        throw error("escape \\u incompleto");
+                    }
+                    // Integer.parseInt admitiria un signo delante de los cuatro digitos
+                    int codigo = 0;
+                    for (int i = 0; i < 4; i++) {
+                        int digito = Character.digit(texto.charAt(pos + i), 16);
+                        if (digito < 0) {
+                            throw error("escape \\u invalido");
+                        }
+                        codigo = codigo * 16 + digito;
+                    }
+                    sb.append((char) codigo);
+                    pos += 4;
+                    break;
+                default:
+                    sb.append(escape);
+            }
+        }
+        throw error("cadena sin cerrar");
+    }
+
+    private Object leerPalabra(String palabra, Object valor) {
+        if (!texto.startsWith(palabra, pos)) {
+            throw error("valor desconocido");
+        }
+        pos += palabra.length();
+        return valor;
+    }
+
+    private Number leerNumero() {
+        int inicio = pos;
+        if (texto.charAt(pos) == '+') {
+            // JSON no admite el signo + delante, aunque Long.parseLong si
+            throw error("valor desconocido");
+        }
+        boolean entero = true;
+        while (pos < texto.length()) {
+            char c = texto.charAt(pos);
+            if (c == '.' || c == 'e' || c == 'E') {
+                entero = false;
+            } else if (!(c == '-' || c == '+' || (c >= '0' && c <= '9'))) {
+                break;
+            }
+            pos++;
+        }
+        String numero = texto.substring(inicio, pos);
+        try {
+            return entero ? (Number) Long.parseLong(numero) : (Number) Double.parseDouble(numero);
+        } catch (NumberFormatException e) {
+            pos = inicio;
+            throw error("valor desconocido");
+        }
+    }
+
+    private boolean consumir(char c) {
+        if (pos < texto.length() && texto.charAt(pos) == c) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private void saltarEspacios() {
+        while (pos < texto.length() && Character.isWhitespace(texto.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    private IllegalArgumentException error(String motivo) {
+        return new IllegalArgumentException("JSON no valido en la posicion " + pos + ": " + motivo);
+    }
+}
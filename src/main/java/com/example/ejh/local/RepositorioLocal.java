@@ -0,0 +1,526 @@
+package com.example.ejh.local;
+
+import com.example.ejh.cache.Instantanea;
+import com.example.ejh.db.ErrorBaseDatos;
+import com.example.ejh.db.RepositorioPersonas;
+import com.example.ejh.model.FiltroPersonas;
+import com.example.ejh.model.OrdenPersonas;
+import com.example.ejh.model.Persona;
+import com.example.ejh.tareas.TareaBD;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Personas guardadas en archivos locales, en la misma JVM, para trabajar sin red. Todas las
+ * personas estan en memoria, en un mapa ordenado por id, con indices secundarios por nombre,
+ * apellidos y edad para las busquedas; cada operacion tarda microsegundos.
+ *
+ * <p>Los datos se guardan en dos archivos del directorio indicado: una {@link Instantanea}
+ * ({@code personas.snap}) con el estado al compactar y un registro ({@code personas.log}) al
+ * que se anade cada cambio antes de aplicarlo. Al abrir se lee la instantanea y se repite el
+ * registro; un registro cortado por una caida se trunca en el ultimo cambio completo. El
+ * registro se compacta en una nueva instantanea al cerrar o cuando crece demasiado. Cada cambio
+ * del registro guarda la fila entera, asi que repetirlo dos veces da el mismo resultado: si la
+ * aplicacion cae entre escribir la instantanea y vaciar el registro, no se pierde nada.</p>
+ *
+ * <p>El registro es tambien la lista de cambios que habria que enviar a MySQL para
+ * sincronizar los dos almacenes.</p>
+ */
+public class RepositorioLocal implements RepositorioPersonas {
+
+    private static final String ORIGEN = "local:";
+    private static final byte ALTA = 'A';
+    private static final byte MODIFICACION = 'M';
+    private static final byte BAJA = 'B';
+    // Siguiente id que se asignara; se escribe al vaciar el registro para no repetir ids borrados
+    private static final byte SECUENCIA = 'S';
+    private static final int COMPACTAR_MINIMO = 10_000;
+
+    private final Path directorio;
+    private final Path archivoInstantanea;
+    private final Path archivoRegistro;
+    private final boolean forzarEscritura;
+
+    private final TreeMap<Integer, Persona> porId = new TreeMap<>();
+    private final TreeMap<String, TreeSet<Integer>> porNombre = new TreeMap<>();
+    private final TreeMap<String, TreeSet<Integer>> porApellidos = new TreeMap<>();
+    private final TreeMap<Integer, TreeSet<Integer>> porEdad = new TreeMap<>();
+    private int siguienteId = 1;
+    private FileChannel registro;
+    private int cambiosRegistro;
+
+    /**
+     * Constructor para crear el repositorio.
+     *
+     * @param directorio El directorio de los archivos; se crea si no existe.
+     * @param forzarEscritura true para llevar cada cambio al disco antes de confirmarlo. Si no,
+     *                        un cambio confirmado sobrevive a un cierre inesperado de la aplicacion
+     *                        pero no a un corte de luz.
+     */
+    public RepositorioLocal(Path directorio, boolean forzarEscritura) {
+        this.directorio = directorio;
+        this.archivoInstantanea = directorio.resolve("personas.snap");
+        this.archivoRegistro = directorio.resolve("personas.log");
+        this.forzarEscritura = forzarEscritura;
+    }
+
+    /**
+     * Lee los archivos y deja abierto el registro para anadir cambios.
+     *
+     * @throws ErrorBaseDatos Si no se pudieron leer o crear los archivos.
+     */
+    @Override
+    public synchronized void preparar() throws ErrorBaseDatos {
+        if (registro != null) {
+            return;
+        }
+        long inicio = System.nanoTime();
+        try {
+            Files.createDirectories(directorio);
+            List<Persona> personas = Instantanea.leer(archivoInstantanea, origen());
+            if (personas != null) {
+                for (Persona persona : personas) {
+                    poner(persona);
+                }
+            }
+            registro = FileChannel.open(archivoRegistro, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            repetirRegistro();
+        } catch (IOException e) {
+            cerrarRegistro();
+            throw new ErrorBaseDatos("Error de almacenamiento", "No se pudieron leer los datos locales de "
+                    + directorio + ".", e);
+        }
+        System.out.printf("Almacen local: %d personas y %d cambios leidos en %d ms.%n",
+                porId.size(), cambiosRegistro, (System.nanoTime() - inicio) / 1_000_000);
+    }
+
+    @Override
+    public String getDescripcion() {
+        return directorio.toString();
+    }
+
+    /**
+     * Las personas se copian antes de entregarlas, asi que las altas y bajas hechas mientras
+     * tanto no afectan a la lectura.
+     */
+    @Override
+    public int cargarTodas(TareaBD<?> tarea, Consumer<Persona> destino) {
+        List<Persona> personas;
+        synchronized (this) {
+            personas = new ArrayList<>(porId.values());
+        }
+        int filas = 0;
+        for (Persona persona : personas) {
+            if (cancelada(tarea)) {
+                break;
+            }
+            destino.accept(copia(persona));
+            filas++;
+        }
+        return filas;
+    }
+
+    /**
+     * Se recorre el indice con menos candidatos y los candidatos se comprueban con el filtro.
+     */
+    @Override
+    public synchronized List<Persona> buscar(TareaBD<?> tarea, FiltroPersonas filtro, int limite) {
+        Collection<Integer> candidatos = candidatos(filtro);
+        List<Persona> personas = new ArrayList<>(Math.min(limite, candidatos.size()));
+        for (int id : candidatos) {
+            if (personas.size() >= limite || cancelada(tarea)) {
+                break;
+            }
+            Persona persona = porId.get(id);
+            if (filtro.acepta(persona)) {
+                personas.add(copia(persona));
+            }
+        }
+        return personas;
+    }
+
+    @Override
+    public synchronized Persona obtener(TareaBD<?> tarea, int id) {
+        Persona persona = porId.get(id);
+        return persona == null ? null : copia(persona);
+    }
+
+    @Override
+    public synchronized Persona insertar(TareaBD<?> tarea, String nombre, String apellidos, int edad)
+            throws SQLException {
+        Persona persona = new Persona(siguienteId, nombre, apellidos, edad);
+        escribir(ALTA, persona);
+        poner(persona);
+        compactarSiCrece();
+        return copia(persona);
+    }
+
+    @Override
+    public synchronized boolean modificar(TareaBD<?> tarea, Persona persona) throws SQLException {
+        Persona actual = porId.get(persona.getId());
+        if (actual == null || actual.getVersion() != persona.getVersion()) {
+            return false;
+        }
+        Persona guardada = siguienteVersion(persona);
+        escribir(MODIFICACION, guardada);
+        poner(guardada);
+        compactarSiCrece();
+        return true;
+    }
+
+    @Override
+    public synchronized boolean eliminar(TareaBD<?> tarea, int id) throws SQLException {
+        Persona persona = porId.get(id);
+        if (persona == null) {
+            return false;
+        }
+        escribir(BAJA, persona);
+        quitar(persona);
+        compactarSiCrece();
+        return true;
+    }
+
+    @Override
+    public synchronized int eliminarVarias(TareaBD<?> tarea, List<Integer> ids) throws SQLException {
+        int borradas = 0;
+        for (int id : ids) {
+            Persona persona = porId.get(id);
+            if (persona != null) {
+                escribir(BAJA, persona);
+                quitar(persona);
+                borradas++;
+            }
+        }
+        compactarSiCrece();
+        return borradas;
+    }
+
+    @Override
+    public synchronized int modificarVarias(TareaBD<?> tarea, List<Integer> ids, OrdenPersonas.Columna columna,
+                                            Object valor) throws SQLException {
+        int modificadas = 0;
+        for (int id : ids) {
+            Persona persona = porId.get(id);
+            if (persona == null) {
+                continue;
+            }
+            Persona guardada = siguienteVersion(persona);
+            switch (columna) {
+                case NOMBRE:
+                    guardada.setNombre((String) valor);
+                    break;
+                case APELLIDOS:
+                    guardada.setApellidos((String) valor);
+                    break;
+                default:
+                    guardada.setEdad((Integer) valor);
+            }
+            escribir(MODIFICACION, guardada);
+            poner(guardada);
+            modificadas++;
+        }
+        compactarSiCrece();
+        return modificadas;
+    }
+
+    /**
+     * Compacta el registro en la instantanea y cierra los archivos.
+     */
+    @Override
+    public synchronized void cerrar() {
+        if (registro == null) {
+            return;
+        }
+        if (cambiosRegistro > 0) {
+            try {
+                compactar();
+            } catch (IOException e) {
+                // Los cambios siguen en el registro y se repetiran en el proximo arranque
+                System.err.println("No se pudo compactar el almacen local: " + e.getMessage());
+            }
+        }
+        cerrarRegistro();
+    }
+
+    private String origen() {
+        return ORIGEN + directorio.toAbsolutePath();
+    }
+
+    private static boolean cancelada(TareaBD<?> tarea) {
+        return tarea != null && tarea.isCancelled();
+    }
+
+    /**
+     * Las personas guardadas no se comparten: quien las recibe puede modificarlas.
+     */
+    private static Persona copia(Persona persona) {
+        return new Persona(persona.getId(), persona.getNombre(), persona.getApellidos(), persona.getEdad(),
+                persona.getVersion());
+    }
+
+    private static Persona siguienteVersion(Persona persona) {
+        return new Persona(persona.getId(), persona.getNombre(), persona.getApellidos(), persona.getEdad(),
+                persona.getVersion() + 1);
+    }
+
+    private static String clave(String texto) {
+        return texto == null ? "" : texto.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Obtiene, en orden de id, los ids que pueden cumplir el filtro.
+     */
+    private Collection<Integer> candidatos(FiltroPersonas filtro) {
+        List<Collection<TreeSet<Integer>>> rangos = new ArrayList<>(3);
+        if (!filtro.getPrefijoNombre().isEmpty()) {
+            rangos.add(conPrefijo(porNombre, filtro.getPrefijoNombre()).values());
+        }
+        if (!filtro.getPrefijoApellidos().isEmpty()) {
+            rangos.add(conPrefijo(porApellidos, filtro.getPrefijoApellidos()).values());
+        }
+        if (filtro.tieneEdad()) {
+            if (filtro.getEdadMinima() > filtro.getEdadMaxima()) {
+                return List.of();
+            }
+            rangos.add(porEdad.subMap(filtro.getEdadMinima(), true, filtro.getEdadMaxima(), true).values());
+        }
+        if (rangos.isEmpty()) {
+            return porId.keySet();
+        }
+        Collection<TreeSet<Integer>> menor = null;
+        int menorTamano = Integer.MAX_VALUE;
+        for (Collection<TreeSet<Integer>> rango : rangos) {
+            int tamano = 0;
+            for (TreeSet<Integer> ids : rango) {
+                tamano += ids.size();
+            }
+            if (tamano < menorTamano) {
+                menor = rango;
+                menorTamano = tamano;
+            }
+        }
+        TreeSet<Integer> ids = new TreeSet<>();
+        for (TreeSet<Integer> grupo : menor) {
+            ids.addAll(grupo);
+        }
+        return ids;
+    }
+
+    private static NavigableMap<String, TreeSet<Integer>> conPrefijo(TreeMap<String, TreeSet<Integer>> indice,
+                                                                   String prefijo) {
+        return indice.subMap(prefijo, true, prefijo + Character.MAX_VALUE, false);
+    }
+
+    /**
+     * Guarda una persona en el mapa y en los indices, sustituyendo la que tuviera el mismo id.
+     */
+    private void poner(Persona persona) {
+        Persona anterior = porId.put(persona.getId(), persona);
+        if (anterior != null) {
+            quitarDeIndices(anterior);
+        }
+        porNombre.computeIfAbsent(clave(persona.getNombre()), k -> new TreeSet<>()).add(persona.getId());
+        porApellidos.computeIfAbsent(clave(persona.getApellidos()), k -> new TreeSet<>()).add(persona.getId());
+        porEdad.computeIfAbsent(persona.getEdad(), k -> new TreeSet<>()).add(persona.getId());
+        siguienteId = Math.max(siguienteId, persona.getId() + 1);
+    }
+
+    private void quitar(Persona persona) {
+        if (porId.remove(persona.getId()) != null) {
+            quitarDeIndices(persona);
+        }
+    }
+
+    private void quitarDeIndices(Persona persona) {
+        quitarDe(porNombre, clave(persona.getNombre()), persona.getId());
+        quitarDe(porApellidos, clave(persona.getApellidos()), persona.getId());
+        quitarDe(porEdad, persona.getEdad(), persona.getId());
+    }
+
+    private static <K> void quitarDe(TreeMap<K, TreeSet<Integer>> indice, K clave, int id) {
+        TreeSet<Integer> ids = indice.get(clave);
+        if (ids != null && ids.remove(id) && ids.isEmpty()) {
+            indice.remove(clave);
+        }
+    }
+
+    /**
+     * Anade un cambio al registro. Se llama antes de aplicarlo: si falla, no se aplica.
+     */
+    private void escribir(byte tipo, Persona persona) throws SQLException {
+        if (registro == null) {
+            throw new SQLException("El almacen local no esta abierto");
+        }
+        try {
+            anadir(tipo, persona);
+            cambiosRegistro++;
+        } catch (IOException e) {
+            throw new SQLException("No se pudo escribir en el almacen local", e);
+        }
+    }
+
+    /**
+     * Compacta el registro si ha crecido demasiado. Se llama despues de aplicar un cambio,
+     * que ya esta en el registro, asi que un fallo solo se avisa.
+     */
+    private void compactarSiCrece() {
+        if (cambiosRegistro > Math.max(COMPACTAR_MINIMO, porId.size())) {
+            try {
+                compactar();
+            } catch (IOException e) {
+                System.err.println("No se pudo compactar el almacen local: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Escribe un cambio al final del registro. Cada cambio lleva delante su longitud y su
+     * CRC32 para reconocer al leer uno que quedo a medias. Las altas y modificaciones llevan
+     * al final la version; los registros escritos antes de que existiera no la tienen.
+     */
+    private void anadir(byte tipo, Persona persona) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(tipo);
+        out.writeInt(persona.getId());
+        if (tipo == ALTA || tipo == MODIFICACION) {
+            out.writeInt(persona.getEdad());
+            escribirCadena(out, persona.getNombre());
+            escribirCadena(out, persona.getApellidos());
+            out.writeInt(persona.getVersion());
+        }
+        byte[] cuerpo = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(cuerpo);
+        ByteBuffer buffer = ByteBuffer.allocate(8 + cuerpo.length);
+        buffer.putInt(cuerpo.length).putInt((int) crc.getValue()).put(cuerpo).flip();
+        while (buffer.hasRemaining()) {
+            registro.write(buffer);
+        }
+        if (forzarEscritura) {
+            registro.force(false);
+        }
+    }
+
+    private static void escribirCadena(DataOutputStream out, String texto) throws IOException {
+        if (texto == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Aplica los cambios del registro sobre los datos de la instantanea y deja el registro
+     * listo para anadir al final.
+     */
+    private void repetirRegistro() throws IOException {
+        long tamano = registro.size();
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(tamano, Integer.MAX_VALUE - 8));
+        while (buffer.hasRemaining() && registro.read(buffer, buffer.position()) > 0) {
+            // lee hasta llenar el buffer
+        }
+        buffer.flip();
+        long valido = 0;
+        CRC32 crc = new CRC32();
+        while (buffer.remaining() >= 8) {
+            int longitud = buffer.getInt();
+            int esperado = buffer.getInt();
+            if (longitud < 5 || longitud > buffer.remaining()) {
+                break;
+            }
+            ByteBuffer cuerpo = buffer.slice(buffer.position(), longitud);
+            crc.reset();
+            crc.update(cuerpo.duplicate());
+            if ((int) crc.getValue() != esperado) {
+                break;
+            }
+            buffer.position(buffer.position() + longitud);
+            aplicar(cuerpo);
+            cambiosRegistro++;
+            valido = buffer.position();
+        }
+        if (valido < tamano) {
+            System.err.printf("Registro local cortado: se descartan %d bytes.%n", tamano - valido);
+            registro.truncate(valido);
+        }
+        registro.position(valido);
+    }
+
+    private void aplicar(ByteBuffer cuerpo) {
+        byte tipo = cuerpo.get();
+        int id = cuerpo.getInt();
+        switch (tipo) {
+            case BAJA:
+                Persona persona = porId.get(id);
+                if (persona != null) {
+                    quitar(persona);
+                }
+                break;
+            case SECUENCIA:
+                siguienteId = Math.max(siguienteId, id);
+                break;
+            default:
+                int edad = cuerpo.getInt();
+                String nombre = leerCadena(cuerpo);
+                String apellidos = leerCadena(cuerpo);
+                int version = cuerpo.remaining() >= 4 ? cuerpo.getInt() : 0;
+                poner(new Persona(id, nombre, apellidos, edad, version));
+        }
+    }
+
+    private static String leerCadena(ByteBuffer buffer) {
+        int longitud = buffer.getInt();
+        if (longitud < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[longitud];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Escribe el estado actual en la instantanea y vacia el registro, dejando en el solo el siguiente id.
+     */
+    private void compactar() throws IOException {
+        long inicio = System.nanoTime();
+        Instantanea.escribir(archivoInstantanea, origen(), new ArrayList<>(porId.values()));
+        registro.truncate(0);
+        registro.position(0);
+        anadir(SECUENCIA, new Persona(siguienteId, null, null, 0));
+        cambiosRegistro = 0;
+        System.out.printf("Almacen local compactado en %d ms.%n", (System.nanoTime() - inicio) / 1_000_000);
+    }
+
+    private void cerrarRegistro() {
+        if (registro != null) {
+            try {
+                registro.close();
+            } catch (IOException e) {
+                System.err.println("No se pudo cerrar el registro local: " + e.getMessage());
+            }
+            registro = null;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.ejh.metricas;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histograma de latencias en microsegundos que se puede actualizar desde varios hilos sin
+ * bloqueos. Cada potencia de dos se reparte en cuatro cubos, asi que los percentiles tienen
+ * un error de como mucho un 25 %, suficiente para ver donde se va el tiempo, y el histograma
+ * ocupa siempre lo mismo por muchas muestras que reciba.
+ */
+public class Histograma implements HistogramaMXBean {
+
+    private static final int CUBOS = 248;
+
+    private final String nombre;
+    private final AtomicLongArray cubos = new AtomicLongArray(CUBOS);
+    private final LongAdder cuenta = new LongAdder();
+    private final LongAdder suma = new LongAdder();
+    private final AtomicLong maximo = new AtomicLong();
+
+    Histograma(String nombre) {
+        this.nombre = nombre;
+    }
+
+    public String getNombre() {
+        return nombre;
+    }
+
+    /**
+     * Anota una muestra.
+     *
+     * @param nanos La duracion en nanosegundos.
+     */
+    public void registrar(long nanos) {
+        long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+        cubos.incrementAndGet(cubo(micros));
+        cuenta.increment();
+        suma.add(micros);
+        maximo.accumulateAndGet(micros, Math::max);
+    }
+
+    @Override
+    public long getCuenta() {
+        return cuenta.sum();
+    }
+
+    @Override
+    public double getMediaMs() {
+        long n = cuenta.sum();
+        return n == 0 ? 0 : suma.sum() / 1000.0 / n;
+    }
+
+    @Override
+    public double getP50Ms() {
+        return percentil(0.50);
+    }
+
+    @Override
+    public double getP95Ms() {
+        return percentil(0.95);
+    }
+
+    @Override
+    public double getP99Ms() {
+        return percentil(0.99);
+    }
+
+    @Override
+    public double getMaximoMs() {
+        return maximo.get() / 1000.0;
+    }
+
+    @Override
+    public void reiniciar() {
+        for (int i = 0; i < CUBOS; i++) {
+            cubos.set(i, 0);
+        }
+        cuenta.reset();
+        suma.reset();
+        maximo.set(0);
+    }
+
+    /**
+     * Calcula un percentil como el limite superior del cubo en el que cae.
+     *
+     * @param fraccion El percentil entre 0 y 1.
+     * @return El valor en milisegundos, o 0 si no hay muestras.
+     */
+    public double percentil(double fraccion) {
+        long total = 0;
+        long[] copia = new long[CUBOS];
+        for (int i = 0; i < CUBOS; i++) {
+            copia[i] = cubos.get(i);
+            total += copia[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long objetivo = (long) Math.ceil(total * fraccion);
+        long acumulado = 0;
+        for (int i = 0; i < CUBOS; i++) {
+            acumulado += copia[i];
+            if (acumulado >= Math.max(1, objetivo)) {
+                return Math.min(limiteSuperior(i), maximo.get()) / 1000.0;
+            }
+        }
+        return getMaximoMs();
+    }
+
+    /**
+     * Cubo de un valor: los cuatro primeros son 0 a 3 y despues cuatro por cada potencia de dos.
+     */
+    static int cubo(long micros) {
+        if (micros < 4) {
+            return (int) micros;
+        }
+        int exponente = 63 - Long.numberOfLeadingZeros(micros);
+        int parte = (int) (micros >>> (exponente - 2)) & 3;
+        return (exponente - 1) * 4 + parte;
+    }
+
+    static long limiteSuperior(int cubo) {
+        if (cubo < 4) {
+            return cubo;
+        }
+        int exponente = cubo / 4 + 1;
+        int parte = cubo % 4;
+        return ((5L + parte) << (exponente - 2)) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: n=%d media=%.1f p50=%.1f p95=%.1f p99=%.1f max=%.1f ms", nombre, getCuenta(),
+                getMediaMs(), getP50Ms(), getP95Ms(), getP99Ms(), getMaximoMs());
+    }
+}
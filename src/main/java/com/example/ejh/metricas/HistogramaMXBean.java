@@ -0,0 +1,21 @@
+package com.example.ejh.metricas;
+
+/**
+ * Vista JMX de un {@link Histograma}. Los tiempos se dan en milisegundos.
+ */
+public interface HistogramaMXBean {
+
+    long getCuenta();
+
+    double getMediaMs();
+
+    double getP50Ms();
+
+    double getP95Ms();
+
+    double getP99Ms();
+
+    double getMaximoMs();
+
+    void reiniciar();
+}
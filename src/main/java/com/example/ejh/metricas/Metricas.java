@@ -0,0 +1,207 @@
+package com.example.ejh.metricas;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Registro comun de las metricas de la aplicacion: histogramas de latencia y contadores,
+ * identificados por nombre. Se pueden consultar por JMX en el dominio {@code com.example.ejh}
+ * y escribir periodicamente en la salida estandar.
+ */
+public final class Metricas {
+
+    private static final String DOMINIO = "com.example.ejh";
+
+    private static final Map<String, Histograma> HISTOGRAMAS = new ConcurrentSkipListMap<>();
+    private static final Map<String, LongAdder> CONTADORES = new ConcurrentHashMap<>();
+    private static volatile MBeanServer servidorJmx;
+    private static ScheduledExecutorService volcado;
+
+    private Metricas() {
+    }
+
+    /**
+     * Obtiene el histograma con el nombre indicado, creandolo si no existe.
+     *
+     * @param nombre El nombre, por ejemplo {@code bd.eliminar}.
+     * @return El histograma.
+     */
+    public static Histograma histograma(String nombre) {
+        Histograma histograma = HISTOGRAMAS.get(nombre);
+        if (histograma == null) {
+            Histograma nuevo = new Histograma(nombre);
+            histograma = HISTOGRAMAS.putIfAbsent(nombre, nuevo);
+            if (histograma == null) {
+                histograma = nuevo;
+                registrarJmx(histograma);
+            }
+        }
+        return histograma;
+    }
+
+    /**
+     * Empieza a medir una operacion. La duracion se anota en el histograma al cerrar el
+     * cronometro, tambien si la operacion falla.
+     *
+     * @param nombre El nombre del histograma.
+     * @return El cronometro, para usarlo en un try-with-resources.
+     */
+    public static Cronometro cronometrar(String nombre) {
+        return new Cronometro(histograma(nombre));
+    }
+
+    /**
+     * Suma una cantidad a un contador.
+     *
+     * @param nombre El nombre del contador.
+     * @param cantidad La cantidad a sumar.
+     */
+    public static void contar(String nombre, long cantidad) {
+        CONTADORES.computeIfAbsent(nombre, n -> new LongAdder()).add(cantidad);
+    }
+
+    /**
+     * Obtiene los bytes reservados en memoria por el hilo actual desde que empezo, para
+     * medir lo que reserva una operacion restando dos lecturas.
+     *
+     * @return Los bytes reservados, o -1 si la maquina virtual no lo permite.
+     */
+    public static long bytesReservadosHilo() {
+        ThreadMXBean hilos = ManagementFactory.getThreadMXBean();
+        if (hilos instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean hilosSun = (com.sun.management.ThreadMXBean) hilos;
+            if (hilosSun.isThreadAllocatedMemorySupported() && hilosSun.isThreadAllocatedMemoryEnabled()) {
+                return hilosSun.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Publica por JMX los histogramas, los que existen y los que se creen despues, y los
+     * contadores. Un fallo solo se avisa.
+     */
+    public static synchronized void publicarJmx() {
+        if (servidorJmx != null) {
+            return;
+        }
+        MBeanServer servidor = ManagementFactory.getPlatformMBeanServer();
+        try {
+            servidor.registerMBean(new ContadoresJmx(), new ObjectName(DOMINIO + ":type=Metricas"));
+        } catch (JMException e) {
+            System.err.println("No se pudieron publicar las metricas por JMX: " + e.getMessage());
+            return;
+        }
+        servidorJmx = servidor;
+        HISTOGRAMAS.values().forEach(Metricas::registrarJmx);
+    }
+
+    private static void registrarJmx(Histograma histograma) {
+        MBeanServer servidor = servidorJmx;
+        if (servidor == null) {
+            return;
+        }
+        try {
+            ObjectName nombre = new ObjectName(DOMINIO + ":type=Latencia,name=" + ObjectName.quote(histograma.getNombre()));
+            if (!servidor.isRegistered(nombre)) {
+                servidor.registerMBean(histograma, nombre);
+            }
+        } catch (JMException e) {
+            System.err.println("No se pudo publicar por JMX " + histograma.getNombre() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Escribe el resumen de las metricas en la salida estandar cada cierto tiempo.
+     *
+     * @param intervaloSeg Los segundos entre un resumen y el siguiente.
+     */
+    public static synchronized void iniciarVolcado(long intervaloSeg) {
+        if (volcado != null) {
+            return;
+        }
+        volcado = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread hilo = new Thread(r, "ejh-metricas");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        volcado.scheduleAtFixedRate(() -> System.out.print(resumen()), intervaloSeg, intervaloSeg, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Deja de escribir el resumen periodico.
+     */
+    public static synchronized void detenerVolcado() {
+        if (volcado != null) {
+            volcado.shutdownNow();
+            volcado = null;
+        }
+    }
+
+    /**
+     * Obtiene el valor de todos los contadores.
+     *
+     * @return Los contadores ordenados por nombre.
+     */
+    public static Map<String, Long> getContadores() {
+        Map<String, Long> valores = new TreeMap<>();
+        CONTADORES.forEach((nombre, valor) -> valores.put(nombre, valor.sum()));
+        return valores;
+    }
+
+    /**
+     * Obtiene un resumen legible de todas las metricas con muestras.
+     *
+     * @return Una linea por histograma y por contador.
+     */
+    public static String resumen() {
+        StringBuilder texto = new StringBuilder("Metricas:\n");
+        for (Histograma histograma : HISTOGRAMAS.values()) {
+            if (histograma.getCuenta() > 0) {
+                texto.append("  ").append(histograma).append('\n');
+            }
+        }
+        getContadores().forEach((nombre, valor) -> texto.append("  ").append(nombre).append(" = ").append(valor).append('\n'));
+        return texto.toString();
+    }
+
+    /**
+     * Mide la duracion de una operacion desde que se crea hasta que se cierra.
+     */
+    public static final class Cronometro implements AutoCloseable {
+        private final Histograma histograma;
+        private final long inicio = System.nanoTime();
+
+        private Cronometro(Histograma histograma) {
+            this.histograma = histograma;
+        }
+
+        @Override
+        public void close() {
+            histograma.registrar(System.nanoTime() - inicio);
+        }
+    }
+
+    private static final class ContadoresJmx implements MetricasMXBean {
+        @Override
+        public Map<String, Long> getContadores() {
+            return Metricas.getContadores();
+        }
+
+        @Override
+        public String getResumen() {
+            return Metricas.resumen();
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.ejh.metricas;
+
+import java.util.Map;
+
+/**
+ * Vista JMX de los contadores de {@link Metricas} y del resumen que se escribe en el log.
+ */
+public interface MetricasMXBean {
+
+    Map<String, Long> getContadores();
+
+    String getResumen();
+}
@@ -0,0 +1,92 @@
+package com.example.ejh.metricas;
+
+import javafx.application.Platform;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Detecta cuando el hilo de JavaFX deja de responder. Cada poco tiempo se le envia un aviso
+ * con {@link Platform#runLater}; el tiempo que tarda en atenderlo se anota en el histograma
+ * {@code fx.respuesta}. Si un aviso lleva pendiente mas del umbral, se copia la pila del hilo
+ * de JavaFX, que muestra en que estaba ocupado, y al terminar el bloqueo se anota su
+ * duracion en {@code fx.bloqueo}.
+ */
+public final class VigilanteHiloFX {
+
+    private static final int MAX_LINEAS_PILA = 40;
+
+    private static ScheduledExecutorService muestreo;
+    private static Thread hiloFx;
+    private static long umbralNanos;
+    // Momento en que se envio el aviso pendiente, o 0 si no hay ninguno
+    private static volatile long avisoEnviado;
+    private static volatile boolean bloqueoAvisado;
+
+    private VigilanteHiloFX() {
+    }
+
+    /**
+     * Empieza a vigilar el hilo de JavaFX. Se debe llamar desde ese hilo.
+     *
+     * @param umbralMs El tiempo sin responder a partir del cual se considera bloqueado.
+     */
+    public static synchronized void iniciar(long umbralMs) {
+        if (muestreo != null) {
+            return;
+        }
+        hiloFx = Thread.currentThread();
+        umbralNanos = TimeUnit.MILLISECONDS.toNanos(umbralMs);
+        muestreo = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread hilo = new Thread(r, "ejh-vigilante-fx");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        long periodo = Math.max(10, umbralMs / 4);
+        muestreo.scheduleWithFixedDelay(VigilanteHiloFX::comprobar, periodo, periodo, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Deja de vigilar el hilo de JavaFX.
+     */
+    public static synchronized void detener() {
+        if (muestreo != null) {
+            muestreo.shutdownNow();
+            muestreo = null;
+        }
+    }
+
+    private static void comprobar() {
+        long enviado = avisoEnviado;
+        long ahora = System.nanoTime();
+        if (enviado == 0) {
+            avisoEnviado = ahora;
+            Platform.runLater(() -> atender(ahora));
+        } else if (!bloqueoAvisado && ahora - enviado > umbralNanos) {
+            bloqueoAvisado = true;
+            Metricas.contar("fx.bloqueos", 1);
+            StringBuilder texto = new StringBuilder(String.format(
+                    "Hilo de JavaFX sin responder desde hace %d ms:%n", TimeUnit.NANOSECONDS.toMillis(ahora - enviado)));
+            StackTraceElement[] pila = hiloFx.getStackTrace();
+            for (int i = 0; i < Math.min(pila.length, MAX_LINEAS_PILA); i++) {
+                texto.append("\tat ").append(pila[i]).append('\n');
+            }
+            if (pila.length > MAX_LINEAS_PILA) {
+                texto.append("\t... ").append(pila.length - MAX_LINEAS_PILA).append(" mas\n");
+            }
+            System.err.print(texto);
+        }
+    }
+
+    private static void atender(long enviado) {
+        long espera = System.nanoTime() - enviado;
+        Metricas.histograma("fx.respuesta").registrar(espera);
+        if (bloqueoAvisado) {
+            Metricas.histograma("fx.bloqueo").registrar(espera);
+            System.err.printf("Hilo de JavaFX libre tras %d ms.%n", TimeUnit.NANOSECONDS.toMillis(espera));
+            bloqueoAvisado = false;
+        }
+        avisoEnviado = 0;
+    }
+}
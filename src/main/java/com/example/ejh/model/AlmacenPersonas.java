@@ -0,0 +1,305 @@
+package com.example.ejh.model;
+
+import javafx.collections.ModifiableObservableListBase;
+import javafx.collections.ObservableList;
+
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Almacen de personas en columnas: los ids, las edades y las versiones se guardan en arrays de int y los
+ * nombres y apellidos como codigos de un {@link DiccionarioCadenas}. Frente a una lista de
+ * {@link Persona}, ahorra la cabecera de un objeto por fila y las cadenas repetidas.
+ *
+ * <p>La tabla lo usa a traves de {@link #vista()}, que crea un {@link Persona} ligero solo
+ * para las filas que se piden; sus cadenas son las del diccionario, no copias. Para ordenarla
+ * sin crear una persona por fila se pone debajo de una {@link VistaOrdenada} con
+ * {@link #comparadorFilas}.</p>
+ */
+public class AlmacenPersonas {
+
+    private int[] ids;
+    private int[] edades;
+    private int[] versiones;
+    private int[] nombres;
+    private int[] apellidos;
+    private int tamano;
+    private final DiccionarioCadenas diccionarioNombres = new DiccionarioCadenas();
+    private final DiccionarioCadenas diccionarioApellidos = new DiccionarioCadenas();
+    private final Vista vista = new Vista();
+
+    /**
+     * Constructor para crear un almacen con capacidad para el numero de filas indicado.
+     *
+     * @param capacidadInicial El numero de filas que se esperan.
+     */
+    public AlmacenPersonas(int capacidadInicial) {
+        int capacidad = Math.max(16, capacidadInicial);
+        ids = new int[capacidad];
+        edades = new int[capacidad];
+        versiones = new int[capacidad];
+        nombres = new int[capacidad];
+        apellidos = new int[capacidad];
+    }
+
+    /**
+     * Constructor para crear un almacen vacio.
+     */
+    public AlmacenPersonas() {
+        this(1024);
+    }
+
+    /**
+     * Obtiene la lista observable que muestra el almacen como personas. Los cambios hechos
+     * en la lista se guardan en el almacen.
+     *
+     * @return La vista del almacen.
+     */
+    public ObservableList<Persona> vista() {
+        return vista;
+    }
+
+    public int size() {
+        return tamano;
+    }
+
+    public int getId(int fila) {
+        return ids[comprobar(fila)];
+    }
+
+    public String getNombre(int fila) {
+        return diccionarioNombres.valor(nombres[comprobar(fila)]);
+    }
+
+    public String getApellidos(int fila) {
+        return diccionarioApellidos.valor(apellidos[comprobar(fila)]);
+    }
+
+    public int getEdad(int fila) {
+        return edades[comprobar(fila)];
+    }
+
+    /**
+     * Crea una persona con los datos de una fila.
+     *
+     * @param fila La fila.
+     * @return Una persona nueva con los datos de la fila.
+     */
+    public Persona getPersona(int fila) {
+        comprobar(fila);
+        return new Persona(ids[fila], diccionarioNombres.valor(nombres[fila]),
+                diccionarioApellidos.valor(apellidos[fila]), edades[fila], versiones[fila]);
+    }
+
+    /**
+     * Crea un comparador de filas para el orden indicado, con el mismo criterio que las
+     * columnas de la tabla: los textos con el {@link Collator} por defecto y los null primero.
+     * Las cadenas distintas de cada diccionario se ordenan una sola vez y las filas se
+     * comparan por la posicion de sus codigos; solo las cadenas agregadas despues se comparan
+     * con el {@code Collator}. Los empates se deshacen por id, como en {@link OrdenPersonas}.
+     *
+     * @param orden El orden.
+     * @return El comparador, que recibe indices de la {@link #vista()}.
+     */
+    public VistaOrdenada.ComparadorFilas comparadorFilas(OrdenPersonas orden) {
+        Collator collator = Collator.getInstance();
+        int[] posicionesNombres = posicionesOrdenadas(diccionarioNombres, collator);
+        int[] posicionesApellidos = posicionesOrdenadas(diccionarioApellidos, collator);
+        int signoId = orden.isIdAscendente() ? 1 : -1;
+        return (a, b) -> {
+            for (int i = 0; i < orden.getNumColumnas(); i++) {
+                int resultado;
+                switch (orden.getColumna(i)) {
+                    case NOMBRE:
+                        resultado = compararCodigos(nombres[a], nombres[b], diccionarioNombres, posicionesNombres, collator);
+                        break;
+                    case APELLIDOS:
+                        resultado = compararCodigos(apellidos[a], apellidos[b], diccionarioApellidos,
+                                posicionesApellidos, collator);
+                        break;
+                    default:
+                        resultado = Integer.compare(edades[a], edades[b]);
+                }
+                if (resultado != 0) {
+                    return orden.isAscendente(i) ? resultado : -resultado;
+                }
+            }
+            return signoId * Integer.compare(ids[a], ids[b]);
+        };
+    }
+
+    /**
+     * Obtiene la posicion de cada codigo del diccionario con sus cadenas ordenadas. Las
+     * cadenas que el {@code Collator} considera iguales comparten posicion.
+     */
+    private static int[] posicionesOrdenadas(DiccionarioCadenas diccionario, Collator collator) {
+        int n = diccionario.size();
+        Integer[] codigos = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            codigos[i] = i;
+        }
+        Arrays.sort(codigos, (a, b) -> collator.compare(diccionario.valor(a), diccionario.valor(b)));
+        int[] posiciones = new int[n];
+        for (int i = 1; i < n; i++) {
+            boolean igual = collator.compare(diccionario.valor(codigos[i - 1]), diccionario.valor(codigos[i])) == 0;
+            posiciones[codigos[i]] = igual ? posiciones[codigos[i - 1]] : i;
+        }
+        return posiciones;
+    }
+
+    private static int compararCodigos(int a, int b, DiccionarioCadenas diccionario, int[] posiciones,
+                                       Collator collator) {
+        if (a == b) {
+            return 0;
+        }
+        if (a < 0 || b < 0) {
+            return a < 0 ? -1 : 1;
+        }
+        if (a < posiciones.length && b < posiciones.length) {
+            return Integer.compare(posiciones[a], posiciones[b]);
+        }
+        return collator.compare(diccionario.valor(a), diccionario.valor(b));
+    }
+
+    /**
+     * Agrega una persona al final del almacen.
+     *
+     * @param id El id de la persona.
+     * @param nombre El nombre.
+     * @param apellidos Los apellidos.
+     * @param edad La edad.
+     */
+    public void agregar(int id, String nombre, String apellidos, int edad) {
+        insertar(tamano, id, nombre, apellidos, edad, 0);
+    }
+
+    /**
+     * Agrega una persona al final del almacen.
+     *
+     * @param id El id de la persona.
+     * @param nombre El nombre.
+     * @param apellidos Los apellidos.
+     * @param edad La edad.
+     * @param version La version de la fila.
+     */
+    public void agregar(int id, String nombre, String apellidos, int edad, int version) {
+        insertar(tamano, id, nombre, apellidos, edad, version);
+    }
+
+    private void insertar(int fila, int id, String nombre, String apellido, int edad, int version) {
+        if (tamano == ids.length) {
+            int capacidad = tamano + (tamano >> 1);
+            ids = Arrays.copyOf(ids, capacidad);
+            edades = Arrays.copyOf(edades, capacidad);
+            versiones = Arrays.copyOf(versiones, capacidad);
+            nombres = Arrays.copyOf(nombres, capacidad);
+            apellidos = Arrays.copyOf(apellidos, capacidad);
+        }
+        if (fila < tamano) {
+            desplazar(fila, fila + 1, tamano - fila);
+        }
+        escribir(fila, id, nombre, apellido, edad, version);
+        tamano++;
+    }
+
+    private void escribir(int fila, int id, String nombre, String apellido, int edad, int version) {
+        ids[fila] = id;
+        edades[fila] = edad;
+        versiones[fila] = version;
+        nombres[fila] = diccionarioNombres.codificar(nombre);
+        apellidos[fila] = diccionarioApellidos.codificar(apellido);
+    }
+
+    private void eliminar(int fila) {
+        comprobar(fila);
+        desplazar(fila + 1, fila, tamano - fila - 1);
+        tamano--;
+    }
+
+    private void desplazar(int desde, int hasta, int filas) {
+        System.arraycopy(ids, desde, ids, hasta, filas);
+        System.arraycopy(edades, desde, edades, hasta, filas);
+        System.arraycopy(versiones, desde, versiones, hasta, filas);
+        System.arraycopy(nombres, desde, nombres, hasta, filas);
+        System.arraycopy(apellidos, desde, apellidos, hasta, filas);
+    }
+
+    private int comprobar(int fila) {
+        if (fila < 0 || fila >= tamano) {
+            throw new IndexOutOfBoundsException("Fila " + fila + " fuera de rango (tamano " + tamano + ")");
+        }
+        return fila;
+    }
+
+    /**
+     * Estima la memoria ocupada por el almacen, incluidos los diccionarios.
+     *
+     * @return Los bytes aproximados que ocupa el almacen.
+     */
+    public long bytesEstimados() {
+        return 4L * 5 * ids.length + diccionarioNombres.bytesEstimados() + diccionarioApellidos.bytesEstimados();
+    }
+
+    /**
+     * Lista observable sobre el almacen. Cada {@code get} crea una persona con los datos de
+     * la fila, que la tabla solo pide para las filas visibles.
+     */
+    private final class Vista extends ModifiableObservableListBase<Persona> {
+
+        @Override
+        public Persona get(int index) {
+            return getPersona(index);
+        }
+
+        @Override
+        public int size() {
+            return tamano;
+        }
+
+        @Override
+        protected void doAdd(int index, Persona persona) {
+            if (index < 0 || index > tamano) {
+                throw new IndexOutOfBoundsException("Fila " + index + " fuera de rango (tamano " + tamano + ")");
+            }
+            insertar(index, persona.getId(), persona.getNombre(), persona.getApellidos(), persona.getEdad(),
+                    persona.getVersion());
+        }
+
+        @Override
+        protected Persona doSet(int index, Persona persona) {
+            Persona anterior = getPersona(index);
+            escribir(index, persona.getId(), persona.getNombre(), persona.getApellidos(), persona.getEdad(),
+                    persona.getVersion());
+            return anterior;
+        }
+
+        @Override
+        protected Persona doRemove(int index) {
+            Persona anterior = getPersona(index);
+            eliminar(index);
+            return anterior;
+        }
+
+        /**
+         * Elimina un rango de filas con un solo desplazamiento de las columnas, en lugar de
+         * una eliminacion por fila. Lo usan {@code clear} y {@code setAll}.
+         */
+        @Override
+        protected void removeRange(int fromIndex, int toIndex) {
+            if (fromIndex < 0 || toIndex > tamano || fromIndex > toIndex) {
+                throw new IndexOutOfBoundsException("Rango " + fromIndex + "-" + toIndex + " fuera de rango");
+            }
+            List<Persona> quitadas = new ArrayList<>(toIndex - fromIndex);
+            for (int i = fromIndex; i < toIndex; i++) {
+                quitadas.add(getPersona(i));
+            }
+            desplazar(toIndex, fromIndex, tamano - toIndex);
+            tamano -= toIndex - fromIndex;
+            beginChange();
+            nextRemove(fromIndex, quitadas);
+            endChange();
+        }
+    }
+}
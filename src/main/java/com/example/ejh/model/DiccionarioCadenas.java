@@ -0,0 +1,71 @@
+package com.example.ejh.model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Diccionario que asigna un codigo entero a cada cadena distinta. Cada valor se guarda una
+ * sola vez, asi que los nombres y apellidos repetidos no ocupan memoria de mas.
+ */
+public class DiccionarioCadenas {
+
+    private final Map<String, Integer> codigos = new HashMap<>();
+    private String[] valores = new String[64];
+    private int tamano;
+
+    /**
+     * Obtiene el codigo de una cadena, dandola de alta si no estaba.
+     *
+     * @param valor La cadena a codificar.
+     * @return El codigo de la cadena, o -1 si es null.
+     */
+    public int codificar(String valor) {
+        if (valor == null) {
+            return -1;
+        }
+        Integer codigo = codigos.get(valor);
+        if (codigo != null) {
+            return codigo;
+        }
+        if (tamano == valores.length) {
+            valores = Arrays.copyOf(valores, tamano * 2);
+        }
+        valores[tamano] = valor;
+        codigos.put(valor, tamano);
+        return tamano++;
+    }
+
+    /**
+     * Obtiene la cadena de un codigo.
+     *
+     * @param codigo El codigo devuelto por {@link #codificar(String)}.
+     * @return La cadena, o null si el codigo es -1.
+     */
+    public String valor(int codigo) {
+        return codigo < 0 ? null : valores[codigo];
+    }
+
+    /**
+     * Obtiene el numero de cadenas distintas guardadas.
+     *
+     * @return El numero de cadenas.
+     */
+    public int size() {
+        return tamano;
+    }
+
+    /**
+     * Estima la memoria ocupada por las cadenas y el mapa de codigos.
+     *
+     * @return Los bytes aproximados que ocupa el diccionario.
+     */
+    public long bytesEstimados() {
+        long bytes = 16L + 4L * valores.length;
+        for (int i = 0; i < tamano; i++) {
+            // Cabecera del String y de su array, un byte por caracter latin1 y la entrada del mapa
+            bytes += 24 + 16 + valores[i].length() + 48;
+        }
+        return bytes;
+    }
+}
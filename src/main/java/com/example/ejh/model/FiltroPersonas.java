@@ -0,0 +1,148 @@
+package com.example.ejh.model;
+
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * Filtro de busqueda sobre las personas: prefijo del nombre, prefijo de los apellidos y
+ * rango de edad. Los prefijos no distinguen mayusculas de minusculas, como la collation
+ * de la tabla. Es inmutable.
+ */
+public final class FiltroPersonas {
+
+    /**
+     * Filtro que acepta todas las personas.
+     */
+    public static final FiltroPersonas NINGUNO = new FiltroPersonas("", "", Integer.MIN_VALUE, Integer.MAX_VALUE);
+
+    private final String prefijoNombre;
+    private final String prefijoApellidos;
+    private final int edadMinima;
+    private final int edadMaxima;
+
+    private FiltroPersonas(String prefijoNombre, String prefijoApellidos, int edadMinima, int edadMaxima) {
+        this.prefijoNombre = prefijoNombre;
+        this.prefijoApellidos = prefijoApellidos;
+        this.edadMinima = edadMinima;
+        this.edadMaxima = edadMaxima;
+    }
+
+    /**
+     * Crea el filtro a partir del texto de los campos de busqueda. La edad puede ser un
+     * numero ({@code 30}), un rango ({@code 30-40}) o un limite abierto ({@code 30-} o
+     * {@code -40}); si no se entiende, no se filtra por edad. Un rango al reves ({@code 40-30})
+     * se toma como el mismo rango al derecho.
+     *
+     * @param nombre El principio del nombre.
+     * @param apellidos El principio de los apellidos.
+     * @param edad La edad o el rango de edad.
+     * @return El filtro, o {@link #NINGUNO} si todos los campos estan vacios.
+     */
+    public static FiltroPersonas desdeTexto(String nombre, String apellidos, String edad) {
+        String n = normalizar(nombre);
+        String a = normalizar(apellidos);
+        int minima = Integer.MIN_VALUE;
+        int maxima = Integer.MAX_VALUE;
+        String e = edad == null ? "" : edad.trim();
+        if (!e.isEmpty()) {
+            int guion = e.indexOf('-', 1);
+            try {
+                if (e.startsWith("-")) {
+                    maxima = Integer.parseInt(e.substring(1).trim());
+                } else if (guion < 0) {
+                    minima = maxima = Integer.parseInt(e);
+                } else {
+                    minima = Integer.parseInt(e.substring(0, guion).trim());
+                    String resto = e.substring(guion + 1).trim();
+                    if (!resto.isEmpty()) {
+                        maxima = Integer.parseInt(resto);
+                        if (maxima < minima) {
+                            int t = minima;
+                            minima = maxima;
+                            maxima = t;
+                        }
+                    }
+                }
+            } catch (NumberFormatException ex) {
+                minima = Integer.MIN_VALUE;
+                maxima = Integer.MAX_VALUE;
+            }
+        }
+        if (n.isEmpty() && a.isEmpty() && minima == Integer.MIN_VALUE && maxima == Integer.MAX_VALUE) {
+            return NINGUNO;
+        }
+        return new FiltroPersonas(n, a, minima, maxima);
+    }
+
+    /**
+     * Pasa un texto a la forma en la que se comparan los prefijos.
+     *
+     * @param texto El texto.
+     * @return El texto sin espacios a los lados y en minusculas, o una cadena vacia si es null.
+     */
+    public static String normalizar(String texto) {
+        return texto == null ? "" : texto.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Comprueba si una persona cumple el filtro.
+     *
+     * @param persona La persona.
+     * @return true si la persona cumple todas las condiciones.
+     */
+    public boolean acepta(Persona persona) {
+        return persona != null
+                && empiezaPor(persona.getNombre(), prefijoNombre)
+                && empiezaPor(persona.getApellidos(), prefijoApellidos)
+                && persona.getEdad() >= edadMinima && persona.getEdad() <= edadMaxima;
+    }
+
+    private static boolean empiezaPor(String valor, String prefijo) {
+        if (prefijo.isEmpty()) {
+            return true;
+        }
+        return valor != null && valor.regionMatches(true, 0, prefijo, 0, prefijo.length());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof FiltroPersonas)) {
+            return false;
+        }
+        FiltroPersonas otro = (FiltroPersonas) o;
+        return edadMinima == otro.edadMinima && edadMaxima == otro.edadMaxima
+                && prefijoNombre.equals(otro.prefijoNombre) && prefijoApellidos.equals(otro.prefijoApellidos);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(prefijoNombre, prefijoApellidos, edadMinima, edadMaxima);
+    }
+
+    public boolean estaVacio() {
+        return this == NINGUNO;
+    }
+
+    public String getPrefijoNombre() {
+        return prefijoNombre;
+    }
+
+    public String getPrefijoApellidos() {
+        return prefijoApellidos;
+    }
+
+    public boolean tieneEdad() {
+        return edadMinima != Integer.MIN_VALUE || edadMaxima != Integer.MAX_VALUE;
+    }
+
+    public int getEdadMinima() {
+        return edadMinima;
+    }
+
+    public int getEdadMaxima() {
+        return edadMaxima;
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.ejh.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Orden en el que se muestran las personas: una lista de columnas, cada una ascendente o
+ * descendente. Los empates se deshacen siempre por id, asi que el orden es total. Es inmutable.
+ */
+public final class OrdenPersonas {
+
+    /**
+     * Columnas por las que se puede ordenar. El nombre es el de la columna en la tabla Persona.
+     */
+    public enum Columna {
+        NOMBRE("nombre"),
+        APELLIDOS("apellidos"),
+        EDAD("edad");
+
+        private final String nombreColumna;
+
+        Columna(String nombreColumna) {
+            this.nombreColumna = nombreColumna;
+        }
+
+        public String getNombreColumna() {
+            return nombreColumna;
+        }
+    }
+
+    /**
+     * Orden por id, el de insercion.
+     */
+    public static final OrdenPersonas POR_ID = new OrdenPersonas(Collections.emptyList(), Collections.emptyList());
+
+    private final List<Columna> columnas;
+    private final List<Boolean> ascendentes;
+
+    private OrdenPersonas(List<Columna> columnas, List<Boolean> ascendentes) {
+        this.columnas = columnas;
+        this.ascendentes = ascendentes;
+    }
+
+    /**
+     * Crea un orden con una columna mas al final. Si la columna ya estaba, no se repite.
+     *
+     * @param columna La columna.
+     * @param ascendente true para orden ascendente, false para descendente.
+     * @return El nuevo orden.
+     */
+    public OrdenPersonas y(Columna columna, boolean ascendente) {
+        if (columnas.contains(columna)) {
+            return this;
+        }
+        List<Columna> nuevasColumnas = new ArrayList<>(columnas);
+        List<Boolean> nuevosAscendentes = new ArrayList<>(ascendentes);
+        nuevasColumnas.add(columna);
+        nuevosAscendentes.add(ascendente);
+        return new OrdenPersonas(Collections.unmodifiableList(nuevasColumnas),
+                Collections.unmodifiableList(nuevosAscendentes));
+    }
+
+    public int getNumColumnas() {
+        return columnas.size();
+    }
+
+    public Columna getColumna(int i) {
+        return columnas.get(i);
+    }
+
+    public boolean isAscendente(int i) {
+        return ascendentes.get(i);
+    }
+
+    /**
+     * Indica el sentido del desempate por id, que es el de la primera columna para que
+     * MySQL pueda recorrer el indice de esa columna en un solo sentido.
+     *
+     * @return true si los ids se ordenan de menor a mayor.
+     */
+    public boolean isIdAscendente() {
+        return columnas.isEmpty() || ascendentes.get(0);
+    }
+
+    public boolean esPorId() {
+        return columnas.isEmpty();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof OrdenPersonas)) {
+            return false;
+        }
+        OrdenPersonas otro = (OrdenPersonas) o;
+        return columnas.equals(otro.columnas) && ascendentes.equals(otro.ascendentes);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(columnas, ascendentes);
+    }
+}
@@ -7,6 +7,7 @@ public class Persona {
     private String nombre;
     private String apellidos;
     private int edad;
+    private int version;
 
     /**
      * Constructor para crear una persona con id, nombre, apellidos y edad.
@@ -17,10 +18,24 @@ public class Persona {
      * @param edad La edad de la persona.
      */
     public Persona(int id, String nombre, String apellidos, int edad) {
+        this(id, nombre, apellidos, edad, 0);
+    }
+
+    /**
+     * Constructor para crear una persona con id, nombre, apellidos, edad y version.
+     *
+     * @param id El identificador de la persona.
+     * @param nombre El nombre de la persona.
+     * @param apellidos Los apellidos de la persona.
+     * @param edad La edad de la persona.
+     * @param version La version de la fila de la que se leyo la persona.
+     */
+    public Persona(int id, String nombre, String apellidos, int edad, int version) {
         this.id = id;
         this.nombre = nombre;
         this.apellidos = apellidos;
         this.edad = edad;
+        this.version = version;
     }
 
     /**
@@ -86,6 +101,16 @@ public class Persona {
         this.edad = edad;
     }
 
+    /**
+     * Obtiene la version de la fila de la que se leyo la persona. Cada modificacion la aumenta
+     * en uno, y solo se puede modificar una persona si su version sigue siendo la guardada.
+     *
+     * @return La version de la persona.
+     */
+    public int getVersion() {
+        return version;
+    }
+
     /**
      * Compara dos objetos Persona para verificar si son iguales.
      *
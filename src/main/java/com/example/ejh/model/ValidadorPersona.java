@@ -0,0 +1,68 @@
+package com.example.ejh.model;
+
+/**
+ * Reglas de validacion de los datos de una persona. Las usan tanto el formulario de
+ * agregar/modificar como la importacion masiva, para que acepten exactamente lo mismo.
+ */
+public final class ValidadorPersona {
+
+    /**
+     * Longitud maxima de nombre y apellidos, la de las columnas VARCHAR(250) de la tabla.
+     */
+    public static final int LONGITUD_MAXIMA = 250;
+
+    private ValidadorPersona() {
+    }
+
+    /**
+     * Valida los datos de una persona tal y como se escriben en el formulario.
+     *
+     * @param nombre El nombre, ya sin espacios al principio ni al final.
+     * @param apellidos Los apellidos, ya sin espacios al principio ni al final.
+     * @param edadStr La edad como texto, ya sin espacios al principio ni al final.
+     * @return Los errores encontrados, uno por linea, o una cadena vacia si los datos son validos.
+     */
+    public static String validar(String nombre, String apellidos, String edadStr) {
+        return validarCampo(OrdenPersonas.Columna.NOMBRE, nombre)
+                + validarCampo(OrdenPersonas.Columna.APELLIDOS, apellidos)
+                + validarCampo(OrdenPersonas.Columna.EDAD, edadStr);
+    }
+
+    /**
+     * Valida un solo dato de una persona, por ejemplo al cambiarlo en varias a la vez.
+     *
+     * @param columna El dato.
+     * @param valor El valor como texto, ya sin espacios al principio ni al final.
+     * @return El error encontrado, terminado en salto de linea, o una cadena vacia si el valor es valido.
+     */
+    public static String validarCampo(OrdenPersonas.Columna columna, String valor) {
+        switch (columna) {
+            case NOMBRE:
+                if (valor.isEmpty()) {
+                    return "El campo nombre es obligatorio.\n";
+                } else if (valor.length() > LONGITUD_MAXIMA) {
+                    return "El nombre no puede tener mas de " + LONGITUD_MAXIMA + " caracteres.\n";
+                }
+                return "";
+            case APELLIDOS:
+                if (valor.isEmpty()) {
+                    return "El campo apellidos es obligatorio.\n";
+                } else if (valor.length() > LONGITUD_MAXIMA) {
+                    return "Los apellidos no pueden tener mas de " + LONGITUD_MAXIMA + " caracteres.\n";
+                }
+                return "";
+            default:
+                if (valor.isEmpty()) {
+                    return "El campo edad es obligatorio.\n";
+                }
+                try {
+                    if (Integer.parseInt(valor) < 0) {
+                        return "La edad debe ser un número positivo.\n";
+                    }
+                } catch (NumberFormatException e) {
+                    return "La edad debe ser un número entero.\n";
+                }
+                return "";
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package com.example.ejh.model;
+
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import javafx.collections.transformation.TransformationList;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Lista ordenada sobre otra lista que solo guarda, para cada posicion, el indice de la fila
+ * en la lista de origen. A diferencia de {@code SortedList}, que guarda cada elemento, no
+ * obliga a crear y conservar una {@link Persona} por fila, asi que se puede poner sobre la
+ * vista de un {@link AlmacenPersonas}: las filas se comparan por su indice con un
+ * {@link ComparadorFilas} que lee las columnas del almacen.
+ *
+ * <p>Las filas nuevas se colocan en su sitio mezclandolas con las que ya estaban, con un
+ * solo recorrido por cambio de la lista de origen.</p>
+ */
+public class VistaOrdenada extends TransformationList<Persona, Persona> {
+
+    /**
+     * Compara dos filas de la lista de origen por su indice.
+     */
+    @FunctionalInterface
+    public interface ComparadorFilas {
+        /**
+         * Compara dos filas.
+         *
+         * @param filaA El indice de la primera fila en la lista de origen.
+         * @param filaB El indice de la segunda.
+         * @return Un numero negativo, cero o positivo si la primera va antes, en el mismo sitio o despues.
+         */
+        int comparar(int filaA, int filaB);
+    }
+
+    private ComparadorFilas comparador;
+    // filas[i] es el indice en la lista de origen de la fila que se muestra en la posicion i
+    private int[] filas;
+    private int tamano;
+    private int[] auxiliar = new int[0];
+
+    /**
+     * Constructor para crear la vista en el orden de la lista de origen.
+     *
+     * @param origen La lista de origen.
+     */
+    public VistaOrdenada(ObservableList<Persona> origen) {
+        super(origen);
+        tamano = origen.size();
+        filas = new int[Math.max(16, tamano)];
+        for (int i = 0; i < tamano; i++) {
+            filas[i] = i;
+        }
+    }
+
+    /**
+     * Cambia el orden de la vista y avisa con una permutacion, como {@code SortedList}.
+     *
+     * @param comparador El comparador de filas, o null para el orden de la lista de origen.
+     */
+    public void setComparador(ComparadorFilas comparador) {
+        this.comparador = comparador;
+        int[] anteriores = new int[tamano];
+        for (int i = 0; i < tamano; i++) {
+            anteriores[filas[i]] = i;
+        }
+        ordenar(filas, 0, tamano);
+        int[] permutacion = new int[tamano];
+        for (int i = 0; i < tamano; i++) {
+            permutacion[anteriores[filas[i]]] = i;
+        }
+        beginChange();
+        nextPermutation(0, tamano, permutacion);
+        endChange();
+    }
+
+    @Override
+    public Persona get(int index) {
+        if (index < 0 || index >= tamano) {
+            throw new IndexOutOfBoundsException("Indice " + index + " fuera de rango (tamano " + tamano + ")");
+        }
+        return getSource().get(filas[index]);
+    }
+
+    @Override
+    public int size() {
+        return tamano;
+    }
+
+    @Override
+    public int getSourceIndex(int index) {
+        if (index < 0 || index >= tamano) {
+            throw new IndexOutOfBoundsException("Indice " + index + " fuera de rango (tamano " + tamano + ")");
+        }
+        return filas[index];
+    }
+
+    @Override
+    public int getViewIndex(int index) {
+        for (int i = 0; i < tamano; i++) {
+            if (filas[i] == index) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    protected void sourceChanged(ListChangeListener.Change<? extends Persona> c) {
+        beginChange();
+        while (c.next()) {
+            if (c.wasPermutated()) {
+                // Las mismas filas en otras posiciones del origen: la vista no cambia
+                for (int i = 0; i < tamano; i++) {
+                    if (filas[i] >= c.getFrom() && filas[i] < c.getTo()) {
+                        filas[i] = c.getPermutation(filas[i]);
+                    }
+                }
+            } else if (c.wasUpdated()) {
+                for (int fila = c.getFrom(); fila < c.getTo(); fila++) {
+                    quitar(fila, 1, List.of(getSource().get(fila)));
+                    agregar(fila, 1);
+                }
+            } else {
+                quitar(c.getFrom(), c.getRemovedSize(), c.getRemoved());
+                agregar(c.getFrom(), c.getAddedSize());
+            }
+        }
+        endChange();
+    }
+
+    /**
+     * Quita las filas de un rango del origen y desplaza los indices de las posteriores.
+     */
+    private void quitar(int desde, int cantidad, List<? extends Persona> quitadas) {
+        if (cantidad == 0) {
+            return;
+        }
+        int hasta = desde + cantidad;
+        int quedan = 0;
+        for (int i = 0; i < tamano; i++) {
+            int fila = filas[i];
+            if (fila >= desde && fila < hasta) {
+                nextRemove(quedan, quitadas.get(fila - desde));
+            } else {
+                filas[quedan++] = fila >= hasta ? fila - cantidad : fila;
+            }
+        }
+        tamano = quedan;
+    }
+
+    /**
+     * Desplaza los indices de las filas posteriores a un rango agregado al origen, ordena
+     * las nuevas y las mezcla con las que ya estaban.
+     */
+    private void agregar(int desde, int cantidad) {
+        if (cantidad == 0) {
+            return;
+        }
+        for (int i = 0; i < tamano; i++) {
+            if (filas[i] >= desde) {
+                filas[i] += cantidad;
+            }
+        }
+        int[] nuevas = new int[cantidad];
+        for (int i = 0; i < cantidad; i++) {
+            nuevas[i] = desde + i;
+        }
+        ordenar(nuevas, 0, cantidad);
+        int total = tamano + cantidad;
+        int[] mezcla = filas.length >= total ? auxiliarDe(total) : new int[Math.max(total, filas.length + (filas.length >> 1))];
+        int i = 0;
+        int j = 0;
+        for (int k = 0; k < total; k++) {
+            if (j < cantidad && (i == tamano || comparar(nuevas[j], filas[i]) < 0)) {
+                mezcla[k] = nuevas[j++];
+                nextAdd(k, k + 1);
+            } else {
+                mezcla[k] = filas[i++];
+            }
+        }
+        auxiliar = filas;
+        filas = mezcla;
+        tamano = total;
+    }
+
+    private int[] auxiliarDe(int tamanoMinimo) {
+        if (auxiliar.length < tamanoMinimo) {
+            auxiliar = new int[filas.length];
+        }
+        return auxiliar;
+    }
+
+    private int comparar(int filaA, int filaB) {
+        if (comparador != null) {
+            int resultado = comparador.comparar(filaA, filaB);
+            if (resultado != 0) {
+                return resultado;
+            }
+        }
+        return Integer.compare(filaA, filaB);
+    }
+
+    /**
+     * Ordena un tramo de indices por mezcla, que hace pocas comparaciones y no necesita
+     * guardar objetos.
+     */
+    private void ordenar(int[] indices, int desde, int hasta) {
+        int n = hasta - desde;
+        if (n < 2) {
+            return;
+        }
+        int[] origen = Arrays.copyOfRange(indices, desde, hasta);
+        int[] destino = new int[n];
+        for (int ancho = 1; ancho < n; ancho *= 2) {
+            for (int izq = 0; izq < n; izq += 2 * ancho) {
+                int medio = Math.min(izq + ancho, n);
+                int der = Math.min(izq + 2 * ancho, n);
+                int i = izq;
+                int j = medio;
+                for (int k = izq; k < der; k++) {
+                    if (i < medio && (j == der || comparar(origen[i], origen[j]) <= 0)) {
+                        destino[k] = origen[i++];
+                    } else {
+                        destino[k] = origen[j++];
+                    }
+                }
+            }
+            int[] t = origen;
+            origen = destino;
+            destino = t;
+        }
+        System.arraycopy(origen, 0, indices, desde, n);
+    }
+}
@@ -0,0 +1,485 @@
+package com.example.ejh.servidor;
+
+import com.example.ejh.db.RepositorioPersonas;
+import com.example.ejh.json.JsonPersona;
+import com.example.ejh.json.LectorJson;
+import com.example.ejh.metricas.Metricas;
+import com.example.ejh.model.FiltroPersonas;
+import com.example.ejh.model.OrdenPersonas;
+import com.example.ejh.model.Persona;
+import com.example.ejh.model.ValidadorPersona;
+import com.example.ejh.tareas.TareaBD;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Servidor HTTP que da acceso a las personas en JSON a otros programas, con el mismo
+ * {@link RepositorioPersonas} que usa la ventana. Usa el servidor HTTP del JDK y atiende cada
+ * peticion en un hilo virtual si la maquina virtual los tiene (Java 21 o posterior); si no, en
+ * un grupo de hilos de tamano fijo. Las rutas son:
+ *
+ * <ul>
+ *     <li>{@code GET /personas}: todas las personas, escritas a medida que se leen. Con
+ *     {@code nombre}, {@code apellidos}, {@code edad} o {@code limite} en la consulta se filtran
+ *     como en los campos de busqueda de la ventana.</li>
+ *     <li>{@code GET /personas/{id}}, {@code PUT /personas/{id}} y {@code DELETE /personas/{id}}:
+ *     leer, modificar y eliminar una persona. Si el {@code PUT} lleva la {@code version} leida y
+ *     la persona ha cambiado desde entonces, se responde 409 con la persona actual en
+ *     {@code actual}; sin {@code version} se modifica la version actual.</li>
+ *     <li>{@code POST /personas}: dar de alta una persona.</li>
+ *     <li>{@code POST /personas/eliminar} con {@code {"ids":[...]}}: eliminar varias.</li>
+ *     <li>{@code POST /personas/modificar} con {@code {"ids":[...],"columna":"EDAD","valor":30}}:
+ *     poner el mismo dato en varias.</li>
+ * </ul>
+ *
+ * <p>No hay autenticacion, asi que por defecto solo se escucha en la interfaz local (ver
+ * {@code PersonasApplication.iniciarServidor}). Los cuerpos de mas de
+ * {@value #MAX_CUERPO} bytes se rechazan con 413.</p>
+ */
+public class ServidorPersonas {
+
+    private static final String RUTA = "/personas";
+    private static final String TIPO_JSON = "application/json; charset=utf-8";
+    // Conexiones pendientes de aceptar; la cola por defecto del sistema se queda corta con muchos clientes
+    private static final int COLA_CONEXIONES = 1024;
+    private static final int LIMITE_BUSQUEDA = 1000;
+    private static final int TAMANO_BUFFER = 64 * 1024;
+    // Una lista de ids de varios cientos de miles de filas cabe de sobra
+    private static final int MAX_CUERPO = 4 * 1024 * 1024;
+
+    private final RepositorioPersonas repositorio;
+    private final HttpServer servidor;
+    private final ExecutorService ejecutor;
+
+    /**
+     * Constructor para crear el servidor. No atiende peticiones hasta llamar a {@link #iniciar()}.
+     *
+     * @param repositorio El repositorio de las personas.
+     * @param direccion La direccion y el puerto en los que escuchar.
+     * @param hilos El numero de hilos si no hay hilos virtuales.
+     * @throws IOException Si no se puede abrir el puerto.
+     */
+    public ServidorPersonas(RepositorioPersonas repositorio, InetSocketAddress direccion, int hilos) throws IOException {
+        this.repositorio = repositorio;
+        this.ejecutor = crearEjecutor(hilos);
+        // El servidor del JDK envia las cabeceras y el cuerpo por separado; con el algoritmo de
+        // Nagle el cuerpo espera al ACK retardado del cliente (unos 40 ms por peticion). Se lee
+        // una sola vez, al crear el primer servidor
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        this.servidor = HttpServer.create(direccion, COLA_CONEXIONES);
+        this.servidor.createContext(RUTA, this::atender);
+        this.servidor.setExecutor(ejecutor);
+    }
+
+    /**
+     * Empieza a atender peticiones.
+     */
+    public void iniciar() {
+        servidor.start();
+    }
+
+    /**
+     * Deja de aceptar peticiones y espera a que terminen las que estan en curso.
+     *
+     * @param segundos El tiempo maximo de espera.
+     */
+    public void detener(int segundos) {
+        servidor.stop(segundos);
+        ejecutor.shutdown();
+        try {
+            ejecutor.awaitTermination(segundos, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Obtiene el puerto en el que escucha el servidor, util si se pidio el puerto 0.
+     *
+     * @return El puerto.
+     */
+    public int getPuerto() {
+        return servidor.getAddress().getPort();
+    }
+
+    /**
+     * Crea un hilo virtual por peticion si la maquina virtual lo permite. Se busca por
+     * reflexion porque el proyecto se compila para Java 17.
+     */
+    private static ExecutorService crearEjecutor(int hilos) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            AtomicInteger numero = new AtomicInteger();
+            return Executors.newFixedThreadPool(hilos, r -> {
+                Thread hilo = new Thread(r, "ejh-http-" + numero.incrementAndGet());
+                hilo.setDaemon(true);
+                return hilo;
+            });
+        }
+    }
+
+    private void atender(HttpExchange intercambio) {
+        try (intercambio) {
+            String metodo = intercambio.getRequestMethod();
+            String resto = intercambio.getRequestURI().getPath().substring(RUTA.length());
+            try {
+                if (resto.isEmpty() || resto.equals("/")) {
+                    if (metodo.equals("GET")) {
+                        listar(intercambio);
+                    } else if (metodo.equals("POST")) {
+                        crear(intercambio);
+                    } else {
+                        metodoNoPermitido(intercambio, "GET, POST");
+                    }
+                } else if (resto.equals("/eliminar") || resto.equals("/modificar")) {
+                    if (!metodo.equals("POST")) {
+                        metodoNoPermitido(intercambio, "POST");
+                    } else if (resto.equals("/eliminar")) {
+                        eliminarVarias(intercambio);
+                    } else {
+                        modificarVarias(intercambio);
+                    }
+                } else if (!resto.startsWith("/")) {
+                    throw new ErrorPeticion(404, "No existe la ruta " + intercambio.getRequestURI().getPath());
+                } else {
+                    int id = id(resto.substring(1));
+                    if (metodo.equals("GET")) {
+                        obtener(intercambio, id);
+                    } else if (metodo.equals("PUT")) {
+                        modificar(intercambio, id);
+                    } else if (metodo.equals("DELETE")) {
+                        eliminar(intercambio, id);
+                    } else {
+                        metodoNoPermitido(intercambio, "GET, PUT, DELETE");
+                    }
+                }
+            } catch (ErrorPeticion e) {
+                responderError(intercambio, e.estado, e.getMessage());
+            } catch (IllegalArgumentException e) {
+                responderError(intercambio, 400, e.getMessage());
+            } catch (SQLException e) {
+                Metricas.contar("http.errores", 1);
+                responderError(intercambio, 500, "Error de la base de datos: " + e.getMessage());
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                Metricas.contar("http.errores", 1);
+                responderError(intercambio, 500, "Error inesperado: " + e.getMessage());
+            }
+        } catch (IOException e) {
+            // El cliente se ha ido o la respuesta ya habia empezado: no hay a quien avisar
+            Metricas.contar("http.errores", 1);
+        }
+    }
+
+    private void listar(HttpExchange intercambio) throws IOException, SQLException, ErrorPeticion {
+        Map<String, String> consulta = consulta(intercambio);
+        FiltroPersonas filtro = FiltroPersonas.desdeTexto(consulta.get("nombre"), consulta.get("apellidos"),
+                consulta.get("edad"));
+        TareaBD<Void> tarea = new TareaBD<>(t -> null);
+        if (filtro == FiltroPersonas.NINGUNO && !consulta.containsKey("limite")) {
+            // Sin filtro se escriben a medida que se leen, sin tener la lista entera en memoria
+            try (Metricas.Cronometro c = Metricas.cronometrar("http.listar")) {
+                intercambio.getResponseHeaders().set("Content-Type", TIPO_JSON);
+                intercambio.sendResponseHeaders(200, 0);
+                Writer out = new BufferedWriter(new OutputStreamWriter(intercambio.getResponseBody(),
+                        StandardCharsets.UTF_8), TAMANO_BUFFER);
+                out.write('[');
+                boolean[] primera = {true};
+                try {
+                    repositorio.cargarTodas(tarea, persona -> {
+                        try {
+                            if (!primera[0]) {
+                                out.write(',');
+                            }
+                            primera[0] = false;
+                            JsonPersona.escribir(out, persona);
+                        } catch (IOException e) {
+                            // Corta la lectura: el cliente ya no recibe nada
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+                out.write(']');
+                out.flush();
+            }
+            return;
+        }
+        int limite = consulta.containsKey("limite") ? entero(consulta.get("limite"), "limite") : LIMITE_BUSQUEDA;
+        List<Persona> personas;
+        try (Metricas.Cronometro c = Metricas.cronometrar("http.buscar")) {
+            personas = repositorio.buscar(tarea, filtro, Math.max(0, limite));
+        }
+        StringBuilder json = new StringBuilder(personas.size() * 64 + 2).append('[');
+        for (int i = 0; i < personas.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            JsonPersona.escribir(json, personas.get(i));
+        }
+        responder(intercambio, 200, json.append(']').toString());
+    }
+
+    private void obtener(HttpExchange intercambio, int id) throws IOException, SQLException, ErrorPeticion {
+        Persona persona;
+        try (Metricas.Cronometro c = Metricas.cronometrar("http.obtener")) {
+            persona = repositorio.obtener(new TareaBD<>(t -> null), id);
+        }
+        if (persona == null) {
+            throw new ErrorPeticion(404, "No existe la persona " + id);
+        }
+        responder(intercambio, 200, json(persona));
+    }
+
+    private void crear(HttpExchange intercambio) throws IOException, SQLException, ErrorPeticion {
+        Persona datos = leerPersona(leerCuerpo(intercambio), 0, 0);
+        Persona persona;
+        try (Metricas.Cronometro c = Metricas.cronometrar("http.crear")) {
+            persona = repositorio.insertar(new TareaBD<>(t -> null), datos.getNombre(), datos.getApellidos(),
+                    datos.getEdad());
+        }
+        intercambio.getResponseHeaders().set("Location", RUTA + "/" + persona.getId());
+        responder(intercambio, 201, json(persona));
+    }
+
+    private void modificar(HttpExchange intercambio, int id) throws IOException, SQLException, ErrorPeticion {
+        Map<String, Object> cuerpo = leerCuerpo(intercambio);
+        Integer version = cuerpo.get("version") == null ? null : entero(cuerpo.get("version"), "La version");
+        TareaBD<Void> tarea = new TareaBD<>(t -> null);
+        Persona persona;
+        Persona actual = null;
+        try (Metricas.Cronometro c = Metricas.cronometrar("http.modificar")) {
+            if (version == null) {
+                actual = repositorio.obtener(tarea, id);
+                if (actual == null) {
+                    throw new ErrorPeticion(404, "No existe la persona " + id);
+                }
+            }
+            persona = leerPersona(cuerpo, id, version == null ? actual.getVersion() : version);
+            if (!repositorio.modificar(tarea, persona)) {
+                actual = repositorio.obtener(tarea, id);
+                if (actual == null) {
+                    throw new ErrorPeticion(404, "No existe la persona " + id);
+                }
+                Metricas.contar("http.conflictos", 1);
+                StringBuilder json = new StringBuilder("{\"error\":");
+                JsonPersona.escribirCadena(json, "La persona ha cambiado desde la version " + persona.getVersion());
+                json.append(",\"actual\":");
+                JsonPersona.escribir(json, actual);
+                responder(intercambio, 409, json.append('}').toString());
+                return;
+            }
+        }
+        responder(intercambio, 200, json(new Persona(id, persona.getNombre(), persona.getApellidos(),
+                persona.getEdad(), persona.getVersion() + 1)));
+    }
+
+    private void eliminar(HttpExchange intercambio, int id) throws IOException, SQLException, ErrorPeticion {
+        boolean eliminada;
+        try (Metricas.Cronometro c = Metricas.cronometrar("http.eliminar")) {
+            eliminada = repositorio.eliminar(new TareaBD<>(t -> null), id);
+        }
+        if (!eliminada) {
+            throw new ErrorPeticion(404, "No existe la persona " + id);
+        }
+        intercambio.sendResponseHeaders(204, -1);
+    }
+
+    private void eliminarVarias(HttpExchange intercambio) throws IOException, SQLException, ErrorPeticion {
+        List<Integer> ids = ids(leerCuerpo(intercambio));
+        int eliminadas;
+        try (Metricas.Cronometro c = Metricas.cronometrar("http.eliminar_varias")) {
+            eliminadas = repositorio.eliminarVarias(new TareaBD<>(t -> null), ids);
+        }
+        responder(intercambio, 200, "{\"eliminadas\":" + eliminadas + "}");
+    }
+
+    private void modificarVarias(HttpExchange intercambio) throws IOException, SQLException, ErrorPeticion {
+        Map<String, Object> cuerpo = leerCuerpo(intercambio);
+        List<Integer> ids = ids(cuerpo);
+        OrdenPersonas.Columna columna;
+        try {
+            columna = OrdenPersonas.Columna.valueOf(texto(cuerpo, "columna").toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new ErrorPeticion(400, "La columna debe ser NOMBRE, APELLIDOS o EDAD");
+        }
+        String valor = texto(cuerpo, "valor");
+        String errores = ValidadorPersona.validarCampo(columna, valor);
+        if (!errores.isEmpty()) {
+            throw new ErrorPeticion(400, errores.trim());
+        }
+        Object nuevo = columna == OrdenPersonas.Columna.EDAD ? (Object) Integer.parseInt(valor) : valor;
+        int modificadas;
+        try (Metricas.Cronometro c = Metricas.cronometrar("http.modificar_varias")) {
+            modificadas = repositorio.modificarVarias(new TareaBD<>(t -> null), ids, columna, nuevo);
+        }
+        responder(intercambio, 200, "{\"modificadas\":" + modificadas + "}");
+    }
+
+    /**
+     * Lee y valida una persona del cuerpo de la peticion, con las mismas reglas que el formulario.
+     */
+    private static Persona leerPersona(Map<String, Object> cuerpo, int id, int version) throws ErrorPeticion {
+        String nombre = texto(cuerpo, "nombre");
+        String apellidos = texto(cuerpo, "apellidos");
+        String edad = texto(cuerpo, "edad");
+        String errores = ValidadorPersona.validar(nombre, apellidos, edad);
+        if (!errores.isEmpty()) {
+            throw new ErrorPeticion(400, errores.trim());
+        }
+        return new Persona(id, nombre, apellidos, Integer.parseInt(edad), version);
+    }
+
+    /**
+     * Lee el cuerpo JSON de la peticion, como maximo {@value #MAX_CUERPO} bytes. Si la peticion
+     * anuncia uno mayor no se llega a leer.
+     */
+    private static Map<String, Object> leerCuerpo(HttpExchange intercambio) throws IOException, ErrorPeticion {
+        String longitud = intercambio.getRequestHeaders().getFirst("Content-Length");
+        if (longitud != null) {
+            try {
+                if (Long.parseLong(longitud.trim()) > MAX_CUERPO) {
+                    throw demasiadoGrande();
+                }
+            } catch (NumberFormatException e) {
+                throw new ErrorPeticion(400, "Content-Length no es un numero");
+            }
+        }
+        byte[] bytes;
+        try (InputStream in = intercambio.getRequestBody()) {
+            bytes = in.readNBytes(MAX_CUERPO + 1);
+        }
+        if (bytes.length > MAX_CUERPO) {
+            throw demasiadoGrande();
+        }
+        return LectorJson.leerObjeto(new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    private static ErrorPeticion demasiadoGrande() {
+        // El servidor del JDK cierra la conexion al responder si queda mucho cuerpo sin leer
+        return new ErrorPeticion(413, "El cuerpo de la peticion supera los " + MAX_CUERPO + " bytes");
+    }
+
+    /**
+     * Comprueba que un valor del JSON es un entero que cabe en un int. El lector da los
+     * enteros como Long, asi que uno mayor se truncaria en silencio.
+     */
+    private static int entero(Object valor, String nombre) throws ErrorPeticion {
+        if (!(valor instanceof Long)) {
+            throw new ErrorPeticion(400, nombre + " debe ser un numero entero");
+        }
+        long numero = (Long) valor;
+        if (numero < Integer.MIN_VALUE || numero > Integer.MAX_VALUE) {
+            throw new ErrorPeticion(400, nombre + " esta fuera de rango: " + numero);
+        }
+        return (int) numero;
+    }
+
+    private static String texto(Map<String, Object> cuerpo, String campo) {
+        Object valor = cuerpo.get(campo);
+        return valor == null ? "" : valor.toString().trim();
+    }
+
+    private static List<Integer> ids(Map<String, Object> cuerpo) throws ErrorPeticion {
+        if (!(cuerpo.get("ids") instanceof List)) {
+            throw new ErrorPeticion(400, "Falta la lista ids");
+        }
+        List<Integer> ids = new ArrayList<>();
+        for (Object id : (List<?>) cuerpo.get("ids")) {
+            ids.add(entero(id, "Cada id"));
+        }
+        return ids;
+    }
+
+    private static Map<String, String> consulta(HttpExchange intercambio) {
+        Map<String, String> parametros = new HashMap<>();
+        String texto = intercambio.getRequestURI().getRawQuery();
+        if (texto == null) {
+            return parametros;
+        }
+        for (String parametro : texto.split("&")) {
+            int igual = parametro.indexOf('=');
+            if (igual > 0) {
+                parametros.put(URLDecoder.decode(parametro.substring(0, igual), StandardCharsets.UTF_8),
+                        URLDecoder.decode(parametro.substring(igual + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return parametros;
+    }
+
+    private static int id(String texto) throws ErrorPeticion {
+        try {
+            return Integer.parseInt(texto);
+        } catch (NumberFormatException e) {
+            throw new ErrorPeticion(404, "No existe la ruta " + RUTA + "/" + texto);
+        }
+    }
+
+    private static int entero(String texto, String nombre) throws ErrorPeticion {
+        try {
+            return Integer.parseInt(texto.trim());
+        } catch (NumberFormatException e) {
+            throw new ErrorPeticion(400, "El parametro " + nombre + " debe ser un numero");
+        }
+    }
+
+    private static String json(Persona persona) throws IOException {
+        StringBuilder json = new StringBuilder(64);
+        JsonPersona.escribir(json, persona);
+        return json.toString();
+    }
+
+    private static void metodoNoPermitido(HttpExchange intercambio, String permitidos) throws ErrorPeticion {
+        intercambio.getResponseHeaders().set("Allow", permitidos);
+        throw new ErrorPeticion(405, "Metodo no permitido");
+    }
+
+    private static void responderError(HttpExchange intercambio, int estado, String mensaje) throws IOException {
+        StringBuilder json = new StringBuilder("{\"error\":");
+        JsonPersona.escribirCadena(json, mensaje);
+        responder(intercambio, estado, json.append('}').toString());
+    }
+
+    private static void responder(HttpExchange intercambio, int estado, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        intercambio.getResponseHeaders().set("Content-Type", TIPO_JSON);
+        intercambio.sendResponseHeaders(estado, bytes.length);
+        intercambio.getResponseBody().write(bytes);
+    }
+
+    /**
+     * Error que se devuelve al cliente con un estado HTTP.
+     */
+    private static final class ErrorPeticion extends Exception {
+        private final int estado;
+
+        private ErrorPeticion(int estado, String mensaje) {
+            super(mensaje);
+            this.estado = estado;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.ejh.tareas;
+
+import javafx.application.Platform;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Ejecutor comun para todo el trabajo de base de datos, fuera del hilo de JavaFX.
+ * Usa hilos virtuales cuando la JVM los soporta (Java 21 o superior) y un pool de
+ * hilos daemon reutilizables en otro caso.
+ */
+public final class EjecutorTareas {
+
+    private static final ExecutorService EJECUTOR = crearEjecutor();
+    private static final Set<TareaBD<?>> EN_CURSO = Collections.synchronizedSet(
+            Collections.newSetFromMap(new IdentityHashMap<>()));
+
+    /**
+     * Ejecutor que pasa el trabajo al hilo de JavaFX. Si ya se esta en el, lo ejecuta directamente.
+     */
+    public static final Executor HILO_FX = tarea -> {
+        if (Platform.isFxApplicationThread()) {
+            tarea.run();
+        } else {
+            Platform.runLater(tarea);
+        }
+    };
+
+    private EjecutorTareas() {
+    }
+
+    private static ExecutorService crearEjecutor() {
+        try {
+            Method virtuales = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) virtuales.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger contador = new AtomicInteger();
+            return Executors.newCachedThreadPool(r -> {
+                Thread hilo = new Thread(r, "ejh-bd-" + contador.incrementAndGet());
+                hilo.setDaemon(true);
+                return hilo;
+            });
+        }
+    }
+
+    /**
+     * Lanza una tarea en segundo plano. Los callbacks se ejecutan en el hilo de JavaFX.
+     *
+     * @param tarea La tarea a lanzar.
+     * @param alTerminar Lo que se hace con el resultado si la tarea termina bien.
+     * @param alFallar Lo que se hace con el error si la tarea falla. No se llama si se cancela.
+     * @param <T> El tipo del resultado.
+     * @return La misma tarea, para poder cancelarla u observar su progreso.
+     */
+    public static <T> TareaBD<T> lanzar(TareaBD<T> tarea, Consumer<T> alTerminar, Consumer<Throwable> alFallar) {
+        tarea.setOnSucceeded(e -> {
+            EN_CURSO.remove(tarea);
+            alTerminar.accept(tarea.getValue());
+        });
+        tarea.setOnFailed(e -> {
+            EN_CURSO.remove(tarea);
+            alFallar.accept(tarea.getException());
+        });
+        tarea.setOnCancelled(e -> EN_CURSO.remove(tarea));
+        EN_CURSO.add(tarea);
+        EJECUTOR.execute(tarea);
+        return tarea;
+    }
+
+    /**
+     * Lanza un trabajo en segundo plano. Los callbacks se ejecutan en el hilo de JavaFX.
+     *
+     * @param trabajo El trabajo a ejecutar.
+     * @param alTerminar Lo que se hace con el resultado si el trabajo termina bien.
+     * @param alFallar Lo que se hace con el error si el trabajo falla.
+     * @param <T> El tipo del resultado.
+     * @return La tarea creada, para poder cancelarla u observar su progreso.
+     */
+    public static <T> TareaBD<T> lanzar(TareaBD.Trabajo<T> trabajo, Consumer<T> alTerminar,
+                                        Consumer<Throwable> alFallar) {
+        return lanzar(new TareaBD<>(trabajo), alTerminar, alFallar);
+    }
+
+    /**
+     * Ejecuta un trabajo en segundo plano como {@link CompletableFuture}. Para volver al hilo de
+     * JavaFX se encadena con los metodos {@code ...Async} usando {@link #HILO_FX}.
+     *
+     * @param trabajo El trabajo a ejecutar.
+     * @param <T> El tipo del resultado.
+     * @return El futuro con el resultado del trabajo.
+     */
+    public static <T> CompletableFuture<T> enSegundoPlano(Callable<T> trabajo) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return trabajo.call();
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, EJECUTOR);
+    }
+
+    /**
+     * Obtiene el ejecutor de segundo plano, para quien necesite lanzar trabajo propio.
+     *
+     * @return El ejecutor comun de tareas de base de datos.
+     */
+    public static Executor getEjecutor() {
+        return EJECUTOR;
+    }
+
+    /**
+     * Cancela todas las tareas que sigan en curso.
+     */
+    public static void cancelarTodas() {
+        List<TareaBD<?>> tareas;
+        synchronized (EN_CURSO) {
+            tareas = List.copyOf(EN_CURSO);
+        }
+        tareas.forEach(tarea -> tarea.cancel(true));
+    }
+
+    /**
+     * Cancela las tareas en curso y detiene el ejecutor, esperando un momento a que terminen.
+     */
+    public static void cerrar() {
+        cancelarTodas();
+        EJECUTOR.shutdownNow();
+        try {
+            EJECUTOR.awaitTermination(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.ejh.tareas;
+
+import javafx.application.Platform;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Agrupa los elementos producidos en segundo plano y los entrega en el hilo de JavaFX en
+ * lotes. Como mucho hay un {@code Platform.runLater} pendiente: si llegan varios lotes antes
+ * de que se ejecute, se entregan juntos en una sola llamada, y asi la lista destino recibe
+ * un unico cambio con {@code addAll} en lugar de uno por fila.
+ *
+ * <p>Los primeros lotes son pequenos para que las primeras filas aparezcan enseguida y van
+ * creciendo hasta el tamano maximo.</p>
+ *
+ * <p>Con {@link #cancelar()} se descartan los lotes pendientes y los que se agreguen despues,
+ * para que una carga que se abandona no siga llenando la lista destino.</p>
+ *
+ * @param <T> El tipo de los elementos.
+ */
+public class PublicadorLotes<T> {
+
+    private static final int LOTE_INICIAL = 64;
+
+    private final Consumer<List<T>> destino;
+    private final int loteMaximo;
+    private final long intervaloMaximoNanos;
+    private final Queue<List<T>> pendientes = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean programado = new AtomicBoolean();
+    private volatile boolean cancelado;
+
+    private List<T> actual;
+    private int loteActual = LOTE_INICIAL;
+    private long ultimoEnvio = System.nanoTime();
+
+    /**
+     * Constructor para crear el publicador.
+     *
+     * @param destino Lo que se hace con cada lote, en el hilo de JavaFX.
+     * @param loteMaximo El numero maximo de elementos que se acumulan antes de enviarlos.
+     * @param intervaloMaximoMs El tiempo maximo que un elemento espera a ser enviado.
+     */
+    public PublicadorLotes(Consumer<List<T>> destino, int loteMaximo, long intervaloMaximoMs) {
+        this.destino = destino;
+        this.loteMaximo = loteMaximo;
+        this.intervaloMaximoNanos = TimeUnit.MILLISECONDS.toNanos(intervaloMaximoMs);
+        this.actual = new ArrayList<>(Math.min(LOTE_INICIAL, loteMaximo));
+    }
+
+    /**
+     * Agrega un elemento. Se llama siempre desde el mismo hilo productor.
+     *
+     * @param elemento El elemento a publicar.
+     */
+    public void agregar(T elemento) {
+        if (cancelado) {
+            return;
+        }
+        actual.add(elemento);
+        if (actual.size() >= loteActual || System.nanoTime() - ultimoEnvio > intervaloMaximoNanos) {
+            enviar();
+        }
+    }
+
+    /**
+     * Envia los elementos acumulados aunque el lote no este lleno. Se debe llamar al terminar.
+     */
+    public void enviar() {
+        if (actual.isEmpty() || cancelado) {
+            return;
+        }
+        pendientes.add(actual);
+        loteActual = Math.min(loteActual * 2, loteMaximo);
+        actual = new ArrayList<>(loteActual);
+        ultimoEnvio = System.nanoTime();
+        if (programado.compareAndSet(false, true)) {
+            Platform.runLater(this::entregar);
+        }
+    }
+
+    /**
+     * Deja de entregar: descarta los lotes pendientes y lo que se agregue despues. Llamado desde
+     * el hilo de JavaFX, garantiza que el destino ya no recibe ningun lote mas.
+     */
+    public void cancelar() {
+        cancelado = true;
+        pendientes.clear();
+    }
+
+    private void entregar() {
+        programado.set(false);
+        if (cancelado) {
+            pendientes.clear();
+            return;
+        }
+        List<T> lote = pendientes.poll();
+        if (lote == null) {
+            return;
+        }
+        List<T> siguiente = pendientes.poll();
+        if (siguiente != null) {
+            List<T> unido = new ArrayList<>(lote);
+            do {
+                unido.addAll(siguiente);
+            } while ((siguiente = pendientes.poll()) != null);
+            lote = unido;
+        }
+        destino.accept(lote);
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.ejh.tareas;
+
+import javafx.concurrent.Task;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Tarea de JavaFX para trabajo de base de datos. Ademas de interrumpir el hilo, al
+ * cancelarla se cancela la sentencia JDBC que este en curso, porque el driver no
+ * atiende a las interrupciones mientras espera al servidor.
+ *
+ * @param <T> El tipo del resultado de la tarea.
+ */
+public class TareaBD<T> extends Task<T> {
+
+    /**
+     * Trabajo que ejecuta una {@link TareaBD} en segundo plano.
+     *
+     * @param <T> El tipo del resultado.
+     */
+    @FunctionalInterface
+    public interface Trabajo<T> {
+        /**
+         * Ejecuta el trabajo.
+         *
+         * @param tarea La tarea que lo ejecuta, para registrar sentencias y comprobar la cancelacion.
+         * @return El resultado del trabajo.
+         * @throws Exception Si el trabajo falla.
+         */
+        T ejecutar(TareaBD<T> tarea) throws Exception;
+    }
+
+    private final Trabajo<T> trabajo;
+    private volatile Statement sentenciaEnCurso;
+
+    /**
+     * Constructor para crear una tarea que ejecuta el trabajo indicado.
+     *
+     * @param trabajo El trabajo a ejecutar en segundo plano.
+     */
+    public TareaBD(Trabajo<T> trabajo) {
+        this.trabajo = trabajo;
+    }
+
+    @Override
+    protected T call() throws Exception {
+        return trabajo.ejecutar(this);
+    }
+
+    /**
+     * Registra la sentencia que se va a ejecutar para poder cancelarla junto con la tarea.
+     *
+     * @param sentencia La sentencia a registrar.
+     * @param <S> El tipo de la sentencia.
+     * @return La misma sentencia, para usarla dentro de un try-with-resources.
+     * @throws SQLException Si la tarea ya estaba cancelada.
+     */
+    public <S extends Statement> S registrar(S sentencia) throws SQLException {
+        sentenciaEnCurso = sentencia;
+        if (isCancelled()) {
+            throw new SQLException("Operacion cancelada");
+        }
+        return sentencia;
+    }
+
+    /**
+     * Actualiza el progreso de la tarea. Se expone para que el trabajo pueda informar de su avance.
+     *
+     * @param hecho El trabajo realizado.
+     * @param total El trabajo total, o -1 si no se conoce.
+     */
+    public void progreso(long hecho, long total) {
+        updateProgress(hecho, total);
+    }
+
+    /**
+     * Actualiza el mensaje de la tarea desde el trabajo.
+     *
+     * @param mensaje El nuevo mensaje.
+     */
+    public void mensaje(String mensaje) {
+        updateMessage(mensaje);
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        boolean cancelada = super.cancel(mayInterruptIfRunning);
+        Statement sentencia = sentenciaEnCurso;
+        if (cancelada && sentencia != null) {
+            try {
+                sentencia.cancel();
+            } catch (SQLException e) {
+                // La sentencia ya habia terminado o la conexion esta cerrada
+            }
+        }
+        return cancelada;
+    }
+}
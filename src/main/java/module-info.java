@@ -2,10 +2,23 @@ module com.example.ejh {
     requires javafx.controls;
     requires javafx.fxml;
     requires java.sql;
+    requires java.management;
+    requires jdk.management;
+    requires jdk.httpserver;
 
 
     opens com.example.ejh to javafx.fxml;
     exports com.example.ejh;
     exports com.example.ejh.model;
+    exports com.example.ejh.db;
+    exports com.example.ejh.tareas;
+    exports com.example.ejh.csv;
+    exports com.example.ejh.json;
+    exports com.example.ejh.indices;
+    exports com.example.ejh.cache;
+    exports com.example.ejh.metricas;
+    exports com.example.ejh.local;
+    exports com.example.ejh.servidor;
+    exports com.example.ejh.duplicados;
     opens com.example.ejh.model to javafx.fxml;
 }
\ No newline at end of file
@@ -0,0 +1,100 @@
+package com.example.ejh.csv;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class LectorCsvTest {
+
+    private static List<List<String>> leer(Reader reader, char separador) throws IOException {
+        List<List<String>> registros = new ArrayList<>();
+        try (LectorCsv lector = new LectorCsv(reader, separador)) {
+            List<String> registro;
+            while ((registro = lector.leerRegistro()) != null) {
+                registros.add(registro);
+            }
+        }
+        return registros;
+    }
+
+    private static List<List<String>> leer(String texto) throws IOException {
+        return leer(new StringReader(texto), ',');
+    }
+
+    @Test
+    void separaLosCamposYLosRegistros() throws IOException {
+        assertEquals(List.of(List.of("Ana", "Ruiz", "30"), List.of("Luis", "Gil", "41")),
+                leer("Ana,Ruiz,30\nLuis,Gil,41\n"));
+    }
+
+    @Test
+    void conservaLosCamposVacios() throws IOException {
+        assertEquals(List.of(List.of("", "b", ""), List.of("a", "")), leer(",b,\na,"));
+    }
+
+    @Test
+    void losCamposEntreComillasPuedenLlevarSeparadoresYSaltos() throws IOException {
+        assertEquals(List.of(List.of("Ruiz, Ana", "linea 1\nlinea 2", "30")),
+                leer("\"Ruiz, Ana\",\"linea 1\nlinea 2\",30\n"));
+    }
+
+    @Test
+    void dosComillasSeguidasSonUnaComilla() throws IOException {
+        assertEquals(List.of(List.of("dijo \"hola\"", "\"", "")), leer("\"dijo \"\"hola\"\"\",\"\"\"\",\"\""));
+    }
+
+    @Test
+    void unaComillaEnMedioDeUnCampoSinComillasEsUnCaracterMas() throws IOException {
+        assertEquals(List.of(List.of("O\"Brien", "x")), leer("O\"Brien,x"));
+    }
+
+    @Test
+    void ignoraLasLineasVaciasYLosRetornosDeCarro() throws IOException {
+        assertEquals(List.of(List.of("a", "b"), List.of("c", "d")), leer("\r\n\na,b\r\n\r\n\nc,d\r\n\n"));
+    }
+
+    @Test
+    void elUltimoRegistroNoNecesitaSaltoDeLinea() throws IOException {
+        assertEquals(List.of(List.of("a", "b")), leer("a,b"));
+        assertEquals(List.of(), leer(""));
+    }
+
+    @Test
+    void cuentaLaLineaEnLaQueEmpiezaCadaRegistro() throws IOException {
+        try (LectorCsv lector = new LectorCsv(new StringReader("a\n\n\"b\nc\",d\ne\n"), ',')) {
+            lector.leerRegistro();
+            assertEquals(1, lector.getLinea());
+            lector.leerRegistro();
+            assertEquals(3, lector.getLinea());
+            lector.leerRegistro();
+            assertEquals(5, lector.getLinea());
+            assertNull(lector.leerRegistro());
+        }
+    }
+
+    @Test
+    void lasComillasPartidasEntreDosLecturasSeLeenBien() throws IOException {
+        // Un lector que entrega un caracter por llamada obliga a rellenar el buffer en cada paso
+        Reader unoAUno = new StringReader("\"a\"\"b\";\"c\"\n") {
+            @Override
+            public int read(char[] destino, int desde, int cantidad) throws IOException {
+                return super.read(destino, desde, Math.min(1, cantidad));
+            }
+        };
+        assertEquals(List.of(List.of("a\"b", "c")), leer(unoAUno, ';'));
+    }
+
+    @Test
+    void detectaElSeparador() {
+        assertEquals(';', LectorCsv.detectarSeparador("nombre;apellidos;edad"));
+        assertEquals(',', LectorCsv.detectarSeparador("nombre,apellidos,edad"));
+        assertEquals(',', LectorCsv.detectarSeparador("nombre"));
+    }
+}
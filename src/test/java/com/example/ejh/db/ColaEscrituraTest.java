@@ -0,0 +1,146 @@
+package com.example.ejh.db;
+
+import com.example.ejh.model.Persona;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ColaEscrituraTest {
+
+    private ColaEscritura cola;
+
+    @BeforeEach
+    void crearCola() {
+        // Sin temporizador ni repositorio: solo se apuntan y combinan los cambios
+        cola = new ColaEscritura(null, null, "prueba", 1000, 0, resultado -> {
+        });
+    }
+
+    private static Persona conDatos(Persona persona, String nombre) {
+        return new Persona(persona.getId(), nombre, persona.getApellidos(), persona.getEdad(), persona.getVersion());
+    }
+
+    @Test
+    void unaModificacionDeUnAltaSeEscribeComoAlta() {
+        Persona alta = cola.agregar("Ana", "Ruiz", 30);
+        cola.modificar(alta, conDatos(alta, "Ana Maria"));
+
+        List<ColaEscritura.Operacion> operaciones = cola.sacarPendientes();
+        assertEquals(1, operaciones.size());
+        assertEquals(ColaEscritura.Tipo.ALTA, operaciones.get(0).getTipo());
+        assertEquals("Ana Maria", operaciones.get(0).getPersona().getNombre());
+        assertTrue(operaciones.get(0).getPersona().getId() < 0);
+        assertNull(operaciones.get(0).getOriginal());
+    }
+
+    @Test
+    void laBajaDeUnAltaSinEscribirLaAnula() {
+        Persona alta = cola.agregar("Ana", "Ruiz", 30);
+        cola.eliminar(alta);
+        assertEquals(0, cola.getPendientes());
+        assertTrue(cola.sacarPendientes().isEmpty());
+    }
+
+    @Test
+    void variasModificacionesConservanLaVersionDeLaPrimera() {
+        Persona original = new Persona(5, "Luis", "Gil", 40, 3);
+        Persona primera = conDatos(original, "Luisa");
+        cola.modificar(original, primera);
+        cola.modificar(primera, conDatos(primera, "Lucia"));
+
+        List<ColaEscritura.Operacion> operaciones = cola.sacarPendientes();
+        assertEquals(1, operaciones.size());
+        ColaEscritura.Operacion operacion = operaciones.get(0);
+        assertEquals(ColaEscritura.Tipo.MODIFICACION, operacion.getTipo());
+        assertEquals("Lucia", operacion.getPersona().getNombre());
+        assertEquals("Luis", operacion.getOriginal().getNombre());
+        assertEquals(3, operacion.getOriginal().getVersion());
+    }
+
+    @Test
+    void laBajaDeUnaModificadaDevuelveLaOriginal() {
+        Persona original = new Persona(5, "Luis", "Gil", 40, 3);
+        Persona modificada = conDatos(original, "Luisa");
+        cola.modificar(original, modificada);
+        cola.eliminar(modificada);
+
+        ColaEscritura.Operacion operacion = cola.sacarPendientes().get(0);
+        assertEquals(ColaEscritura.Tipo.BAJA, operacion.getTipo());
+        assertEquals("Luis", operacion.getPersona().getNombre());
+        assertEquals("Luis", operacion.getOriginal().getNombre());
+    }
+
+    @Test
+    void unCambioNuevoPasaAlFinal() {
+        Persona a = new Persona(1, "A", "A", 1);
+        Persona b = new Persona(2, "B", "B", 2);
+        cola.modificar(a, conDatos(a, "A2"));
+        cola.modificar(b, conDatos(b, "B2"));
+        cola.modificar(conDatos(a, "A2"), conDatos(a, "A3"));
+
+        List<ColaEscritura.Operacion> operaciones = cola.sacarPendientes();
+        assertEquals(2, operaciones.get(0).getPersona().getId());
+        assertEquals(1, operaciones.get(1).getPersona().getId());
+    }
+
+    @Test
+    void losCambiosSobreUnAltaEscritaPasanAlIdDefinitivo() {
+        Persona temporal = cola.agregar("Ana", "Ruiz", 30);
+        List<ColaEscritura.Operacion> enCurso = cola.sacarPendientes();
+        // Mientras se escribe el alta se modifica la fila, todavia con el id temporal
+        cola.modificar(temporal, conDatos(temporal, "Ana Maria"));
+
+        Persona definitiva = new Persona(42, "Ana", "Ruiz", 30);
+        cola.reasignarIds(new ColaEscritura.Resultado(
+                List.of(new ColaEscritura.Alta(enCurso.get(0).getPersona(), definitiva)), List.of(), List.of()));
+
+        ColaEscritura.Operacion operacion = cola.sacarPendientes().get(0);
+        assertEquals(ColaEscritura.Tipo.MODIFICACION, operacion.getTipo());
+        assertEquals(42, operacion.getPersona().getId());
+        assertEquals("Ana Maria", operacion.getPersona().getNombre());
+        assertEquals(42, operacion.getOriginal().getId());
+        assertEquals(0, operacion.getOriginal().getVersion());
+    }
+
+    @Test
+    void losCambiosSobreUnAltaFallidaSeDescartan() {
+        Persona temporal = cola.agregar("Ana", "Ruiz", 30);
+        List<ColaEscritura.Operacion> enCurso = cola.sacarPendientes();
+        cola.modificar(temporal, conDatos(temporal, "Ana Maria"));
+
+        cola.reasignarIds(new ColaEscritura.Resultado(List.of(), List.of(),
+                List.of(new ColaEscritura.Fallo(enCurso.get(0), "Sin conexion"))));
+
+        assertEquals(0, cola.getPendientes());
+    }
+
+    @Test
+    void losCambiosSobreUnaModificacionEscritaPartenDeLaNuevaVersion() {
+        Persona original = new Persona(5, "Luis", "Gil", 40, 3);
+        Persona primera = conDatos(original, "Luisa");
+        cola.modificar(original, primera);
+        cola.sacarPendientes();
+        Persona otra = new Persona(6, "Eva", "Sanz", 20, 1);
+        cola.modificar(otra, conDatos(otra, "Eva2"));
+        cola.sacarPendientes();
+        // Mientras se escriben, se vuelve a modificar una y se elimina la otra
+        cola.modificar(primera, conDatos(primera, "Lucia"));
+        cola.eliminar(conDatos(otra, "Eva2"));
+
+        Persona primeraEscrita = new Persona(5, "Luisa", "Gil", 40, 4);
+        Persona otraEscrita = new Persona(6, "Eva2", "Sanz", 20, 2);
+        cola.reasignarIds(new ColaEscritura.Resultado(List.of(), List.of(primeraEscrita, otraEscrita), List.of()));
+
+        List<ColaEscritura.Operacion> operaciones = cola.sacarPendientes();
+        assertEquals(2, operaciones.size());
+        assertEquals("Lucia", operaciones.get(0).getPersona().getNombre());
+        assertEquals(4, operaciones.get(0).getOriginal().getVersion());
+        assertEquals(ColaEscritura.Tipo.BAJA, operaciones.get(1).getTipo());
+        assertEquals(2, operaciones.get(1).getPersona().getVersion());
+    }
+}
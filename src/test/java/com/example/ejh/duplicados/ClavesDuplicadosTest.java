@@ -0,0 +1,109 @@
+package com.example.ejh.duplicados;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClavesDuplicadosTest {
+
+    private static String fonetico(String texto) {
+        return ClavesDuplicados.fonetico(ClavesDuplicados.normalizar(texto));
+    }
+
+    @Test
+    void normalizarQuitaAcentosYMayusculas() {
+        assertEquals("munoz perez", ClavesDuplicados.normalizar("Muñoz Pérez"));
+        assertEquals("guell", ClavesDuplicados.normalizar("GÜELL"));
+        assertEquals("angel", ClavesDuplicados.normalizar("Ángel"));
+    }
+
+    @Test
+    void normalizarQuitaLasMarcasYaDescompuestas() {
+        assertEquals("perez", ClavesDuplicados.normalizar("Pe\u0301rez"));
+    }
+
+    @Test
+    void normalizarDejaUnSoloEspacioEntrePalabras() {
+        assertEquals("garcia lopez", ClavesDuplicados.normalizar("  García-López,  "));
+        assertEquals("o donnell 2", ClavesDuplicados.normalizar("O'Donnell\t(2)"));
+    }
+
+    @Test
+    void normalizarAceptaNullYVacio() {
+        assertEquals("", ClavesDuplicados.normalizar(null));
+        assertEquals("", ClavesDuplicados.normalizar(""));
+        assertEquals("", ClavesDuplicados.normalizar(" -. "));
+    }
+
+    @Test
+    void prefijoNoCuentaLosEspacios() {
+        assertEquals("dela", ClavesDuplicados.prefijo("de la fuente"));
+        assertEquals("gil", ClavesDuplicados.prefijo("gil"));
+    }
+
+    @Test
+    void foneticoIgualaLasLetrasQueSuenanIgual() {
+        assertEquals(fonetico("Gonzalez"), fonetico("Gonzales"));
+        assertEquals(fonetico("Gonzalez"), fonetico("Gonsalez"));
+        assertEquals(fonetico("Vázquez"), fonetico("Bazquez"));
+        assertEquals(fonetico("Vázquez"), fonetico("Vasques"));
+        assertEquals(fonetico("Llorente"), fonetico("Yorente"));
+        assertEquals(fonetico("Quesada"), fonetico("Kesada"));
+        assertEquals(fonetico("Cid"), fonetico("Zid"));
+        assertEquals(fonetico("Gimenez"), fonetico("Jimenez"));
+        assertEquals(fonetico("Carrasco"), fonetico("Karasco"));
+    }
+
+    @Test
+    void foneticoIgnoraLaHMuda() {
+        assertEquals(fonetico("Hernandez"), fonetico("Ernandez"));
+        assertEquals(fonetico("Alhambra"), fonetico("Alambra"));
+    }
+
+    @Test
+    void foneticoDistingueLaGSuaveDeLaFuerte() {
+        assertEquals("GR", fonetico("Guerra"));
+        assertEquals("JR", fonetico("Gerra"));
+        assertEquals("GSMN", fonetico("Guzman"));
+        assertNotEquals(fonetico("Chaves"), fonetico("Caves"));
+    }
+
+    @Test
+    void foneticoSoloCuentaLaVocalDelPrincipio() {
+        assertEquals("ABRS", fonetico("Abreus"));
+        assertEquals("MRN", fonetico("Marin"));
+    }
+
+    @Test
+    void foneticoNoRepiteElMismoCodigoSeguido() {
+        assertEquals("SLS", fonetico("Salas"));
+        assertEquals("SS", fonetico("Sosa"));
+        assertEquals("S", fonetico("Ss"));
+        assertEquals(fonetico("Parra"), fonetico("Para"));
+    }
+
+    @Test
+    void foneticoTieneUnaLongitudMaxima() {
+        String codigo = fonetico("Fernandez de Cordoba y Figueroa");
+        assertEquals(ClavesDuplicados.LONGITUD_FONETICA, codigo.length());
+        assertTrue(fonetico("").isEmpty());
+    }
+
+    @Test
+    void franjaEdadAgrupaPorCincoAnos() {
+        assertEquals(ClavesDuplicados.franjaEdad(30), ClavesDuplicados.franjaEdad(34));
+        assertNotEquals(ClavesDuplicados.franjaEdad(34), ClavesDuplicados.franjaEdad(35));
+        assertEquals(-1, ClavesDuplicados.franjaEdad(-1));
+    }
+
+    @Test
+    void ultimaDeFranjaMarcaElBorde() {
+        assertTrue(ClavesDuplicados.ultimaDeFranja(34));
+        assertFalse(ClavesDuplicados.ultimaDeFranja(35));
+        assertFalse(ClavesDuplicados.ultimaDeFranja(33));
+        assertTrue(ClavesDuplicados.ultimaDeFranja(-1));
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.ejh.duplicados;
+
+import com.example.ejh.model.Persona;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DetectorDuplicadosTest {
+
+    private static List<GrupoDuplicados> buscar(Persona... personas) {
+        return new DetectorDuplicados(0.85, 64, 16, ForkJoinPool.commonPool())
+                .buscar(Arrays.asList(personas), () -> false);
+    }
+
+    @Test
+    void encuentraLaEdadDesplazadaDentroDeLaFranja() {
+        List<GrupoDuplicados> grupos = buscar(new Persona(1, "Ana", "Ruiz Lopez", 33),
+                new Persona(2, "Ana", "Ruiz Lopez", 34));
+        assertEquals(1, grupos.size());
+    }
+
+    @Test
+    void encuentraLaEdadDesplazadaEntreDosFranjas() {
+        List<GrupoDuplicados> grupos = buscar(new Persona(1, "Ana", "Ruiz Lopez", 34),
+                new Persona(2, "Ana", "Ruiz Lopez", 35));
+        assertEquals(1, grupos.size());
+        assertEquals(2, grupos.get(0).size());
+    }
+
+    @Test
+    void encuentraLaEdadDesplazadaEntreFranjasSoloPorElFonetico() {
+        // Distinto prefijo de apellidos: solo coinciden en la segunda pasada
+        List<GrupoDuplicados> grupos = buscar(new Persona(1, "Luis", "Gonzalez Gil", 39),
+                new Persona(2, "Luis", "Gonsalez Gil", 40));
+        assertEquals(1, grupos.size());
+    }
+
+    @Test
+    void noUneEdadesQueSeDiferencianEnMasDeUnAno() {
+        assertTrue(buscar(new Persona(1, "Ana", "Ruiz Lopez", 34), new Persona(2, "Ana", "Ruiz Lopez", 36)).isEmpty());
+    }
+
+    @Test
+    void agrupaLasRepeticionesEnUnSoloGrupo() {
+        List<Persona> personas = new ArrayList<>();
+        personas.add(new Persona(3, "Ana", "Ruiz Lopez", 35));
+        personas.add(null);
+        personas.add(new Persona(1, "Ana", "Ruiz Lopez", 34));
+        personas.add(new Persona(2, "Ana", "Ruiz Lopes", 34));
+        personas.add(new Persona(4, "Pedro", "Martin Sanz", 34));
+        List<GrupoDuplicados> grupos = new DetectorDuplicados(0.85, 64, 16, ForkJoinPool.commonPool())
+                .buscar(personas, () -> false);
+        assertEquals(1, grupos.size());
+        assertEquals(List.of(1, 2, 3), grupos.get(0).getPersonas().stream().map(Persona::getId).toList());
+    }
+
+    @Test
+    void comparaEntreFranjasTambienEnLosBloquesGrandes() {
+        List<Persona> personas = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            personas.add(new Persona(i, "Nombre" + i, "Garcia", i % 2 == 0 ? 20 : 60));
+        }
+        personas.add(new Persona(1000, "Ana", "Garcia", 34));
+        personas.add(new Persona(1001, "Ana", "Garcia", 35));
+        List<GrupoDuplicados> grupos = new DetectorDuplicados(0.85, 4, 4, ForkJoinPool.commonPool())
+                .buscar(personas, () -> false);
+        assertTrue(grupos.stream().anyMatch(g -> g.getPersonas().get(0).getId() == 1000 && g.size() == 2));
+    }
+}
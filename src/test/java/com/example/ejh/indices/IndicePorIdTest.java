@@ -0,0 +1,109 @@
+package com.example.ejh.indices;
+
+import com.example.ejh.model.Persona;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class IndicePorIdTest {
+
+    private static Persona persona(int id) {
+        return new Persona(id, "Nombre" + id, "Apellidos" + id, id % 90);
+    }
+
+    private static ObservableList<Persona> lista(int desde, int hasta) {
+        ObservableList<Persona> lista = FXCollections.observableArrayList();
+        for (int id = desde; id < hasta; id++) {
+            lista.add(persona(id));
+        }
+        return lista;
+    }
+
+    /**
+     * Comprueba la posicion de cada id de la lista y la de algunos que no estan.
+     */
+    private static void comprobar(ObservableList<Persona> lista, IndicePorId indice, int maximoId) {
+        List<Integer> posiciones = new ArrayList<>();
+        for (int id = 0; id <= maximoId; id++) {
+            posiciones.add(-1);
+        }
+        for (int i = 0; i < lista.size(); i++) {
+            posiciones.set(lista.get(i).getId(), i);
+        }
+        for (int id = 0; id <= maximoId; id++) {
+            assertEquals(posiciones.get(id), indice.posicion(id), "id " + id);
+        }
+    }
+
+    @Test
+    void encuentraLaPosicionDeCadaId() {
+        ObservableList<Persona> lista = lista(1, 100);
+        IndicePorId indice = new IndicePorId(lista);
+        comprobar(lista, indice, 120);
+    }
+
+    @Test
+    void sigueAlDiaAlQuitarAgregarYSustituir() {
+        ObservableList<Persona> lista = lista(0, 500);
+        IndicePorId indice = new IndicePorId(lista);
+        Random random = new Random(3);
+        int siguienteId = 500;
+        for (int paso = 0; paso < 3000; paso++) {
+            int operacion = random.nextInt(4);
+            if (operacion == 0 && !lista.isEmpty()) {
+                lista.remove(random.nextInt(lista.size()));
+            } else if (operacion == 1 && lista.size() > 10) {
+                int desde = random.nextInt(lista.size() - 5);
+                lista.remove(desde, desde + 1 + random.nextInt(5));
+            } else if (operacion == 2 && !lista.isEmpty()) {
+                lista.set(random.nextInt(lista.size()), persona(siguienteId++));
+            } else {
+                lista.add(persona(siguienteId++));
+            }
+        }
+        comprobar(lista, indice, siguienteId);
+    }
+
+    @Test
+    void seReconstruyeAlOrdenarOInsertarEnMedio() {
+        ObservableList<Persona> lista = lista(0, 50);
+        IndicePorId indice = new IndicePorId(lista);
+        lista.remove(10);
+        lista.add(5, persona(100));
+        comprobar(lista, indice, 100);
+        FXCollections.sort(lista, Comparator.comparing(Persona::getId).reversed());
+        comprobar(lista, indice, 100);
+    }
+
+    @Test
+    void distingueLasPersonasRepetidasPorId() {
+        ObservableList<Persona> lista = FXCollections.observableArrayList();
+        for (int id = 1; id <= 4; id++) {
+            // Los mismos datos: equals no las distingue
+            lista.add(new Persona(id, "Ana", "Ruiz", 30));
+        }
+        IndicePorId indice = new IndicePorId(lista);
+        lista.remove(1);
+        assertEquals(0, indice.posicion(1));
+        assertEquals(-1, indice.posicion(2));
+        assertEquals(1, indice.posicion(3));
+        assertEquals(2, indice.posicion(4));
+    }
+
+    @Test
+    void muchasBajasCompactanElIndice() {
+        ObservableList<Persona> lista = lista(0, 5000);
+        IndicePorId indice = new IndicePorId(lista);
+        for (int i = 0; i < 4000; i++) {
+            lista.remove(0);
+        }
+        comprobar(lista, indice, 5000);
+    }
+}
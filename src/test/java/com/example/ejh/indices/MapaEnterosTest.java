@@ -0,0 +1,87 @@
+package com.example.ejh.indices;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MapaEnterosTest {
+
+    @Test
+    void guardaYSustituyeValores() {
+        MapaEnteros mapa = new MapaEnteros();
+        mapa.put(7, 70);
+        mapa.put(-3, 30);
+        mapa.put(7, 71);
+        assertEquals(2, mapa.size());
+        assertEquals(71, mapa.get(7, -1));
+        assertEquals(30, mapa.get(-3, -1));
+        assertEquals(-1, mapa.get(8, -1));
+        assertTrue(mapa.contiene(-3));
+        assertFalse(mapa.contiene(8));
+    }
+
+    @Test
+    void laClaveMinimaSeGuardaAparte() {
+        MapaEnteros mapa = new MapaEnteros();
+        assertFalse(mapa.contiene(Integer.MIN_VALUE));
+        mapa.put(Integer.MIN_VALUE, 5);
+        mapa.put(Integer.MIN_VALUE, 6);
+        assertEquals(1, mapa.size());
+        assertEquals(6, mapa.get(Integer.MIN_VALUE, -1));
+        assertTrue(mapa.remove(Integer.MIN_VALUE));
+        assertFalse(mapa.remove(Integer.MIN_VALUE));
+        assertEquals(0, mapa.size());
+    }
+
+    @Test
+    void crecerConservaLasEntradas() {
+        MapaEnteros mapa = new MapaEnteros(4);
+        for (int i = 0; i < 10_000; i++) {
+            mapa.put(i, i * 2);
+        }
+        assertEquals(10_000, mapa.size());
+        for (int i = 0; i < 10_000; i++) {
+            assertEquals(i * 2, mapa.get(i, -1));
+        }
+    }
+
+    @Test
+    void borrarNoPierdeLasClavesQueSiguenEnElRacimo() {
+        MapaEnteros mapa = new MapaEnteros();
+        Map<Integer, Integer> referencia = new HashMap<>();
+        Random random = new Random(11);
+        for (int i = 0; i < 200_000; i++) {
+            // Pocas claves distintas para que haya muchas colisiones y borrados
+            int clave = random.nextInt(2000) - 1000;
+            if (random.nextInt(3) == 0) {
+                assertEquals(referencia.remove(clave) != null, mapa.remove(clave));
+            } else {
+                referencia.put(clave, i);
+                mapa.put(clave, i);
+            }
+        }
+        assertEquals(referencia.size(), mapa.size());
+        for (int clave = -1000; clave < 1000; clave++) {
+            assertEquals(referencia.getOrDefault(clave, -1), mapa.get(clave, -1), "clave " + clave);
+        }
+    }
+
+    @Test
+    void clearVaciaElMapa() {
+        MapaEnteros mapa = new MapaEnteros();
+        mapa.put(1, 1);
+        mapa.put(Integer.MIN_VALUE, 2);
+        mapa.clear();
+        assertEquals(0, mapa.size());
+        assertFalse(mapa.contiene(1));
+        assertFalse(mapa.contiene(Integer.MIN_VALUE));
+        mapa.put(1, 3);
+        assertEquals(3, mapa.get(1, -1));
+    }
+}
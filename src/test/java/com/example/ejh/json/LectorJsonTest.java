@@ -0,0 +1,114 @@
+package com.example.ejh.json;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LectorJsonTest {
+
+    private static Object valor(String json) {
+        return LectorJson.leerObjeto("{\"v\":" + json + "}").get("v");
+    }
+
+    private static String error(String json) {
+        return assertThrows(IllegalArgumentException.class, () -> LectorJson.leerObjeto(json)).getMessage();
+    }
+
+    @Test
+    void leeLosEscapesSimples() {
+        assertEquals("\"\\/\b\f\n\r\t", valor("\"\\\"\\\\\\/\\b\\f\\n\\r\\t\""));
+    }
+
+    @Test
+    void leeLosEscapesUnicode() {
+        assertEquals("Mu\u00f1oz \u20ac", valor("\"Mu\\u00f1oz \\u20AC\""));
+    }
+
+    @Test
+    void rechazaLosEscapesUnicodeMalFormados() {
+        assertTrue(error("{\"v\":\"\\u12").contains("escape \\u incompleto"));
+        assertTrue(error("{\"v\":\"\\u12G4\"}").contains("escape \\u invalido"));
+        assertTrue(error("{\"v\":\"\\u+041\"}").contains("escape \\u invalido"));
+        assertTrue(error("{\"v\":\"\\u-041\"}").contains("escape \\u invalido"));
+    }
+
+    @Test
+    void rechazaLasCadenasSinCerrar() {
+        assertTrue(error("{\"v\":\"abc").contains("cadena sin cerrar"));
+    }
+
+    @Test
+    void leeLosEnterosComoLong() {
+        assertEquals(42L, valor("42"));
+        assertEquals(-7L, valor("-7"));
+        assertEquals(0L, valor("0"));
+        assertEquals(9_000_000_000L, valor("9000000000"));
+    }
+
+    @Test
+    void leeLosDecimalesYExponentesComoDouble() {
+        assertEquals(1.5, valor("1.5"));
+        assertEquals(-0.25, valor("-0.25"));
+        assertEquals(1000.0, valor("1e3"));
+        assertEquals(1500.0, valor("1.5E+3"));
+        assertEquals(0.02, valor("2e-2"));
+    }
+
+    @Test
+    void rechazaLosNumerosMalFormados() {
+        assertTrue(error("{\"v\":-}").contains("valor desconocido"));
+        assertTrue(error("{\"v\":1e}").contains("valor desconocido"));
+        assertTrue(error("{\"v\":1-2}").contains("valor desconocido"));
+        assertTrue(error("{\"v\":+5}").contains("valor desconocido"));
+    }
+
+    @Test
+    void leeLosLiteralesYLasEstructurasAnidadas() {
+        Map<String, Object> objeto = LectorJson.leerObjeto(
+                " { \"b\" : true , \"a\" : [1, \"x\", null, {\"c\": false}], \"n\": null } ");
+        assertEquals(List.of("b", "a", "n"), List.copyOf(objeto.keySet()));
+        assertEquals(Boolean.TRUE, objeto.get("b"));
+        assertNull(objeto.get("n"));
+        List<?> lista = (List<?>) objeto.get("a");
+        assertEquals(4, lista.size());
+        assertEquals(1L, lista.get(0));
+        assertEquals("x", lista.get(1));
+        assertNull(lista.get(2));
+        assertEquals(Map.of("c", false), lista.get(3));
+    }
+
+    @Test
+    void leeLosObjetosYListasVacios() {
+        assertTrue(LectorJson.leerObjeto("{}").isEmpty());
+        assertEquals(List.of(), valor("[]"));
+    }
+
+    @Test
+    void rechazaLoQueNoEsUnObjeto() {
+        error("[1, 2]");
+        error("\"texto\"");
+        error("");
+    }
+
+    @Test
+    void rechazaElTextoSobrante() {
+        error("{} {}");
+        error("{\"v\":1}x");
+    }
+
+    @Test
+    void rechazaLaSintaxisIncorrecta() {
+        assertTrue(error("{v:1}").contains("se esperaba el nombre de un campo"));
+        assertTrue(error("{\"v\" 1}").contains("se esperaban dos puntos"));
+        assertTrue(error("{\"v\":1 \"w\":2}").contains("se esperaba una coma o el final del objeto"));
+        assertTrue(error("{\"v\":[1 2]}").contains("se esperaba una coma o el final de la lista"));
+        assertTrue(error("{\"v\":}").contains("valor desconocido"));
+        assertTrue(error("{\"v\":").contains("falta un valor"));
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.ejh.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FiltroPersonasTest {
+
+    private static FiltroPersonas edad(String edad) {
+        return FiltroPersonas.desdeTexto("", "", edad);
+    }
+
+    private static void assertRango(int minima, int maxima, FiltroPersonas filtro) {
+        assertTrue(filtro.tieneEdad());
+        assertEquals(minima, filtro.getEdadMinima());
+        assertEquals(maxima, filtro.getEdadMaxima());
+    }
+
+    @Test
+    void sinCamposDevuelveNinguno() {
+        assertSame(FiltroPersonas.NINGUNO, FiltroPersonas.desdeTexto(null, null, null));
+        assertSame(FiltroPersonas.NINGUNO, FiltroPersonas.desdeTexto("  ", "", " "));
+    }
+
+    @Test
+    void unNumeroEsUnaEdadExacta() {
+        assertRango(30, 30, edad("30"));
+        assertRango(30, 30, edad(" 30 "));
+    }
+
+    @Test
+    void leeLosRangos() {
+        assertRango(30, 40, edad("30-40"));
+        assertRango(30, 40, edad("30 - 40"));
+    }
+
+    @Test
+    void leeLosLimitesAbiertos() {
+        assertRango(30, Integer.MAX_VALUE, edad("30-"));
+        assertRango(Integer.MIN_VALUE, 40, edad("-40"));
+        assertRango(Integer.MIN_VALUE, 40, edad("- 40"));
+    }
+
+    @Test
+    void unRangoAlRevesSeDaLaVuelta() {
+        assertRango(30, 40, edad("40-30"));
+    }
+
+    @Test
+    void loQueNoSeEntiendeNoFiltraPorEdad() {
+        assertSame(FiltroPersonas.NINGUNO, edad("treinta"));
+        assertSame(FiltroPersonas.NINGUNO, edad("-"));
+        assertSame(FiltroPersonas.NINGUNO, edad("30-cuarenta"));
+        assertSame(FiltroPersonas.NINGUNO, edad("30-40-50"));
+        FiltroPersonas filtro = FiltroPersonas.desdeTexto("Ana", "", "x");
+        assertFalse(filtro.tieneEdad());
+        assertEquals("ana", filtro.getPrefijoNombre());
+    }
+
+    @Test
+    void aceptaPorPrefijosSinDistinguirMayusculasYPorEdad() {
+        FiltroPersonas filtro = FiltroPersonas.desdeTexto(" ma ", "GAR", "30-40");
+        assertTrue(filtro.acepta(new Persona(1, "Maria", "Garcia", 30)));
+        assertTrue(filtro.acepta(new Persona(2, "MANUEL", "garrido", 40)));
+        assertFalse(filtro.acepta(new Persona(3, "Ana", "Garcia", 35)));
+        assertFalse(filtro.acepta(new Persona(4, "Maria", "Lopez", 35)));
+        assertFalse(filtro.acepta(new Persona(5, "Maria", "Garcia", 41)));
+        assertFalse(filtro.acepta(null));
+    }
+
+    @Test
+    void ningunoAceptaTodas() {
+        assertTrue(FiltroPersonas.NINGUNO.acepta(new Persona(1, null, null, -3)));
+    }
+}